@@ -0,0 +1,119 @@
+package ontologizer.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import ontologizer.association.AssociationContainer;
+import ontologizer.association.AssociationParser;
+import ontologizer.calculation.b2g.B2GParam;
+import ontologizer.calculation.b2g.Bayes2GOCalculation;
+import ontologizer.enumeration.GOTermEnumerator;
+import ontologizer.go.OBOParser;
+import ontologizer.go.OBOParserException;
+import ontologizer.go.OBOParserFileInput;
+import ontologizer.go.Ontology;
+import ontologizer.go.TermContainer;
+import ontologizer.go.TermID;
+import ontologizer.set.PopulationSet;
+import ontologizer.set.StudySet;
+import ontologizer.statistics.None;
+import ontologizer.types.ByteString;
+
+/**
+ * A simple benchmark for measuring the number of MCMC steps per second
+ * of the MGSA calculation on a GO sized problem. The study set consists
+ * of the genes of some random terms that are perturbed by noise.
+ *
+ * The time needed for the setup of the calculation is eliminated by
+ * taking the difference of the times of runs of different lengths.
+ *
+ * Usage: MCMCBenchmark obo-file association-file [steps] [repetitions] [chains]
+ *
+ * @author Sebastian Bauer
+ */
+public class MCMCBenchmark
+{
+	/**
+	 * Runs the calculation with the given number of steps.
+	 *
+	 * @return the time in nanoseconds.
+	 */
+	private static long run(Ontology graph, AssociationContainer assoc, PopulationSet population, StudySet study, int steps, int chains)
+	{
+		Bayes2GOCalculation calc = new Bayes2GOCalculation();
+		calc.setSeed(1);
+		calc.setMcmcSteps(steps);
+		calc.setAlpha(B2GParam.Type.MCMC);
+		calc.setBeta(B2GParam.Type.MCMC);
+		calc.setExpectedNumber(B2GParam.Type.MCMC);
+		calc.setNumberOfChains(chains);
+
+		long start = System.nanoTime();
+		calc.calculateStudySet(graph, assoc, population, study, new None());
+		return System.nanoTime() - start;
+	}
+
+	public static void main(String[] args) throws IOException, OBOParserException
+	{
+		if (args.length < 2)
+		{
+			System.err.println("Usage: " + MCMCBenchmark.class.getSimpleName() + " obo-file association-file [steps] [repetitions] [chains]");
+			System.exit(1);
+		}
+
+		int steps = args.length > 2 ? Integer.parseInt(args[2]) : 2000000;
+		int repetitions = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+		int chains = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+
+		OBOParser oboParser = new OBOParser(new OBOParserFileInput(args[0]));
+		oboParser.doParse();
+		TermContainer terms = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), "");
+		Ontology graph = Ontology.create(terms);
+		AssociationParser ap = new AssociationParser(new OBOParserFileInput(args[1]), terms);
+		AssociationContainer assoc = new AssociationContainer(ap.getAssociations(), ap.getSynonym2gene(), ap.getDbObject2gene());
+
+		PopulationSet population = new PopulationSet("population");
+		for (ByteString gene : assoc.getAllAnnotatedGenes())
+			population.addGene(gene, "");
+		population.filterOutDuplicateGenes(assoc);
+		GOTermEnumerator enumerator = population.enumerateGOTerms(graph, assoc);
+
+		/* Choose some terms of moderate size as active terms */
+		Random rnd = new Random(1);
+		ArrayList<TermID> candidates = new ArrayList<TermID>();
+		for (TermID t : enumerator)
+		{
+			int size = enumerator.getAnnotatedGenes(t).totalAnnotatedCount();
+			if (size >= 20 && size <= 100)
+				candidates.add(t);
+		}
+		HashSet<ByteString> active = new HashSet<ByteString>();
+		for (int i = 0; i < 3 && !candidates.isEmpty(); i++)
+			active.addAll(enumerator.getAnnotatedGenes(candidates.get(rnd.nextInt(candidates.size()))).totalAnnotated);
+
+		/* Observe the active genes with a false positive rate of 0.05 and a false negative rate of 0.25 */
+		StudySet study = new StudySet("study");
+		for (ByteString gene : population)
+		{
+			double r = rnd.nextDouble();
+			if (active.contains(gene) ? r >= 0.25 : r < 0.05)
+				study.addGene(gene, "");
+		}
+
+		System.out.println(enumerator.getTotalNumberOfAnnotatedTerms() + " terms, " + population.getGeneCount() + " genes, " + study.getGeneCount() + " study genes");
+
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < repetitions; i++)
+		{
+			long shortRun = run(graph, assoc, population, study, steps / 4, chains);
+			long longRun = run(graph, assoc, population, study, steps / 4 + steps, chains);
+			best = Math.min(best, longRun - shortRun);
+		}
+
+		double seconds = best / 1e9;
+		System.out.println("steps\tchains\tseconds\tsteps/s");
+		System.out.println(steps + "\t" + chains + "\t" + String.format("%.3f", seconds) + "\t" + String.format("%.0f", steps * (double)chains / seconds));
+	}
+}
@@ -0,0 +1,156 @@
+package ontologizer.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import ontologizer.association.AssociationParser;
+import ontologizer.go.IParserInput;
+import ontologizer.go.MappedFileInput;
+import ontologizer.go.OBOParser;
+import ontologizer.go.OBOParserException;
+import ontologizer.go.OBOParserFileInput;
+import ontologizer.go.TermContainer;
+
+/**
+ * A simple benchmark for measuring the throughput of the association
+ * parser for different numbers of threads as well as the throughput
+ * of the parsers for stream and memory mapped inputs.
+ *
+ * Usage: ParserBenchmark obo-file association-file [max-threads] [repetitions]
+ *
+ * @author Sebastian Bauer
+ */
+public class ParserBenchmark
+{
+	/**
+	 * Determine the size of the decompressed contents of the given file.
+	 *
+	 * @param filename
+	 * @return the size in bytes
+	 * @throws IOException
+	 */
+	private static long decompressedSize(String filename) throws IOException
+	{
+		OBOParserFileInput input = new OBOParserFileInput(filename);
+		InputStream is = input.inputStream();
+		byte [] buf = new byte[65536];
+		long size = 0;
+		int read;
+		while ((read = is.read(buf)) > 0)
+			size += read;
+		input.close();
+		return size;
+	}
+
+	/**
+	 * Open the given file either as stream or as memory mapped input.
+	 *
+	 * @param filename
+	 * @param mapped
+	 * @return the input
+	 * @throws IOException
+	 */
+	private static IParserInput open(String filename, boolean mapped) throws IOException
+	{
+		if (mapped)
+			return new MappedFileInput(filename);
+		return new OBOParserFileInput(filename);
+	}
+
+	/**
+	 * Compare the throughput of the parsers for stream and memory mapped inputs.
+	 *
+	 * @param oboName
+	 * @param assocName
+	 * @param terms
+	 * @param repetitions
+	 * @throws IOException
+	 * @throws OBOParserException
+	 */
+	private static void compareInputs(String oboName, String assocName, TermContainer terms, int repetitions) throws IOException, OBOParserException
+	{
+		double oboMegaBytes = decompressedSize(oboName) / (1024.0 * 1024.0);
+		double assocMegaBytes = decompressedSize(assocName) / (1024.0 * 1024.0);
+
+		System.out.println("input\tparser\tseconds\tMB/s");
+
+		for (int m = 0; m < 2; m++)
+		{
+			boolean mapped = m == 1;
+			long bestObo = Long.MAX_VALUE;
+			long bestAssoc = Long.MAX_VALUE;
+
+			for (int i = 0; i < repetitions; i++)
+			{
+				long start = System.nanoTime();
+				IParserInput input = open(oboName, mapped);
+				OBOParser oboParser = new OBOParser(input);
+				oboParser.doParse();
+				bestObo = Math.min(bestObo, System.nanoTime() - start);
+				input.close();
+
+				start = System.nanoTime();
+				input = open(assocName, mapped);
+				new AssociationParser(input, terms);
+				bestAssoc = Math.min(bestAssoc, System.nanoTime() - start);
+				input.close();
+			}
+
+			String name = mapped ? "mapped" : "stream";
+			System.out.println(name + "\tobo\t" + String.format("%.3f", bestObo / 1e9) + "\t" + String.format("%.1f", oboMegaBytes / (bestObo / 1e9)));
+			System.out.println(name + "\tgaf\t" + String.format("%.3f", bestAssoc / 1e9) + "\t" + String.format("%.1f", assocMegaBytes / (bestAssoc / 1e9)));
+		}
+	}
+
+	public static void main(String[] args) throws IOException, OBOParserException
+	{
+		if (args.length < 2)
+		{
+			System.err.println("Usage: " + ParserBenchmark.class.getSimpleName() + " obo-file association-file [max-threads] [repetitions]");
+			System.exit(1);
+		}
+
+		String oboName = args[0];
+		String assocName = args[1];
+		int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int repetitions = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+		OBOParser oboParser = new OBOParser(new OBOParserFileInput(oboName));
+		oboParser.doParse();
+		TermContainer terms = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), "");
+
+		double megaBytes = decompressedSize(assocName) / (1024.0 * 1024.0);
+		int expectedAssociations = -1;
+
+		System.out.println("threads\tseconds\tMB/s\tMB/s/core\tassociations");
+
+		for (int threads = 1; threads <= maxThreads; threads++)
+		{
+			long best = Long.MAX_VALUE;
+			int associations = 0;
+
+			for (int i = 0; i < repetitions; i++)
+			{
+				long start = System.nanoTime();
+				OBOParserFileInput input = new OBOParserFileInput(assocName);
+				AssociationParser ap = new AssociationParser(input, terms, null, null, null, threads);
+				long time = System.nanoTime() - start;
+				input.close();
+
+				associations = ap.getAssociations().size();
+				best = Math.min(best, time);
+			}
+
+			if (expectedAssociations == -1)
+				expectedAssociations = associations;
+			else if (expectedAssociations != associations)
+				System.err.println("Mismatch in number of associations: Expected " + expectedAssociations + " but got " + associations);
+
+			double seconds = best / 1e9;
+			double throughput = megaBytes / seconds;
+			System.out.println(threads + "\t" + String.format("%.3f", seconds) + "\t" + String.format("%.1f", throughput) + "\t" + String.format("%.1f", throughput / threads) + "\t" + associations);
+		}
+
+		compareInputs(oboName, assocName, terms, repetitions);
+	}
+}
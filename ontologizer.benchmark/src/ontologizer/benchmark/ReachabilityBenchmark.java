@@ -0,0 +1,117 @@
+package ontologizer.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+
+import ontologizer.go.OBOParser;
+import ontologizer.go.OBOParserException;
+import ontologizer.go.OBOParserFileInput;
+import ontologizer.go.Ontology;
+import ontologizer.go.Term;
+import ontologizer.go.TermContainer;
+import sonumina.math.graph.SlimDirectedGraphView;
+
+/**
+ * Compares the memory requirements and the query latencies of the slim
+ * graph view that stores the full ancestor and descendant arrays with the
+ * one that is backed by a reachability index.
+ *
+ * Usage: ReachabilityBenchmark obo-file [queries]
+ *
+ * @author Sebastian Bauer
+ */
+public class ReachabilityBenchmark
+{
+	/** Used to prevent the elimination of the queries */
+	private static long sink;
+
+	/**
+	 * Returns the approximate number of bytes occupied by the given arrays.
+	 */
+	private static long sizeInBytes(int [][] arrays)
+	{
+		long size = 16 + 4L * arrays.length;
+		for (int [] a : arrays)
+			size += 16 + 4L * a.length;
+		return size;
+	}
+
+	/**
+	 * Performs random ancestor queries.
+	 *
+	 * @return the time per query in nanoseconds.
+	 */
+	private static double ancestorQueries(SlimDirectedGraphView<Term> slim, int queries)
+	{
+		Random rnd = new Random(1);
+		int n = slim.getNumberOfVertices();
+		long found = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < queries; i++)
+		{
+			if (slim.isAncestor(rnd.nextInt(n), rnd.nextInt(n)))
+				found++;
+		}
+		long time = System.nanoTime() - start;
+		sink += found;
+		return time / (double)queries;
+	}
+
+	/**
+	 * Retrieves the descendants of random vertices.
+	 *
+	 * @return the time per query in nanoseconds.
+	 */
+	private static double descendantQueries(SlimDirectedGraphView<Term> slim, int queries)
+	{
+		Random rnd = new Random(1);
+		int n = slim.getNumberOfVertices();
+		long total = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < queries; i++)
+			total += slim.getDescendantIndices(rnd.nextInt(n)).length;
+		long time = System.nanoTime() - start;
+		sink += total;
+		return time / (double)queries;
+	}
+
+	public static void main(String[] args) throws IOException, OBOParserException
+	{
+		if (args.length < 1)
+		{
+			System.err.println("Usage: " + ReachabilityBenchmark.class.getSimpleName() + " obo-file [queries]");
+			System.exit(1);
+		}
+
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+
+		OBOParser oboParser = new OBOParser(new OBOParserFileInput(args[0]));
+		oboParser.doParse();
+		TermContainer terms = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), "");
+		Ontology graph = Ontology.create(terms);
+
+		long start = System.nanoTime();
+		SlimDirectedGraphView<Term> full = SlimDirectedGraphView.create(graph.getGraph());
+		double fullBuild = (System.nanoTime() - start) / 1e6;
+		long fullSize = sizeInBytes(full.vertexAncestors) + sizeInBytes(full.vertexDescendants);
+
+		start = System.nanoTime();
+		SlimDirectedGraphView<Term> compact = SlimDirectedGraphView.createCompact(graph.getGraph());
+		double compactBuild = (System.nanoTime() - start) / 1e6;
+		long compactSize = compact.getReachabilityIndex().getSizeInBytes();
+
+		System.out.println(full.getNumberOfVertices() + " terms, " + compact.getReachabilityIndex().getNumberOfIntervals() + " intervals");
+
+		/* Warm up */
+		ancestorQueries(full, queries / 10);
+		ancestorQueries(compact, queries / 10);
+		descendantQueries(full, queries / 100);
+		descendantQueries(compact, queries / 100);
+
+		System.out.println("view\tbuild ms\tclosure bytes\tisAncestor ns\tdescendants ns");
+		System.out.println("arrays\t" + String.format("%.1f", fullBuild) + "\t" + fullSize + "\t" + String.format("%.1f", ancestorQueries(full, queries)) + "\t" + String.format("%.1f", descendantQueries(full, queries / 10)));
+		System.out.println("index\t" + String.format("%.1f", compactBuild) + "\t" + compactSize + "\t" + String.format("%.1f", ancestorQueries(compact, queries)) + "\t" + String.format("%.1f", descendantQueries(compact, queries / 10)));
+
+		if (sink == 42) System.out.println();
+	}
+}
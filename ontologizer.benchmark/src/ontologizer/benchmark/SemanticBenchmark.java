@@ -0,0 +1,97 @@
+package ontologizer.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import ontologizer.association.AssociationContainer;
+import ontologizer.association.AssociationParser;
+import ontologizer.calculation.SemanticCalculation;
+import ontologizer.go.OBOParser;
+import ontologizer.go.OBOParserException;
+import ontologizer.go.OBOParserFileInput;
+import ontologizer.go.Ontology;
+import ontologizer.go.TermContainer;
+import ontologizer.set.StudySet;
+import ontologizer.types.ByteString;
+
+/**
+ * A simple benchmark for measuring the throughput of the all-pairs
+ * similarity calculation of genes of a random study set.
+ *
+ * The similarities are either stored in a dense in memory matrix, in a
+ * memory mapped matrix file, or only the 10 nearest neighbours of each
+ * gene are kept.
+ *
+ * Usage: SemanticBenchmark obo-file association-file [genes] [processors] [dense|file|neighbours] [MAX|BMA|AVERAGE]
+ *
+ * @author Sebastian Bauer
+ */
+public class SemanticBenchmark
+{
+	private static void run(SemanticCalculation calc, StudySet study, String mode, File file) throws IOException
+	{
+		if (mode.equals("file"))
+			calc.calculate(study, file, null);
+		else if (mode.equals("neighbours"))
+			calc.calculateNeighbours(study, 10, null);
+		else
+			calc.calculate(study);
+	}
+
+	public static void main(String[] args) throws IOException, OBOParserException
+	{
+		if (args.length < 2)
+		{
+			System.err.println("Usage: " + SemanticBenchmark.class.getSimpleName() + " obo-file association-file [genes] [processors] [dense|file|neighbours] [MAX|BMA|AVERAGE]");
+			System.exit(1);
+		}
+
+		int genes = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		int processors = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+		String mode = args.length > 4 ? args[4] : "dense";
+		SemanticCalculation.Aggregation aggregation = args.length > 5 ? SemanticCalculation.Aggregation.valueOf(args[5]) : SemanticCalculation.Aggregation.MAX;
+
+		OBOParser oboParser = new OBOParser(new OBOParserFileInput(args[0]));
+		oboParser.doParse();
+		TermContainer terms = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), "");
+		Ontology graph = Ontology.create(terms);
+		AssociationParser ap = new AssociationParser(new OBOParserFileInput(args[1]), terms);
+		AssociationContainer assoc = new AssociationContainer(ap.getAssociations(), ap.getSynonym2gene(), ap.getDbObject2gene());
+
+		ArrayList<ByteString> allGenes = new ArrayList<ByteString>(assoc.getAllAnnotatedGenes());
+		Collections.shuffle(allGenes, new Random(1));
+
+		StudySet study = new StudySet("study");
+		for (ByteString gene : allGenes.subList(0, Math.min(genes, allGenes.size())))
+			study.addGene(gene, "");
+
+		long start = System.nanoTime();
+		SemanticCalculation calc = new SemanticCalculation(graph, assoc);
+		calc.setNumberOfProcessors(processors);
+		calc.setAggregation(aggregation);
+		double setup = (System.nanoTime() - start) / 1e9;
+
+		File file = null;
+		if (mode.equals("file"))
+		{
+			file = File.createTempFile("ontologizer", ".sim");
+			file.deleteOnExit();
+		}
+
+		/* The first run includes the population of caches, if any */
+		start = System.nanoTime();
+		run(calc, study, mode, file);
+		double first = (System.nanoTime() - start) / 1e9;
+
+		start = System.nanoTime();
+		run(calc, study, mode, file);
+		double second = (System.nanoTime() - start) / 1e9;
+
+		long pairs = (long)study.getGeneCount() * (study.getGeneCount() + 1) / 2;
+		System.out.println("genes\tprocessors\tmode\taggregation\tsetup s\tfirst s\tsecond s\tpairs/s");
+		System.out.println(study.getGeneCount() + "\t" + processors + "\t" + mode + "\t" + aggregation + "\t" + String.format("%.3f", setup) + "\t" + String.format("%.3f", first) + "\t" + String.format("%.3f", second) + "\t" + String.format("%.0f", pairs / second));
+	}
+}
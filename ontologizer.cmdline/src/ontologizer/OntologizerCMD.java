@@ -12,6 +12,7 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
 import ontologizer.calculation.EnrichedGOTermsResult;
+import ontologizer.calculation.EnrichedGOTermsStreamWriter;
 import ontologizer.calculation.EnrichedGOTermsTableWriter;
 import ontologizer.go.OBOParserException;
 import ontologizer.go.TermID;
@@ -96,6 +97,7 @@ public class OntologizerCMD
 			arguments.correctionName = cmd.getOptionValue('m');
 			arguments.filterOutUnannotatedGenes = cmd.hasOption('i');
 			arguments.filterFile = cmd.getOptionValue('f');
+			arguments.snapshotDirectory = cmd.getOptionValue("snapshots");
 
 			/* Prepare the output directory name */
 			String outputDirectoryName = cmd.getOptionValue('o', ".");
@@ -186,6 +188,103 @@ public class OntologizerCMD
 				}
 			}
 
+			if (cmd.hasOption("mcmcchains"))
+			{
+				try
+				{
+					int chains = Integer.parseInt(cmd.getOptionValue("mcmcchains"));
+					if (chains < 1) throw new Exception();
+					arguments.mcmcChains = chains;
+				} catch (Exception e)
+				{
+					System.err.println("The number of MCMC chains needs to be a positive integer");
+					System.exit(-1);
+				}
+			}
+
+			if (cmd.hasOption("studythreads"))
+			{
+				try
+				{
+					int threads = Integer.parseInt(cmd.getOptionValue("studythreads"));
+					if (threads < 1) throw new Exception();
+					arguments.studyThreads = threads;
+				} catch (Exception e)
+				{
+					System.err.println("The number of study threads needs to be a positive integer");
+					System.exit(-1);
+				}
+			}
+
+			if (cmd.hasOption("associationthreads"))
+			{
+				try
+				{
+					int threads = Integer.parseInt(cmd.getOptionValue("associationthreads"));
+					if (threads < 1) throw new Exception();
+					arguments.associationThreads = threads;
+				} catch (Exception e)
+				{
+					System.err.println("The number of association threads needs to be a positive integer");
+					System.exit(-1);
+				}
+			}
+			boolean ordered = !cmd.hasOption("unordered");
+
+			EnrichedGOTermsStreamWriter.Format format = EnrichedGOTermsStreamWriter.Format.TSV;
+			if (cmd.hasOption("tableformat"))
+			{
+				format = EnrichedGOTermsStreamWriter.Format.fromName(cmd.getOptionValue("tableformat"));
+				if (format == null)
+				{
+					System.err.println("Given table format " + cmd.getOptionValue("tableformat") + " wasn't found!");
+					System.exit(-1);
+				}
+			}
+
+			if (cmd.hasOption("resamplingthreads"))
+			{
+				try
+				{
+					int threads = Integer.parseInt(cmd.getOptionValue("resamplingthreads"));
+					if (threads < 1) throw new Exception();
+					arguments.resamplingThreads = threads;
+				} catch (Exception e)
+				{
+					System.err.println("The number of resampling threads needs to be a positive integer");
+					System.exit(-1);
+				}
+			}
+
+			if (cmd.hasOption("resamplingseed"))
+			{
+				try
+				{
+					arguments.resamplingSeed = Long.parseLong(cmd.getOptionValue("resamplingseed"));
+				} catch (Exception e)
+				{
+					System.err.println("The resampling seed needs to be an integer");
+					System.exit(-1);
+				}
+			}
+
+			if (cmd.hasOption("resamplingcache"))
+				arguments.resamplingCacheDirectory = cmd.getOptionValue("resamplingcache");
+
+			if (cmd.hasOption("resamplingcachesize"))
+			{
+				try
+				{
+					long size = Long.parseLong(cmd.getOptionValue("resamplingcachesize"));
+					if (size < 1) throw new Exception();
+					arguments.resamplingCacheSize = size * 1024 * 1024;
+				} catch (Exception e)
+				{
+					System.err.println("The size of the resampling cache needs to be a positive number of megabytes");
+					System.exit(-1);
+				}
+			}
+
 			/* Evaluate the dot option */
 			boolean createDOTFile = cmd.hasOption('d');
 			double alpha = 0.05;
@@ -236,38 +335,46 @@ public class OntologizerCMD
 			boolean createAnnotations = cmd.hasOption('n');
 
 			/* Now issue the calculation */
-			OntologizerCore controller = new OntologizerCore(arguments);
-
-			EnrichedGOTermsResult studySetResult;
+			final OntologizerCore controller = new OntologizerCore(arguments);
+			final String outputDirectory = outputDirectoryName;
+			final boolean writeDOTFile = createDOTFile;
+			final double dotAlpha = alpha;
+			final TermID dotRoot = dotRootID;
+			final boolean writeAnnotations = createAnnotations;
+			final EnrichedGOTermsStreamWriter.Format tableFormat = format;
 
-			while ((studySetResult = controller.calculateNextStudy()) != null)
+			/* The results are written as they become available */
+			controller.calculate(new OntologizerCore.IStudySetResultReceiver()
 			{
-				/* outfile names are composed of StudySet name, calculation name and correction name */
-				String outBasename = studySetResult.getStudySet().getName()
-						+ "-" + controller.getCalculationName()
-						+ "-" + controller.getTestCorrectionName();
-
+				public void receive(EnrichedGOTermsResult studySetResult) throws IOException
 				{
-					String tableName = "table-" + outBasename + ".txt";
-					File outFile = new File(outputDirectoryName,tableName);
-					EnrichedGOTermsTableWriter.writeTable(outFile, studySetResult);
-				}
+					/* outfile names are composed of StudySet name, calculation name and correction name */
+					String outBasename = studySetResult.getStudySet().getName()
+							+ "-" + controller.getCalculationName()
+							+ "-" + controller.getTestCorrectionName();
 
-				if (createDOTFile)
-				{
-					String dotName = "view-" + outBasename + ".dot";
-					File outFile = new File(outputDirectoryName,dotName);
-					studySetResult.writeDOT(controller.getGoGraph(),outFile,alpha,true,dotRootID);
-				}
+					{
+						String tableName = "table-" + outBasename + tableFormat.getSuffix();
+						File outFile = new File(outputDirectory,tableName);
+						EnrichedGOTermsTableWriter.writeTable(outFile, studySetResult, tableFormat);
+					}
 
-				if (createAnnotations)
-				{
-					String annoName = "anno-" + outBasename + ".txt";
-					File outFile = new File(outputDirectoryName,annoName);
-					System.err.println("Writing anno file to " + outFile.getCanonicalPath());
-					studySetResult.getStudySet().writeSetWithAnnotations(controller.getGoGraph(),controller.getGoAssociations(),outFile);
+					if (writeDOTFile)
+					{
+						String dotName = "view-" + outBasename + ".dot";
+						File outFile = new File(outputDirectory,dotName);
+						studySetResult.writeDOT(controller.getGoGraph(),outFile,dotAlpha,true,dotRoot);
+					}
+
+					if (writeAnnotations)
+					{
+						String annoName = "anno-" + outBasename + ".txt";
+						File outFile = new File(outputDirectory,annoName);
+						System.err.println("Writing anno file to " + outFile.getCanonicalPath());
+						studySetResult.getStudySet().writeSetWithAnnotations(controller.getGoGraph(),controller.getGoAssociations(),outFile);
+					}
 				}
-			}
+			}, ordered);
 		} catch (ParseException e)
 		{
 			System.err.println("Unable to parse the command line: " + e.getLocalizedMessage());
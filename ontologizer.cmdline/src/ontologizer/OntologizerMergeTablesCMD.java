@@ -0,0 +1,66 @@
+package ontologizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import ontologizer.calculation.EnrichedGOTermsTableMerger;
+
+/**
+ * Command line tool that combines the result tables of several study
+ * sets, e.g., as written by OntologizerCMD, into a single indexed
+ * columnar file.
+ *
+ * @author Sebastian Bauer
+ */
+public class OntologizerMergeTablesCMD
+{
+	public static void main(String[] args)
+	{
+		Options options = new Options();
+		options.addOption(Option.builder("o").longOpt("output").argName("file").hasArg().desc(
+				"Specifies the file to which the merged tables are written.").build());
+		options.addOption(new Option("h","help",false,"Shows this help"));
+
+		try
+		{
+			CommandLineParser parser = new DefaultParser();
+			CommandLine cmd = parser.parse(options,args);
+			List<String> inputs = cmd.getArgList();
+
+			if (cmd.hasOption("h") || !cmd.hasOption("o") || inputs.isEmpty())
+			{
+				HelpFormatter formatter = new HelpFormatter();
+				formatter.printHelp(100, "java -cp Ontologizer.jar ontologizer.OntologizerMergeTablesCMD -o <file> <table>...",
+						"Combines result tables (tsv, tsv.gz or columnar) into one indexed columnar file", options, "", false);
+				System.exit(cmd.hasOption("h") ? 0 : -1);
+			}
+
+			File [] inputFiles = new File[inputs.size()];
+			for (int i = 0; i < inputFiles.length; i++)
+				inputFiles[i] = new File(inputs.get(i));
+
+			EnrichedGOTermsTableMerger.merge(inputFiles, new File(cmd.getOptionValue("o")));
+		} catch (ParseException e)
+		{
+			System.err.println("Unable to parse the command line: " + e.getLocalizedMessage());
+			System.exit(-1);
+		} catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.exit(-1);
+		} catch (IOException e)
+		{
+			System.err.println("Unable to merge the tables: " + e.getMessage());
+			System.exit(-1);
+		}
+	}
+}
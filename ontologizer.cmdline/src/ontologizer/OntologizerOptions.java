@@ -101,11 +101,42 @@ public class OntologizerOptions
 		options.addOption(new Option("n","annotation",false,"Create an additional file per study set which contains the annotations."));
 		options.addOption(new Option("f","filter",true,"Filter the gene names by appling rules in a given file (currently only mapping supported)."));
 		options.addOption(new Option("o","outdir",true,"Specfies the directory in which the results will be placed."));
+		options.addOption(Option.builder().longOpt("snapshots").argName("path").hasArg().desc(
+				"Specifies a directory in which binary snapshots of the parsed obo and association files are kept. "+
+				"Subsequent runs on the same files read the snapshots, which is much faster than parsing the files again."
+				).build());
+
+		options.addOption(Option.builder().longOpt("studythreads").argName("number").hasArg().desc(
+				"Specifies the number of study sets that are analyzed in parallel. "+
+				"The ontology, the associations and the population are shared by all analyses").build());
+		options.addOption(Option.builder().longOpt("unordered").desc(
+				"Write the results of the study sets as soon as they are available rather than in the order of the study sets. "+
+				"Only meaningful if more than one study set is analyzed in parallel").build());
+		options.addOption(Option.builder().longOpt("associationthreads").argName("number").hasArg().desc(
+				"Specifies the number of threads that are used for parsing the association file. "+
+				"GAF files are split into chunks that are parsed in parallel").build());
+
+		options.addOption(Option.builder().longOpt("tableformat").argName("format").hasArg().desc(
+				"Specifies the format of the result tables. Possible values are: \"tsv\" (default), \"tsv.gz\" and \"columnar\". "+
+				"Tables of several runs can be combined into one indexed file via ontologizer.OntologizerMergeTablesCMD").build());
+
+		options.addOption(Option.builder().longOpt("mcmcchains").argName("number").hasArg().desc(
+				"Specifies the number of independent MCMC chains of the MGSA calculation, which are run in parallel. "+
+				"For more than one chain, the convergence is assessed via R-hat").build());
 
 		if (resamplingBasedMTCsExists) {
 			options.addOption(new Option("r","resamplingsteps", true, "Specifies the number of steps used in resampling based MTCs"));
 			options.addOption(new Option("t","sizetolerance", true, "Specifies the percentage at which the actual study set size and " +
 					"the size of the resampled study sets are allowed to differ"));
+			options.addOption(Option.builder().longOpt("resamplingthreads").argName("number").hasArg().desc(
+					"Specifies the number of threads used in resampling based MTCs").build());
+			options.addOption(Option.builder().longOpt("resamplingseed").argName("seed").hasArg().desc(
+					"Specifies the seed used in resampling based MTCs. For a given seed and number of threads, the results are reproducible").build());
+			options.addOption(Option.builder().longOpt("resamplingcache").argName("path").hasArg().desc(
+					"Specifies a directory in which the sampled p values of resampling based MTCs are kept. "+
+					"Subsequent runs on the same data reuse the samples for study sets of the same size").build());
+			options.addOption(Option.builder().longOpt("resamplingcachesize").argName("megabytes").hasArg().desc(
+					"Specifies the maximal size of the resampling cache in megabytes. Least recently used samples are removed first").build());
 		}
 		options.addOption(new Option("v","version",false,"Shows version information and exits"));
 
@@ -346,6 +346,7 @@ public class AnalyseThread extends AbstractOntologizerThread
 					AbstractResamplingTestCorrection rtc = (AbstractResamplingTestCorrection)testCorrection;
 					final AnalyseThread t = this;
 
+					rtc.setNumberOfThreads(Runtime.getRuntime().availableProcessors());
 					rtc.setProgressUpdate(new IResamplingProgress(){
 						public void init(final int max)
 						{
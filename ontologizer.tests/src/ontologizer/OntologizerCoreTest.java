@@ -0,0 +1,182 @@
+package ontologizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ontologizer.association.AssociationContainer;
+import ontologizer.association.AssociationParser;
+import ontologizer.calculation.AbstractGOTermProperties;
+import ontologizer.calculation.EnrichedGOTermsResult;
+import ontologizer.go.OBOParser;
+import ontologizer.go.OBOParserFileInput;
+import ontologizer.go.TermContainer;
+import ontologizer.types.ByteString;
+
+public class OntologizerCoreTest
+{
+	private static final String OBO_FILE = "data/gene_ontology.1_2.obo.gz";
+	private static final String ASSOCIATION_FILE = "data/gene_association.sgd.gz";
+
+	private static final int NUMBER_OF_STUDIES = 7;
+
+	@Rule
+	public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+	private File directory;
+
+	private static void writeGenes(File file, List<ByteString> genes) throws IOException
+	{
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		for (ByteString gene : genes)
+			out.println(gene.toString());
+		out.close();
+	}
+
+	/**
+	 * Writes a population and several study sets.
+	 */
+	private void writeStudies() throws Exception
+	{
+		OBOParser oboParser = new OBOParser(new OBOParserFileInput(OBO_FILE));
+		oboParser.doParse();
+		TermContainer terms = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), oboParser.getDataVersion());
+		AssociationParser ap = new AssociationParser(new OBOParserFileInput(ASSOCIATION_FILE), terms);
+		AssociationContainer assocs = new AssociationContainer(ap.getAssociations(), ap.getSynonym2gene(), ap.getDbObject2gene());
+
+		directory = tmpFolder.newFolder("core");
+		new File(directory, "studies").mkdir();
+
+		List<ByteString> genes = new ArrayList<ByteString>(assocs.getAllAnnotatedGenes());
+		Random rnd = new Random(1);
+		Collections.shuffle(genes, rnd);
+		List<ByteString> population = genes.subList(0, 3000);
+		writeGenes(new File(directory, "population.txt"), population);
+
+		for (int i = 0; i < NUMBER_OF_STUDIES; i++)
+		{
+			List<ByteString> study = new ArrayList<ByteString>(population);
+			Collections.shuffle(study, rnd);
+			writeGenes(new File(directory, "studies/study" + i + ".txt"), study.subList(0, 50 + rnd.nextInt(200)));
+		}
+	}
+
+	private OntologizerCore createCore() throws Exception
+	{
+		return new OntologizerCore(createArguments("Parent-Child-Union", "Bonferroni"));
+	}
+
+	private OntologizerCore.Arguments createArguments(String calculationName, String correctionName)
+	{
+		OntologizerCore.Arguments args = new OntologizerCore.Arguments();
+		args.goTermsOBOFile = OBO_FILE;
+		args.associationFile = ASSOCIATION_FILE;
+		args.populationFile = new File(directory, "population.txt").getPath();
+		args.studySet = new File(directory, "studies").getPath();
+		args.suffix = ".txt";
+		args.calculationName = calculationName;
+		args.correctionName = correctionName;
+		return args;
+	}
+
+	/**
+	 * Calculates all studies and returns the results in the order in
+	 * which they have been received.
+	 */
+	private static List<EnrichedGOTermsResult> calculate(OntologizerCore core, boolean ordered) throws IOException
+	{
+		final List<EnrichedGOTermsResult> results = new ArrayList<EnrichedGOTermsResult>();
+		core.calculate(new OntologizerCore.IStudySetResultReceiver()
+		{
+			public void receive(EnrichedGOTermsResult result)
+			{
+				results.add(result);
+			}
+		}, ordered);
+		return results;
+	}
+
+	private static void assertResultEquals(EnrichedGOTermsResult expected, EnrichedGOTermsResult actual)
+	{
+		assertEquals(expected.getStudySet().getName(), actual.getStudySet().getName());
+		assertEquals(expected.getSize(), actual.getSize());
+		for (AbstractGOTermProperties e : expected)
+		{
+			AbstractGOTermProperties a = actual.getGOTermProperties(e.goTerm);
+			assertNotNull(a);
+			assertEquals(e.p, a.p, 0);
+			assertEquals(e.p_adjusted, a.p_adjusted, 0);
+		}
+	}
+
+	@Test
+	public void testParallelStudies() throws Exception
+	{
+		writeStudies();
+		OntologizerCore core = createCore();
+		List<EnrichedGOTermsResult> expected = calculate(core, true);
+		assertEquals(NUMBER_OF_STUDIES, expected.size());
+
+		/* Ordered results come in the same order */
+		core.setNumberOfStudyThreads(3);
+		List<EnrichedGOTermsResult> ordered = calculate(core, true);
+		assertEquals(expected.size(), ordered.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertResultEquals(expected.get(i), ordered.get(i));
+
+		/* Unordered results may come in any order */
+		HashMap<String, EnrichedGOTermsResult> unordered = new HashMap<String, EnrichedGOTermsResult>();
+		for (EnrichedGOTermsResult result : calculate(core, false))
+			unordered.put(result.getStudySet().getName(), result);
+		assertEquals(expected.size(), unordered.size());
+		for (EnrichedGOTermsResult e : expected)
+			assertResultEquals(e, unordered.get(e.getStudySet().getName()));
+	}
+
+	@Test
+	public void testParallelStudiesWithResampling() throws Exception
+	{
+		writeStudies();
+
+		/* Several studies of the same size share the cached samples */
+		List<ByteString> population = new ArrayList<ByteString>();
+		for (String line : Files.readAllLines(new File(directory, "population.txt").toPath(), StandardCharsets.UTF_8))
+			population.add(new ByteString(line));
+		Random rnd = new Random(2);
+		for (int i = 0; i < 4; i++)
+		{
+			Collections.shuffle(population, rnd);
+			writeGenes(new File(directory, "studies/same" + i + ".txt"), population.subList(0, 100));
+		}
+
+		OntologizerCore.Arguments args = createArguments("Term-For-Term", "Westfall-Young-Single-Step");
+		args.resamplingSteps = 200;
+		args.resamplingThreads = 2;
+		args.resamplingSeed = 4711L;
+
+		/* Each core starts with an empty cache */
+		List<EnrichedGOTermsResult> expected = calculate(new OntologizerCore(args), true);
+		assertEquals(NUMBER_OF_STUDIES + 4, expected.size());
+
+		args.studyThreads = 4;
+		List<EnrichedGOTermsResult> parallel = calculate(new OntologizerCore(args), true);
+		assertEquals(expected.size(), parallel.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertResultEquals(expected.get(i), parallel.get(i));
+	}
+}
@@ -10,6 +10,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
@@ -18,6 +19,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import ontologizer.linescanner.AbstractByteLineScanner;
+import ontologizer.linescanner.ByteBufferInputStream;
 
 public class AbstractByteLineScannerTest
 {
@@ -151,4 +153,121 @@ public class AbstractByteLineScannerTest
 		assertEquals("test", tbls.lines.get(2));
 		assertEquals("test2", tbls.lines.get(3));
 	}
+
+	@Test
+	public void testByteBufferInputStream() throws IOException
+	{
+		/* Lines cross the boundaries of the segments */
+		ByteBuffer [] segments = new ByteBuffer[]{
+				ByteBuffer.wrap("te".getBytes()),
+				ByteBuffer.wrap("st\nte".getBytes()),
+				ByteBuffer.wrap(new byte[0]),
+				ByteBuffer.wrap("st2\n\ntest3".getBytes())
+		};
+
+		class TestByteLineScanner extends AbstractByteLineScanner
+		{
+			public List<String> lines = new ArrayList<String>();
+
+			public TestByteLineScanner(InputStream is)
+			{
+				super(is);
+			}
+
+			@Override
+			public boolean newLine(byte[] buf, int start, int len)
+			{
+				lines.add(new String(buf, start,len));
+				return true;
+			}
+		}
+
+		ByteBufferInputStream bbis = new ByteBufferInputStream(segments);
+		TestByteLineScanner tbls = new TestByteLineScanner(bbis);
+		tbls.scan();
+
+		assertEquals(4, tbls.lines.size());
+		assertEquals("test", tbls.lines.get(0));
+		assertEquals("test2", tbls.lines.get(1));
+		assertEquals("", tbls.lines.get(2));
+		assertEquals("test3", tbls.lines.get(3));
+		assertEquals(17, bbis.getPosition());
+
+		/* The original buffers are untouched */
+		assertEquals(0, segments[1].position());
+	}
+
+	@Test
+	public void testByteBufferInPlace() throws IOException
+	{
+		/* Direct segments, lines are longer than the word size and cross the boundaries */
+		String text = "first line of text\nsecond line that crosses\n\nthird\nlast line without new line";
+		byte [] bytes = text.getBytes();
+		ByteBuffer [] segments = new ByteBuffer[]{ByteBuffer.allocateDirect(30), ByteBuffer.allocateDirect(bytes.length - 30)};
+		segments[0].put(bytes, 0, 30).flip();
+		segments[1].put(bytes, 30, bytes.length - 30).flip();
+
+		class TestByteLineScanner extends AbstractByteLineScanner
+		{
+			public List<String> lines = new ArrayList<String>();
+			public List<byte[]> arrays = new ArrayList<byte[]>();
+			public int abortAt = -1;
+
+			public TestByteLineScanner(InputStream is)
+			{
+				super(is);
+			}
+
+			@Override
+			public boolean newLine(byte[] buf, int start, int len)
+			{
+				lines.add(new String(buf, start,len));
+				arrays.add(buf);
+				return lines.size() != abortAt;
+			}
+		}
+
+		TestByteLineScanner tbls = new TestByteLineScanner(new ByteBufferInputStream(segments));
+		tbls.push("pushed\npartial ".getBytes());
+		tbls.scan();
+
+		assertEquals(6, tbls.lines.size());
+		assertEquals("pushed", tbls.lines.get(0));
+		assertEquals("partial first line of text", tbls.lines.get(1));
+		assertEquals("second line that crosses", tbls.lines.get(2));
+		assertEquals("", tbls.lines.get(3));
+		assertEquals("third", tbls.lines.get(4));
+		assertEquals("last line without new line", tbls.lines.get(5));
+
+		/* Lines of array backed buffers are not copied */
+		byte [] array = text.getBytes();
+		tbls = new TestByteLineScanner(new ByteBufferInputStream(new ByteBuffer[]{ByteBuffer.wrap(array)}));
+		tbls.scan();
+		assertEquals(5, tbls.lines.size());
+		assertEquals("second line that crosses", tbls.lines.get(1));
+		for (int i = 0; i < 4; i++)
+			Assert.assertTrue(tbls.arrays.get(i) == array);
+
+		/* Aborting within the pushed bytes makes their rest available */
+		ByteBufferInputStream bbis = new ByteBufferInputStream(segments);
+		tbls = new TestByteLineScanner(bbis);
+		tbls.abortAt = 1;
+		tbls.push("pushed\npartial ".getBytes());
+		tbls.scan();
+		assertEquals(1, tbls.lines.size());
+		assertEquals("partial ", new String(tbls.availableBuffer()));
+		assertEquals(0, bbis.getPosition());
+
+		/* Aborting within the buffers leaves the stream right behind the line */
+		bbis = new ByteBufferInputStream(segments);
+		tbls = new TestByteLineScanner(bbis);
+		tbls.abortAt = 2;
+		tbls.scan();
+		assertEquals(0, tbls.available());
+		assertEquals("second line that crosses", tbls.lines.get(1));
+		assertEquals(44, bbis.getPosition());
+		byte [] rest = new byte[bytes.length - 44];
+		assertEquals(rest.length, bbis.read(rest, 0, rest.length));
+		assertEquals(text.substring(44), new String(rest));
+	}
 }
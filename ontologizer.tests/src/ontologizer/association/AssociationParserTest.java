@@ -1,6 +1,7 @@
 package ontologizer.association;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -10,6 +11,12 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -21,6 +28,7 @@ import ontologizer.go.OBOParser;
 import ontologizer.go.OBOParserException;
 import ontologizer.go.OBOParserFileInput;
 import ontologizer.go.TermContainer;
+import ontologizer.types.ByteString;
 
 public class AssociationParserTest
 {
@@ -153,4 +161,131 @@ public class AssociationParserTest
 		AssociationParser ap = new AssociationParser(new OBOParserFileInput(tmp.getAbsolutePath()),new TermContainer(oboParser.getTermMap(), "", ""));
 		assertEquals(21,ap.getAssociations().size());
 	}
+
+	/**
+	 * Collects the messages of the given logger while the callable is called.
+	 */
+	private static List<String> collectWarnings(Logger logger, Callable<?> callable) throws Exception
+	{
+		final List<String> messages = new ArrayList<String>();
+		Handler handler = new Handler()
+		{
+			@Override
+			public void publish(LogRecord record)
+			{
+				messages.add(record.getMessage());
+			}
+
+			@Override
+			public void flush() { }
+
+			@Override
+			public void close() { }
+		};
+		logger.addHandler(handler);
+		try
+		{
+			callable.call();
+		} finally
+		{
+			logger.removeHandler(handler);
+		}
+		return messages;
+	}
+
+	@Test
+	public void testParallelLineNumbers() throws Exception
+	{
+		File tmp = tmpFolder.newFile("testParallelLineNumbers.gaf");
+		BufferedWriter bw = new BufferedWriter(new FileWriter(tmp));
+		for (int i = 0; i < 20; i++)
+			bw.write("DB\tDBOBJ" + i + "\tSYMBOL" + i + "\t\tGO:0005760\tPMID:00000\tEVIDENCE\t\tC\t\tgene\ttaxon:4932\t20121212\tSBA\n");
+		bw.write("DB\tDBOBJID1\tSYMBOL\t\tGO:0005763\tPMID:00000\tEVIDENCE\t\tC\t\tgene\ttaxon:4932\t20121212\tSBA\n");
+		bw.write("DB\tDBOBJID2\tSYMBOL\t\tGO:0005760\tPMID:00000\tEVIDENCE\t\tC\t\tgene\ttaxon:4932\t20121212\tSBA\n");
+		bw.flush();
+		bw.close();
+
+		OBOParser oboParser = new OBOParser(new OBOParserFileInput(OBO_FILE));
+		oboParser.doParse();
+		final TermContainer tc = new TermContainer(oboParser.getTermMap(), "", "");
+		final String name = tmp.getAbsolutePath();
+
+		Logger logger = Logger.getLogger(GAFByteLineScanner.class.getName());
+
+		List<String> serial = collectWarnings(logger, new Callable<Object>()
+		{
+			@Override
+			public Object call() throws Exception
+			{
+				new GAFByteLineScanner(new OBOParserFileInput(name), new byte[0], null, tc, null, null).scan();
+				return null;
+			}
+		});
+
+		List<String> parallel = collectWarnings(logger, new Callable<Object>()
+		{
+			@Override
+			public Object call() throws Exception
+			{
+				/* Chunks of a few lines each */
+				new ParallelGAFScanner(new OBOParserFileInput(name), new byte[0], null, tc, null, null, 4, 256).scan();
+				return null;
+			}
+		});
+
+		assertEquals(1, serial.size());
+		assertTrue(serial.get(0), serial.get(0).startsWith("Line 22:"));
+		assertEquals(serial, parallel);
+	}
+
+	@Test
+	public void testParallel() throws IOException, OBOParserException
+	{
+		OBOParser oboParser = new OBOParser(new OBOParserFileInput(OBO_FILE));
+		oboParser.doParse();
+		TermContainer tc = new TermContainer(oboParser.getTermMap(), "", "");
+
+		AssociationParser serial = new AssociationParser(new OBOParserFileInput(ASSOCIATION_FILE), tc);
+		AssociationParser parallel = new AssociationParser(new OBOParserFileInput(ASSOCIATION_FILE), tc, null, null, null, 4);
+
+		assertEquals(87599, parallel.getAssociations().size());
+		assertEquals(serial.getAssociations().size(), parallel.getAssociations().size());
+		for (int i = 0; i < serial.getAssociations().size(); i++)
+			assertEquals(serial.getAssociations().get(i).toString(), parallel.getAssociations().get(i).toString());
+		assertEquals(serial.getSynonym2gene(), parallel.getSynonym2gene());
+		assertEquals(serial.getDbObject2gene(), parallel.getDbObject2gene());
+	}
+
+	@Test
+	public void testParallelSmallChunks() throws IOException, OBOParserException
+	{
+		File tmp = tmpFolder.newFile("testParallelSmallChunks.gaf");
+		BufferedWriter bw = new BufferedWriter(new FileWriter(tmp));
+		bw.write("DB\tDBOBJID1\tSYMBOL1\t\tGO:0005763\tPMID:00000\tEVIDENCE\t\tC\t\tSYNONYM1|SYNONYM2\tgene\ttaxon:4932\t20121212\tSBA\n");
+		bw.write("DB\tDBOBJID2\tSYMBOL2\t\tGO:0005760\tPMID:00000\tEVIDENCE\t\tC\t\tgene\ttaxon:4932\t20121212\tSBA\n");
+		bw.write("DB\tDBOBJID3\tSYMBOL3\tNOT\tGO:0005760\tPMID:00000\tEVIDENCE\t\tC\t\tgene\ttaxon:4932\t20121212\tSBA\n");
+		bw.write("DB\tDBOBJID4\tSYMBOL1\t\tGO:0005760\tPMID:00000\tEVIDENCE\t\tC\t\tSYNONYM1\tgene\ttaxon:4932\t20121212\tSBA");
+		bw.flush();
+		bw.close();
+
+		OBOParser oboParser = new OBOParser(new OBOParserFileInput(OBO_FILE));
+		oboParser.doParse();
+		TermContainer tc = new TermContainer(oboParser.getTermMap(), "", "");
+
+		/* Chunks that are smaller than a line must work as well */
+		for (int chunkSize = 1; chunkSize < 300; chunkSize += 37)
+		{
+			OBOParserFileInput input = new OBOParserFileInput(tmp.getAbsolutePath());
+			ParallelGAFScanner pls = new ParallelGAFScanner(input, new byte[0], null, tc, null, null, 3, chunkSize);
+			GAFByteLineScanner ls = pls.scan();
+
+			assertEquals(3, ls.getAssociations().size());
+			assertEquals(1, ls.nots);
+			assertEquals(2, ls.getNumberOfUsedTerms());
+			assertEquals("SYMBOL1", ls.getSynonym2Gene().get(new ByteString("SYNONYM1")).toString());
+			assertEquals("SYMBOL1", ls.getSynonym2Gene().get(new ByteString("SYNONYM2")).toString());
+			assertEquals("SYMBOL1", ls.getDbObjectID2Gene().get(new ByteString("DBOBJID4")).toString());
+			assertEquals("DBOBJID4", ls.getAssociations().get(2).getDB_Object().toString());
+		}
+	}
 }
@@ -0,0 +1,105 @@
+package ontologizer.association;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import ontologizer.types.ByteString;
+import ontologizer.types.ByteStringIndex;
+
+public class GeneNameIndexTest
+{
+	private static ByteString b(String str)
+	{
+		return new ByteString(str);
+	}
+
+	@Test
+	public void testByteStringIndex()
+	{
+		ByteString [] keys = new ByteString[1000];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = b("gene" + i);
+		ByteStringIndex index = new ByteStringIndex(keys);
+		assertEquals(keys.length, index.size());
+		for (int i = 0; i < keys.length; i++)
+		{
+			assertEquals(i, index.indexOf(b("gene" + i)));
+			assertSame(keys[i], index.get(i));
+		}
+		assertEquals(-1, index.indexOf(b("gene1000")));
+		assertEquals(-1, index.indexOf(b("")));
+		assertEquals(-1, new ByteStringIndex(new ByteString[0]).indexOf(b("gene0")));
+
+		try
+		{
+			new ByteStringIndex(new ByteString[]{b("a"), b("b"), b("a")});
+			fail("Duplicates must be rejected");
+		} catch (IllegalArgumentException e)
+		{
+		}
+	}
+
+	@Test
+	public void testResolution()
+	{
+		ArrayList<Association> assocs = new ArrayList<Association>();
+		assocs.add(new Association(b("A"), "GO:0000001"));
+		assocs.add(new Association(b("B"), "GO:0000001"));
+		assocs.add(new Association(b("C"), "GO:0000002"));
+
+		HashMap<ByteString,ByteString> dbo2g = new HashMap<ByteString,ByteString>();
+		dbo2g.put(b("ID_A"), b("A"));
+		dbo2g.put(b("ID_B"), b("B"));
+		dbo2g.put(b("ID_X"), b("X"));
+		dbo2g.put(b("C"), b("A"));
+
+		HashMap<ByteString,ByteString> s2g = new HashMap<ByteString,ByteString>();
+		s2g.put(b("syn_A"), b("A"));
+		s2g.put(b("ID_B"), b("C"));
+		s2g.put(b("syn_X"), b("X"));
+		s2g.put(b("syn_unknown"), b("ID_X"));
+
+		AssociationContainer container = new AssociationContainer(assocs, s2g, dbo2g);
+		String [] names = new String[]{"A", "B", "C", "ID_A", "ID_B", "ID_X", "syn_A", "syn_X", "syn_unknown", "unknown"};
+
+		/* Resolve the names before the index is compiled */
+		Gene2Associations [] expected = new Gene2Associations[names.length];
+		for (int i = 0; i < names.length; i++)
+			expected[i] = container.get(b(names[i]));
+
+		GeneNameIndex index = container.getNameIndex();
+		assertSame(index, container.getNameIndex());
+		assertEquals(3, index.getNumberOfGenes());
+		for (int i = 0; i < names.length; i++)
+		{
+			ByteString name = b(names[i]);
+			assertTrue(names[i], expected[i] == index.get(name));
+			assertTrue(names[i], expected[i] == container.get(name));
+			if (expected[i] != null)
+				assertSame(expected[i], index.getGeneAssociations(index.getOrdinal(name)));
+			else
+				assertEquals(-1, index.getOrdinal(name));
+		}
+
+		assertEquals(b("C"), index.get(b("C")).name());
+		assertEquals(b("B"), index.get(b("ID_B")).name());
+		assertEquals(GeneNameIndex.OBJECT_SYMBOL, index.getKind(b("C")));
+		assertEquals(GeneNameIndex.OBJECT_ID, index.getKind(b("ID_B")));
+		assertEquals(GeneNameIndex.SYNONYM, index.getKind(b("syn_A")));
+		assertEquals(-1, index.getKind(b("ID_X")));
+		assertEquals(-1, index.getKind(b("unknown")));
+
+		/* Adding associations invalidates the index */
+		container.addAssociation(new Association(b("X"), "GO:0000003"));
+		assertEquals(b("X"), container.get(b("syn_X")).name());
+		assertEquals(4, container.getNameIndex().getNumberOfGenes());
+		assertEquals(GeneNameIndex.OBJECT_ID, container.getNameIndex().getKind(b("ID_X")));
+	}
+}
@@ -8,6 +8,10 @@ import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 import org.junit.Test;
 
 import ontologizer.FileCache;
@@ -16,6 +20,7 @@ import ontologizer.association.AssociationContainer;
 import ontologizer.calculation.b2g.B2GParam;
 import ontologizer.calculation.b2g.Bayes2GOCalculation;
 import ontologizer.calculation.b2g.Bayes2GOEnrichedGOTermsResult;
+import ontologizer.calculation.b2g.Bayes2GOGOTermProperties;
 import ontologizer.dotwriter.AbstractDotAttributesProvider;
 import ontologizer.dotwriter.GODOTWriter;
 import ontologizer.enumeration.GOTermEnumerator;
@@ -97,6 +102,70 @@ public class Bayes2GOCalculationTest
 		calc.calculateStudySet(ontology, assoc, scs.pop, scs.study, new None());
 	}
 
+	private static Bayes2GOEnrichedGOTermsResult calculateWithChains(int numberOfChains, double temperatureStep)
+	{
+		InternalOntology internalOntology = new InternalOntology();
+
+		final HashMap<TermID,Double> wantedActiveTerms = new HashMap<TermID,Double>(); /* Terms that are active */
+		wantedActiveTerms.put(new TermID("GO:0000010"),0.10);
+		wantedActiveTerms.put(new TermID("GO:0000004"),0.10);
+
+		AssociationContainer assoc = internalOntology.assoc;
+		Ontology ontology = internalOntology.graph;
+
+		SingleCalculationSetting scs = SingleCalculationSetting.create(new Random(1), wantedActiveTerms, 0.25, ontology, assoc);
+
+		Bayes2GOCalculation calc = new Bayes2GOCalculation();
+		calc.setSeed(2);
+		calc.setMcmcSteps(220000);
+		calc.setAlpha(B2GParam.Type.MCMC);
+		calc.setBeta(B2GParam.Type.MCMC);
+		calc.setExpectedNumber(2);
+		calc.setNumberOfChains(numberOfChains);
+		calc.setNumberOfThreads(numberOfChains);
+		calc.setParallelTempering(temperatureStep, 1000);
+
+		return (Bayes2GOEnrichedGOTermsResult)calc.calculateStudySet(ontology, assoc, scs.pop, scs.study, new None());
+	}
+
+	@Test
+	public void testMultipleChains()
+	{
+		Bayes2GOEnrichedGOTermsResult single = calculateWithChains(1, 0);
+		Bayes2GOEnrichedGOTermsResult multi = calculateWithChains(4, 0);
+
+		assertTrue(Double.isNaN(single.getScoreRHat()));
+		assertTrue(multi.getScoreRHat() >= 0.99 && multi.getScoreRHat() < 1.1);
+		assertEquals(4 * single.getScore().getNumberOfRecords(), multi.getScore().getNumberOfRecords());
+
+		for (AbstractGOTermProperties prop : multi)
+		{
+			Bayes2GOGOTermProperties b2gProp = (Bayes2GOGOTermProperties)prop;
+			assertFalse(Double.isNaN(b2gProp.rhat));
+			assertTrue(b2gProp.marg >= 0 && b2gProp.marg <= 1);
+
+			Bayes2GOGOTermProperties singleProp = (Bayes2GOGOTermProperties)single.getGOTermProperties(prop.goTerm.getID());
+			assertEquals(singleProp.marg, b2gProp.marg, 0.1);
+		}
+	}
+
+	@Test
+	public void testParallelTempering()
+	{
+		Bayes2GOEnrichedGOTermsResult single = calculateWithChains(1, 0);
+		Bayes2GOEnrichedGOTermsResult tempered = calculateWithChains(3, 0.5);
+
+		/* Only the states of the chain at the original temperature are recorded */
+		assertEquals(single.getScore().getNumberOfRecords(), tempered.getScore().getNumberOfRecords());
+
+		for (AbstractGOTermProperties prop : tempered)
+		{
+			Bayes2GOGOTermProperties b2gProp = (Bayes2GOGOTermProperties)prop;
+			Bayes2GOGOTermProperties singleProp = (Bayes2GOGOTermProperties)single.getGOTermProperties(prop.goTerm.getID());
+			assertEquals(singleProp.marg, b2gProp.marg, 0.1);
+		}
+	}
+
 	@Test
 	public void testValuedGOScore()
 	{
@@ -0,0 +1,251 @@
+package ontologizer.calculation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ontologizer.association.AssociationContainer;
+import ontologizer.go.Ontology;
+import ontologizer.go.TermID;
+import ontologizer.internal.InternalOntology;
+import ontologizer.statistics.None;
+
+public class EnrichedGOTermsTableWriterTest
+{
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private EnrichedGOTermsResult [] results;
+	private String [] names = new String[]{"tft", "pc", "top", "weighted"};
+
+	@Before
+	public void setup()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		AssociationContainer assoc = internalOntology.assoc;
+		Ontology ontology = internalOntology.graph;
+
+		HashMap<TermID,Double> wantedActiveTerms = new HashMap<TermID,Double>();
+		wantedActiveTerms.put(new TermID("GO:0000004"),0.0);
+		SingleCalculationSetting scs = SingleCalculationSetting.create(new Random(1), wantedActiveTerms, 0.00, ontology, assoc);
+
+		results = new EnrichedGOTermsResult[]{
+			new TermForTermCalculation().calculateStudySet(ontology, assoc, scs.pop, scs.study, new None()),
+			new ParentChildCalculation().calculateStudySet(ontology, assoc, scs.pop, scs.study, new None()),
+			new TopCalculation().calculateStudySet(ontology, assoc, scs.pop, scs.study, new None()),
+			new TopologyWeightedCalculation().calculateStudySet(ontology, assoc, scs.pop, scs.study, new None())
+		};
+	}
+
+	/**
+	 * Creates the table by means of the String based methods of the
+	 * properties.
+	 */
+	private static String legacyTable(EnrichedGOTermsResult result)
+	{
+		ArrayList<AbstractGOTermProperties> propsList = new ArrayList<AbstractGOTermProperties>();
+		for (AbstractGOTermProperties props : result)
+			propsList.add(props);
+		Collections.sort(propsList);
+
+		StringBuilder str = new StringBuilder();
+		str.append(propsList.get(0).propHeaderToString());
+		for (AbstractGOTermProperties props : propsList)
+		{
+			str.append(props.propLineToString(result.getPopulationGeneCount(), result.getStudyGeneCount()));
+			str.append(System.getProperty("line.separator"));
+		}
+		return str.toString();
+	}
+
+	private static String toTSV(EnrichedGOTermsTable table) throws IOException
+	{
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		EnrichedGOTermsTSVWriter writer = new EnrichedGOTermsTSVWriter(os, false);
+		writer.writeTable(table);
+		writer.close();
+		return os.toString();
+	}
+
+	private static String read(InputStream is) throws IOException
+	{
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		byte [] buf = new byte[4096];
+		int n;
+		while ((n = is.read(buf)) > 0)
+			os.write(buf, 0, n);
+		is.close();
+		return os.toString();
+	}
+
+	private File write(String fileName, EnrichedGOTermsResult result, EnrichedGOTermsStreamWriter.Format format) throws IOException
+	{
+		File f = new File(tmp.getRoot(), fileName);
+		EnrichedGOTermsTableWriter.writeTable(new FileOutputStream(f), result, format);
+		return f;
+	}
+
+	@Test
+	public void testTSV() throws IOException
+	{
+		for (EnrichedGOTermsResult r : results)
+		{
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			EnrichedGOTermsTableWriter.writeTable(os, r);
+			assertEquals(legacyTable(r), os.toString());
+
+			os = new ByteArrayOutputStream();
+			EnrichedGOTermsTableWriter.writeTable(os, r, EnrichedGOTermsStreamWriter.Format.TSV_GZIP);
+			assertEquals(legacyTable(r), read(new GZIPInputStream(new ByteArrayInputStream(os.toByteArray()))));
+		}
+	}
+
+	@Test
+	public void testColumnar() throws IOException
+	{
+		File f = tmp.newFile("results.otc");
+		EnrichedGOTermsStreamWriter writer = EnrichedGOTermsStreamWriter.create(new FileOutputStream(f), EnrichedGOTermsStreamWriter.Format.COLUMNAR);
+		for (int i = 0; i < results.length; i++)
+			writer.writeTable(names[i], results[i]);
+		writer.close();
+
+		EnrichedGOTermsColumnarReader reader = new EnrichedGOTermsColumnarReader(f);
+		assertEquals(results.length, reader.getNumberOfTables());
+		for (int i = results.length - 1; i >= 0; i--)
+		{
+			EnrichedGOTermsTable table = reader.readTable(names[i]);
+			assertEquals(names[i], table.getName());
+			assertEquals(results[i].getSize(), table.getNumberOfRows());
+			assertEquals(legacyTable(results[i]), toTSV(table));
+
+			ArrayList<AbstractGOTermProperties> propsList = new ArrayList<AbstractGOTermProperties>();
+			for (AbstractGOTermProperties props : results[i])
+				propsList.add(props);
+			Collections.sort(propsList);
+
+			int p = table.getColumnIndex("p");
+			int studyTerm = table.getColumnIndex("Study.term");
+			assertEquals(AbstractGOTermProperties.PROPERTY_DOUBLE, table.getColumnType(p));
+			assertEquals(AbstractGOTermProperties.PROPERTY_INT, table.getColumnType(studyTerm));
+			for (int r = 0; r < table.getNumberOfRows(); r++)
+			{
+				assertEquals(Double.doubleToRawLongBits(propsList.get(r).p), Double.doubleToRawLongBits(table.getDouble(p, r)));
+				assertEquals(propsList.get(r).annotatedStudyGenes, table.getInt(studyTerm, r));
+			}
+		}
+		assertNull(reader.readTable("unknown"));
+		reader.close();
+	}
+
+	@Test
+	public void testRowGroups() throws IOException
+	{
+		Random rnd = new Random(3);
+		int rows = EnrichedGOTermsColumnarWriter.ROW_GROUP_SIZE * 2 + 17;
+		int [] ints = new int[rows];
+		int [] constantInts = new int[rows];
+		double [] doubles = new double[rows];
+		boolean [] booleans = new boolean[rows];
+		String [] strings = new String[rows];
+		String [] fewStrings = new String[rows];
+		for (int r = 0; r < rows; r++)
+		{
+			ints[r] = rnd.nextInt();
+			constantInts[r] = 42;
+			doubles[r] = r < EnrichedGOTermsColumnarWriter.ROW_GROUP_SIZE ? 0.5 : rnd.nextDouble();
+			booleans[r] = rnd.nextBoolean();
+			strings[r] = "GO:" + rnd.nextInt(1000) + "ä";
+			fewStrings[r] = "s" + rnd.nextInt(3);
+		}
+		EnrichedGOTermsTable table = new EnrichedGOTermsTable("t",
+				new String[]{"a", "b", "c", "d", "e", "f"},
+				new int[]{AbstractGOTermProperties.PROPERTY_INT, AbstractGOTermProperties.PROPERTY_INT, AbstractGOTermProperties.PROPERTY_DOUBLE,
+					AbstractGOTermProperties.PROPERTY_BOOLEAN, AbstractGOTermProperties.PROPERTY_QUOTED_STRING, AbstractGOTermProperties.PROPERTY_STRING},
+				new Object[]{ints, constantInts, doubles, booleans, strings, fewStrings}, rows);
+
+		File f = tmp.newFile("rows.otc");
+		EnrichedGOTermsColumnarWriter writer = new EnrichedGOTermsColumnarWriter(new FileOutputStream(f));
+		writer.writeTable(table);
+		writer.writeTable(new EnrichedGOTermsTable("empty", new String[0], new int[0], new Object[0], 0));
+		writer.close();
+
+		EnrichedGOTermsColumnarReader reader = new EnrichedGOTermsColumnarReader(f);
+		EnrichedGOTermsTable read = reader.readTable("t");
+		assertEquals(rows, read.getNumberOfRows());
+		for (int r = 0; r < rows; r++)
+		{
+			assertEquals(ints[r], read.getInt(0, r));
+			assertEquals(constantInts[r], read.getInt(1, r));
+			assertEquals(doubles[r], read.getDouble(2, r), 0);
+			assertEquals(booleans[r], read.getBoolean(3, r));
+			assertEquals(strings[r], read.getString(4, r));
+			assertEquals(fewStrings[r], read.getString(5, r));
+		}
+		assertEquals(0, reader.readTable("empty").getNumberOfColumns());
+		reader.close();
+
+		/* The textual representation reads back to the same table */
+		String tsv = toTSV(table);
+		EnrichedGOTermsTable parsed = EnrichedGOTermsTable.readTSV("t", new ByteArrayInputStream(tsv.getBytes()));
+		for (int c = 0; c < table.getNumberOfColumns(); c++)
+			assertEquals(table.getColumnType(c), parsed.getColumnType(c));
+		assertEquals(tsv, toTSV(parsed));
+	}
+
+	@Test
+	public void testMerge() throws IOException
+	{
+		File [] inputs = new File[]{
+			write("table-tft.txt", results[0], EnrichedGOTermsStreamWriter.Format.TSV),
+			write("table-pc.txt.gz", results[1], EnrichedGOTermsStreamWriter.Format.TSV_GZIP),
+			write("table-top.otc", results[2], EnrichedGOTermsStreamWriter.Format.COLUMNAR),
+			write("table-weighted.txt", results[3], EnrichedGOTermsStreamWriter.Format.TSV),
+		};
+		File merged = tmp.newFile("merged.otc");
+		EnrichedGOTermsTableMerger.merge(inputs, merged);
+
+		EnrichedGOTermsColumnarReader reader = new EnrichedGOTermsColumnarReader(merged);
+		assertEquals(results.length, reader.getNumberOfTables());
+		for (int i = 0; i < results.length; i++)
+		{
+			assertEquals("table-" + names[i], reader.getTableName(i));
+			assertEquals(legacyTable(results[i]), toTSV(reader.readTable(i)));
+		}
+		reader.close();
+
+		/* Merged files can be merged again, the names of their tables are kept */
+		File other = write("table-other.otc", results[0], EnrichedGOTermsStreamWriter.Format.COLUMNAR);
+		File merged2 = tmp.newFile("merged2.otc");
+		EnrichedGOTermsTableMerger.merge(new File[]{merged, other}, merged2);
+		reader = new EnrichedGOTermsColumnarReader(merged2);
+		assertEquals(results.length + 1, reader.getNumberOfTables());
+		assertEquals(legacyTable(results[0]), toTSV(reader.readTable("table-other")));
+		assertEquals(legacyTable(results[3]), toTSV(reader.readTable("table-weighted")));
+		reader.close();
+
+		try
+		{
+			EnrichedGOTermsTableMerger.merge(new File[]{merged, inputs[0]}, tmp.newFile("merged3.otc"));
+			fail("Tables with the same name must not be merged");
+		} catch (IllegalArgumentException e)
+		{
+		}
+	}
+}
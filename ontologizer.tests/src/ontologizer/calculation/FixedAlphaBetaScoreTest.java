@@ -1,7 +1,9 @@
 package ontologizer.calculation;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
@@ -103,4 +105,55 @@ public class FixedAlphaBetaScoreTest
 		Assert.assertEquals(expectedMax, foundMax, 1e-10);
 	}
 
+	@Test
+	public void testIncrementalScore()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+
+		final HashMap<TermID,Double> wantedActiveTerms = new HashMap<TermID,Double>(); /* Terms that are active */
+		wantedActiveTerms.put(new TermID("GO:0000010"),0.10);
+		wantedActiveTerms.put(new TermID("GO:0000004"),0.10);
+
+		AssociationContainer assoc = internalOntology.assoc;
+		Ontology ontology = internalOntology.graph;
+
+		SingleCalculationSetting sss = SingleCalculationSetting.create(new Random(1), wantedActiveTerms, 0.1, ontology, assoc);
+		GOTermEnumerator popEnumerator = sss.pop.enumerateGOTerms(ontology, assoc);
+		List<TermID> terms = popEnumerator.getAllAnnotatedTermsAsList();
+
+		/* Alpha and beta are sampled. The prior is not used as the ontology is smaller
+		 * than some of the expected numbers of terms */
+		Random rnd = new Random(2);
+		FixedAlphaBetaScore fabs = new FixedAlphaBetaScore(rnd, terms, popEnumerator, sss.study.getAllGeneNames());
+		fabs.setAlpha(Double.NaN);
+		fabs.setBeta(Double.NaN);
+		fabs.setExpectedNumberOfTerms(1);
+		fabs.setUsePrior(false);
+		long [] bitset = fabs.newTermBitset();
+
+		for (int i=0;i<10000;i++)
+		{
+			fabs.proposeNewState(rnd.nextLong());
+			if (rnd.nextBoolean())
+				fabs.undoProposal();
+
+			if (i % 100 != 0)
+				continue;
+
+			ArrayList<TermID> active = fabs.getActiveTerms();
+			Assert.assertEquals(active.size(), fabs.getNumberOfActiveTerms());
+
+			fabs.getActiveTerms(bitset);
+			Assert.assertEquals(new HashSet<TermID>(active), new HashSet<TermID>(fabs.getTerms(bitset)));
+
+			/* The incrementally maintained score must match the one of a score that is set up from scratch */
+			FixedAlphaBetaScore reference = new FixedAlphaBetaScore(new Random(1), terms, popEnumerator, sss.study.getAllGeneNames());
+			reference.setAlpha(fabs.getAlpha());
+			reference.setBeta(fabs.getBeta());
+			reference.setExpectedNumberOfTerms(1);
+			reference.setUsePrior(false);
+			Assert.assertFalse(Double.isNaN(fabs.getScore()));
+			Assert.assertEquals(reference.score(active), fabs.getScore(), 1e-9);
+		}
+	}
 }
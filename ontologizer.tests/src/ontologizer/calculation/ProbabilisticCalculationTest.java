@@ -1,6 +1,11 @@
 package ontologizer.calculation;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 import java.util.HashSet;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -10,6 +15,7 @@ import ontologizer.go.Ontology;
 import ontologizer.go.ParentTermID;
 import ontologizer.go.Term;
 import ontologizer.go.TermContainer;
+import ontologizer.go.TermID;
 import ontologizer.go.TermRelation;
 import ontologizer.set.PopulationSet;
 import ontologizer.set.StudySet;
@@ -18,8 +24,12 @@ import ontologizer.types.ByteString;
 
 public class ProbabilisticCalculationTest
 {
-	@Test
-	public void testCalculateStudySet()
+	private Ontology graph;
+	private AssociationContainer assocContainer;
+	private PopulationSet pop;
+	private StudySet study;
+
+	private void createSetting()
 	{
 		/* Go Graph */
 		HashSet<Term> terms = new HashSet<Term>();
@@ -32,15 +42,15 @@ public class ProbabilisticCalculationTest
 		terms.add(c3);
 		terms.add(c4);
 		TermContainer termContainer = new TermContainer(terms,"","");
-		Ontology graph = Ontology.create(termContainer);
+		graph = Ontology.create(termContainer);
 
 		/* Population */
-		PopulationSet pop = new PopulationSet("population");
+		pop = new PopulationSet("population");
 		for (int i=0;i<10000;i++)
 			pop.addGene(new ByteString("gene"+i), "");
 
 		/* Associations */
-		AssociationContainer assocContainer = new AssociationContainer();
+		assocContainer = new AssociationContainer();
 
 		/* for C2 */
 		for (int i=0;i<10;i++)
@@ -55,7 +65,7 @@ public class ProbabilisticCalculationTest
 			assocContainer.addAssociation(new Association(new ByteString("gene"+i),4));
 
 		/* Study */
-		StudySet study = new StudySet("study");
+		study = new StudySet("study");
 
 		/* 9 of 10 in C2 */
 		for (int i=0;i<9;i++)
@@ -72,6 +82,26 @@ public class ProbabilisticCalculationTest
 		/* 30 somewhere else */
 		for (int i=100;i<130;i++)
 			study.addGene(new ByteString("gene"+i), "");
+	}
+
+	/**
+	 * Returns the terms that have been considered as active.
+	 */
+	private static Set<TermID> getActiveTerms(EnrichedGOTermsResult result)
+	{
+		Set<TermID> active = new HashSet<TermID>();
+		for (AbstractGOTermProperties prop : result)
+		{
+			if (!prop.ignoreAtMTC)
+				active.add(prop.goTerm.getID());
+		}
+		return active;
+	}
+
+	@Test
+	public void testCalculateStudySet()
+	{
+		createSetting();
 
 		ProbabilisticCalculation calc = new ProbabilisticCalculation();
 		calc.setDefaultP(0.9);
@@ -79,4 +109,24 @@ public class ProbabilisticCalculationTest
 		calc.calculateStudySet(graph, assocContainer, pop, study, new None());
 	}
 
+	@Test
+	public void testRestarts()
+	{
+		createSetting();
+
+		ProbabilisticCalculation calc = new ProbabilisticCalculation();
+		Set<TermID> expected = getActiveTerms(calc.calculateStudySet(graph, assocContainer, pop, study, new None()));
+		assertTrue(expected.contains(new TermID("GO:0000002")));
+		assertTrue(expected.contains(new TermID("GO:0000003")));
+		assertFalse(expected.contains(new TermID("GO:0000004")));
+
+		/* Restarts find the same optimum and the threads don't matter */
+		calc.setNumberOfRestarts(6);
+		calc.setSeed(1);
+		assertEquals(expected, getActiveTerms(calc.calculateStudySet(graph, assocContainer, pop, study, new None())));
+		calc.setNumberOfThreads(3);
+		assertEquals(expected, getActiveTerms(calc.calculateStudySet(graph, assocContainer, pop, study, new None())));
+		assertEquals(expected, getActiveTerms(new ProbabilisticCalculation(calc).calculateStudySet(graph, assocContainer, pop, study, new None())));
+	}
+
 }
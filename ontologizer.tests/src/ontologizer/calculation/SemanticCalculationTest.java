@@ -0,0 +1,288 @@
+package ontologizer.calculation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ontologizer.go.TermID;
+import ontologizer.internal.InternalOntology;
+import ontologizer.types.ByteString;
+
+public class SemanticCalculationTest
+{
+	private static SingleCalculationSetting createSetting(InternalOntology internalOntology)
+	{
+		HashMap<TermID,Double> wantedActiveTerms = new HashMap<TermID,Double>();
+		wantedActiveTerms.put(new TermID("GO:0000004"),0.0);
+		return SingleCalculationSetting.create(new Random(1), wantedActiveTerms, 0.1, internalOntology.graph, internalOntology.assoc);
+	}
+
+	@Test
+	public void testMultipleProcessors()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		SingleCalculationSetting scs = createSetting(internalOntology);
+
+		SemanticCalculation single = new SemanticCalculation(internalOntology.graph, internalOntology.assoc);
+		single.setNumberOfProcessors(1);
+		SemanticResult expected = single.calculate(scs.pop);
+
+		/* Use tiny tiles, so there are many of them */
+		SemanticCalculation multi = new SemanticCalculation(internalOntology.graph, internalOntology.assoc);
+		multi.setNumberOfProcessors(4);
+		multi.setTileSize(7);
+		SemanticResult actual = multi.calculate(scs.pop);
+
+		int n = expected.names.length;
+		assertEquals(n, actual.mat.length);
+		for (int i = 0; i < n; i++)
+		{
+			for (int j = 0; j < n; j++)
+			{
+				assertEquals(expected.mat[i][j], actual.mat[i][j], 0);
+				assertEquals(actual.mat[j][i], actual.mat[i][j], 0);
+				assertEquals(expected.mat[i][j], single.sim(expected.names[i], expected.names[j]), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testCache()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		SingleCalculationSetting scs = createSetting(internalOntology);
+		ByteString [] genes = scs.pop.getGenes();
+
+		/* Smallest possible cache, single thread */
+		SemanticCalculation uncached = new SemanticCalculation(internalOntology.graph, internalOntology.assoc, 0);
+		uncached.setNumberOfProcessors(1);
+
+		/* Use a tiny cache, so entries get evicted */
+		SemanticCalculation cached = new SemanticCalculation(internalOntology.graph, internalOntology.assoc, 16);
+		cached.setNumberOfProcessors(4);
+		cached.setTileSize(7);
+
+		for (SemanticCalculation.Aggregation aggregation : SemanticCalculation.Aggregation.values())
+		{
+			uncached.setAggregation(aggregation);
+			cached.setAggregation(aggregation);
+
+			SemanticResult expected = uncached.calculate(scs.pop);
+
+			/* The second run takes some values from the cache */
+			for (int run = 0; run < 2; run++)
+			{
+				SemanticResult actual = cached.calculate(scs.pop);
+				for (int i = 0; i < genes.length; i++)
+				{
+					for (int j = 0; j < genes.length; j++)
+					{
+						assertEquals(expected.mat[i][j], actual.mat[i][j], 0);
+						assertEquals(expected.mat[i][j], cached.sim(genes[i], genes[j]), 0);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the annotated terms of the given gene that don't have
+	 * annotated descendants.
+	 */
+	private static List<TermID> nonRedundantTerms(InternalOntology internalOntology, ByteString gene)
+	{
+		Set<TermID> annotated = new HashSet<TermID>(internalOntology.assoc.get(gene).getAssociations());
+		List<TermID> terms = new ArrayList<TermID>();
+		for (TermID t : annotated)
+		{
+			boolean redundant = false;
+			for (TermID u : annotated)
+			{
+				if (!u.equals(t) && internalOntology.graph.getTermsOfInducedGraph(null, u).contains(t))
+					redundant = true;
+			}
+			if (!redundant)
+				terms.add(t);
+		}
+		return terms;
+	}
+
+	/**
+	 * Returns the similarity of two terms determined via the shared parents.
+	 */
+	private static double termSim(InternalOntology internalOntology, SemanticCalculation calc, TermID t1, TermID t2)
+	{
+		double p = 1.0;
+		for (TermID t : internalOntology.graph.getSharedParents(t1, t2))
+			p = Math.min(p, calc.p(t));
+		return p < 1.0 ? -Math.log(p) : 0.0;
+	}
+
+	@Test
+	public void testAggregations()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		SingleCalculationSetting scs = createSetting(internalOntology);
+		SemanticCalculation calc = new SemanticCalculation(internalOntology.graph, internalOntology.assoc);
+		ByteString [] genes = scs.pop.getGenes();
+
+		for (SemanticCalculation.Aggregation aggregation : SemanticCalculation.Aggregation.values())
+		{
+			calc.setAggregation(aggregation);
+			assertEquals(aggregation, calc.getAggregation());
+
+			SemanticResult result = calc.calculate(scs.pop);
+
+			for (int i = 0; i < genes.length; i += 7)
+			{
+				List<TermID> terms1 = nonRedundantTerms(internalOntology, genes[i]);
+				for (int j = 0; j < genes.length; j += 5)
+				{
+					List<TermID> terms2 = nonRedundantTerms(internalOntology, genes[j]);
+					double [][] sims = new double[terms1.size()][terms2.size()];
+					for (int k = 0; k < terms1.size(); k++)
+						for (int l = 0; l < terms2.size(); l++)
+							sims[k][l] = termSim(internalOntology, calc, terms1.get(k), terms2.get(l));
+
+					double expected = 0;
+					switch (aggregation)
+					{
+						case	MAX:
+								for (double [] row : sims)
+									for (double v : row)
+										expected = Math.max(expected, v);
+								break;
+						case	BMA:
+								double sum1 = 0;
+								for (int k = 0; k < terms1.size(); k++)
+								{
+									double best = 0;
+									for (int l = 0; l < terms2.size(); l++)
+										best = Math.max(best, sims[k][l]);
+									sum1 += best;
+								}
+								double sum2 = 0;
+								for (int l = 0; l < terms2.size(); l++)
+								{
+									double best = 0;
+									for (int k = 0; k < terms1.size(); k++)
+										best = Math.max(best, sims[k][l]);
+									sum2 += best;
+								}
+								expected = (sum1 / terms1.size() + sum2 / terms2.size()) / 2;
+								break;
+						case	AVERAGE:
+								for (double [] row : sims)
+									for (double v : row)
+										expected += v;
+								expected /= terms1.size() * terms2.size();
+								break;
+					}
+
+					assertEquals(expected, calc.sim(genes[i], genes[j]), 1e-12);
+					assertEquals(expected, result.mat[i][j], 1e-12);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMatrixFile() throws IOException
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		SingleCalculationSetting scs = createSetting(internalOntology);
+
+		SemanticCalculation calc = new SemanticCalculation(internalOntology.graph, internalOntology.assoc);
+		calc.setNumberOfProcessors(3);
+		calc.setTileSize(10);
+		SemanticResult expected = calc.calculate(scs.pop);
+
+		File file = File.createTempFile("ontologizer", ".sim");
+		file.deleteOnExit();
+
+		SemanticResult actual = calc.calculate(scs.pop, file, null);
+		assertNull(actual.mat);
+		assertNotNull(actual.matrix);
+
+		SemanticResult read = SemanticResult.read(file);
+		assertNotNull(read.matrix);
+
+		int n = expected.names.length;
+		assertEquals(n, read.names.length);
+		for (int i = 0; i < n; i++)
+		{
+			assertEquals(expected.names[i], read.names[i]);
+			for (int j = 0; j < n; j++)
+			{
+				assertEquals((float)expected.mat[i][j], actual.getSimilarity(i, j), 0);
+				assertEquals((float)expected.mat[i][j], read.getSimilarity(i, j), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testNeighbours() throws IOException
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		SingleCalculationSetting scs = createSetting(internalOntology);
+
+		SemanticCalculation calc = new SemanticCalculation(internalOntology.graph, internalOntology.assoc);
+		calc.setNumberOfProcessors(4);
+		calc.setTileSize(9);
+		final SemanticResult dense = calc.calculate(scs.pop);
+
+		int k = 5;
+		SemanticResult sparse = calc.calculateNeighbours(scs.pop, k, null);
+		assertNull(sparse.mat);
+
+		File file = File.createTempFile("ontologizer", ".nn");
+		file.deleteOnExit();
+		sparse.neighbours.write(file);
+		SemanticResult read = SemanticResult.read(file);
+		assertNotNull(read.neighbours);
+
+		int n = dense.names.length;
+		for (int i = 0; i < n; i++)
+		{
+			/* Order other genes by decreasing similarity, ties by index */
+			final int gene = i;
+			List<Integer> others = new ArrayList<Integer>();
+			for (int j = 0; j < n; j++)
+				if (j != i) others.add(j);
+			Collections.sort(others, new Comparator<Integer>()
+			{
+				public int compare(Integer o1, Integer o2)
+				{
+					int c = Float.compare((float)dense.mat[gene][o2], (float)dense.mat[gene][o1]);
+					if (c != 0) return c;
+					return o1.compareTo(o2);
+				}
+			});
+
+			for (SemanticResult sr : new SemanticResult[]{sparse, read})
+			{
+				assertEquals(Math.min(k, n - 1), sr.neighbours.getNumberOfNeighbours(i));
+				for (int r = 0; r < sr.neighbours.getNumberOfNeighbours(i); r++)
+				{
+					int j = others.get(r);
+					assertEquals(j, sr.neighbours.getNeighbour(i, r));
+					assertEquals((float)dense.mat[i][j], sr.neighbours.getSimilarity(i, r), 0);
+					assertEquals((float)dense.mat[i][j], sr.getSimilarity(i, j), 0);
+				}
+			}
+		}
+	}
+}
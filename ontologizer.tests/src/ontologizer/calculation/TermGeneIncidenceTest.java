@@ -0,0 +1,121 @@
+package ontologizer.calculation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ontologizer.calculation.b2g.B2GParam;
+import ontologizer.calculation.b2g.Bayes2GOCalculation;
+import ontologizer.calculation.b2g.FixedAlphaBetaScore;
+import ontologizer.calculation.b2g.TermGeneIncidence;
+import ontologizer.enumeration.GOTermEnumerator;
+import ontologizer.go.TermID;
+import ontologizer.internal.InternalOntology;
+import ontologizer.set.StudySet;
+import ontologizer.statistics.None;
+import ontologizer.types.ByteString;
+
+public class TermGeneIncidenceTest
+{
+	private static SingleCalculationSetting createSetting(InternalOntology internalOntology)
+	{
+		HashMap<TermID,Double> wantedActiveTerms = new HashMap<TermID,Double>();
+		wantedActiveTerms.put(new TermID("GO:0000010"),0.10);
+		wantedActiveTerms.put(new TermID("GO:0000004"),0.10);
+		return SingleCalculationSetting.create(new Random(1), wantedActiveTerms, 0.1, internalOntology.graph, internalOntology.assoc);
+	}
+
+	@Test
+	public void testIncidences()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		SingleCalculationSetting scs = createSetting(internalOntology);
+		GOTermEnumerator popEnumerator = scs.pop.enumerateGOTerms(internalOntology.graph, internalOntology.assoc);
+
+		TermGeneIncidence incidence = new TermGeneIncidence(popEnumerator);
+		assertEquals(popEnumerator.getGenes().size(), incidence.getNumberOfGenes());
+		assertEquals(popEnumerator.getAllAnnotatedTermsAsList().size(), incidence.getNumberOfTerms());
+		assertEquals(-1, incidence.getTermIndex(new TermID("GO:9999999")));
+		assertEquals(-1, incidence.getGeneIndex(new ByteString("unknown")));
+
+		for (int t = 0; t < incidence.getNumberOfTerms(); t++)
+		{
+			TermID tid = incidence.getTerm(t);
+			assertEquals(t, incidence.getTermIndex(tid));
+			assertEquals(popEnumerator.getAnnotatedGenes(tid).totalAnnotated.size(), incidence.getNumberOfAnnotatedGenes(t));
+		}
+		for (int g = 0; g < incidence.getNumberOfGenes(); g++)
+			assertEquals(g, incidence.getGeneIndex(incidence.getGene(g)));
+	}
+
+	@Test
+	public void testSharedScore()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		SingleCalculationSetting scs = createSetting(internalOntology);
+		GOTermEnumerator popEnumerator = scs.pop.enumerateGOTerms(internalOntology.graph, internalOntology.assoc);
+		GOTermEnumerator studyEnumerator = scs.study.enumerateGOTerms(internalOntology.graph, internalOntology.assoc);
+
+		/* The shared structure covers all terms, while the scores use the terms of the study only */
+		TermGeneIncidence incidence = new TermGeneIncidence(popEnumerator);
+		List<TermID> terms = studyEnumerator.getAllAnnotatedTermsAsList();
+
+		FixedAlphaBetaScore shared = new FixedAlphaBetaScore(new Random(1), terms, incidence, scs.study.getAllGeneNames());
+		FixedAlphaBetaScore own = new FixedAlphaBetaScore(new Random(1), terms, popEnumerator, scs.study.getAllGeneNames());
+		shared.setAlpha(0.1);
+		shared.setBeta(0.2);
+		shared.setExpectedNumberOfTerms(1);
+		own.setAlpha(0.1);
+		own.setBeta(0.2);
+		own.setExpectedNumberOfTerms(1);
+
+		Random rnd = new Random(3);
+		for (int i = 0; i < 100; i++)
+		{
+			ArrayList<TermID> active = new ArrayList<TermID>();
+			for (TermID t : terms)
+			{
+				if (rnd.nextInt(4) == 0)
+					active.add(t);
+			}
+			assertEquals(own.score(active), shared.score(active), 1e-10);
+		}
+	}
+
+	@Test
+	public void testReuse()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		SingleCalculationSetting scs = createSetting(internalOntology);
+
+		Bayes2GOCalculation calc = createCalculation();
+
+		/* The second study set is analyzed with the incidences built for the first one */
+		Random rnd = new Random(4);
+		for (int i = 0; i < 2; i++)
+		{
+			StudySet study = i == 0 ? scs.study : scs.pop.generateRandomStudySet(scs.study.getGeneCount(), rnd);
+			EnrichedGOTermsResult reused = calc.calculateStudySet(internalOntology.graph, internalOntology.assoc, scs.pop, study, new None());
+			EnrichedGOTermsResult expected = createCalculation().calculateStudySet(internalOntology.graph, internalOntology.assoc, scs.pop, study, new None());
+			assertEquals(expected.getSize(), reused.getSize());
+			for (AbstractGOTermProperties prop : expected)
+				assertEquals(prop.p, reused.getGOTermProperties(prop.goTerm.getID()).p, 0);
+		}
+	}
+
+	private static Bayes2GOCalculation createCalculation()
+	{
+		Bayes2GOCalculation calc = new Bayes2GOCalculation();
+		calc.setSeed(2);
+		calc.setMcmcSteps(100000);
+		calc.setAlpha(B2GParam.Type.MCMC);
+		calc.setBeta(B2GParam.Type.MCMC);
+		calc.setExpectedNumber(2);
+		return calc;
+	}
+}
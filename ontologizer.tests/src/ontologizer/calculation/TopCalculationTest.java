@@ -0,0 +1,194 @@
+package ontologizer.calculation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ontologizer.association.AssociationContainer;
+import ontologizer.enumeration.GOTermEnumerator;
+import ontologizer.go.Ontology;
+import ontologizer.go.TermID;
+import ontologizer.internal.InternalOntology;
+import ontologizer.set.PopulationSet;
+import ontologizer.set.StudySet;
+import ontologizer.statistics.Hypergeometric;
+import ontologizer.statistics.None;
+import ontologizer.types.ByteString;
+
+public class TopCalculationTest
+{
+	/**
+	 * A straightforward implementation of elim that works on the gene names.
+	 */
+	private static class Reference
+	{
+		private Ontology ontology;
+		private GOTermEnumerator populationEnumerator;
+		private GOTermEnumerator studyEnumerator;
+		private int populationGeneCount;
+		private int studyGeneCount;
+		private Hypergeometric hyperg = new Hypergeometric();
+
+		public HashMap<TermID,HashSet<ByteString>> marked = new HashMap<TermID,HashSet<ByteString>>();
+		public HashMap<TermID,Double> p = new HashMap<TermID,Double>();
+
+		public Reference(Ontology ontology, AssociationContainer assoc, PopulationSet pop, StudySet study)
+		{
+			this.ontology = ontology;
+			populationEnumerator = pop.enumerateGOTerms(ontology, assoc);
+			studyEnumerator = study.enumerateGOTerms(ontology, assoc);
+			populationGeneCount = pop.getGeneCount();
+			studyGeneCount = study.getGeneCount();
+			visit(ontology.getRootTerm().getID());
+		}
+
+		private HashSet<ByteString> visit(TermID t)
+		{
+			if (marked.containsKey(t))
+				return marked.get(t);
+
+			HashSet<ByteString> m = new HashSet<ByteString>();
+			for (TermID c : ontology.getTermChildren(t))
+				m.addAll(visit(c));
+
+			int popCount = 0;
+			for (ByteString g : populationEnumerator.getAnnotatedGenes(t).totalAnnotated)
+				if (!m.contains(g)) popCount++;
+			int studyCount = 0;
+			for (ByteString g : studyEnumerator.getAnnotatedGenes(t).totalAnnotated)
+				if (!m.contains(g)) studyCount++;
+
+			if (studyCount != 0 && populationEnumerator.getAnnotatedGenes(t).totalAnnotatedCount() != 0)
+			{
+				double pt = hyperg.phypergeometric(populationGeneCount, (double)popCount / populationGeneCount, studyGeneCount, studyCount);
+				p.put(t, pt);
+				if (pt < TopCalculation.SIGNIFICANCE_LEVEL)
+					m.addAll(studyEnumerator.getAnnotatedGenes(t).totalAnnotated);
+			}
+			marked.put(t, m);
+			return m;
+		}
+	}
+
+	private static StudySet createStudy(String name, Random rnd, ArrayList<ByteString> enriched, ArrayList<ByteString> others)
+	{
+		StudySet study = new StudySet(name);
+		for (ByteString g : enriched)
+			if (rnd.nextDouble() < 0.7) study.addGene(g, "");
+		for (ByteString g : others)
+			if (rnd.nextDouble() < 0.05) study.addGene(g, "");
+		return study;
+	}
+
+	private static void assertMatchesReference(Ontology ontology, AssociationContainer assoc, PopulationSet pop, StudySet study, EnrichedGOTermsResult r)
+	{
+		Reference reference = new Reference(ontology, assoc, pop, study);
+		int tested = 0;
+		for (AbstractGOTermProperties prop : r)
+		{
+			Double p = reference.p.get(prop.goTerm.getID());
+			if (p == null)
+			{
+				assertTrue(prop.ignoreAtMTC);
+				assertEquals(1.0, prop.p, 0);
+			} else
+			{
+				assertEquals(p, prop.p, 0);
+				tested++;
+			}
+		}
+		assertEquals(reference.p.size(), tested);
+	}
+
+	@Test
+	public void testElimination()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		Ontology ontology = internalOntology.graph;
+		AssociationContainer assoc = internalOntology.assoc;
+		Random rnd = new Random(1);
+
+		PopulationSet pop = new PopulationSet("population");
+		for (ByteString g : assoc.getAllAnnotatedGenes())
+			pop.addGene(g, "");
+
+		ArrayList<ByteString> enriched = new ArrayList<ByteString>(pop.enumerateGOTerms(ontology, assoc).getAnnotatedGenes(new TermID("GO:0000004")).totalAnnotated);
+		ArrayList<ByteString> others = new ArrayList<ByteString>();
+		for (ByteString g : pop)
+			if (!enriched.contains(g)) others.add(g);
+
+		TopCalculation calc = new TopCalculation();
+		int significant = 0;
+		StudySet [] studies = new StudySet[20];
+		for (int i = 0; i < studies.length; i++)
+		{
+			studies[i] = createStudy("study" + i, rnd, enriched, others);
+			EnrichedGOTermsResult r = calc.calculateStudySet(ontology, assoc, pop, studies[i], new None());
+			assertMatchesReference(ontology, assoc, pop, studies[i], r);
+			for (AbstractGOTermProperties prop : r)
+				if (prop.p < TopCalculation.SIGNIFICANCE_LEVEL) significant++;
+		}
+		assertTrue(significant > 0);
+
+		/* The batch variant gives the same results */
+		EnrichedGOTermsResult [] results = calc.calculateStudySets(ontology, assoc, pop, studies, new None());
+		assertEquals(studies.length, results.length);
+		for (int i = 0; i < studies.length; i++)
+		{
+			EnrichedGOTermsResult expected = calc.calculateStudySet(ontology, assoc, pop, studies[i], new None());
+			assertEquals(expected.getSize(), results[i].getSize());
+			for (AbstractGOTermProperties e : expected)
+			{
+				AbstractGOTermProperties a = results[i].getGOTermProperties(e.goTerm);
+				assertNotNull(a);
+				assertEquals(e.p, a.p, 0);
+				assertEquals(e.p_min, a.p_min, 0);
+				assertEquals(e.annotatedStudyGenes, a.annotatedStudyGenes);
+				assertEquals(e.annotatedPopulationGenes, a.annotatedPopulationGenes);
+			}
+		}
+	}
+
+	@Test
+	public void testStudyOutsideOfPopulation()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		Ontology ontology = internalOntology.graph;
+		AssociationContainer assoc = internalOntology.assoc;
+		Random rnd = new Random(2);
+
+		/* The population lacks some genes of the study, hence the
+		 * calculation has to work on the gene names */
+		ArrayList<ByteString> all = new ArrayList<ByteString>(assoc.getAllAnnotatedGenes());
+		PopulationSet pop = new PopulationSet("population");
+		for (ByteString g : all.subList(0, all.size() * 3 / 4))
+			pop.addGene(g, "");
+
+		PopulationSet allGenes = new PopulationSet("all");
+		allGenes.addGenes(all);
+		GOTermEnumerator allEnumerator = allGenes.enumerateGOTerms(ontology, assoc);
+		ArrayList<ByteString> enriched = new ArrayList<ByteString>(allEnumerator.getAnnotatedGenes(new TermID("GO:0000004")).totalAnnotated);
+		ArrayList<ByteString> others = new ArrayList<ByteString>(all);
+		others.removeAll(enriched);
+
+		TopCalculation calc = new TopCalculation();
+		StudySet [] studies = new StudySet[5];
+		for (int i = 0; i < studies.length; i++)
+		{
+			studies[i] = createStudy("study" + i, rnd, enriched, others);
+			EnrichedGOTermsResult r = calc.calculateStudySet(ontology, assoc, pop, studies[i], new None());
+			assertMatchesReference(ontology, assoc, pop, studies[i], r);
+		}
+
+		EnrichedGOTermsResult [] results = calc.calculateStudySets(ontology, assoc, pop, studies, new None());
+		for (int i = 0; i < studies.length; i++)
+			assertMatchesReference(ontology, assoc, pop, studies[i], results[i]);
+	}
+}
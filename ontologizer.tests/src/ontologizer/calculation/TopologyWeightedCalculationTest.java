@@ -0,0 +1,181 @@
+package ontologizer.calculation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import ontologizer.go.TermID;
+import ontologizer.internal.InternalOntology;
+import ontologizer.statistics.None;
+import ontologizer.types.ByteString;
+
+public class TopologyWeightedCalculationTest
+{
+	/**
+	 * The results of the implementation that recalculated all terms
+	 * for the settings of testBaseline(). For each term, the p-value,
+	 * the number of population genes whose weight is not one, and a
+	 * checksum over the names and weights of these genes are given.
+	 */
+	private static final Object [][][] BASELINE = new Object[][][]{
+		{
+			{"GO:0000002", 0x1.c7bdf41440939p-7, 444, -339998811},
+			{"GO:0000003", 0x1.fefe943cf1ae3p-1, 383, 215148439},
+			{"GO:0000004", 0x1.14f50a6976e5cp-186, 0, 1},
+			{"GO:0000005", 0x1.ff14fed4cd7b3p-1, 338, -475163193},
+			{"GO:0000006", 0x1.fc34d569cc927p-1, 333, 320793381},
+			{"GO:0000007", 0x1.f14727294080dp-1, 291, -1190310909},
+			{"GO:0000008", 0x1.ebf10a09a7da1p-1, 0, 1},
+			{"GO:0000009", 0x1.f6fca98a0a9e4p-1, 0, 1},
+			{"GO:0000010", 0x1.888f947df7472p-1, 0, 1},
+			{"GO:0000011", 0x1.f020bade4a3f7p-1, 0, 1},
+		},
+		{
+			{"GO:0000002", 0x1.0p0, 444, -1360227011},
+			{"GO:0000003", 0x1.0p0, 383, 1177259069},
+			{"GO:0000004", 0x1.fff8c0f76dd63p-1, 0, 1},
+			{"GO:0000005", 0x1.0f9cea3708f96p-218, 0, 1},
+			{"GO:0000006", 0x1.b7b7bf3b0a854p-230, 0, 1},
+			{"GO:0000007", 0x1.b7a959a41d31cp-332, 0, 1},
+			{"GO:0000008", 0x1.0p0, 291, 1329908588},
+			{"GO:0000009", 0x1.0p0, 291, 295879372},
+			{"GO:0000010", 0x1.0p0, 179, -1377715030},
+			{"GO:0000011", 0x1.0p0, 179, -850994344},
+		},
+		{
+			{"GO:0000002", 0x1.a71b49a314aa3p-55, 0, 1},
+			{"GO:0000003", 0x1.61fa993365beep-36, 0, 1},
+			{"GO:0000004", 0x1.fffce41557009p-1, 0, 1},
+			{"GO:0000005", 0x1.afa2204777787p-225, 0, 1},
+			{"GO:0000006", 0x1.00bb7448534d6p-77, 0, 1},
+			{"GO:0000007", 0x1.0p0, 378, -233090563},
+			{"GO:0000008", 0x1.0p0, 291, -1407460598},
+			{"GO:0000009", 0x1.0p0, 291, -1319658198},
+			{"GO:0000010", 0x1.0p0, 179, 1776063923},
+			{"GO:0000011", 0x1.0p0, 179, -1928892381},
+		}
+	};
+
+	@Test
+	public void testBaseline()
+	{
+		long [] seeds = new long[]{1, 2, 3};
+		String [][] wantedTerms = new String[][]{{"GO:0000004"}, {"GO:0000007"}, {"GO:0000010", "GO:0000005"}};
+		double [][] falseNegativeRates = new double[][]{{0.0}, {0.1}, {0.0, 0.2}};
+		double [] falsePositiveRates = new double[]{0.05, 0.02, 0.05};
+
+		for (int s = 0; s < seeds.length; s++)
+		{
+			InternalOntology internalOntology = new InternalOntology();
+			HashMap<TermID,Double> wantedActiveTerms = new HashMap<TermID,Double>();
+			for (int i = 0; i < wantedTerms[s].length; i++)
+				wantedActiveTerms.put(new TermID(wantedTerms[s][i]), falseNegativeRates[s][i]);
+			SingleCalculationSetting scs = SingleCalculationSetting.create(new Random(seeds[s]), wantedActiveTerms, falsePositiveRates[s], internalOntology.graph, internalOntology.assoc);
+
+			TopologyWeightedCalculation.Calculation calculation = new TopologyWeightedCalculation().calculate(internalOntology.graph, internalOntology.assoc, scs.pop, scs.study, new None());
+
+			TreeMap<String,AbstractGOTermProperties> props = new TreeMap<String,AbstractGOTermProperties>();
+			for (AbstractGOTermProperties prop : calculation.getResult())
+				props.put(prop.goTerm.getID().toString(), prop);
+			TreeSet<String> genes = new TreeSet<String>();
+			for (ByteString gene : scs.pop)
+				genes.add(gene.toString());
+
+			assertEquals(BASELINE[s].length, props.size());
+			int row = 0;
+			for (AbstractGOTermProperties prop : props.values())
+			{
+				Object [] expected = BASELINE[s][row++];
+				assertEquals(expected[0], prop.goTerm.getID().toString());
+				assertEquals(Double.doubleToLongBits((Double)expected[1]), Double.doubleToLongBits(prop.p));
+
+				int altered = 0;
+				int checksum = 1;
+				for (String gene : genes)
+				{
+					double w = calculation.getWeight(prop.goTerm.getID(), new ByteString(gene));
+					if (w == 1.0) continue;
+					altered++;
+					long bits = Double.doubleToLongBits(w);
+					checksum = 31 * checksum + gene.hashCode();
+					checksum = 31 * checksum + (int)(bits ^ (bits >>> 32));
+				}
+				assertEquals(expected[0].toString(), expected[2], altered);
+				assertEquals(expected[0].toString(), expected[3], checksum);
+			}
+		}
+	}
+
+	@Test
+	public void testAddOnes()
+	{
+		Random rnd = new Random(1);
+		double [] starts = new double[]{0, 0.1, 1, 1.5, 0.3, 1e-20, 3.7, 1e15, 0x1p53 - 3, 0x1p53, 0x1p54 - 1, Double.NaN, Double.POSITIVE_INFINITY};
+		for (double start : starts)
+		{
+			for (int times : new int[]{0, 1, 2, 3, 7, 100, 1000, 5000})
+			{
+				double expected = start;
+				for (int i = 0; i < times; i++)
+					expected += 1;
+				assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(TopologyWeightedCalculation.addOnes(start, times)));
+			}
+		}
+
+		for (int run = 0; run < 1000; run++)
+		{
+			double start = rnd.nextDouble() * Math.pow(2, rnd.nextInt(60) - 10);
+			int times = rnd.nextInt(3000);
+			double expected = start;
+			for (int i = 0; i < times; i++)
+				expected += 1;
+			assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(TopologyWeightedCalculation.addOnes(start, times)));
+		}
+	}
+
+	@Test
+	public void testWeights()
+	{
+		Random rnd = new Random(2);
+		TopologyWeightedCalculation.Weights weights = new TopologyWeightedCalculation.Weights();
+		HashMap<Integer,Double> expected = new HashMap<Integer,Double>();
+
+		for (int i = 0; i < 5000; i++)
+		{
+			int gene = rnd.nextInt(2000);
+			double w = rnd.nextDouble() + 0.5;
+			Double old = expected.get(gene);
+			if (old == null) old = 1.0;
+
+			switch (rnd.nextInt(3))
+			{
+				case 0: weights.set(gene, w); expected.put(gene, w); break;
+				case 1: weights.multiply(gene, w); expected.put(gene, old * w); break;
+				case 2: weights.divide(gene, w); expected.put(gene, old / w); break;
+			}
+		}
+
+		for (int gene = 0; gene < 2100; gene++)
+		{
+			Double w = expected.get(gene);
+			assertEquals(w == null ? 1.0 : w, weights.get(gene), 0);
+		}
+
+		int n = 0;
+		for (int gene : expected.keySet())
+			if (gene < 1000) n++;
+		int [] genes = weights.getGenes(1000);
+		assertEquals(n, genes.length);
+		for (int i = 1; i < genes.length; i++)
+			assertTrue(genes[i - 1] < genes[i]);
+		int [] empty = new TopologyWeightedCalculation.Weights().getGenes(1000);
+		assertArrayEquals(new int[0], empty);
+	}
+}
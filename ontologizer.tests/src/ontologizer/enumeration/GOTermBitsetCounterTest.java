@@ -0,0 +1,111 @@
+package ontologizer.enumeration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ontologizer.association.AssociationContainer;
+import ontologizer.association.AssociationParser;
+import ontologizer.go.OBOParser;
+import ontologizer.go.OBOParserException;
+import ontologizer.go.OBOParserFileInput;
+import ontologizer.go.Ontology;
+import ontologizer.go.TermContainer;
+import ontologizer.go.TermID;
+import ontologizer.set.PopulationSet;
+import ontologizer.set.StudySet;
+import ontologizer.types.ByteString;
+
+public class GOTermBitsetCounterTest
+{
+	private static final String OBO_FILE = "data/gene_ontology.1_2.obo.gz";
+	private static final String ASSOCIATION_FILE = "data/gene_association.sgd.gz";
+
+	private static Ontology graph;
+	private static AssociationContainer assocs;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws IOException, OBOParserException
+	{
+		OBOParser oboParser = new OBOParser(new OBOParserFileInput(OBO_FILE));
+		oboParser.doParse();
+		TermContainer terms = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), oboParser.getDataVersion());
+		graph = Ontology.create(terms);
+
+		AssociationParser ap = new AssociationParser(new OBOParserFileInput(ASSOCIATION_FILE), terms);
+		assocs = new AssociationContainer(ap.getAssociations(), ap.getSynonym2gene(), ap.getDbObject2gene());
+	}
+
+	private static int unionCount(GOTermEnumerator e, Set<TermID> terms)
+	{
+		HashSet<ByteString> genes = new HashSet<ByteString>();
+		for (TermID t : terms)
+			genes.addAll(e.getAnnotatedGenes(t).totalAnnotated);
+		return genes.size();
+	}
+
+	@Test
+	public void testCounts()
+	{
+		PopulationSet population = new PopulationSet("population");
+		Random rnd = new Random(2);
+		for (ByteString gene : assocs.getAllAnnotatedGenes())
+		{
+			if (rnd.nextInt(2) == 0)
+				population.addGene(gene, "");
+		}
+		population.addGene(new ByteString("unannotated"), "");
+
+		GOTermBitsetCounter counter = new GOTermBitsetCounter(new TermAnnotationIndex(graph, null), assocs, population);
+		GOTermEnumerator populationEnumerator = population.enumerateGOTerms(graph, assocs);
+
+		for (int i = 0; i < 5; i++)
+		{
+			StudySet study = population.generateRandomStudySet(50 + i * 200);
+			GOTermEnumerator studyEnumerator = study.enumerateGOTerms(graph, assocs);
+			GOTermBitsetCounter.Study s = counter.createStudy(study);
+			assertNotNull(s);
+
+			for (TermID t : populationEnumerator)
+			{
+				assertEquals(populationEnumerator.getAnnotatedGenes(t).totalAnnotatedCount(), counter.getPopulationCount(t));
+				assertEquals(studyEnumerator.getAnnotatedGenes(t).totalAnnotatedCount(), s.getCount(t));
+
+				if (graph.isRootTerm(t))
+					continue;
+
+				Set<TermID> parents = graph.getTermParents(t);
+				assertEquals(parents.size(), counter.getNumberOfParents(t));
+				assertEquals(unionCount(populationEnumerator, parents), counter.getPopulationParentCount(t));
+				assertEquals(unionCount(studyEnumerator, parents), s.getParentCount(t));
+			}
+		}
+	}
+
+	@Test
+	public void testNotInPopulation()
+	{
+		List<ByteString> genes = new ArrayList<ByteString>(assocs.getAllAnnotatedGenes());
+		PopulationSet population = new PopulationSet("population");
+		for (ByteString gene : genes.subList(0, 100))
+			population.addGene(gene, "");
+
+		GOTermBitsetCounter counter = new GOTermBitsetCounter(new TermAnnotationIndex(graph, null), assocs, population);
+
+		StudySet study = new StudySet("study");
+		study.addGene(genes.get(0), "");
+		assertNotNull(counter.createStudy(study));
+		study.addGene(genes.get(100), "");
+		assertNull(counter.createStudy(study));
+	}
+}
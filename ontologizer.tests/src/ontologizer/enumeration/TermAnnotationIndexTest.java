@@ -0,0 +1,284 @@
+package ontologizer.enumeration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ontologizer.association.AssociationContainer;
+import ontologizer.association.AssociationParser;
+import ontologizer.association.Gene2Associations;
+import ontologizer.enumeration.GOTermEnumerator.GOTermAnnotatedGenes;
+import ontologizer.go.OBOParser;
+import ontologizer.go.OBOParserException;
+import ontologizer.go.OBOParserFileInput;
+import ontologizer.go.Ontology;
+import ontologizer.go.TermContainer;
+import ontologizer.go.TermID;
+import ontologizer.internal.InternalOntology;
+import ontologizer.types.ByteString;
+
+public class TermAnnotationIndexTest
+{
+	private static final String OBO_FILE = "data/gene_ontology.1_2.obo.gz";
+	private static final String ASSOCIATION_FILE = "data/gene_association.sgd.gz";
+
+	private static Ontology graph;
+	private static AssociationContainer assocs;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws IOException, OBOParserException
+	{
+		OBOParser oboParser = new OBOParser(new OBOParserFileInput(OBO_FILE));
+		oboParser.doParse();
+		TermContainer terms = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), oboParser.getDataVersion());
+		graph = Ontology.create(terms);
+
+		AssociationParser ap = new AssociationParser(new OBOParserFileInput(ASSOCIATION_FILE), terms);
+		assocs = new AssociationContainer(ap.getAssociations(), ap.getSynonym2gene(), ap.getDbObject2gene());
+	}
+
+	/**
+	 * Enumerates the given genes in the traditional way.
+	 */
+	private static GOTermEnumerator push(Ontology graph, AssociationContainer assocs, Iterable<ByteString> genes, Set<ByteString> evidences)
+	{
+		GOTermEnumerator e = new GOTermEnumerator(graph);
+		for (ByteString gene : genes)
+		{
+			Gene2Associations g2a = assocs.get(gene);
+			if (g2a != null)
+				e.push(g2a, evidences);
+		}
+		return e;
+	}
+
+	private static void assertEnumeratorEquals(GOTermEnumerator expected, GOTermEnumerator actual)
+	{
+		assertEquals(expected.getAllAnnotatedTermsAsSet(), actual.getAllAnnotatedTermsAsSet());
+		assertEquals(expected.getGenes(), new HashSet<ByteString>(actual.getGenes()));
+
+		for (TermID tid : expected)
+		{
+			GOTermAnnotatedGenes e = expected.getAnnotatedGenes(tid);
+			GOTermAnnotatedGenes a = actual.getAnnotatedGenes(tid);
+			assertEquals(e.directAnnotatedCount(), a.directAnnotatedCount());
+			assertEquals(e.totalAnnotatedCount(), a.totalAnnotatedCount());
+			assertEquals(e.directAnnotated, a.directAnnotated);
+			assertEquals(e.totalAnnotated, a.totalAnnotated);
+		}
+	}
+
+	@Test
+	public void testAllGenes()
+	{
+		TermAnnotationIndex index = new TermAnnotationIndex(graph, null);
+		List<ByteString> genes = new ArrayList<ByteString>(assocs.getAllAnnotatedGenes());
+
+		assertEnumeratorEquals(push(graph, assocs, genes, null), index.enumerate(genes, assocs));
+		assertEquals(genes.size(), index.getNumberOfGenes());
+
+		/* Again, now with already indexed genes */
+		assertEnumeratorEquals(push(graph, assocs, genes, null), index.enumerate(genes, assocs));
+		assertEquals(genes.size(), index.getNumberOfGenes());
+	}
+
+	@Test
+	public void testRandomSubsets()
+	{
+		TermAnnotationIndex index = new TermAnnotationIndex(graph, null);
+		List<ByteString> genes = new ArrayList<ByteString>(assocs.getAllAnnotatedGenes());
+		Random rnd = new Random(1);
+
+		for (int i = 0; i < 10; i++)
+		{
+			List<ByteString> subset = new ArrayList<ByteString>();
+			for (ByteString gene : genes)
+			{
+				if (rnd.nextInt(10) == 0)
+					subset.add(gene);
+			}
+			/* Genes without annotations are skipped */
+			subset.add(new ByteString("unknown"));
+			assertEnumeratorEquals(push(graph, assocs, subset, null), index.enumerate(subset, assocs));
+		}
+	}
+
+	@Test
+	public void testConcurrentGrowth() throws InterruptedException
+	{
+		final TermAnnotationIndex index = new TermAnnotationIndex(graph, null);
+		final List<ByteString> genes = new ArrayList<ByteString>(assocs.getAllAnnotatedGenes());
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+		/* The threads index overlapping random subsets while the index grows */
+		Thread [] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++)
+		{
+			final int seed = t;
+			threads[t] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						Random rnd = new Random(seed);
+						for (int i = 0; i < 5; i++)
+						{
+							List<ByteString> subset = new ArrayList<ByteString>();
+							for (ByteString gene : genes)
+							{
+								if (rnd.nextInt(4) == 0)
+									subset.add(gene);
+							}
+							GOTermEnumerator enumerator = index.enumerate(subset, assocs);
+							assertEnumeratorEquals(push(graph, assocs, subset, null), enumerator);
+							for (int idx : index.getGeneIndices(subset, assocs))
+								assertTrue(index.getTotalTerms(idx) != null);
+						}
+					} catch (Throwable e)
+					{
+						failures.add(e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		assertEquals(Collections.emptyList(), failures);
+		assertEquals(genes.size(), index.enumerate(genes, assocs).getGenes().size());
+		assertEquals(genes.size(), index.getNumberOfGenes());
+	}
+
+	@Test
+	public void testEvidences()
+	{
+		Set<ByteString> evidences = new HashSet<ByteString>();
+		evidences.add(new ByteString("IDA"));
+		evidences.add(new ByteString("IMP"));
+
+		TermAnnotationIndex index = new TermAnnotationIndex(graph, evidences);
+		List<ByteString> genes = new ArrayList<ByteString>(assocs.getAllAnnotatedGenes());
+		assertEnumeratorEquals(push(graph, assocs, genes, evidences), index.enumerate(genes, assocs));
+	}
+
+	@Test
+	public void testInternalOntologyWithSubontology()
+	{
+		InternalOntology internal = new InternalOntology();
+		internal.graph.setRelevantSubontology("C2");
+
+		TermAnnotationIndex index = new TermAnnotationIndex(internal.graph, null);
+		List<ByteString> genes = new ArrayList<ByteString>(internal.assoc.getAllAnnotatedGenes());
+		GOTermEnumerator expected = push(internal.graph, internal.assoc, genes, null);
+		assertEnumeratorEquals(expected, index.enumerate(genes, internal.assoc));
+	}
+
+	@Test
+	public void testDerivedFromPopulation()
+	{
+		TermAnnotationIndex index = new TermAnnotationIndex(graph, null);
+		List<ByteString> genes = new ArrayList<ByteString>(assocs.getAllAnnotatedGenes());
+		Random rnd = new Random(2);
+
+		List<ByteString> population = new ArrayList<ByteString>();
+		List<ByteString> others = new ArrayList<ByteString>();
+		for (ByteString gene : genes)
+		{
+			if (rnd.nextBoolean()) population.add(gene);
+			else others.add(gene);
+		}
+
+		GOTermEnumerator populationEnumerator = index.enumerate(population, assocs);
+		populationEnumerator.freeze();
+		assertTrue(populationEnumerator.isFrozen());
+
+		for (int i = 0; i < 10; i++)
+		{
+			List<ByteString> subset = new ArrayList<ByteString>();
+			for (ByteString gene : population)
+			{
+				if (rnd.nextInt(10) == 0)
+					subset.add(gene);
+			}
+			subset.add(new ByteString("unknown"));
+			assertEnumeratorEquals(push(graph, assocs, subset, null), index.enumerate(populationEnumerator, subset, assocs));
+
+			/* Genes outside of the population */
+			subset.add(others.get(i));
+			assertEnumeratorEquals(push(graph, assocs, subset, null), index.enumerate(populationEnumerator, subset, assocs));
+		}
+
+		/* The population is unaffected */
+		assertEnumeratorEquals(push(graph, assocs, population, null), populationEnumerator);
+	}
+
+	@Test
+	public void testFrozen()
+	{
+		TermAnnotationIndex index = new TermAnnotationIndex(graph, null);
+		List<ByteString> genes = new ArrayList<ByteString>(assocs.getAllAnnotatedGenes());
+
+		GOTermEnumerator enumerator = index.enumerate(genes, assocs);
+		enumerator.freeze();
+
+		try
+		{
+			enumerator.push(assocs.get(genes.get(0)));
+			fail();
+		} catch (IllegalStateException e)
+		{
+		}
+
+		try
+		{
+			enumerator.removeTerms(new GOTermEnumerator.IRemover()
+			{
+				public boolean remove(TermID tid, GOTermAnnotatedGenes tag)
+				{
+					return true;
+				}
+			});
+			fail();
+		} catch (IllegalStateException e)
+		{
+		}
+
+		TermID tid = enumerator.iterator().next();
+		try
+		{
+			enumerator.getAnnotatedGenes(tid).totalAnnotated.clear();
+			fail();
+		} catch (UnsupportedOperationException e)
+		{
+		}
+		assertEnumeratorEquals(push(graph, assocs, genes, null), enumerator);
+	}
+
+	@Test
+	public void testSharedIndices()
+	{
+		TermAnnotationIndex index = TermAnnotationIndex.get(graph, assocs, null);
+		assertSame(index, TermAnnotationIndex.get(graph, assocs, null));
+
+		Set<ByteString> evidences = new HashSet<ByteString>();
+		evidences.add(new ByteString("IDA"));
+		assertNotSame(index, TermAnnotationIndex.get(graph, assocs, evidences));
+		TermAnnotationIndex.clear();
+	}
+}
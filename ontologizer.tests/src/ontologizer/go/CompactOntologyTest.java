@@ -0,0 +1,180 @@
+package ontologizer.go;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import ontologizer.go.Ontology.IVisitingGOVertex;
+import ontologizer.internal.InternalOntology;
+import sonumina.math.graph.DirectedGraph;
+import sonumina.math.graph.AbstractGraph.IVisitor;
+
+public class CompactOntologyTest
+{
+	/**
+	 * Returns the ids of the vertices that are reachable from the given term
+	 * determined via the graph.
+	 */
+	private static HashSet<TermID> reachable(DirectedGraph<Term> graph, Term t, boolean againstFlow)
+	{
+		final HashSet<TermID> reached = new HashSet<TermID>();
+		graph.bfs(t, againstFlow, new IVisitor<Term>()
+		{
+			public boolean visited(Term vertex)
+			{
+				reached.add(vertex.getID());
+				return true;
+			}
+		});
+		return reached;
+	}
+
+	private static HashSet<TermID> ids(CompactOntology c, int [] ordinals)
+	{
+		HashSet<TermID> ids = new HashSet<TermID>();
+		for (int o : ordinals)
+			ids.add(c.getTerm(o).getID());
+		return ids;
+	}
+
+	@Test
+	public void testStructure()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		Ontology ontology = internalOntology.graph;
+		DirectedGraph<Term> graph = ontology.getGraph();
+		CompactOntology c = ontology.getCompactOntology();
+
+		assertEquals(graph.getNumberOfVertices(), c.getNumberOfTerms());
+
+		for (int t = 0; t < c.getNumberOfTerms(); t++)
+		{
+			Term term = c.getTerm(t);
+			assertEquals(t, c.getTermIndex(term.getID()));
+
+			HashSet<Term> parents = new HashSet<Term>();
+			Iterator<Term> parentIter = graph.getParentNodes(term);
+			while (parentIter.hasNext())
+				parents.add(parentIter.next());
+			assertEquals(parents, c.getParentTerms(t));
+			assertEquals(parents.size(), c.getNumberOfParents(t));
+
+			HashSet<Term> children = new HashSet<Term>();
+			Iterator<Term> childIter = graph.getChildNodes(term);
+			while (childIter.hasNext())
+				children.add(childIter.next());
+			assertEquals(children, c.getChildTerms(t));
+			assertEquals(Ontology.termIDSet(children), ontology.getTermChildren(term.getID()));
+
+			HashSet<TermID> ancestors = reachable(graph, term, true);
+			int [] ancestorOrdinals = c.getAncestors(t);
+			assertEquals(ancestors, ids(c, ancestorOrdinals));
+			assertEquals(ancestors, ontology.getTermsOfInducedGraph(null, term.getID()));
+			for (int i = 1; i < ancestorOrdinals.length; i++)
+				assertTrue(ancestorOrdinals[i - 1] < ancestorOrdinals[i]);
+
+			HashSet<TermID> descendants = reachable(graph, term, false);
+			assertEquals(descendants, ids(c, c.getDescendants(t)));
+
+			for (int a = 0; a < c.getNumberOfTerms(); a++)
+				assertEquals(ancestors.contains(c.getTerm(a).getID()), c.isAncestor(a, t));
+		}
+	}
+
+	@Test
+	public void testInducedGraphWithRoot()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		Ontology ontology = internalOntology.graph;
+		DirectedGraph<Term> graph = ontology.getGraph();
+
+		for (Term root : ontology)
+		{
+			if (ontology.isRootTerm(root.getID()))
+				continue;
+
+			HashSet<TermID> descendants = reachable(graph, root, false);
+			for (Term term : ontology)
+			{
+				HashSet<TermID> expected = reachable(graph, term, true);
+				expected.retainAll(descendants);
+				assertEquals(expected, ontology.getTermsOfInducedGraph(root.getID(), term.getID()));
+			}
+		}
+	}
+
+	@Test
+	public void testWalk()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		Ontology ontology = internalOntology.graph;
+		DirectedGraph<Term> graph = ontology.getGraph();
+
+		for (Term term : ontology)
+		{
+			final List<Term> expected = new ArrayList<Term>();
+			graph.bfs(term, true, new IVisitor<Term>()
+			{
+				public boolean visited(Term vertex)
+				{
+					expected.add(vertex);
+					return true;
+				}
+			});
+
+			final List<Term> actual = new ArrayList<Term>();
+			ontology.walkToSource(term.getID(), new IVisitingGOVertex()
+			{
+				public boolean visited(Term vertex)
+				{
+					actual.add(vertex);
+					return true;
+				}
+			});
+			assertEquals(expected, actual);
+
+			/* The internal ontology consists of is_a relations only */
+			actual.clear();
+			ontology.walkToSource(Arrays.asList(term.getID()), new IVisitingGOVertex()
+			{
+				public boolean visited(Term vertex)
+				{
+					actual.add(vertex);
+					return true;
+				}
+			}, new HashSet<TermRelation>(Arrays.asList(TermRelation.PART_OF_A)));
+			assertEquals(Arrays.asList(term), actual);
+		}
+	}
+
+	@Test
+	public void testModification()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		Ontology ontology = internalOntology.graph;
+		CompactOntology c = ontology.getCompactOntology();
+		assertSame(c, ontology.getCompactOntology());
+
+		Term newTerm = new Term("GO:0001000", "new");
+		Term parent = ontology.getTerm(new TermID("GO:0000010"));
+		ontology.getGraph().addVertex(newTerm);
+		ontology.getGraph().addEdge(new OntologyEdge(parent, newTerm, TermRelation.IS_A));
+
+		CompactOntology modified = ontology.getCompactOntology();
+		assertNotSame(c, modified);
+		assertEquals(c.getNumberOfTerms() + 1, modified.getNumberOfTerms());
+		int t = modified.getTermIndex(newTerm.getID());
+		assertEquals(1, modified.getNumberOfParents(t));
+		assertEquals(modified.getTermIndex(parent.getID()), modified.getParent(t, 0));
+		assertEquals(CompactOntology.getRelationMask(TermRelation.IS_A), modified.getParentRelations(t, 0));
+	}
+}
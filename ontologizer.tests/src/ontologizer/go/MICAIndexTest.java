@@ -0,0 +1,154 @@
+package ontologizer.go;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import ontologizer.internal.InternalOntology;
+
+public class MICAIndexTest
+{
+	/**
+	 * Returns the minimum of p over the shared parents of the given terms
+	 * as determined by the ontology.
+	 */
+	private static double minSharedP(Ontology ontology, CompactOntology c, double [] p, int t1, int t2)
+	{
+		Collection<TermID> shared = ontology.getSharedParents(c.getTerm(t1).getID(), c.getTerm(t2).getID());
+		double min = 1.0;
+		for (TermID tid : shared)
+			min = Math.min(min, p[c.getTermIndex(tid)]);
+		return min;
+	}
+
+	@Test
+	public void testMinSharedP()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		Ontology ontology = internalOntology.graph;
+		CompactOntology c = ontology.getCompactOntology();
+		int n = c.getNumberOfTerms();
+		Random rnd = new Random(1);
+
+		for (int run = 0; run < 20; run++)
+		{
+			/* Random probabilities with ties */
+			double [] p = new double[n];
+			for (int t = 0; t < n; t++)
+				p[t] = rnd.nextInt(5) / 4.0;
+
+			MICAIndex index = new MICAIndex(c, p);
+			assertEquals(n, index.getNumberOfTerms());
+
+			int [] t1 = new int[n * n];
+			int [] t2 = new int[n * n];
+			for (int i = 0; i < n; i++)
+			{
+				assertEquals(p[i], index.getP(i), 0);
+				for (int j = 0; j < n; j++)
+				{
+					double expected = minSharedP(ontology, c, p, i, j);
+					assertEquals(expected, index.getMinSharedP(i, j), 0);
+
+					int mica = index.getMICA(i, j);
+					assertTrue(c.isAncestor(mica, i));
+					assertTrue(c.isAncestor(mica, j));
+					assertEquals(expected, Math.min(1.0, p[mica]), 0);
+
+					t1[i * n + j] = i;
+					t2[i * n + j] = j;
+				}
+			}
+
+			double [] result = new double[n * n];
+			index.getMinSharedP(t1, t2, result);
+			for (int i = 0; i < t1.length; i++)
+				assertEquals(index.getMinSharedP(t1[i], t2[i]), result[i], 0);
+
+			/* Ranks are ordered by p */
+			for (int i = 0; i < n; i++)
+			{
+				for (int j = 0; j < n; j++)
+				{
+					if (index.getRank(i) < index.getRank(j))
+						assertTrue(p[i] <= p[j]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSetsOfTerms()
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		CompactOntology c = internalOntology.graph.getCompactOntology();
+		int n = c.getNumberOfTerms();
+		Random rnd = new Random(2);
+
+		double [] p = new double[n];
+		for (int t = 0; t < n; t++)
+			p[t] = rnd.nextDouble();
+		MICAIndex index = new MICAIndex(c, p);
+
+		for (int run = 0; run < 200; run++)
+		{
+			int [] s1 = new int[rnd.nextInt(4)];
+			int [] s2 = new int[1 + rnd.nextInt(4)];
+			for (int i = 0; i < s1.length; i++)
+				s1[i] = rnd.nextInt(n);
+			for (int i = 0; i < s2.length; i++)
+				s2[i] = rnd.nextInt(n);
+
+			double expected = 1.0;
+			for (int a : s1)
+				for (int b : s2)
+					expected = Math.min(expected, index.getMinSharedP(a, b));
+
+			int [] ranks1 = index.getAncestorRanks(s1);
+			int [] ranks2 = index.getAncestorRanks(s2);
+			assertEquals(expected, index.getMinSharedPOfRanks(ranks1, ranks2), 0);
+
+			double [] weights = new double[n];
+			for (int r = 0; r < n; r++)
+				weights[r] = rnd.nextDouble();
+
+			double expectedPairSum = 0;
+			for (int a : s1)
+				for (int b : s2)
+					if (index.getMICARank(a, b) >= 0) expectedPairSum += weights[index.getMICARank(a, b)];
+			assertEquals(expectedPairSum, index.getPairSum(s1, s2, weights), 1e-12);
+
+			double expectedBestMatchSum = 0;
+			for (int a : s1)
+			{
+				int best = -1;
+				for (int b : s2)
+				{
+					int r = index.getMICARank(a, b);
+					if (r >= 0 && (best < 0 || r < best)) best = r;
+				}
+				assertEquals(best, index.getMICARank(a, ranks2));
+				if (best >= 0) expectedBestMatchSum += weights[best];
+			}
+			assertEquals(expectedBestMatchSum, index.getBestMatchSum(s1, ranks2, weights), 1e-12);
+			assertEquals(index.getMICARankOfRanks(ranks1, ranks2) < 0 ? 1.0 : index.getPOfRank(index.getMICARankOfRanks(ranks1, ranks2)),
+					index.getMinSharedPOfRanks(ranks1, ranks2), 0);
+
+			TreeSet<Integer> union = new TreeSet<Integer>();
+			for (int a : s1)
+				for (int anc : c.getAncestors(a))
+					union.add(index.getRank(anc));
+			int [] expectedRanks = new int[union.size()];
+			int i = 0;
+			for (int r : union)
+				expectedRanks[i++] = r;
+			assertArrayEquals(expectedRanks, ranks1);
+		}
+	}
+}
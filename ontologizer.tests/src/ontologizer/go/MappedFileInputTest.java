@@ -0,0 +1,111 @@
+package ontologizer.go;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ontologizer.association.AssociationParser;
+
+public class MappedFileInputTest
+{
+	@Rule
+	public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+	@Test
+	public void testUncompressed() throws IOException
+	{
+		File outFile = tmpFolder.newFile();
+		PrintWriter out = new PrintWriter(new FileWriter(outFile));
+		out.println("line1");
+		out.println("line2");
+		out.close();
+
+		IParserInput input = new MappedFileInput(outFile.getAbsolutePath());
+		assertEquals(12, input.getSize());
+		BufferedReader in = new BufferedReader(new InputStreamReader(input.inputStream()));
+		assertEquals("line1", in.readLine());
+		assertEquals("line2", in.readLine());
+		assertNull(in.readLine());
+		assertEquals(12, input.getPosition());
+		input.close();
+	}
+
+	@Test
+	public void testCompressed() throws IOException
+	{
+		File outFile = tmpFolder.newFile();
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outFile))));
+		out.println("line1");
+		out.println("line2");
+		out.close();
+
+		IParserInput input = new MappedFileInput(outFile.getAbsolutePath());
+		BufferedReader in = new BufferedReader(new InputStreamReader(input.inputStream()));
+		assertEquals("line1", in.readLine());
+		assertEquals("line2", in.readLine());
+		assertNull(in.readLine());
+		input.close();
+	}
+
+	@Test
+	public void testEmpty() throws IOException
+	{
+		File outFile = tmpFolder.newFile();
+
+		IParserInput input = new MappedFileInput(outFile.getAbsolutePath());
+		assertEquals(0, input.getSize());
+		assertEquals(-1, input.inputStream().read());
+		input.close();
+	}
+
+	@Test
+	public void testClose() throws IOException
+	{
+		File outFile = tmpFolder.newFile();
+		PrintWriter out = new PrintWriter(new FileWriter(outFile));
+		out.println("line1");
+		out.println("line2");
+		out.close();
+
+		IParserInput input = new MappedFileInput(outFile.getAbsolutePath());
+		BufferedReader in = new BufferedReader(new InputStreamReader(input.inputStream()), 1);
+		assertEquals("line1", in.readLine());
+		input.close();
+
+		/* The mapping is released, the input must behave as if exhausted */
+		assertEquals(-1, input.inputStream().read());
+
+		/* On some platforms, this fails if the file is still mapped */
+		assertTrue(outFile.delete());
+	}
+
+	@Test
+	public void testParsers() throws IOException, OBOParserException
+	{
+		OBOParser streamParser = new OBOParser(new OBOParserFileInput("data/gene_ontology.1_2.obo.gz"));
+		streamParser.doParse();
+
+		OBOParser mappedParser = new OBOParser(new MappedFileInput("data/gene_ontology.1_2.obo.gz"));
+		mappedParser.doParse();
+
+		assertEquals(streamParser.getTermMap().size(), mappedParser.getTermMap().size());
+
+		TermContainer tc = new TermContainer(mappedParser.getTermMap(), "", "");
+		AssociationParser ap = new AssociationParser(new MappedFileInput("data/gene_association.sgd.gz"), tc);
+		assertEquals(87599, ap.getAssociations().size());
+	}
+}
@@ -0,0 +1,284 @@
+package ontologizer.snapshot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ontologizer.association.Association;
+import ontologizer.association.AssociationContainer;
+import ontologizer.association.AssociationParser;
+import ontologizer.association.Gene2Associations;
+import ontologizer.go.OBOParser;
+import ontologizer.go.OBOParserException;
+import ontologizer.go.OBOParserFileInput;
+import ontologizer.go.Ontology;
+import ontologizer.go.ParentTermID;
+import ontologizer.go.Synonym;
+import ontologizer.go.Term;
+import ontologizer.go.TermContainer;
+import ontologizer.go.TermID;
+import ontologizer.types.ByteString;
+
+public class SnapshotTest
+{
+	private static final String OBO_FILE = "data/gene_ontology.1_2.obo.gz";
+	private static final String ASSOCIATION_FILE = "data/gene_association.sgd.gz";
+
+	@Rule
+	public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+	private static TermContainer parseTerms(String name, int options) throws IOException, OBOParserException
+	{
+		OBOParser oboParser = new OBOParser(new OBOParserFileInput(name), options);
+		oboParser.doParse();
+		return new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), oboParser.getDataVersion());
+	}
+
+	private static void assertParentsEquals(ParentTermID [] expected, ParentTermID [] actual)
+	{
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++)
+		{
+			assertEquals(expected[i].termid, actual[i].termid);
+			assertEquals(expected[i].relation, actual[i].relation);
+		}
+	}
+
+	@Test
+	public void testTerms() throws IOException, OBOParserException
+	{
+		TermContainer terms = parseTerms(OBO_FILE, OBOParser.PARSE_DEFINITIONS|OBOParser.PARSE_XREFS|OBOParser.PARSE_INTERSECTIONS);
+
+		File file = tmpFolder.newFile();
+		Snapshot.writeTerms(file, 4711, terms);
+		TermContainer snapshotTerms = Snapshot.readTerms(file, 4711);
+
+		assertNotNull(snapshotTerms);
+		assertEquals(terms.termCount(), snapshotTerms.termCount());
+		assertEquals(terms.getFormatVersion(), snapshotTerms.getFormatVersion());
+		assertEquals(terms.getDate(), snapshotTerms.getDate());
+
+		for (Term t : terms)
+		{
+			Term st = snapshotTerms.get(t.getID());
+			assertNotNull(st);
+			assertEquals(t.getIDAsString(), st.getIDAsString());
+			assertEquals(t.getName(), st.getName());
+			assertEquals(t.getNamespace(), st.getNamespace());
+			assertEquals(t.getDefinition(), st.getDefinition());
+			assertEquals(t.isObsolete(), st.isObsolete());
+			assertEquals(t.getReplacedBy(), st.getReplacedBy());
+			assertParentsEquals(t.getParents(), st.getParents());
+			assertParentsEquals(t.getRelatedClasses(), st.getRelatedClasses());
+			assertArrayEquals(t.getAlternatives(), st.getAlternatives());
+			assertArrayEquals(t.getEquivalents(), st.getEquivalents());
+			assertArrayEquals(t.getSubsets(), st.getSubsets());
+			assertArrayEquals(t.getIntersections(), st.getIntersections());
+			assertArrayEquals(t.getXrefs(), st.getXrefs());
+
+			Synonym [] synonyms = t.getSynonymsAsObj();
+			Synonym [] snapshotSynonyms = st.getSynonymsAsObj();
+			assertEquals(synonyms.length, snapshotSynonyms.length);
+			for (int i = 0; i < synonyms.length; i++)
+			{
+				assertEquals(synonyms[i].getSynonymLabel(), snapshotSynonyms[i].getSynonymLabel());
+				assertEquals(synonyms[i].is_exact(), snapshotSynonyms[i].is_exact());
+				assertEquals(synonyms[i].is_broad(), snapshotSynonyms[i].is_broad());
+				assertEquals(synonyms[i].is_narrow(), snapshotSynonyms[i].is_narrow());
+				assertEquals(synonyms[i].is_related(), snapshotSynonyms[i].is_related());
+			}
+		}
+
+		Ontology ontology = Ontology.create(terms);
+		Ontology snapshotOntology = Ontology.create(snapshotTerms);
+		assertEquals(ontology.getNumberOfTerms(), snapshotOntology.getNumberOfTerms());
+		assertEquals(ontology.getRootTerm().getID(), snapshotOntology.getRootTerm().getID());
+		for (Term t : terms)
+		{
+			if (t.isObsolete())
+				continue;
+			assertEquals(ontology.getTermParents(t.getID()), snapshotOntology.getTermParents(t.getID()));
+			assertEquals(ontology.getTermChildren(t.getID()), snapshotOntology.getTermChildren(t.getID()));
+		}
+	}
+
+	@Test
+	public void testAssociations() throws IOException, OBOParserException
+	{
+		TermContainer terms = parseTerms(OBO_FILE, 0);
+		AssociationParser ap = new AssociationParser(new OBOParserFileInput(ASSOCIATION_FILE), terms);
+
+		File file = tmpFolder.newFile();
+		Snapshot.writeAssociations(file, 42, ap.getAssociations(), ap.getSynonym2gene(), ap.getDbObject2gene());
+		AssociationContainer snapshotAssocs = Snapshot.readAssociations(file, 42);
+		AssociationContainer assocs = new AssociationContainer(ap.getAssociations(), ap.getSynonym2gene(), ap.getDbObject2gene());
+
+		assertNotNull(snapshotAssocs);
+		assertEquals(assocs.getAllAnnotatedGenes(), snapshotAssocs.getAllAnnotatedGenes());
+
+		for (Gene2Associations g2a : assocs)
+		{
+			Gene2Associations snapshotG2a = snapshotAssocs.get(g2a.name());
+			assertNotNull(snapshotG2a);
+			ArrayList<Association> list = new ArrayList<Association>();
+			for (Association a : g2a)
+				list.add(a);
+			ArrayList<Association> snapshotList = new ArrayList<Association>();
+			for (Association a : snapshotG2a)
+				snapshotList.add(a);
+			assertEquals(list.size(), snapshotList.size());
+			for (int i = 0; i < list.size(); i++)
+			{
+				Association a = list.get(i);
+				Association sa = snapshotList.get(i);
+				assertEquals(a.getDB_Object(), sa.getDB_Object());
+				assertEquals(a.getObjectSymbol(), sa.getObjectSymbol());
+				assertEquals(a.getSynonym(), sa.getSynonym());
+				assertEquals(a.getTermID(), sa.getTermID());
+				assertEquals(a.getEvidence(), sa.getEvidence());
+				assertEquals(a.getAspect(), sa.getAspect());
+				assertEquals(a.hasNotQualifier(), sa.hasNotQualifier());
+			}
+		}
+		assertEquals(87599, ap.getAssociations().size());
+
+		for (ByteString synonym : ap.getSynonym2gene().keySet())
+			assertTrue(snapshotAssocs.isSynonym(synonym));
+		for (ByteString dbObject : ap.getDbObject2gene().keySet())
+			assertTrue(snapshotAssocs.isObjectID(dbObject));
+	}
+
+	@Test
+	public void testKeyMismatch() throws IOException, OBOParserException
+	{
+		TermContainer terms = parseTerms(OBO_FILE, 0);
+
+		File file = tmpFolder.newFile();
+		Snapshot.writeTerms(file, 1, terms);
+		assertNull(Snapshot.readTerms(file, 2));
+		assertNull(Snapshot.readAssociations(file, 1));
+		assertNull(Snapshot.readTerms(new File(tmpFolder.getRoot(), "nonexistent"), 1));
+		assertNotNull(Snapshot.readTerms(file, 1));
+	}
+
+	@Test
+	public void testTruncated() throws IOException, OBOParserException
+	{
+		TermContainer terms = parseTerms(OBO_FILE, 0);
+
+		File file = tmpFolder.newFile();
+		Snapshot.writeTerms(file, 1, terms);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() / 2);
+		raf.close();
+
+		try
+		{
+			Snapshot.readTerms(file, 1);
+			fail();
+		} catch (IOException e)
+		{
+		}
+	}
+
+	private static void copy(String from, File to) throws IOException
+	{
+		InputStream in = new FileInputStream(from);
+		OutputStream out = new FileOutputStream(to);
+		byte [] buf = new byte[65536];
+		int read;
+		while ((read = in.read(buf)) > 0)
+			out.write(buf, 0, read);
+		in.close();
+		out.close();
+	}
+
+	@Test
+	public void testCache() throws IOException, OBOParserException
+	{
+		File obo = tmpFolder.newFile("test.obo");
+		PrintWriter out = new PrintWriter(obo);
+		out.println("format-version: 1.2");
+		out.println();
+		out.println("[Term]");
+		out.println("id: GO:0000001");
+		out.println("name: root");
+		out.close();
+
+		File assoc = tmpFolder.newFile("test.gaf");
+		out = new PrintWriter(assoc);
+		out.println("!gaf-version: 2.0");
+		out.println("!");
+		out.println("SGD\tS000000001\tGENE1\t\tGO:0000001\tPMID:1\tIDA\t\tP\t\tSYN1\tgene\ttaxon:4932\t20060101\tSGD\t\t");
+		out.println("SGD\tS000000002\tGENE2\t\tGO:0000001\tPMID:1\tIDA\t\tP\t\tSYN2\tgene\ttaxon:4932\t20060101\tSGD\t\t");
+		out.close();
+
+		File directory = tmpFolder.newFolder("snapshots");
+		SnapshotCache cache = new SnapshotCache(directory);
+
+		TermContainer terms = cache.getTerms(obo.getPath(), 0, null);
+		assertEquals(1, terms.termCount());
+		assertEquals(1, directory.listFiles().length);
+
+		AssociationContainer assocs = cache.getAssociations(obo.getPath(), assoc.getPath(), terms, null, null, null);
+		assertEquals(2, assocs.getAllAnnotatedGenes().size());
+		assertEquals(2, directory.listFiles().length);
+
+		/* Now from the snapshot */
+		terms = cache.getTerms(obo.getPath(), 0, null);
+		assertEquals(1, terms.termCount());
+		assocs = cache.getAssociations(obo.getPath(), assoc.getPath(), terms, null, null, null);
+		assertEquals(2, assocs.getAllAnnotatedGenes().size());
+
+		/* Restricting the names requires a new snapshot */
+		HashSet<ByteString> names = new HashSet<ByteString>();
+		names.add(new ByteString("GENE1"));
+		assocs = cache.getAssociations(obo.getPath(), assoc.getPath(), terms, names, null, null);
+		assertEquals(1, assocs.getAllAnnotatedGenes().size());
+		assertEquals(2, directory.listFiles().length);
+
+		/* The snapshot of a modified file is stale */
+		out = new PrintWriter(new FileOutputStream(obo, true));
+		out.println();
+		out.println("[Term]");
+		out.println("id: GO:0000002");
+		out.println("name: child");
+		out.println("is_a: GO:0000001");
+		out.close();
+
+		terms = cache.getTerms(obo.getPath(), 0, null);
+		assertEquals(2, terms.termCount());
+		assertEquals(new TermID("GO:0000001"), terms.get(new TermID("GO:0000002")).getParents()[0].termid);
+		assertEquals(2, directory.listFiles().length);
+
+		/* Also a new cache instance should read it */
+		terms = new SnapshotCache(directory).getTerms(obo.getPath(), 0, null);
+		assertEquals(2, terms.termCount());
+
+		/* A different file with the same content shares nothing */
+		File obo2 = tmpFolder.newFile("test2.obo");
+		copy(obo.getPath(), obo2);
+		terms = cache.getTerms(obo2.getPath(), 0, null);
+		assertEquals(2, terms.termCount());
+		assertEquals(3, directory.listFiles().length);
+	}
+}
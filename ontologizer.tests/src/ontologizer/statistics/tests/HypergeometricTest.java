@@ -3,6 +3,11 @@ package ontologizer.statistics.tests;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Random;
+
 import org.junit.Test;
 
 import ontologizer.statistics.Hypergeometric;
@@ -40,4 +45,147 @@ public class HypergeometricTest
 		// drawing more white than available in total
 		assertTrue(hyper.phyper(10,8,5,12,false) == 0);
 	}
+
+	/**
+	 * Multiplies the given value by the binomial coefficient of n and k,
+	 * or divides it by the coefficient.
+	 */
+	private static BigDecimal scaleByBinomial(BigDecimal value, int n, int k, boolean divide, MathContext mc)
+	{
+		k = Math.min(k, n - k);
+		for (int j = 1; j <= k; j += 2)
+		{
+			/* Two factors at once */
+			long num = n - k + j;
+			long den = j;
+			if (j < k)
+			{
+				num *= n - k + j + 1;
+				den *= j + 1;
+			}
+			if (divide)
+				value = value.multiply(BigDecimal.valueOf(den)).divide(BigDecimal.valueOf(num), mc);
+			else
+				value = value.multiply(BigDecimal.valueOf(num)).divide(BigDecimal.valueOf(den), mc);
+		}
+		return value;
+	}
+
+	/**
+	 * The upper tail calculated with 40 significant digits.
+	 */
+	private static double exactUpperTail(int n, int np, int k, int r)
+	{
+		if (k >= n) return 1.0;
+		if (r < 1) return 1.0;
+
+		int lo = Math.max(r, Math.max(0, k - (n - np)));
+		int hi = Math.min(k, np);
+		if (lo > hi) return 0;
+
+		/* The sum of the terms relative to the first one. Beyond the mode,
+		 * the ratio of consecutive terms decreases, so the summation can be
+		 * stopped once the terms are negligible */
+		MathContext mc = new MathContext(40);
+		BigDecimal relativeSum = BigDecimal.ONE;
+		BigDecimal t = BigDecimal.ONE;
+		BigDecimal negligible = new BigDecimal("1e-35");
+		for (int i = lo; i < hi; i++)
+		{
+			long a = (long)(np - i) * (k - i);
+			long b = (long)(i + 1) * (n - np - k + i + 1);
+			t = t.multiply(BigDecimal.valueOf(a)).divide(BigDecimal.valueOf(b), mc);
+			relativeSum = relativeSum.add(t, mc);
+			if (2 * a < b && t.compareTo(relativeSum.multiply(negligible)) < 0)
+				break;
+		}
+		BigDecimal firstTerm = scaleByBinomial(BigDecimal.ONE, np, lo, false, mc);
+		firstTerm = scaleByBinomial(firstTerm, n - np, k - lo, false, mc);
+		firstTerm = scaleByBinomial(firstTerm, n, k, true, mc);
+		return firstTerm.multiply(relativeSum, mc).doubleValue();
+	}
+
+	private static void assertRelativeEquals(double expected, double actual, double relativeError)
+	{
+		if (expected == actual) return;
+
+		/* Subnormal numbers don't have the full precision */
+		double tolerance = Math.max(relativeError * Math.abs(expected), Double.MIN_NORMAL);
+		assertTrue("Expected " + expected + " but got " + actual, Math.abs(expected - actual) <= tolerance);
+	}
+
+	@Test
+	public void testPhypergeometric()
+	{
+		Random rnd = new Random(1);
+		for (int i = 0; i < 2000; i++)
+		{
+			int n = 2 + rnd.nextInt(i < 1000 ? 100 : 20000);
+			int np = rnd.nextInt(n + 1);
+			int k = rnd.nextInt(n);
+			int r = rnd.nextInt(Math.min(k, np) + 2);
+
+			double expected = exactUpperTail(n, np, k, r);
+			assertRelativeEquals(expected, hyper.phypergeometric(n, np, k, r), 1e-12);
+			assertRelativeEquals(expected, hyper.phypergeometric(n, (double)np / n, k, r), 1e-12);
+		}
+	}
+
+	@Test
+	public void testPhypergeometricLargePopulations()
+	{
+		Random rnd = new Random(2);
+		for (int i = 0; i < 40; i++)
+		{
+			int n = 20000 - rnd.nextInt(5000);
+			int np = 1 + rnd.nextInt(i < 20 ? 500 : n / 2);
+			int k = 1 + rnd.nextInt(i < 20 ? 2000 : n / 2);
+			int mode = (int)((long)k * np / n);
+			int r = Math.max(1, mode + rnd.nextInt(Math.max(1, Math.min(k, np) - mode + 1)));
+
+			double expected = exactUpperTail(n, np, k, r);
+			if (expected < 1e-250) continue;
+
+			assertRelativeEquals(expected, hyper.phypergeometric(n, np, k, r), 1e-12);
+
+			/* Otherwise phyper() calculates the complement of the lower tail */
+			if (r - 1 >= Math.min(k, np) / 2)
+				assertRelativeEquals(expected, hyper.phyper(r - 1, n, np, k, false), 1e-12);
+		}
+		assertRelativeEquals(exactUpperTail(20000, 300, 6000, 100), hyper.phypergeometric(20000, 300, 6000, 100), 1e-12);
+		assertRelativeEquals(exactUpperTail(20000, 10000, 10000, 5000), hyper.phypergeometric(20000, 10000, 10000, 5000), 1e-12);
+	}
+
+	@Test
+	public void testPhypergeometricBatch()
+	{
+		int [] n = new int[]{6000, 6000, 100, 10};
+		int [] np = new int[]{100, 5, 50, 10};
+		int [] k = new int[]{300, 300, 20, 5};
+		int [] r = new int[]{20, 1, 10, 5};
+		double [] result = new double[n.length];
+
+		hyper.phypergeometric(n, np, k, r, result);
+		for (int i = 0; i < n.length; i++)
+			assertRelativeEquals(exactUpperTail(n[i], np[i], k[i], r[i]), result[i], 1e-12);
+		assertEquals(1.0, result[3], 1e-12);
+	}
+
+	@Test
+	public void testLogfact()
+	{
+		assertEquals(0, hyper.logfact(0), 0.0);
+		assertEquals(0, hyper.logfact(1), 0.0);
+
+		BigInteger factorial = BigInteger.ONE;
+		for (int i = 2; i < 5000; i++)
+		{
+			factorial = factorial.multiply(BigInteger.valueOf(i));
+
+			/* log(f) = log(f / 2^b) + b log(2), f / 2^b is exact enough as double */
+			int b = Math.max(0, factorial.bitLength() - 60);
+			double expected = Math.log(factorial.shiftRight(b).doubleValue()) + b * Math.log(2);
+			assertRelativeEquals(expected, hyper.logfact(i), 1e-14);
+		}
+	}
 }
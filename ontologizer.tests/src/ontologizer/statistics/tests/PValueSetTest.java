@@ -0,0 +1,141 @@
+package ontologizer.statistics.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ontologizer.calculation.AbstractGOTermProperties;
+import ontologizer.calculation.EnrichedGOTermsResult;
+import ontologizer.calculation.ICalculation;
+import ontologizer.calculation.ParentChildCalculation;
+import ontologizer.calculation.SingleCalculationSetting;
+import ontologizer.calculation.TermForTermCalculation;
+import ontologizer.go.TermID;
+import ontologizer.internal.InternalOntology;
+import ontologizer.statistics.AbstractTestCorrection;
+import ontologizer.statistics.IPValueCalculation;
+import ontologizer.statistics.None;
+import ontologizer.statistics.PValue;
+import ontologizer.statistics.PValueSet;
+
+public class PValueSetTest
+{
+	@Test
+	public void testConversion()
+	{
+		Random rnd = new Random(1);
+		PValue [] p = new PValue[100];
+		for (int i = 0; i < p.length; i++)
+		{
+			p[i] = new PValue();
+			p[i].ignoreAtMTC = rnd.nextBoolean();
+			p[i].p = p[i].ignoreAtMTC ? 1.0 : rnd.nextDouble();
+		}
+
+		PValueSet set = new PValueSet(p);
+		assertEquals(100, set.size());
+
+		double [] dense = new double[100];
+		set.fill(dense);
+		PValue [] q = set.toPValues();
+		for (int i = 0; i < p.length; i++)
+		{
+			assertEquals(p[i].p, dense[i], 0);
+			assertEquals(p[i].p, q[i].p, 0);
+			assertEquals(p[i].ignoreAtMTC, q[i].ignoreAtMTC);
+		}
+
+		PValueSet sorted = set.sorted();
+		assertEquals(set.getNumberOfEntries(), sorted.getNumberOfEntries());
+		for (int i = 1; i < sorted.getNumberOfEntries(); i++)
+		{
+			assertEquals(i, sorted.getIndex(i));
+			assertTrue(sorted.getValue(i - 1) <= sorted.getValue(i));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOrder()
+	{
+		PValueSet set = new PValueSet(10);
+		set.add(5, 0.1);
+		set.add(3, 0.1);
+	}
+
+	/**
+	 * A correction that captures the raw p values and a random set.
+	 */
+	private static class Capture extends AbstractTestCorrection
+	{
+		public long seed;
+		public PValue [] raw;
+		public PValueSet random;
+
+		public PValue[] adjustPValues(IPValueCalculation pValueCalculation)
+		{
+			raw = pValueCalculation.calculateRawPValues();
+			random = pValueCalculation.calculateRandomPValueSet(new Random(seed));
+			return raw;
+		}
+
+		public String getDescription()
+		{
+			return "";
+		}
+
+		public String getName()
+		{
+			return "Capture";
+		}
+	}
+
+	/**
+	 * Checks that the random p value set of the given calculation equals
+	 * the p values obtained from the calculation of the same random study.
+	 */
+	private static void checkRandomPValueSet(ICalculation calculation)
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		HashMap<TermID,Double> wantedActiveTerms = new HashMap<TermID,Double>();
+		wantedActiveTerms.put(new TermID("GO:0000004"),0.0);
+		SingleCalculationSetting scs = SingleCalculationSetting.create(new Random(1), wantedActiveTerms, 0.1, internalOntology.graph, internalOntology.assoc);
+
+		for (long seed = 0; seed < 10; seed++)
+		{
+			Capture capture = new Capture();
+			capture.seed = seed;
+			calculation.calculateStudySet(internalOntology.graph, internalOntology.assoc, scs.pop, scs.study, capture);
+
+			HashMap<TermID,Double> actual = new HashMap<TermID,Double>();
+			for (int i = 0; i < capture.random.getNumberOfEntries(); i++)
+				actual.put(((AbstractGOTermProperties)capture.raw[capture.random.getIndex(i)]).goTerm.getID(), capture.random.getValue(i));
+			assertEquals(capture.raw.length, capture.random.size());
+
+			EnrichedGOTermsResult r = calculation.calculateStudySet(internalOntology.graph, internalOntology.assoc, scs.pop,
+					scs.pop.generateRandomStudySet(scs.study.getGeneCount(), new Random(seed)), new None());
+			HashMap<TermID,Double> expected = new HashMap<TermID,Double>();
+			for (AbstractGOTermProperties prop : r)
+			{
+				if (!prop.ignoreAtMTC)
+					expected.put(prop.goTerm.getID(), prop.p);
+			}
+			assertEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void testTermForTerm()
+	{
+		checkRandomPValueSet(new TermForTermCalculation());
+	}
+
+	@Test
+	public void testParentChild()
+	{
+		checkRandomPValueSet(new ParentChildCalculation());
+	}
+}
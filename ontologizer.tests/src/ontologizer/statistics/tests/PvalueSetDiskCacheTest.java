@@ -0,0 +1,170 @@
+package ontologizer.statistics.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ontologizer.calculation.AbstractGOTermProperties;
+import ontologizer.calculation.EnrichedGOTermsResult;
+import ontologizer.calculation.SingleCalculationSetting;
+import ontologizer.calculation.TermForTermCalculation;
+import ontologizer.go.TermID;
+import ontologizer.internal.InternalOntology;
+import ontologizer.statistics.PValue;
+import ontologizer.statistics.PvalueSetDiskCache;
+import ontologizer.statistics.PvalueSetStore;
+import ontologizer.statistics.WestfallYoungStepDownCached;
+
+public class PvalueSetDiskCacheTest
+{
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static PvalueSetStore createStore(Random rnd, int numberOfSets, int setSize)
+	{
+		PvalueSetStore store = new PvalueSetStore(numberOfSets, setSize);
+		for (int i = 0; i < numberOfSets; i++)
+		{
+			PValue [] p = new PValue[setSize];
+			for (int j = 0; j < setSize; j++)
+			{
+				p[j] = new PValue();
+				p[j].p = rnd.nextDouble();
+				p[j].ignoreAtMTC = rnd.nextInt(3) == 0;
+			}
+			store.add(p);
+		}
+		return store;
+	}
+
+	private static void assertStoreEquals(PvalueSetStore expected, PvalueSetStore actual)
+	{
+		assertEquals(expected.getSetSize(), actual.getSetSize());
+		assertEquals(expected.getNumberOfSets(), actual.getNumberOfSets());
+
+		Iterator<PValue[]> iter = actual.iterator();
+		for (PValue [] e : expected)
+		{
+			PValue [] a = iter.next();
+			for (int i = 0; i < e.length; i++)
+			{
+				assertEquals(e[i].ignoreAtMTC, a[i].ignoreAtMTC);
+				assertEquals(e[i].p, a[i].p, 0);
+			}
+		}
+	}
+
+	@Test
+	public void testStoreAndLoad() throws IOException
+	{
+		PvalueSetDiskCache cache = new PvalueSetDiskCache(tmp.newFolder("cache"), PvalueSetDiskCache.DEFAULT_MAX_BYTES);
+		PvalueSetStore store = createStore(new Random(1), 50, 300);
+		String key = PvalueSetDiskCache.key(0x1234, "Term-For-Term", "Westfall-Young-Step-Down-Cached", 40, 0, 50);
+
+		assertNull(cache.load(key));
+		cache.store(key, store);
+		assertStoreEquals(store, cache.load(key));
+
+		/* Any other key must miss */
+		assertNull(cache.load(PvalueSetDiskCache.key(0x1234, "Term-For-Term", "Westfall-Young-Step-Down-Cached", 41, 0, 50)));
+		assertNull(cache.load(PvalueSetDiskCache.key(0x1235, "Term-For-Term", "Westfall-Young-Step-Down-Cached", 40, 0, 50)));
+	}
+
+	@Test
+	public void testCorrupted() throws IOException
+	{
+		File dir = tmp.newFolder("cache");
+		PvalueSetDiskCache cache = new PvalueSetDiskCache(dir, PvalueSetDiskCache.DEFAULT_MAX_BYTES);
+		String key = PvalueSetDiskCache.key(1, "a", "b", 10, 0, 20);
+		cache.store(key, createStore(new Random(2), 20, 100));
+
+		File [] files = dir.listFiles();
+		assertEquals(1, files.length);
+		RandomAccessFile raf = new RandomAccessFile(files[0], "rw");
+		raf.seek(raf.length() / 2);
+		int b = raf.read();
+		raf.seek(raf.length() / 2);
+		raf.write(b ^ 0xff);
+		raf.close();
+
+		assertNull(cache.load(key));
+		assertEquals(0, dir.listFiles().length);
+	}
+
+	@Test
+	public void testEviction() throws IOException
+	{
+		File dir = tmp.newFolder("cache");
+		Random rnd = new Random(3);
+
+		/* Determine the size of a single store */
+		PvalueSetDiskCache cache = new PvalueSetDiskCache(dir, Long.MAX_VALUE);
+		cache.store("size", createStore(rnd, 20, 100));
+		long size = dir.listFiles()[0].length();
+		dir.listFiles()[0].delete();
+
+		cache = new PvalueSetDiskCache(dir, size * 3 + size / 2);
+		long time = System.currentTimeMillis() - 100000;
+		for (int i = 0; i < 3; i++)
+		{
+			cache.store("key" + i, createStore(rnd, 20, 100));
+			for (File f : dir.listFiles())
+			{
+				if (f.lastModified() > time)
+					f.setLastModified(time + i * 10000);
+			}
+		}
+		assertEquals(3, dir.listFiles().length);
+
+		/* Use the first one, such that the second one is the least recently used */
+		assertNotNull(cache.load("key0"));
+		cache.store("key3", createStore(rnd, 20, 100));
+		assertEquals(3, dir.listFiles().length);
+		assertNotNull(cache.load("key0"));
+		assertNull(cache.load("key1"));
+		assertNotNull(cache.load("key2"));
+		assertNotNull(cache.load("key3"));
+	}
+
+	@Test
+	public void testWestfallYoung() throws IOException
+	{
+		InternalOntology internalOntology = new InternalOntology();
+		HashMap<TermID,Double> wantedActiveTerms = new HashMap<TermID,Double>();
+		wantedActiveTerms.put(new TermID("GO:0000004"),0.0);
+		SingleCalculationSetting scs = SingleCalculationSetting.create(new Random(1), wantedActiveTerms, 0.1, internalOntology.graph, internalOntology.assoc);
+
+		File dir = tmp.newFolder("cache");
+		ArrayList<HashMap<TermID,Double>> adjusted = new ArrayList<HashMap<TermID,Double>>();
+		for (int i = 0; i < 2; i++)
+		{
+			/* Different seeds, but the second run uses the samples of the first one */
+			WestfallYoungStepDownCached wy = new WestfallYoungStepDownCached();
+			wy.setNumberOfResamplingSteps(100);
+			wy.setSeed(i);
+			wy.setDiskCache(new PvalueSetDiskCache(dir, PvalueSetDiskCache.DEFAULT_MAX_BYTES), 42, "Term-For-Term");
+
+			EnrichedGOTermsResult r = new TermForTermCalculation().calculateStudySet(internalOntology.graph, internalOntology.assoc, scs.pop, scs.study, wy);
+			HashMap<TermID,Double> adjustedOfRun = new HashMap<TermID,Double>();
+			for (AbstractGOTermProperties prop : r)
+				adjustedOfRun.put(prop.goTerm.getID(), prop.p_adjusted);
+			adjusted.add(adjustedOfRun);
+		}
+		assertEquals(1, dir.listFiles().length);
+		assertTrue(adjusted.get(0).size() > 0);
+		assertEquals(adjusted.get(0), adjusted.get(1));
+	}
+}
@@ -0,0 +1,110 @@
+package ontologizer.statistics.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ontologizer.calculation.AbstractGOTermProperties;
+import ontologizer.calculation.EnrichedGOTermsResult;
+import ontologizer.calculation.SingleCalculationSetting;
+import ontologizer.calculation.TermForTermCalculation;
+import ontologizer.go.TermID;
+import ontologizer.internal.InternalOntology;
+import ontologizer.statistics.AbstractResamplingTestCorrection;
+import ontologizer.statistics.FDRBySteffenCached;
+import ontologizer.statistics.IResamplingProgress;
+import ontologizer.statistics.WestfallYoungStepDownCached;
+
+public class ResamplingTest
+{
+	private static InternalOntology internalOntology = new InternalOntology();
+	private static SingleCalculationSetting scs;
+
+	static
+	{
+		HashMap<TermID,Double> wantedActiveTerms = new HashMap<TermID,Double>();
+		wantedActiveTerms.put(new TermID("GO:0000004"),0.0);
+		scs = SingleCalculationSetting.create(new Random(1), wantedActiveTerms, 0.1, internalOntology.graph, internalOntology.assoc);
+	}
+
+	private static HashMap<TermID,Double> adjusted(AbstractResamplingTestCorrection correction)
+	{
+		TermForTermCalculation tft = new TermForTermCalculation();
+		EnrichedGOTermsResult r = tft.calculateStudySet(internalOntology.graph, internalOntology.assoc, scs.pop, scs.study, correction);
+
+		HashMap<TermID,Double> adjusted = new HashMap<TermID,Double>();
+		for (AbstractGOTermProperties prop : r)
+		{
+			assertTrue(prop.p_adjusted >= 0);
+			adjusted.put(prop.goTerm.getID(), prop.p_adjusted);
+		}
+		return adjusted;
+	}
+
+	private static AbstractResamplingTestCorrection create(boolean wy, int threads, long seed)
+	{
+		AbstractResamplingTestCorrection correction = wy ? new WestfallYoungStepDownCached() : new FDRBySteffenCached();
+		correction.setNumberOfResamplingSteps(200);
+		correction.setNumberOfThreads(threads);
+		correction.setSeed(seed);
+		return correction;
+	}
+
+	@Test
+	public void testReproducible()
+	{
+		for (boolean wy : new boolean[]{true,false})
+		{
+			assertEquals(adjusted(create(wy, 1, 3)), adjusted(create(wy, 1, 3)));
+			assertEquals(adjusted(create(wy, 4, 3)), adjusted(create(wy, 4, 3)));
+		}
+	}
+
+	@Test
+	public void testThreads()
+	{
+		for (boolean wy : new boolean[]{true,false})
+		{
+			HashMap<TermID,Double> single = adjusted(create(wy, 1, 5));
+			HashMap<TermID,Double> multi = adjusted(create(wy, 4, 5));
+			assertEquals(single.keySet(), multi.keySet());
+
+			/* The over represented term must be significant regardless of the random streams */
+			TermID active = new TermID("GO:0000004");
+			assertTrue(single.get(active) < 0.05);
+			assertTrue(multi.get(active) < 0.05);
+		}
+	}
+
+	@Test
+	public void testProgress()
+	{
+		final int [] max = new int[1];
+		final int [] updates = new int[1];
+		final int [] last = new int[1];
+
+		AbstractResamplingTestCorrection correction = create(true, 3, 7);
+		correction.setProgressUpdate(new IResamplingProgress()
+		{
+			public void init(int m)
+			{
+				max[0] = m;
+			}
+
+			public void update(int current)
+			{
+				updates[0]++;
+				last[0] = Math.max(last[0], current);
+			}
+		});
+		adjusted(correction);
+
+		assertEquals(200, max[0]);
+		assertEquals(200, updates[0]);
+		assertEquals(200, last[0]);
+	}
+}
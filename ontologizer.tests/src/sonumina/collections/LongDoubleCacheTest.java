@@ -0,0 +1,85 @@
+package sonumina.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class LongDoubleCacheTest
+{
+	@Test
+	public void testGetAndPut()
+	{
+		LongDoubleCache cache = new LongDoubleCache(1000, 1);
+		assertTrue(Double.isNaN(cache.get(1)));
+
+		for (long i = 0; i < 100; i++)
+			cache.put(i << 32 | i, i * 0.5);
+		for (long i = 0; i < 100; i++)
+			assertEquals(i * 0.5, cache.get(i << 32 | i), 0);
+		assertEquals(100, cache.size());
+
+		cache.put(0, 42);
+		assertEquals(42, cache.get(0), 0);
+		assertEquals(100, cache.size());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertTrue(Double.isNaN(cache.get(0)));
+	}
+
+	@Test
+	public void testBounded()
+	{
+		LongDoubleCache cache = new LongDoubleCache(1000, 4);
+		for (long i = 0; i < 100000; i++)
+			cache.put(i, i);
+		assertTrue(cache.size() <= cache.getCapacity());
+
+		/* The most recently put entries are still there */
+		for (long i = 99990; i < 100000; i++)
+			assertEquals(i, cache.get(i), 0);
+
+		/* Entries that are not evicted have their proper value */
+		for (long i = 0; i < 100000; i++)
+		{
+			double v = cache.get(i);
+			assertTrue(Double.isNaN(v) || v == i);
+		}
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException
+	{
+		final LongDoubleCache cache = new LongDoubleCache(1 << 12, 8);
+		final AtomicInteger wrong = new AtomicInteger();
+		Thread [] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++)
+		{
+			final int seed = t;
+			threads[t] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					for (long i = 0; i < 200000; i++)
+					{
+						long key = (i * 31 + seed) % 10000;
+						double v = cache.get(key);
+						if (Double.isNaN(v))
+							cache.put(key, Math.sqrt(key));
+						else if (v != Math.sqrt(key))
+							wrong.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		assertEquals(0, wrong.get());
+		assertTrue(cache.size() <= cache.getCapacity());
+	}
+}
@@ -0,0 +1,110 @@
+package sonumina.math.graph;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ReachabilityIndexTest
+{
+	/**
+	 * Creates a random directed acyclic graph in which the vertices are
+	 * added in random order.
+	 */
+	private static DirectedGraph<Integer> createRandomDAG(Random rnd, int numberOfVertices, int maxParents)
+	{
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < numberOfVertices; i++)
+			order.add(i);
+		Collections.shuffle(order, rnd);
+
+		DirectedGraph<Integer> graph = new DirectedGraph<Integer>();
+		for (Integer v : order)
+			graph.addVertex(v);
+
+		/* Edges always go from a smaller to a larger vertex */
+		for (int v = 1; v < numberOfVertices; v++)
+		{
+			int numberOfParents = 1 + rnd.nextInt(maxParents);
+			for (int i = 0; i < numberOfParents; i++)
+			{
+				int p = rnd.nextInt(v);
+				if (!graph.hasEdge(p, v))
+					graph.addEdge(new Edge<Integer>(p, v));
+			}
+		}
+		return graph;
+	}
+
+	@Test
+	public void testRandomDAGs()
+	{
+		Random rnd = new Random(1);
+
+		for (int run = 0; run < 20; run++)
+		{
+			DirectedGraph<Integer> graph = createRandomDAG(rnd, 1 + rnd.nextInt(200), 1 + rnd.nextInt(4));
+			SlimDirectedGraphView<Integer> full = SlimDirectedGraphView.create(graph);
+			SlimDirectedGraphView<Integer> compact = SlimDirectedGraphView.createCompact(graph);
+
+			assertNull(full.getReachabilityIndex());
+			assertNotNull(compact.getReachabilityIndex());
+			assertNull(compact.vertexAncestors);
+			assertNull(compact.vertexDescendants);
+
+			int n = full.getNumberOfVertices();
+			assertEquals(n, compact.getNumberOfVertices());
+
+			for (int i = 0; i < n; i++)
+			{
+				assertEquals(full.getVertex(i), compact.getVertex(i));
+				assertArrayEquals(full.vertexAncestors[i], compact.getAncestorIndices(i));
+				assertArrayEquals(full.vertexDescendants[i], compact.getDescendantIndices(i));
+				assertEquals(full.vertexDescendants[i].length, compact.getReachabilityIndex().getNumberOfDescendants(i));
+
+				for (int j = 0; j < n; j++)
+				{
+					assertEquals(full.isAncestor(i, j), compact.isAncestor(i, j));
+					assertEquals(full.isDescendant(i, j), compact.isDescendant(i, j));
+				}
+			}
+
+			for (Integer v : graph)
+			{
+				assertEquals(full.getAncestors(v), compact.getAncestors(v));
+				assertEquals(full.getDescendants(v), compact.getDescendants(v));
+			}
+		}
+	}
+
+	@Test
+	public void testCycle()
+	{
+		DirectedGraph<Integer> graph = new DirectedGraph<Integer>();
+		for (int i = 0; i < 4; i++)
+			graph.addVertex(i);
+		graph.addEdge(new Edge<Integer>(0, 1));
+		graph.addEdge(new Edge<Integer>(1, 2));
+		graph.addEdge(new Edge<Integer>(2, 3));
+		graph.addEdge(new Edge<Integer>(3, 1));
+
+		/* The compact view falls back to the full arrays */
+		SlimDirectedGraphView<Integer> compact = SlimDirectedGraphView.createCompact(graph);
+		assertNull(compact.getReachabilityIndex());
+		assertArrayEquals(new int[]{0, 1, 2, 3}, compact.getDescendantIndices(0));
+		assertArrayEquals(new int[]{1, 2, 3}, compact.getDescendantIndices(3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCycleIndex()
+	{
+		new ReachabilityIndex(new int[][]{{1}, {0}}, new int[][]{{1}, {0}});
+	}
+}
@@ -2,27 +2,42 @@ package ontologizer;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 
 import ontologizer.association.AssociationContainer;
 import ontologizer.association.AssociationParser;
+import ontologizer.association.Gene2Associations;
 import ontologizer.association.IAssociationParserProgress;
 import ontologizer.calculation.CalculationRegistry;
 import ontologizer.calculation.EnrichedGOTermsResult;
 import ontologizer.calculation.ICalculation;
 import ontologizer.calculation.b2g.B2GParam;
 import ontologizer.calculation.b2g.Bayes2GOCalculation;
+import ontologizer.enumeration.GOTermEnumerator;
 import ontologizer.filter.GeneFilter;
 import ontologizer.go.Ontology;
+import ontologizer.go.MappedFileInput;
 import ontologizer.go.OBOParser;
 import ontologizer.go.OBOParserException;
-import ontologizer.go.OBOParserFileInput;
+import ontologizer.go.Term;
 import ontologizer.go.TermContainer;
+import ontologizer.go.TermID;
 import ontologizer.set.PopulationSet;
 import ontologizer.set.StudySet;
 import ontologizer.set.StudySetFactory;
 import ontologizer.set.StudySetList;
+import ontologizer.snapshot.SnapshotCache;
 import ontologizer.statistics.AbstractTestCorrection;
+import ontologizer.statistics.AbstractResamplingTestCorrection;
 import ontologizer.statistics.IResampling;
+import ontologizer.statistics.PvalueSetDiskCache;
 import ontologizer.statistics.TestCorrectionRegistry;
 import ontologizer.types.ByteString;
 
@@ -77,6 +92,21 @@ public class OntologizerCore
 		 */
 		public int sizeTolerance;
 
+		/** Number of threads used by resampling based mtc procedures, 0 means default */
+		public int resamplingThreads;
+
+		/** Seed of the random streams of resampling based mtc procedures, might be null */
+		public Long resamplingSeed;
+
+		/** Directory in which sampled p values of resampling based mtc procedures are kept, might be null */
+		public String resamplingCacheDirectory;
+
+		/** Maximal number of bytes occupied by the sampled p values, 0 means default */
+		public long resamplingCacheSize;
+
+		/** Number of mcmc chains run by the MGSA calculation, 0 means default */
+		public int mcmcChains;
+
 		/** Minimum number of association to be displayed */
 		public int minAssociationCount;
 
@@ -88,8 +118,33 @@ public class OntologizerCore
 
 		/** Specifies the filter file */
 		public String filterFile;
+
+		/** Directory in which snapshots of the parsed files are kept, might be null */
+		public String snapshotDirectory;
+
+		/** Number of study sets that are calculated in parallel, 0 means one at a time */
+		public int studyThreads;
+
+		/** Number of threads used for parsing the association file, 0 means one */
+		public int associationThreads;
 	};
 
+	/**
+	 * Receives the results of the study sets.
+	 *
+	 * @author Sebastian Bauer
+	 */
+	public static interface IStudySetResultReceiver
+	{
+		/**
+		 * Called for each result. Calls are never concurrent.
+		 *
+		 * @param result
+		 * @throws IOException
+		 */
+		public void receive(EnrichedGOTermsResult result) throws IOException;
+	}
+
 	/** Contains all available GOTerms */
 	private TermContainer goTerms;
 
@@ -115,6 +170,9 @@ public class OntologizerCore
 	 * analysis based on the scheme in GeneMerge. */
 	private PopulationSet populationSet;
 
+	/** The number of study sets that are calculated in parallel */
+	private int numberOfStudyThreads = 1;
+
 	/**
 	 * Construct the object.
 	 *
@@ -135,8 +193,13 @@ public class OntologizerCore
 			b2g.setBeta(B2GParam.Type.MCMC);
 			b2g.setExpectedNumber(B2GParam.Type.MCMC);
 			b2g.setMcmcSteps(1000000);
+			if (args.mcmcChains > 0)
+				b2g.setNumberOfChains(args.mcmcChains);
 		}
 
+		if (args.studyThreads > 0)
+			numberOfStudyThreads = args.studyThreads;
+
 		/* Set the desired test correction or set the default */
 		testCorrection = TestCorrectionRegistry.getCorrectionByName(args.correctionName);
 		if (testCorrection == null)
@@ -153,15 +216,40 @@ public class OntologizerCore
 				resampling.setSizeTolerance(args.sizeTolerance);
 			}
 		}
+		if (testCorrection instanceof AbstractResamplingTestCorrection) {
+			AbstractResamplingTestCorrection resampling = (AbstractResamplingTestCorrection) testCorrection;
+			if (args.resamplingThreads > 0)
+				resampling.setNumberOfThreads(args.resamplingThreads);
+			if (args.resamplingSeed != null)
+				resampling.setSeed(args.resamplingSeed);
+		}
 
 		/* Parse the gene_ontology.obo file to get information about all terms.
 		 * Transfer the information to a TermContainer object.
 		 */
 		System.err.println("Parse obo file \"" + args.goTermsOBOFile + "\"");
 
-		OBOParser oboParser = new OBOParser(new OBOParserFileInput(args.goTermsOBOFile));
-		System.err.println(oboParser.doParse());
-		goTerms = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), oboParser.getDataVersion());
+		SnapshotCache snapshotCache = null;
+		if (args.snapshotDirectory != null)
+			snapshotCache = new SnapshotCache(new File(args.snapshotDirectory));
+
+		if (snapshotCache != null)
+		{
+			goTerms = snapshotCache.getTerms(args.goTermsOBOFile, 0, null);
+		} else
+		{
+			MappedFileInput input = new MappedFileInput(args.goTermsOBOFile);
+			OBOParser oboParser;
+			try
+			{
+				oboParser = new OBOParser(input);
+				System.err.println(oboParser.doParse());
+			} finally
+			{
+				input.close();
+			}
+			goTerms = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), oboParser.getDataVersion());
+		}
 		System.err.println("Building graph");
 		goGraph = Ontology.create(goTerms);
 
@@ -204,31 +292,47 @@ public class OntologizerCore
 		/* Parse the GO association file containing GO annotations for genes or gene
 		 * products. Results are placed in associationparser.
 		 */
-		AssociationParser ap = new AssociationParser(new OBOParserFileInput(args.associationFile),goTerms,populationSet.getAllGeneNames(),
-				new IAssociationParserProgress() {
-					private int max;
-					private long startTime;
+		IAssociationParserProgress assocProgress = new IAssociationParserProgress() {
+			private int max;
+			private long startTime;
+
+			public void init(int max)
+			{
+				this.max = max;
+				this.startTime = System.currentTimeMillis();
+			}
 
-					public void init(int max)
-					{
-						this.max = max;
-						this.startTime = System.currentTimeMillis();
-					}
+			public void update(int current)
+			{
+				long currentTime = System.currentTimeMillis();
 
-					public void update(int current)
-					{
-						long currentTime = System.currentTimeMillis();
+				if (currentTime - startTime > 20000)
+				{
+					/* Show progress */
+					System.err.print("\033[1A\033[K");
+					System.err.println("Reading annotation file: " + String.format("%.1f%%",current / (double)max * 100));
+				}
+			}
 
-						if (currentTime - startTime > 20000)
-						{
-							/* Show progress */
-							System.err.print("\033[1A\033[K");
-							System.err.println("Reading annotation file: " + String.format("%.1f%%",current / (double)max * 100));
-						}
-					}
+		};
 
-				});
-		goAssociations = new AssociationContainer(ap.getAssociations(), ap.getSynonym2gene(), ap.getDbObject2gene());
+		int associationThreads = args.associationThreads > 0 ? args.associationThreads : 1;
+		if (snapshotCache != null)
+		{
+			goAssociations = snapshotCache.getAssociations(args.goTermsOBOFile, args.associationFile, goTerms, populationSet.getAllGeneNames(), null, assocProgress, associationThreads);
+		} else
+		{
+			MappedFileInput input = new MappedFileInput(args.associationFile);
+			AssociationParser ap;
+			try
+			{
+				ap = new AssociationParser(input,goTerms,populationSet.getAllGeneNames(),null,assocProgress,associationThreads);
+			} finally
+			{
+				input.close();
+			}
+			goAssociations = new AssociationContainer(ap.getAssociations(), ap.getSynonym2gene(), ap.getDbObject2gene());
+		}
 
 		/* Filter out duplicate genes (i.e. different gene names refering
 		 * to the same gene) */
@@ -245,6 +349,60 @@ public class OntologizerCore
 			/* Filter out genes within the population which doesn't have an annotation */
 			populationSet.filterOutAssociationlessGenes(goAssociations);
 		}
+
+		/* Keep sampled p values across runs if requested */
+		if (args.resamplingCacheDirectory != null && testCorrection instanceof AbstractResamplingTestCorrection)
+		{
+			long maxBytes = args.resamplingCacheSize > 0 ? args.resamplingCacheSize : PvalueSetDiskCache.DEFAULT_MAX_BYTES;
+			PvalueSetDiskCache diskCache = new PvalueSetDiskCache(new File(args.resamplingCacheDirectory), maxBytes);
+			((AbstractResamplingTestCorrection)testCorrection).setDiskCache(diskCache, checksum(goGraph, goAssociations, populationSet), calculation.getName());
+		}
+	}
+
+	/**
+	 * Returns a checksum of the given data, i.e., of the structure of
+	 * the ontology and of the annotations of the genes of the population.
+	 *
+	 * @param graph
+	 * @param assoc
+	 * @param population
+	 * @return the checksum
+	 */
+	private static long checksum(Ontology graph, AssociationContainer assoc, PopulationSet population)
+	{
+		ArrayList<String> strings = new ArrayList<String>();
+		for (Term term : graph)
+		{
+			ArrayList<String> parents = new ArrayList<String>();
+			for (TermID parent : graph.getTermParents(term.getID()))
+				parents.add(parent.toString());
+			Collections.sort(parents);
+			strings.add(term.getIDAsString() + parents);
+		}
+		for (ByteString gene : population)
+		{
+			ArrayList<String> terms = new ArrayList<String>();
+			Gene2Associations g2a = assoc.get(gene);
+			if (g2a != null)
+			{
+				for (TermID tid : g2a.getAssociations())
+					terms.add(tid.toString());
+			}
+			Collections.sort(terms);
+			strings.add(gene.toString() + terms);
+		}
+		Collections.sort(strings);
+
+		CRC32 crc = new CRC32();
+		long hash = strings.size();
+		for (String str : strings)
+		{
+			byte [] bytes = str.getBytes();
+			crc.update(bytes, 0, bytes.length);
+			crc.update(0);
+			hash = hash * 0x9e3779b97f4a7c15L + str.hashCode();
+		}
+		return (crc.getValue() << 32) ^ hash;
 	}
 
 	/**
@@ -261,6 +419,19 @@ public class OntologizerCore
 		return studySetResultList.iterator();
 	}
 
+	/**
+	 * Sets the number of study sets that are calculated in parallel by
+	 * calculate().
+	 *
+	 * @param threads
+	 */
+	public void setNumberOfStudyThreads(int threads)
+	{
+		if (threads < 1)
+			throw new IllegalArgumentException("The number of threads must be positive");
+		numberOfStudyThreads = threads;
+	}
+
 	/**
 	 * Perform the statistical calculation using the given calculation
 	 * procedure accumulation the results into the studySetResultList
@@ -270,21 +441,144 @@ public class OntologizerCore
 		assert(populationSet != null);
 		studySetResultList = new StudySetResultList();
 
-		for (StudySet studySet : studySetList)
+		try
 		{
-			studySetResultList.addStudySetResult(
-					calculation.calculateStudySet(goGraph,goAssociations,populationSet,studySet,testCorrection)
-					);
-
-			/* Reset the counter and enumerator items here. It is not necessarily
-			 * nice to place it here, but for the moment it's the easiest way
-			 */
-			studySet.resetCounterAndEnumerator();
+			calculate(new IStudySetResultReceiver()
+			{
+				public void receive(EnrichedGOTermsResult result)
+				{
+					studySetResultList.addStudySetResult(result);
+				}
+			}, true);
+		} catch (IOException e)
+		{
+			/* Not thrown by the receiver */
+			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Perform the statistical calculation of all study sets and pass each
+	 * result to the given receiver as soon as it is available. Up to the
+	 * configured number of study sets are calculated in parallel. The
+	 * graph, the associations and the population are shared by all
+	 * calculations. In order to bound the memory, the calculation of
+	 * further study sets is deferred while too many results are waiting
+	 * for being received.
+	 *
+	 * @param receiver the receiver of the results. It is always called
+	 *  from the calling thread.
+	 * @param ordered if true, the results are received in the order of
+	 *  the study sets. Otherwise, they are received in the order of their
+	 *  completion.
+	 * @throws IOException if thrown by the receiver, in which case pending
+	 *  calculations are cancelled.
+	 */
+	public void calculate(IStudySetResultReceiver receiver, boolean ordered) throws IOException
+	{
+		assert(populationSet != null);
+
+		preparePopulation();
+
+		if (numberOfStudyThreads == 1)
+		{
+			for (StudySet studySet : studySetList)
+				receiver.receive(calculateStudy(studySet));
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfStudyThreads);
+		CompletionService<EnrichedGOTermsResult> completionService = new ExecutorCompletionService<EnrichedGOTermsResult>(executor);
+		LinkedList<Future<EnrichedGOTermsResult>> pending = new LinkedList<Future<EnrichedGOTermsResult>>();
+		Iterator<StudySet> iter = studySetList.iterator();
+		int maxPending = 2 * numberOfStudyThreads;
+
+		try
+		{
+			while (true)
+			{
+				while (pending.size() < maxPending && iter.hasNext())
+				{
+					final StudySet studySet = iter.next();
+					Callable<EnrichedGOTermsResult> task = new Callable<EnrichedGOTermsResult>()
+					{
+						public EnrichedGOTermsResult call()
+						{
+							return calculateStudy(studySet);
+						}
+					};
+					if (ordered) pending.add(executor.submit(task));
+					else pending.add(completionService.submit(task));
+				}
+
+				if (pending.isEmpty())
+					break;
+
+				Future<EnrichedGOTermsResult> future;
+				if (ordered)
+				{
+					future = pending.removeFirst();
+				} else
+				{
+					future = completionService.take();
+					pending.remove(future);
+				}
+				receiver.receive(future.get());
+			}
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error)e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally
+		{
+			for (Future<EnrichedGOTermsResult> future : pending)
+				future.cancel(true);
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Calculates the given study set.
+	 *
+	 * @param studySet
+	 * @return the result
+	 */
+	private EnrichedGOTermsResult calculateStudy(StudySet studySet)
+	{
+		EnrichedGOTermsResult studySetResult = calculation.calculateStudySet(goGraph,goAssociations,populationSet,studySet,testCorrection);
+
+		/* Reset the counter and enumerator items here. It is not necessarily
+		 * nice to place it here, but for the moment it's the easiest way
+		 */
+		studySet.resetCounterAndEnumerator();
+		return studySetResult;
+	}
+
 	private Iterator<StudySet> studySetIter;
 
+	/**
+	 * Enumerates the population once and freezes the enumerator, so it
+	 * is shared by the calculations of all studies. The enumerators of the
+	 * studies are derived from it. The same applies to the counter of the
+	 * population.
+	 */
+	private void preparePopulation()
+	{
+		GOTermEnumerator populationEnumerator = populationSet.enumerateGOTerms(goGraph, goAssociations);
+		populationEnumerator.freeze();
+		populationSet.getBitsetCounter(goGraph, goAssociations);
+
+		for (StudySet studySet : studySetList)
+			studySet.setPopulationEnumerator(populationEnumerator);
+	}
+
 	/**
 	 * Perform the statistical calculation of the next study. When called
 	 * first, the first study is considered as the next study.
@@ -295,20 +589,17 @@ public class OntologizerCore
 	public EnrichedGOTermsResult calculateNextStudy()
 	{
 		assert(populationSet != null);
-		if (studySetIter == null) studySetIter = studySetList.iterator();
+		if (studySetIter == null)
+		{
+			preparePopulation();
+			studySetIter = studySetList.iterator();
+		}
 		if (!studySetIter.hasNext())
 		{
 			return null;
 		}
 
-		StudySet studySet = studySetIter.next();
-		EnrichedGOTermsResult studySetResult = calculation.calculateStudySet(goGraph,goAssociations,populationSet,studySet,testCorrection);
-
-		/* Reset the counter and enumerator items here. It is not necessarily
-		 * nice to place it here, but for the moment it's the easiest way
-		 */
-		studySet.resetCounterAndEnumerator();
-		return studySetResult;
+		return calculateStudy(studySetIter.next());
 	}
 
 	public AssociationContainer getGoAssociations()
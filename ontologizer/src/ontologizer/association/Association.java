@@ -183,6 +183,29 @@ public class Association
 		termID = new TermID(term);
 	}
 
+	/**
+	 * Constructs a new association object with all attributes given
+	 * explicitly.
+	 *
+	 * @param db_object the database object, e.g., an accession number
+	 * @param db_object_symbol the name of the object
+	 * @param synonym the synonym
+	 * @param termID the id of the term to which this object is annotated
+	 * @param evidence the evidence code
+	 * @param aspect the aspect
+	 * @param notQualifier whether the association is qualified as "NOT"
+	 */
+	public Association(ByteString db_object, ByteString db_object_symbol, ByteString synonym, TermID termID, ByteString evidence, ByteString aspect, boolean notQualifier)
+	{
+		this.DB_Object = db_object;
+		this.DB_Object_Symbol = db_object_symbol;
+		this.synonym = synonym;
+		this.termID = termID;
+		this.evidence = evidence;
+		this.aspect = aspect;
+		this.notQualifier = notQualifier;
+	}
+
 	private Association() {};
 
 	/**
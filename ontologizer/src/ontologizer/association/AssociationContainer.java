@@ -24,6 +24,9 @@ public class AssociationContainer implements Iterable<Gene2Associations>
 	 */
 	private int totalAnnotations;
 
+	/** The compiled name index, null if it hasn't been compiled since the last change */
+	private volatile GeneNameIndex nameIndex;
+
 	/**
 	 * The constructor receives data from the AssociationParser object, which
 	 * does the basic work of Parsing a gene_association file. The constructor
@@ -81,6 +84,7 @@ public class AssociationContainer implements Iterable<Gene2Associations>
 	 */
 	public void addAssociation(Association a)
 	{
+		nameIndex = null;
 		totalAnnotations++;
 		Gene2Associations g2a = null;
 		if (gene2assocs.containsKey(a.getObjectSymbol()))
@@ -123,6 +127,10 @@ public class AssociationContainer implements Iterable<Gene2Associations>
 	 */
 	public Gene2Associations get(ByteString geneName)
 	{
+		GeneNameIndex index = nameIndex;
+		if (index != null && geneName != null)
+			return index.get(geneName);
+
 		Gene2Associations g2a = gene2assocs.get(geneName);
 		if (g2a == null)
 		{
@@ -137,6 +145,32 @@ public class AssociationContainer implements Iterable<Gene2Associations>
 		return g2a;
 	}
 
+	/**
+	 * Returns the compiled index of all names that refer to genes of
+	 * this container. The index is compiled on the first call and kept
+	 * until associations are added. Once compiled, get() uses the index
+	 * as well.
+	 *
+	 * @return the index
+	 */
+	public GeneNameIndex getNameIndex()
+	{
+		GeneNameIndex index = nameIndex;
+		if (index == null)
+		{
+			synchronized (this)
+			{
+				index = nameIndex;
+				if (index == null)
+				{
+					index = new GeneNameIndex(gene2assocs, dbObject2gene, synonym2gene);
+					nameIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
 	/**
 	 * Returns whether the given name is a object symbol.
 	 *
@@ -70,6 +70,9 @@ public class AssociationParser
 
 	private static Type userDefinedType = Type.UNKNOWN;
 
+	/** Number of threads used for parsing GAF files */
+	private final int numberOfThreads;
+
 	
 	/**
 	 * Construct the association parser object. The given file name will
@@ -136,6 +139,31 @@ public class AssociationParser
 	 */
 	public AssociationParser(IParserInput input, TermMap terms, HashSet<ByteString> names, Collection<String> evidences, IAssociationParserProgress progress) throws IOException
 	{
+		this(input,terms,names,evidences,progress,1);
+	}
+
+	/**
+	 * Construct the association parser object. The given file name will
+	 * parsed. If more than one thread is requested, GAF files are split
+	 * into chunks that are parsed concurrently. The result is the same as
+	 * for the single threaded variant.
+	 *
+	 * @param input specifies wrapping input that contains association of genes to GO terms.
+	 * @param terms the container of the GO terms
+	 * @param names list of genes from which the associations should be gathered.
+	 *        If null all associations are taken,
+	 * @param evidence keep only the annotation whose evidence match the given ones. If null, all annotations are used.
+	 *        Note that this field is currently used when the filenames referes to a GAF file.
+	 * @param progress
+	 * @param numberOfThreads the number of threads used for parsing GAF files.
+	 * @throws IOException
+	 */
+	public AssociationParser(IParserInput input, TermMap terms, HashSet<ByteString> names, Collection<String> evidences, IAssociationParserProgress progress, int numberOfThreads) throws IOException
+	{
+		if (numberOfThreads < 1)
+			throw new IllegalArgumentException("At least one thread is required");
+		this.numberOfThreads = numberOfThreads;
+
 		associations = new ArrayList<Association>();
 		synonym2gene = new HashMap<ByteString, ByteString>();
 		dbObjectID2gene = new HashMap<ByteString, ByteString>();
@@ -310,8 +338,18 @@ public class AssociationParser
 		if (progress != null)
 			progress.init(input.getSize());
 
-		GAFByteLineScanner ls = new GAFByteLineScanner(input, head, names, terms,getByteStringSetFromStringCollection(evidences), progress);
-		ls.scan();
+		GAFByteLineScanner ls;
+
+		if (numberOfThreads > 1)
+		{
+			ParallelGAFScanner pls = new ParallelGAFScanner(input, head, names, terms, getByteStringSetFromStringCollection(evidences), progress,
+					numberOfThreads, ParallelGAFScanner.DEFAULT_CHUNK_SIZE);
+			ls = pls.scan();
+		} else
+		{
+			ls = new GAFByteLineScanner(input, head, names, terms,getByteStringSetFromStringCollection(evidences), progress);
+			ls.scan();
+		}
 
 		if (progress != null)
 			progress.update(input.getSize());
@@ -631,6 +669,15 @@ public class AssociationParser
 	public static void setUserdefinedType(Type type) {
 		userDefinedType = type;
 	}
+
+	/**
+	 * Returns the type that has been set via setUserdefinedType().
+	 *
+	 * @return the type, UNKNOWN if the type is determined automatically.
+	 */
+	public static Type getUserdefinedType() {
+		return userDefinedType;
+	}
 	
 
 }
@@ -1,6 +1,8 @@
 package ontologizer.association;
 
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
@@ -70,6 +72,15 @@ class GAFByteLineScanner extends AbstractByteLineScanner
 	private HashMap<TermID, Term> altTermID2Term = null;
 	private HashSet<TermID> usedGoTerms = new HashSet<TermID>();
 
+	/** In chunk mode, the kept associations that are not yet added to the maps */
+	private ArrayList<Association> pendingAssociations;
+
+	/** In chunk mode, the synonyms of the pending associations */
+	private ArrayList<ByteString []> pendingSynonyms;
+
+	/** In chunk mode, the line numbers of the pending associations */
+	private IntList pendingLines;
+
 	public GAFByteLineScanner(IParserInput input, byte [] head, Set<ByteString> names, TermMap terms, Set<ByteString> evidences, IAssociationParserProgress progress)
 	{
 		super(input.inputStream());
@@ -83,6 +94,36 @@ class GAFByteLineScanner extends AbstractByteLineScanner
 		this.progress = progress;
 	}
 
+	/**
+	 * Constructs a scanner for a single chunk of a GAF file. The chunk must
+	 * start at a line boundary. Kept associations are not added to the maps
+	 * but are remembered until the chunk is merged via {@link #merge(GAFByteLineScanner)}
+	 * into the scanner that represents the whole file.
+	 *
+	 * @param chunk the input of the chunk
+	 * @param names see main constructor
+	 * @param terms see main constructor
+	 * @param altTermID2Term the map from alternative ids to terms that is shared by all chunks.
+	 * @param evidences see main constructor
+	 * @param firstLine the number of lines that precede the chunk, so that line numbers
+	 *  refer to the whole file
+	 */
+	GAFByteLineScanner(InputStream chunk, Set<ByteString> names, TermMap terms, HashMap<TermID, Term> altTermID2Term, Set<ByteString> evidences, int firstLine)
+	{
+		super(chunk);
+
+		this.lineno = firstLine;
+
+		this.names = names;
+		this.terms = terms;
+		this.altTermID2Term = altTermID2Term;
+		this.evidences = evidences;
+
+		pendingAssociations = new ArrayList<Association>();
+		pendingSynonyms = new ArrayList<ByteString []>();
+		pendingLines = new IntList();
+	}
+
 	@Override
 	public boolean newLine(byte[] buf, int start, int len)
 	{
@@ -138,14 +179,7 @@ class GAFByteLineScanner extends AbstractByteLineScanner
 			if (currentTerm == null)
 			{
 				if (altTermID2Term == null)
-				{
-					/* Create the alternative ID to Term map */
-					altTermID2Term = new HashMap<TermID, Term>();
-
-					for (Term t : terms)
-						for (TermID altID : t.getAlternatives())
-							altTermID2Term.put(altID, t);
-				}
+					altTermID2Term = createAltTermID2Term(terms);
 
 				/* Try to find the term among the alternative terms before giving up. */
 				currentTerm = altTermID2Term.get(currentTermID);
@@ -220,71 +254,154 @@ class GAFByteLineScanner extends AbstractByteLineScanner
 				kept++;
 			}
 
-			if (synonyms != null)
+			if (pendingAssociations != null)
+			{
+				/* Chunk mode, the stateful part is done when the chunk is merged */
+				pendingAssociations.add(assoc);
+				pendingSynonyms.add(synonyms);
+				pendingLines.add(lineno);
+			} else
 			{
-				for (int i = 0; i < synonyms.length; i++)
-					synonym2gene.put(synonyms[i], assoc.getObjectSymbol());
+				addAssociation(assoc, synonyms, lineno);
 			}
+		} catch (Exception ex) {
+			ex.printStackTrace();
+			bad++;
+			System.err.println("Nonfatal error: "
+					+ "malformed line in association file \n"
+					+ /* associationFile + */"\nCould not parse line "
+					+ lineno + "\n" + ex.getMessage() + "\n\"" + buf
+					+ "\"\n");
+		}
+
+
+		return true;
+	}
+
+	/**
+	 * Adds a kept association to the maps. This is the stateful part of
+	 * the line processing that must see the associations in file order.
+	 *
+	 * @param assoc the association to add
+	 * @param synonyms the synonyms of the association or null
+	 * @param lineno the line number of the association used for warnings
+	 */
+	private void addAssociation(Association assoc, ByteString [] synonyms, int lineno)
+	{
+		if (synonyms != null)
+		{
+			for (int i = 0; i < synonyms.length; i++)
+				synonym2gene.put(synonyms[i], assoc.getObjectSymbol());
+		}
 
+		{
+			/* Check if db object id and object symbol are really bijective */
+			ByteString dbObject = objectSymbol2dbObject.get(assoc.getObjectSymbol());
+			if (dbObject == null) objectSymbol2dbObject.put(assoc.getObjectSymbol(),assoc.getDB_Object());
+			else
 			{
-				/* Check if db object id and object symbol are really bijective */
-				ByteString dbObject = objectSymbol2dbObject.get(assoc.getObjectSymbol());
-				if (dbObject == null) objectSymbol2dbObject.put(assoc.getObjectSymbol(),assoc.getDB_Object());
-				else
+				if (!dbObject.equals(assoc.getDB_Object()))
 				{
-					if (!dbObject.equals(assoc.getDB_Object()))
+					symbolWarnings++;
+					if (symbolWarnings < 1000)
 					{
-						symbolWarnings++;
-						if (symbolWarnings < 1000)
-						{
-							logger.warning("Line " + lineno + ": Expected that symbol \"" + assoc.getObjectSymbol() + "\" maps to \"" + dbObject + "\" but it maps to \"" + assoc.getDB_Object() + "\"");
-						}
+						logger.warning("Line " + lineno + ": Expected that symbol \"" + assoc.getObjectSymbol() + "\" maps to \"" + dbObject + "\" but it maps to \"" + assoc.getDB_Object() + "\"");
 					}
-
 				}
 
-				ByteString objectSymbol = dbObject2ObjectSymbol.get(assoc.getDB_Object());
-				if (objectSymbol == null) dbObject2ObjectSymbol.put(assoc.getDB_Object(),assoc.getObjectSymbol());
-				else
+			}
+
+			ByteString objectSymbol = dbObject2ObjectSymbol.get(assoc.getDB_Object());
+			if (objectSymbol == null) dbObject2ObjectSymbol.put(assoc.getDB_Object(),assoc.getObjectSymbol());
+			else
+			{
+				if (!objectSymbol.equals(assoc.getObjectSymbol()))
 				{
-					if (!objectSymbol.equals(assoc.getObjectSymbol()))
+					dbObjectWarnings++;
+					if (dbObjectWarnings < 1000)
 					{
-						dbObjectWarnings++;
-						if (dbObjectWarnings < 1000)
-						{
-							logger.warning("Line " + lineno + ": Expected that dbObject \"" + assoc.getDB_Object() + "\" maps to symbol \"" + objectSymbol + "\" but it maps to \"" + assoc.getObjectSymbol() + "\"");
-						}
+						logger.warning("Line " + lineno + ": Expected that dbObject \"" + assoc.getDB_Object() + "\" maps to symbol \"" + objectSymbol + "\" but it maps to \"" + assoc.getObjectSymbol() + "\"");
 					}
-
 				}
 
 			}
 
-			/* Add the Association to ArrayList */
-			associations.add(assoc);
+		}
 
-			ArrayList<Association> gassociations = gene2Associations.get(assoc.getObjectSymbol());
-			if (gassociations == null)
-			{
-				gassociations = new ArrayList<Association>();
-				gene2Associations.put(assoc.getObjectSymbol(),gassociations);
-			}
-			gassociations.add(assoc);
+		/* Add the Association to ArrayList */
+		associations.add(assoc);
 
-			/* dbObject2Gene has a mapping from dbObjects to gene names */
-			dbObjectID2gene.put(assoc.getDB_Object(), assoc.getObjectSymbol());
-		} catch (Exception ex) {
-			ex.printStackTrace();
-			bad++;
-			System.err.println("Nonfatal error: "
-					+ "malformed line in association file \n"
-					+ /* associationFile + */"\nCould not parse line "
-					+ lineno + "\n" + ex.getMessage() + "\n\"" + buf
-					+ "\"\n");
+		ArrayList<Association> gassociations = gene2Associations.get(assoc.getObjectSymbol());
+		if (gassociations == null)
+		{
+			gassociations = new ArrayList<Association>();
+			gene2Associations.put(assoc.getObjectSymbol(),gassociations);
 		}
+		gassociations.add(assoc);
 
+		/* dbObject2Gene has a mapping from dbObjects to gene names */
+		dbObjectID2gene.put(assoc.getDB_Object(), assoc.getObjectSymbol());
+	}
 
-		return true;
+	/**
+	 * Create the alternative ID to Term map.
+	 *
+	 * @param terms all known terms
+	 * @return the map from alternative ids to the actual terms.
+	 */
+	static HashMap<TermID, Term> createAltTermID2Term(TermMap terms)
+	{
+		HashMap<TermID, Term> altTermID2Term = new HashMap<TermID, Term>();
+
+		for (Term t : terms)
+			for (TermID altID : t.getAlternatives())
+				altTermID2Term.put(altID, t);
+		return altTermID2Term;
+	}
+
+	/**
+	 * Merges the given chunk scanner into this scanner. Chunks must be
+	 * merged in the order in which they appear in the file, in which
+	 * case the result is the same as if the file was scanned by a
+	 * single scanner.
+	 *
+	 * @param chunk the scanner of the chunk to be merged
+	 */
+	void merge(GAFByteLineScanner chunk)
+	{
+		for (int i = 0; i < chunk.pendingAssociations.size(); i++)
+			addAssociation(chunk.pendingAssociations.get(i), chunk.pendingSynonyms.get(i), chunk.pendingLines.get(i));
+
+		lineno = chunk.lineno;
+		good += chunk.good;
+		bad += chunk.bad;
+		skipped += chunk.skipped;
+		nots += chunk.nots;
+		evidenceMismatch += chunk.evidenceMismatch;
+		kept += chunk.kept;
+		obsolete += chunk.obsolete;
+		usedGoTerms.addAll(chunk.usedGoTerms);
+	}
+
+	/**
+	 * A simple growable list of ints.
+	 */
+	private static class IntList
+	{
+		private int [] values = new int[1024];
+		private int size;
+
+		public void add(int value)
+		{
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		public int get(int index)
+		{
+			return values[index];
+		}
 	}
 
 	/**
@@ -0,0 +1,172 @@
+package ontologizer.association;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import ontologizer.types.ByteString;
+import ontologizer.types.ByteStringIndex;
+
+/**
+ * A compiled, immutable index that maps every name by which a gene of an
+ * association container can be referred to, i.e., its object symbol, its
+ * object ids and its synonyms, directly to a dense ordinal of the gene.
+ * Names are resolved exactly like AssociationContainer.get() does, but
+ * with a single lookup.
+ *
+ * @author Sebastian Bauer
+ */
+public final class GeneNameIndex
+{
+	/** The name is an object symbol */
+	public static final int OBJECT_SYMBOL = 0;
+
+	/** The name is an object id */
+	public static final int OBJECT_ID = 1;
+
+	/** The name is a synonym */
+	public static final int SYNONYM = 2;
+
+	/** The genes of the ordinals */
+	private Gene2Associations [] genes;
+
+	/** All names that can be resolved */
+	private ByteStringIndex names;
+
+	/** The ordinal of the gene of a name */
+	private int [] nameOrdinals;
+
+	/** The kind of a name */
+	private byte [] nameKinds;
+
+	/**
+	 * Compiles the index.
+	 *
+	 * @param gene2assocs maps object symbols to the associations of the genes.
+	 * @param dbObject2gene maps object ids to object symbols.
+	 * @param synonym2gene maps synonyms to object symbols.
+	 */
+	GeneNameIndex(Map<ByteString, Gene2Associations> gene2assocs, Map<ByteString, ByteString> dbObject2gene, Map<ByteString, ByteString> synonym2gene)
+	{
+		genes = new Gene2Associations[gene2assocs.size()];
+		HashMap<ByteString, Integer> symbolOrdinals = new HashMap<ByteString, Integer>(gene2assocs.size() * 2);
+		int numberOfGenes = 0;
+		for (Map.Entry<ByteString, Gene2Associations> entry : gene2assocs.entrySet())
+		{
+			genes[numberOfGenes] = entry.getValue();
+			symbolOrdinals.put(entry.getKey(), numberOfGenes);
+			numberOfGenes++;
+		}
+
+		/* Collect the names in the order of their precedence */
+		ArrayList<ByteString> nameList = new ArrayList<ByteString>(gene2assocs.size() + dbObject2gene.size() + synonym2gene.size());
+		nameList.addAll(gene2assocs.keySet());
+		for (ByteString name : dbObject2gene.keySet())
+		{
+			if (!gene2assocs.containsKey(name))
+				nameList.add(name);
+		}
+		for (ByteString name : synonym2gene.keySet())
+		{
+			if (!gene2assocs.containsKey(name) && !dbObject2gene.containsKey(name))
+				nameList.add(name);
+		}
+
+		/* Resolve the names and drop those that can't be resolved */
+		ByteString [] nameArray = new ByteString[nameList.size()];
+		nameOrdinals = new int[nameList.size()];
+		nameKinds = new byte[nameList.size()];
+		int numberOfNames = 0;
+		for (ByteString name : nameList)
+		{
+			Integer ordinal = symbolOrdinals.get(name);
+			if (ordinal == null)
+				ordinal = symbolOrdinals.get(dbObject2gene.get(name));
+			if (ordinal == null)
+				ordinal = symbolOrdinals.get(synonym2gene.get(name));
+			if (ordinal == null)
+				continue;
+
+			byte kind;
+			if (gene2assocs.containsKey(name)) kind = OBJECT_SYMBOL;
+			else if (dbObject2gene.containsKey(name)) kind = OBJECT_ID;
+			else kind = SYNONYM;
+
+			nameArray[numberOfNames] = name;
+			nameOrdinals[numberOfNames] = ordinal;
+			nameKinds[numberOfNames] = kind;
+			numberOfNames++;
+		}
+		if (numberOfNames != nameArray.length)
+		{
+			ByteString [] newNameArray = new ByteString[numberOfNames];
+			System.arraycopy(nameArray, 0, newNameArray, 0, numberOfNames);
+			nameArray = newNameArray;
+		}
+		names = new ByteStringIndex(nameArray);
+	}
+
+	/**
+	 * @return the number of genes, i.e., the ordinals range from 0 to
+	 *  this number minus 1.
+	 */
+	public int getNumberOfGenes()
+	{
+		return genes.length;
+	}
+
+	/**
+	 * Returns the ordinal of the gene that is referred to by the given
+	 * name.
+	 *
+	 * @param name
+	 * @return the ordinal or -1 if the name can't be resolved.
+	 */
+	public int getOrdinal(ByteString name)
+	{
+		int idx = names.indexOf(name);
+		if (idx == -1) return -1;
+		return nameOrdinals[idx];
+	}
+
+	/**
+	 * Returns the kind of the given name. If a name is of several
+	 * kinds, object symbols take precedence over object ids, which
+	 * take precedence over synonyms.
+	 *
+	 * @param name
+	 * @return OBJECT_SYMBOL, OBJECT_ID, SYNONYM or -1 if the name can't
+	 *  be resolved.
+	 */
+	public int getKind(ByteString name)
+	{
+		int idx = names.indexOf(name);
+		if (idx == -1) return -1;
+		return nameKinds[idx];
+	}
+
+	/**
+	 * Returns the associations of the gene with the given ordinal.
+	 *
+	 * @param ordinal
+	 * @return the associations
+	 */
+	public Gene2Associations getGeneAssociations(int ordinal)
+	{
+		return genes[ordinal];
+	}
+
+	/**
+	 * Returns the associations of the gene that is referred to by the
+	 * given name.
+	 *
+	 * @param name
+	 * @return the associations or null if the name can't be resolved.
+	 */
+	public Gene2Associations get(ByteString name)
+	{
+		int idx = names.indexOf(name);
+		if (idx == -1) return null;
+		return genes[nameOrdinals[idx]];
+	}
+}
@@ -0,0 +1,204 @@
+package ontologizer.association;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ontologizer.go.IParserInput;
+import ontologizer.go.Term;
+import ontologizer.go.TermID;
+import ontologizer.go.TermMap;
+import ontologizer.linescanner.ByteBufferInputStream;
+import ontologizer.types.ByteString;
+
+/**
+ * Scans a GAF file using multiple threads. The (decompressed) input is
+ * split into chunks at line boundaries. Each chunk is scanned by an own
+ * GAFByteLineScanner with its own prefix pool. The results of the chunks
+ * are merged in file order, so the outcome is identical to the one of
+ * a single GAFByteLineScanner.
+ */
+class ParallelGAFScanner
+{
+	/** The default size of a single chunk */
+	static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+	/** The wrapped input */
+	private IParserInput input;
+
+	/** The bytes that were already read from the input */
+	private byte [] head;
+
+	private Set<ByteString> names;
+	private TermMap terms;
+	private Set<ByteString> evidences;
+	private IAssociationParserProgress progress;
+
+	/** The number of threads to be used */
+	private int numberOfThreads;
+
+	/** The approximate size of a chunk */
+	private int chunkSize;
+
+	/**
+	 * Constructs the parallel scanner.
+	 *
+	 * @param input the wrapped input.
+	 * @param head the bytes that have been already read from the input.
+	 * @param names names of items that are interesting or null if annotations of them should be considered
+	 * @param terms all known terms
+	 * @param evidences specifies which annotations to take.
+	 * @param progress used for monitoring progress.
+	 * @param numberOfThreads the number of worker threads
+	 * @param chunkSize the approximate size of a chunk in bytes
+	 */
+	public ParallelGAFScanner(IParserInput input, byte [] head, Set<ByteString> names, TermMap terms, Set<ByteString> evidences, IAssociationParserProgress progress, int numberOfThreads, int chunkSize)
+	{
+		if (numberOfThreads < 1)
+			throw new IllegalArgumentException("At least one thread is required");
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("The chunk size must be positive");
+
+		this.input = input;
+		this.head = head;
+		this.names = names;
+		this.terms = terms;
+		this.evidences = evidences;
+		this.progress = progress;
+		this.numberOfThreads = numberOfThreads;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Scans the input.
+	 *
+	 * @return the scanner that holds the merged result of all chunks.
+	 * @throws IOException
+	 */
+	public GAFByteLineScanner scan() throws IOException
+	{
+		GAFByteLineScanner result = new GAFByteLineScanner(input, new byte[0], names, terms, evidences, null);
+
+		final HashMap<TermID, Term> altTermID2Term = GAFByteLineScanner.createAltTermID2Term(terms);
+
+		/* Chunks that are submitted but not yet merged, in file order */
+		LinkedList<Future<GAFByteLineScanner>> pending = new LinkedList<Future<GAFByteLineScanner>>();
+
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try
+		{
+			InputStream is = input.inputStream();
+
+			byte [] rest = head;
+			int restLength = head.length;
+			boolean eof = false;
+
+			/* The number of lines preceding the current chunk */
+			int lines = 0;
+
+			while (!eof)
+			{
+				byte [] buf = new byte[Math.max(chunkSize, restLength * 2)];
+				System.arraycopy(rest, 0, buf, 0, restLength);
+				int length = restLength;
+				int read;
+
+				while (length < buf.length && (read = is.read(buf, length, buf.length - length)) > 0)
+					length += read;
+				eof = length < buf.length;
+
+				/* Find the end of the last complete line */
+				int end = length;
+				if (!eof)
+				{
+					while (end > 0 && buf[end - 1] != '\n')
+						end--;
+
+					if (end == 0)
+					{
+						/* No line boundary within the buffer, try again with a larger one */
+						rest = buf;
+						restLength = length;
+						continue;
+					}
+				}
+
+				/* Wrapped into a buffer stream, the lines of the chunk are scanned in place */
+				final ByteBufferInputStream chunk = new ByteBufferInputStream(new ByteBuffer[]{ByteBuffer.wrap(buf, 0, end)});
+				final int firstLine = lines;
+				pending.add(executor.submit(new Callable<GAFByteLineScanner>()
+				{
+					@Override
+					public GAFByteLineScanner call() throws Exception
+					{
+						GAFByteLineScanner ls = new GAFByteLineScanner(chunk, names, terms, altTermID2Term, evidences, firstLine);
+						ls.scan();
+						return ls;
+					}
+				}));
+
+				for (int i = 0; i < end; i++)
+				{
+					if (buf[i] == '\n')
+						lines++;
+				}
+
+				restLength = length - end;
+				rest = new byte[restLength];
+				System.arraycopy(buf, end, rest, 0, restLength);
+
+				if (progress != null)
+					progress.update(input.getPosition());
+
+				/* Bound the number of chunks that are held in memory */
+				while (pending.size() > 2 * numberOfThreads)
+					result.merge(get(pending.removeFirst()));
+			}
+
+			while (!pending.isEmpty())
+				result.merge(get(pending.removeFirst()));
+		} finally
+		{
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
+	/**
+	 * Wait for the chunk scanner represented by the given future.
+	 *
+	 * @param future
+	 * @return the chunk scanner.
+	 * @throws IOException
+	 */
+	private static GAFByteLineScanner get(Future<GAFByteLineScanner> future) throws IOException
+	{
+		try
+		{
+			return future.get();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if (cause instanceof Error)
+				throw (Error)cause;
+			throw new IOException(cause);
+		}
+	}
+}
@@ -12,6 +12,21 @@ import ontologizer.statistics.PValue;
  */
 public abstract class AbstractGOTermProperties extends PValue
 {
+	/** Type of properties whose values are strings */
+	public static final int PROPERTY_STRING = 0;
+
+	/** Type of properties whose values are strings that are quoted in textual tables */
+	public static final int PROPERTY_QUOTED_STRING = 1;
+
+	/** Type of properties whose values are integers */
+	public static final int PROPERTY_INT = 2;
+
+	/** Type of properties whose values are doubles */
+	public static final int PROPERTY_DOUBLE = 3;
+
+	/** Type of properties whose values are booleans */
+	public static final int PROPERTY_BOOLEAN = 4;
+
 	public Term goTerm;
 	public int annotatedStudyGenes;
 	public int annotatedPopulationGenes;
@@ -45,6 +60,72 @@ public abstract class AbstractGOTermProperties extends PValue
 	 */
 	abstract public String getProperty(int propNumber);
 
+	/**
+	 * Return the type of the specified property, which determines
+	 * the accessor that can be used to get the value without
+	 * converting it to a String. Properties representing the
+	 * population or study gene count are of type PROPERTY_INT,
+	 * all others are of type PROPERTY_STRING unless overwritten
+	 * by subclass implementors. Note that the values of the
+	 * gene count properties are not stored within the object and
+	 * hence have to be supplied by the caller.
+	 *
+	 * @param propNumber
+	 * @return the type, one of the PROPERTY_ constants.
+	 */
+	public int getPropertyType(int propNumber)
+	{
+		if (isPropertyPopulationGeneCount(propNumber) || isPropertyStudyGeneCount(propNumber))
+			return PROPERTY_INT;
+		return PROPERTY_STRING;
+	}
+
+	/**
+	 * Return the specified property of type PROPERTY_STRING or
+	 * PROPERTY_QUOTED_STRING. Opposed to getProperty(), quoted
+	 * strings are returned without the quotes.
+	 *
+	 * @param propNumber
+	 * @return the value.
+	 */
+	public String getStringProperty(int propNumber)
+	{
+		return getProperty(propNumber);
+	}
+
+	/**
+	 * Return the specified property of type PROPERTY_INT.
+	 *
+	 * @param propNumber
+	 * @return the value.
+	 */
+	public int getIntProperty(int propNumber)
+	{
+		throw new IllegalArgumentException("Property " + propNumber + " is not of type int");
+	}
+
+	/**
+	 * Return the specified property of type PROPERTY_DOUBLE.
+	 *
+	 * @param propNumber
+	 * @return the value.
+	 */
+	public double getDoubleProperty(int propNumber)
+	{
+		throw new IllegalArgumentException("Property " + propNumber + " is not of type double");
+	}
+
+	/**
+	 * Return the specified property of type PROPERTY_BOOLEAN.
+	 *
+	 * @param propNumber
+	 * @return the value.
+	 */
+	public boolean getBooleanProperty(int propNumber)
+	{
+		throw new IllegalArgumentException("Property " + propNumber + " is not of type boolean");
+	}
+
 	/**
 	 * Sometimes it is convenient to store the population gene count
 	 * (e.g. within a table). However, since this information does
@@ -0,0 +1,310 @@
+package ontologizer.calculation;
+
+import static ontologizer.calculation.EnrichedGOTermsColumnarWriter.ENCODING_CONSTANT;
+import static ontologizer.calculation.EnrichedGOTermsColumnarWriter.ENCODING_DICTIONARY;
+import static ontologizer.calculation.EnrichedGOTermsColumnarWriter.ENCODING_PLAIN;
+import static ontologizer.calculation.EnrichedGOTermsColumnarWriter.MAGIC;
+import static ontologizer.calculation.EnrichedGOTermsColumnarWriter.UTF8;
+import static ontologizer.calculation.EnrichedGOTermsColumnarWriter.VERSION;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+
+/**
+ * Reads files that have been written by the
+ * EnrichedGOTermsColumnarWriter. Only the index is read when the
+ * file is opened, tables are read on demand.
+ *
+ * @author Sebastian Bauer
+ */
+public class EnrichedGOTermsColumnarReader implements Closeable
+{
+	private RandomAccessFile file;
+
+	private String [] tableNames;
+	private long [] tableOffsets;
+	private long [] tableLengths;
+	private int [] tableRows;
+	private HashMap<String,Integer> tableIndices = new HashMap<String,Integer>();
+
+	/**
+	 * Opens the given file and reads the index.
+	 *
+	 * @param f
+	 * @throws IOException if the file couldn't be read or isn't a valid
+	 *  columnar file.
+	 */
+	public EnrichedGOTermsColumnarReader(File f) throws IOException
+	{
+		file = new RandomAccessFile(f, "r");
+		try
+		{
+			if (file.length() < 20 || file.readInt() != MAGIC)
+				throw new IOException("\"" + f.getPath() + "\" is not a columnar table file");
+			int version = file.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported version " + version + " of columnar table file \"" + f.getPath() + "\"");
+
+			file.seek(file.length() - 12);
+			long indexOffset = file.readLong();
+			if (file.readInt() != MAGIC || indexOffset < 8 || indexOffset > file.length() - 12)
+				throw new IOException("\"" + f.getPath() + "\" is truncated");
+
+			byte [] index = new byte[(int)(file.length() - 12 - indexOffset)];
+			file.seek(indexOffset);
+			file.readFully(index);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+			int numberOfTables = in.readInt();
+			tableNames = new String[numberOfTables];
+			tableOffsets = new long[numberOfTables];
+			tableLengths = new long[numberOfTables];
+			tableRows = new int[numberOfTables];
+			for (int i = 0; i < numberOfTables; i++)
+			{
+				tableNames[i] = readString(in);
+				tableOffsets[i] = in.readLong();
+				tableLengths[i] = in.readLong();
+				tableRows[i] = in.readInt();
+				tableIndices.put(tableNames[i], i);
+			}
+		} catch (IOException e)
+		{
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns whether the given file starts like a columnar file.
+	 *
+	 * @param f
+	 * @return whether the file is a columnar file.
+	 * @throws IOException
+	 */
+	public static boolean isColumnar(File f) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try
+		{
+			return raf.length() >= 4 && raf.readInt() == MAGIC;
+		} finally
+		{
+			raf.close();
+		}
+	}
+
+	public int getNumberOfTables()
+	{
+		return tableNames.length;
+	}
+
+	public String getTableName(int table)
+	{
+		return tableNames[table];
+	}
+
+	public int getNumberOfRows(int table)
+	{
+		return tableRows[table];
+	}
+
+	/**
+	 * Returns the index of the table with the given name.
+	 *
+	 * @param name
+	 * @return the index or -1 if there is no such table.
+	 */
+	public int getTableIndex(String name)
+	{
+		Integer idx = tableIndices.get(name);
+		if (idx == null) return -1;
+		return idx;
+	}
+
+	/**
+	 * Reads the raw bytes of the given table.
+	 *
+	 * @param table
+	 * @return the bytes.
+	 * @throws IOException
+	 */
+	private byte [] readTableBytes(int table) throws IOException
+	{
+		byte [] bytes = new byte[(int)tableLengths[table]];
+		file.seek(tableOffsets[table]);
+		file.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Writes the raw bytes of the given table to the given stream.
+	 *
+	 * @param table
+	 * @param os
+	 * @throws IOException
+	 */
+	void transferTable(int table, OutputStream os) throws IOException
+	{
+		os.write(readTableBytes(table));
+	}
+
+	/**
+	 * Reads the table of the given name.
+	 *
+	 * @param name
+	 * @return the table or null if there is no such table.
+	 * @throws IOException
+	 */
+	public EnrichedGOTermsTable readTable(String name) throws IOException
+	{
+		int table = getTableIndex(name);
+		if (table == -1) return null;
+		return readTable(table);
+	}
+
+	/**
+	 * Reads the given table.
+	 *
+	 * @param table
+	 * @return the table.
+	 * @throws IOException
+	 */
+	public EnrichedGOTermsTable readTable(int table) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(readTableBytes(table)));
+		int numberOfRows = tableRows[table];
+
+		int numberOfColumns = in.readInt();
+		String [] columnNames = new String[numberOfColumns];
+		int [] columnTypes = new int[numberOfColumns];
+		Object [] columns = new Object[numberOfColumns];
+		for (int i = 0; i < numberOfColumns; i++)
+		{
+			columnNames[i] = readString(in);
+			columnTypes[i] = in.readByte();
+			switch (columnTypes[i])
+			{
+				case	AbstractGOTermProperties.PROPERTY_INT: columns[i] = new int[numberOfRows]; break;
+				case	AbstractGOTermProperties.PROPERTY_DOUBLE: columns[i] = new double[numberOfRows]; break;
+				case	AbstractGOTermProperties.PROPERTY_BOOLEAN: columns[i] = new boolean[numberOfRows]; break;
+				default: columns[i] = new String[numberOfRows]; break;
+			}
+		}
+
+		int start = 0;
+		int rows;
+		while ((rows = in.readInt()) != 0)
+		{
+			if (start + rows > numberOfRows)
+				throw new IOException("Table \"" + tableNames[table] + "\" has more rows than expected");
+
+			for (int i = 0; i < numberOfColumns; i++)
+			{
+				int encoding = in.readByte();
+				switch (columnTypes[i])
+				{
+					case	AbstractGOTermProperties.PROPERTY_INT: readIntChunk(in, encoding, (int [])columns[i], start, rows); break;
+					case	AbstractGOTermProperties.PROPERTY_DOUBLE: readDoubleChunk(in, encoding, (double [])columns[i], start, rows); break;
+					case	AbstractGOTermProperties.PROPERTY_BOOLEAN: readBooleanChunk(in, encoding, (boolean [])columns[i], start, rows); break;
+					default: readStringChunk(in, encoding, (String [])columns[i], start, rows); break;
+				}
+			}
+			start += rows;
+		}
+		if (start != numberOfRows)
+			throw new IOException("Table \"" + tableNames[table] + "\" has less rows than expected");
+
+		return new EnrichedGOTermsTable(tableNames[table], columnNames, columnTypes, columns, numberOfRows);
+	}
+
+	private static void readIntChunk(DataInputStream in, int encoding, int [] values, int start, int rows) throws IOException
+	{
+		if (encoding == ENCODING_CONSTANT)
+		{
+			int v = in.readInt();
+			for (int r = 0; r < rows; r++)
+				values[start + r] = v;
+		} else if (encoding == ENCODING_PLAIN)
+		{
+			for (int r = 0; r < rows; r++)
+				values[start + r] = in.readInt();
+		} else throw new IOException("Unknown encoding " + encoding + " of an int chunk");
+	}
+
+	private static void readDoubleChunk(DataInputStream in, int encoding, double [] values, int start, int rows) throws IOException
+	{
+		if (encoding == ENCODING_CONSTANT)
+		{
+			double v = Double.longBitsToDouble(in.readLong());
+			for (int r = 0; r < rows; r++)
+				values[start + r] = v;
+		} else if (encoding == ENCODING_PLAIN)
+		{
+			for (int r = 0; r < rows; r++)
+				values[start + r] = Double.longBitsToDouble(in.readLong());
+		} else throw new IOException("Unknown encoding " + encoding + " of a double chunk");
+	}
+
+	private static void readBooleanChunk(DataInputStream in, int encoding, boolean [] values, int start, int rows) throws IOException
+	{
+		if (encoding == ENCODING_CONSTANT)
+		{
+			boolean v = in.readBoolean();
+			for (int r = 0; r < rows; r++)
+				values[start + r] = v;
+		} else if (encoding == ENCODING_PLAIN)
+		{
+			for (int r = 0; r < rows; r += 8)
+			{
+				int b = in.readUnsignedByte();
+				for (int j = 0; j < 8 && r + j < rows; j++)
+					values[start + r + j] = (b & (1 << j)) != 0;
+			}
+		} else throw new IOException("Unknown encoding " + encoding + " of a boolean chunk");
+	}
+
+	private static void readStringChunk(DataInputStream in, int encoding, String [] values, int start, int rows) throws IOException
+	{
+		if (encoding == ENCODING_CONSTANT)
+		{
+			String v = readString(in);
+			for (int r = 0; r < rows; r++)
+				values[start + r] = v;
+		} else if (encoding == ENCODING_PLAIN)
+		{
+			for (int r = 0; r < rows; r++)
+				values[start + r] = readString(in);
+		} else if (encoding == ENCODING_DICTIONARY)
+		{
+			String [] dictionary = new String[in.readInt()];
+			for (int i = 0; i < dictionary.length; i++)
+				dictionary[i] = readString(in);
+			for (int r = 0; r < rows; r++)
+			{
+				int idx;
+				if (dictionary.length <= 256) idx = in.readUnsignedByte();
+				else if (dictionary.length <= 65536) idx = in.readUnsignedShort();
+				else idx = in.readInt();
+				values[start + r] = dictionary[idx];
+			}
+		} else throw new IOException("Unknown encoding " + encoding + " of a string chunk");
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		byte [] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	public void close() throws IOException
+	{
+		file.close();
+	}
+}
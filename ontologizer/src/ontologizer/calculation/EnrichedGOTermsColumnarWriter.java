@@ -0,0 +1,402 @@
+package ontologizer.calculation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Writes enrichment results in a compact indexed columnar binary
+ * format. A file consists of the following parts, all numbers are
+ * stored in big endian byte order:
+ *
+ * <pre>
+ * file      := MAGIC VERSION table* index indexOffset:long MAGIC
+ * table     := numberOfColumns:int (name:string type:byte)* rowGroup* 0:int
+ * rowGroup  := numberOfRows:int chunk{numberOfColumns}
+ * index     := numberOfTables:int (name:string offset:long length:long numberOfRows:int)*
+ * string    := length:int utf8bytes
+ * </pre>
+ *
+ * Rows are buffered and written in row groups of at most
+ * ROW_GROUP_SIZE rows. Within a row group, the values of a column are
+ * stored consecutively (a chunk), either as a single constant, plain
+ * or, for strings, dictionary encoded. The index at the end of the file
+ * allows to access any table directly. Tables don't contain absolute
+ * positions, hence they can be copied into other files as they are.
+ *
+ * @author Sebastian Bauer
+ */
+public class EnrichedGOTermsColumnarWriter extends EnrichedGOTermsStreamWriter
+{
+	/** Identifies the format, spells OTCF */
+	public static final int MAGIC = 0x4f544346;
+
+	public static final int VERSION = 1;
+
+	/** The maximal number of rows of a row group */
+	public static final int ROW_GROUP_SIZE = 4096;
+
+	/** All values of the chunk are equal, only one value is stored */
+	static final int ENCODING_CONSTANT = 0;
+
+	/** All values of the chunk are stored */
+	static final int ENCODING_PLAIN = 1;
+
+	/** Distinct strings are stored once followed by the indices of the values */
+	static final int ENCODING_DICTIONARY = 2;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * An output stream that keeps track of the number of written bytes.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream
+	{
+		private long count;
+
+		public CountingOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte [] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	private CountingOutputStream counter;
+	private DataOutputStream out;
+
+	/* The index */
+	private ArrayList<String> tableNames = new ArrayList<String>();
+	private HashSet<String> tableNameSet = new HashSet<String>();
+	private ArrayList<long []> tableExtents = new ArrayList<long []>();
+	private ArrayList<Integer> tableRows = new ArrayList<Integer>();
+
+	/* The current table */
+	private long tableOffset;
+	private int tableNumberOfRows;
+	private int [] columnTypes;
+
+	/* The current row group */
+	private int rows;
+	private int [][] intValues;
+	private double [][] doubleValues;
+	private boolean [][] booleanValues;
+	private String [][] stringValues;
+
+	/* Used for the dictionary encoding */
+	private HashMap<String,Integer> dictionary = new HashMap<String,Integer>();
+	private ArrayList<String> dictionaryStrings = new ArrayList<String>();
+
+	/**
+	 * Constructs the writer.
+	 *
+	 * @param os the stream to which the tables are written.
+	 * @throws IOException
+	 */
+	public EnrichedGOTermsColumnarWriter(OutputStream os) throws IOException
+	{
+		counter = new CountingOutputStream(new BufferedOutputStream(os, 65536));
+		out = new DataOutputStream(counter);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	/**
+	 * Registers a new table in the index.
+	 *
+	 * @param name
+	 */
+	private void addTable(String name)
+	{
+		if (!tableNameSet.add(name))
+			throw new IllegalArgumentException("A table named \"" + name + "\" has already been written");
+		tableNames.add(name);
+	}
+
+	@Override
+	protected void beginTable(String name, String [] columnNames, int [] columnTypes) throws IOException
+	{
+		addTable(name);
+
+		tableOffset = counter.count;
+		tableNumberOfRows = 0;
+		this.columnTypes = columnTypes;
+
+		out.writeInt(columnNames.length);
+		for (int i = 0; i < columnNames.length; i++)
+		{
+			writeString(columnNames[i]);
+			out.writeByte(columnTypes[i]);
+		}
+
+		int n = columnTypes.length;
+		intValues = new int[n][];
+		doubleValues = new double[n][];
+		booleanValues = new boolean[n][];
+		stringValues = new String[n][];
+		for (int i = 0; i < n; i++)
+		{
+			switch (columnTypes[i])
+			{
+				case	AbstractGOTermProperties.PROPERTY_INT: intValues[i] = new int[ROW_GROUP_SIZE]; break;
+				case	AbstractGOTermProperties.PROPERTY_DOUBLE: doubleValues[i] = new double[ROW_GROUP_SIZE]; break;
+				case	AbstractGOTermProperties.PROPERTY_BOOLEAN: booleanValues[i] = new boolean[ROW_GROUP_SIZE]; break;
+				default: stringValues[i] = new String[ROW_GROUP_SIZE]; break;
+			}
+		}
+		rows = 0;
+	}
+
+	@Override
+	protected void writeProperties(AbstractGOTermProperties props) throws IOException
+	{
+		for (int i = 0; i < columnTypes.length; i++)
+		{
+			switch (columnTypes[i])
+			{
+				case	AbstractGOTermProperties.PROPERTY_INT: intValues[i][rows] = getIntValue(props, i); break;
+				case	AbstractGOTermProperties.PROPERTY_DOUBLE: doubleValues[i][rows] = props.getDoubleProperty(i); break;
+				case	AbstractGOTermProperties.PROPERTY_BOOLEAN: booleanValues[i][rows] = props.getBooleanProperty(i); break;
+				default: stringValues[i][rows] = props.getStringProperty(i); break;
+			}
+		}
+		if (++rows == ROW_GROUP_SIZE)
+			flushRowGroup();
+	}
+
+	@Override
+	protected void writeTableRow(EnrichedGOTermsTable table, int row) throws IOException
+	{
+		for (int i = 0; i < columnTypes.length; i++)
+		{
+			switch (columnTypes[i])
+			{
+				case	AbstractGOTermProperties.PROPERTY_INT: intValues[i][rows] = table.getInt(i, row); break;
+				case	AbstractGOTermProperties.PROPERTY_DOUBLE: doubleValues[i][rows] = table.getDouble(i, row); break;
+				case	AbstractGOTermProperties.PROPERTY_BOOLEAN: booleanValues[i][rows] = table.getBoolean(i, row); break;
+				default: stringValues[i][rows] = table.getString(i, row); break;
+			}
+		}
+		if (++rows == ROW_GROUP_SIZE)
+			flushRowGroup();
+	}
+
+	@Override
+	protected void finishTable() throws IOException
+	{
+		flushRowGroup();
+		out.writeInt(0);
+
+		tableExtents.add(new long[]{tableOffset, counter.count - tableOffset});
+		tableRows.add(tableNumberOfRows);
+
+		columnTypes = null;
+		intValues = null;
+		doubleValues = null;
+		booleanValues = null;
+		stringValues = null;
+	}
+
+	/**
+	 * Copies a table of a columnar file without decoding it.
+	 *
+	 * @param reader the reader of the columnar file.
+	 * @param table the index of the table within the reader.
+	 * @param name the name of the table within the new file.
+	 * @throws IOException
+	 */
+	public void copyTable(EnrichedGOTermsColumnarReader reader, int table, String name) throws IOException
+	{
+		if (numberOfColumns != -1)
+			throw new IllegalStateException("The previous table has not been ended");
+
+		addTable(name);
+		long offset = counter.count;
+		reader.transferTable(table, out);
+		tableExtents.add(new long[]{offset, counter.count - offset});
+		tableRows.add(reader.getNumberOfRows(table));
+	}
+
+	/**
+	 * Writes the buffered rows as a row group.
+	 *
+	 * @throws IOException
+	 */
+	private void flushRowGroup() throws IOException
+	{
+		if (rows == 0)
+			return;
+
+		out.writeInt(rows);
+		for (int i = 0; i < columnTypes.length; i++)
+		{
+			switch (columnTypes[i])
+			{
+				case	AbstractGOTermProperties.PROPERTY_INT: writeIntChunk(intValues[i]); break;
+				case	AbstractGOTermProperties.PROPERTY_DOUBLE: writeDoubleChunk(doubleValues[i]); break;
+				case	AbstractGOTermProperties.PROPERTY_BOOLEAN: writeBooleanChunk(booleanValues[i]); break;
+				default: writeStringChunk(stringValues[i]); break;
+			}
+		}
+		tableNumberOfRows += rows;
+		rows = 0;
+	}
+
+	private void writeIntChunk(int [] values) throws IOException
+	{
+		boolean constant = true;
+		for (int r = 1; r < rows && constant; r++)
+			constant = values[r] == values[0];
+
+		if (constant)
+		{
+			out.writeByte(ENCODING_CONSTANT);
+			out.writeInt(values[0]);
+		} else
+		{
+			out.writeByte(ENCODING_PLAIN);
+			for (int r = 0; r < rows; r++)
+				out.writeInt(values[r]);
+		}
+	}
+
+	private void writeDoubleChunk(double [] values) throws IOException
+	{
+		long first = Double.doubleToRawLongBits(values[0]);
+		boolean constant = true;
+		for (int r = 1; r < rows && constant; r++)
+			constant = Double.doubleToRawLongBits(values[r]) == first;
+
+		if (constant)
+		{
+			out.writeByte(ENCODING_CONSTANT);
+			out.writeLong(first);
+		} else
+		{
+			out.writeByte(ENCODING_PLAIN);
+			for (int r = 0; r < rows; r++)
+				out.writeLong(Double.doubleToRawLongBits(values[r]));
+		}
+	}
+
+	private void writeBooleanChunk(boolean [] values) throws IOException
+	{
+		boolean constant = true;
+		for (int r = 1; r < rows && constant; r++)
+			constant = values[r] == values[0];
+
+		if (constant)
+		{
+			out.writeByte(ENCODING_CONSTANT);
+			out.writeBoolean(values[0]);
+		} else
+		{
+			/* Packed into bits, least significant bit first */
+			out.writeByte(ENCODING_PLAIN);
+			for (int r = 0; r < rows; r += 8)
+			{
+				int b = 0;
+				for (int j = 0; j < 8 && r + j < rows; j++)
+					if (values[r + j]) b |= 1 << j;
+				out.writeByte(b);
+			}
+		}
+	}
+
+	private void writeStringChunk(String [] values) throws IOException
+	{
+		dictionary.clear();
+		dictionaryStrings.clear();
+		int [] indices = new int[rows];
+		for (int r = 0; r < rows; r++)
+		{
+			String v = values[r] != null ? values[r] : "null";
+			Integer idx = dictionary.get(v);
+			if (idx == null)
+			{
+				idx = dictionaryStrings.size();
+				dictionary.put(v, idx);
+				dictionaryStrings.add(v);
+			}
+			indices[r] = idx;
+			values[r] = null;
+		}
+
+		if (dictionaryStrings.size() == 1)
+		{
+			out.writeByte(ENCODING_CONSTANT);
+			writeString(dictionaryStrings.get(0));
+		} else if (dictionaryStrings.size() == rows)
+		{
+			out.writeByte(ENCODING_PLAIN);
+			for (String s : dictionaryStrings)
+				writeString(s);
+		} else
+		{
+			out.writeByte(ENCODING_DICTIONARY);
+			out.writeInt(dictionaryStrings.size());
+			for (String s : dictionaryStrings)
+				writeString(s);
+			if (dictionaryStrings.size() <= 256)
+			{
+				for (int r = 0; r < rows; r++)
+					out.writeByte(indices[r]);
+			} else if (dictionaryStrings.size() <= 65536)
+			{
+				for (int r = 0; r < rows; r++)
+					out.writeShort(indices[r]);
+			} else
+			{
+				for (int r = 0; r < rows; r++)
+					out.writeInt(indices[r]);
+			}
+		}
+	}
+
+	private void writeString(String s) throws IOException
+	{
+		byte [] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Writes the index and closes the underlying stream.
+	 */
+	public void close() throws IOException
+	{
+		if (numberOfColumns != -1)
+			endTable();
+
+		long indexOffset = counter.count;
+		out.writeInt(tableNames.size());
+		for (int i = 0; i < tableNames.size(); i++)
+		{
+			writeString(tableNames.get(i));
+			out.writeLong(tableExtents.get(i)[0]);
+			out.writeLong(tableExtents.get(i)[1]);
+			out.writeInt(tableRows.get(i));
+		}
+		out.writeLong(indexOffset);
+		out.writeInt(MAGIC);
+		out.close();
+	}
+}
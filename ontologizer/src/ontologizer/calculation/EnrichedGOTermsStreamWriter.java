@@ -0,0 +1,259 @@
+package ontologizer.calculation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Base class of writers that stream enrichment results as tables into
+ * an output stream. A table is started with beginTable(), which
+ * determines the columns by the properties of a prototype, followed by
+ * a call of writeRow() for every term and a final call of endTable().
+ * Values are taken directly from the typed accessors of
+ * AbstractGOTermProperties.
+ *
+ * @author Sebastian Bauer
+ */
+public abstract class EnrichedGOTermsStreamWriter implements Closeable
+{
+	/**
+	 * The supported formats.
+	 */
+	public static enum Format
+	{
+		/** Tab-separated values */
+		TSV("tsv", ".txt"),
+
+		/** Gzip compressed tab-separated values */
+		TSV_GZIP("tsv.gz", ".txt.gz"),
+
+		/** Indexed columnar binary format, see EnrichedGOTermsColumnarWriter */
+		COLUMNAR("columnar", ".otc");
+
+		private String name;
+		private String suffix;
+
+		private Format(String name, String suffix)
+		{
+			this.name = name;
+			this.suffix = suffix;
+		}
+
+		/**
+		 * @return the name of the format as used on the command line.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return the suffix of files written in this format.
+		 */
+		public String getSuffix()
+		{
+			return suffix;
+		}
+
+		/**
+		 * Returns the format of the given name.
+		 *
+		 * @param name
+		 * @return the format or null if there is no format of the given name.
+		 */
+		public static Format fromName(String name)
+		{
+			for (Format f : values())
+				if (f.name.equals(name)) return f;
+			return null;
+		}
+	}
+
+	/** The number of genes of the population of the current table */
+	protected int populationGeneCount;
+
+	/** The number of genes of the study of the current table */
+	protected int studyGeneCount;
+
+	/** The number of columns of the current table, -1 if no table has been begun */
+	protected int numberOfColumns = -1;
+
+	/**
+	 * Creates a writer for the given format.
+	 *
+	 * @param os the stream to which the tables are written. It is closed
+	 *  when the writer is closed.
+	 * @param format
+	 * @return the writer
+	 * @throws IOException
+	 */
+	public static EnrichedGOTermsStreamWriter create(OutputStream os, Format format) throws IOException
+	{
+		switch (format)
+		{
+			case TSV: return new EnrichedGOTermsTSVWriter(os, false);
+			case TSV_GZIP: return new EnrichedGOTermsTSVWriter(os, true);
+			case COLUMNAR: return new EnrichedGOTermsColumnarWriter(os);
+		}
+		throw new IllegalArgumentException("Unknown format " + format);
+	}
+
+	/**
+	 * Begins a new table.
+	 *
+	 * @param name the name of the table, usually the name of the study.
+	 * @param prototype the properties object that defines the columns. May
+	 *  be null in which case the table has no columns.
+	 * @param populationGeneCount the number of genes of the population.
+	 * @param studyGeneCount the number of genes of the study.
+	 * @throws IOException
+	 */
+	public void beginTable(String name, AbstractGOTermProperties prototype, int populationGeneCount, int studyGeneCount) throws IOException
+	{
+		if (numberOfColumns != -1)
+			throw new IllegalStateException("The previous table has not been ended");
+
+		this.populationGeneCount = populationGeneCount;
+		this.studyGeneCount = studyGeneCount;
+		this.numberOfColumns = prototype != null ? prototype.getNumberOfProperties() : 0;
+
+		String [] columnNames = new String[numberOfColumns];
+		int [] columnTypes = new int[numberOfColumns];
+		for (int i = 0; i < numberOfColumns; i++)
+		{
+			columnNames[i] = prototype.getPropertyName(i);
+			columnTypes[i] = prototype.getPropertyType(i);
+		}
+		beginTable(name, columnNames, columnTypes);
+	}
+
+	/**
+	 * Writes a row of the current table.
+	 *
+	 * @param props the properties. Must be of the same class as the
+	 *  prototype given to beginTable().
+	 * @throws IOException
+	 */
+	public void writeRow(AbstractGOTermProperties props) throws IOException
+	{
+		if (numberOfColumns == -1)
+			throw new IllegalStateException("No table has been begun");
+		if (props.getNumberOfProperties() != numberOfColumns)
+			throw new IllegalArgumentException("The number of properties doesn't match the number of columns of the table");
+		writeProperties(props);
+	}
+
+	/**
+	 * Ends the current table.
+	 *
+	 * @throws IOException
+	 */
+	public void endTable() throws IOException
+	{
+		if (numberOfColumns == -1)
+			throw new IllegalStateException("No table has been begun");
+		finishTable();
+		numberOfColumns = -1;
+	}
+
+	/**
+	 * Writes the given result as a complete table. The rows are sorted
+	 * according to the natural order of the properties.
+	 *
+	 * @param name the name of the table.
+	 * @param result
+	 * @throws IOException
+	 */
+	public void writeTable(String name, EnrichedGOTermsResult result) throws IOException
+	{
+		/* Place the result into an own list, so we can sort the results */
+		ArrayList<AbstractGOTermProperties> propsList = new ArrayList<AbstractGOTermProperties>(result.getSize());
+		for (AbstractGOTermProperties props : result)
+			propsList.add(props);
+		Collections.sort(propsList);
+
+		beginTable(name, propsList.isEmpty() ? null : propsList.get(0), result.getPopulationGeneCount(), result.getStudyGeneCount());
+		for (AbstractGOTermProperties props : propsList)
+			writeRow(props);
+		endTable();
+	}
+
+	/**
+	 * Writes the given table, e.g., a table that has been read from a
+	 * previously written file.
+	 *
+	 * @param table
+	 * @throws IOException
+	 */
+	public void writeTable(EnrichedGOTermsTable table) throws IOException
+	{
+		if (numberOfColumns != -1)
+			throw new IllegalStateException("The previous table has not been ended");
+
+		numberOfColumns = table.getNumberOfColumns();
+		String [] columnNames = new String[numberOfColumns];
+		int [] columnTypes = new int[numberOfColumns];
+		for (int i = 0; i < numberOfColumns; i++)
+		{
+			columnNames[i] = table.getColumnName(i);
+			columnTypes[i] = table.getColumnType(i);
+		}
+		beginTable(table.getName(), columnNames, columnTypes);
+		for (int r = 0; r < table.getNumberOfRows(); r++)
+			writeTableRow(table, r);
+		endTable();
+	}
+
+	/**
+	 * Returns the int value of the given column, which includes the
+	 * population and study gene counts of the current table.
+	 *
+	 * @param props
+	 * @param column
+	 * @return the value.
+	 */
+	protected int getIntValue(AbstractGOTermProperties props, int column)
+	{
+		if (props.isPropertyPopulationGeneCount(column)) return populationGeneCount;
+		if (props.isPropertyStudyGeneCount(column)) return studyGeneCount;
+		return props.getIntProperty(column);
+	}
+
+	/**
+	 * Called when a table is begun.
+	 *
+	 * @param name
+	 * @param columnNames
+	 * @param columnTypes the types of the columns, one of the PROPERTY_
+	 *  constants of AbstractGOTermProperties.
+	 * @throws IOException
+	 */
+	protected abstract void beginTable(String name, String [] columnNames, int [] columnTypes) throws IOException;
+
+	/**
+	 * Called for every row of the current table.
+	 *
+	 * @param props
+	 * @throws IOException
+	 */
+	protected abstract void writeProperties(AbstractGOTermProperties props) throws IOException;
+
+	/**
+	 * Called for every row of a table that is written via
+	 * writeTable(EnrichedGOTermsTable).
+	 *
+	 * @param table
+	 * @param row
+	 * @throws IOException
+	 */
+	protected abstract void writeTableRow(EnrichedGOTermsTable table, int row) throws IOException;
+
+	/**
+	 * Called when the current table is ended.
+	 *
+	 * @throws IOException
+	 */
+	protected abstract void finishTable() throws IOException;
+}
@@ -0,0 +1,125 @@
+package ontologizer.calculation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes enrichment results as tab-separated values, optionally
+ * gzip compressed. Every table starts with a header line. The rows
+ * are assembled in a reused buffer, hence no String is created per
+ * line and integers and booleans are appended without intermediate
+ * Strings. Doubles are formatted by StringBuilder.append(double), which
+ * keeps the format of Double.toString() but may create a temporary
+ * String per value on some runtimes.
+ *
+ * @author Sebastian Bauer
+ */
+public class EnrichedGOTermsTSVWriter extends EnrichedGOTermsStreamWriter
+{
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	private Writer out;
+
+	/** The current line */
+	private StringBuilder line = new StringBuilder(256);
+
+	/** Used to transfer the line to the writer */
+	private char [] chars = new char[256];
+
+	private int [] columnTypes;
+
+	/**
+	 * Constructs the writer.
+	 *
+	 * @param os the stream to which the tables are written.
+	 * @param compress whether the output shall be gzip compressed.
+	 * @throws IOException
+	 */
+	public EnrichedGOTermsTSVWriter(OutputStream os, boolean compress) throws IOException
+	{
+		if (compress)
+			os = new GZIPOutputStream(os, BUFFER_SIZE);
+		out = new BufferedWriter(new OutputStreamWriter(os), BUFFER_SIZE);
+	}
+
+	@Override
+	protected void beginTable(String name, String [] columnNames, int [] columnTypes) throws IOException
+	{
+		this.columnTypes = columnTypes;
+		if (columnNames.length == 0)
+			return;
+
+		line.setLength(0);
+		for (int i = 0; i < columnNames.length; i++)
+		{
+			if (i != 0) line.append('\t');
+			line.append(columnNames[i]);
+		}
+		line.append('\n');
+		flushLine();
+	}
+
+	@Override
+	protected void writeProperties(AbstractGOTermProperties props) throws IOException
+	{
+		line.setLength(0);
+		for (int i = 0; i < columnTypes.length; i++)
+		{
+			if (i != 0) line.append('\t');
+			switch (columnTypes[i])
+			{
+				case	AbstractGOTermProperties.PROPERTY_INT: line.append(getIntValue(props, i)); break;
+				case	AbstractGOTermProperties.PROPERTY_DOUBLE: line.append(props.getDoubleProperty(i)); break;
+				case	AbstractGOTermProperties.PROPERTY_BOOLEAN: line.append(props.getBooleanProperty(i)); break;
+				case	AbstractGOTermProperties.PROPERTY_QUOTED_STRING: line.append('"').append(props.getStringProperty(i)).append('"'); break;
+				default: line.append(props.getStringProperty(i)); break;
+			}
+		}
+		line.append(LINE_SEPARATOR);
+		flushLine();
+	}
+
+	@Override
+	protected void writeTableRow(EnrichedGOTermsTable table, int row) throws IOException
+	{
+		line.setLength(0);
+		for (int i = 0; i < columnTypes.length; i++)
+		{
+			if (i != 0) line.append('\t');
+			table.appendValue(i, row, line);
+		}
+		line.append(LINE_SEPARATOR);
+		flushLine();
+	}
+
+	@Override
+	protected void finishTable() throws IOException
+	{
+		columnTypes = null;
+	}
+
+	/**
+	 * Transfers the current line to the writer.
+	 *
+	 * @throws IOException
+	 */
+	private void flushLine() throws IOException
+	{
+		int length = line.length();
+		if (length > chars.length)
+			chars = new char[Math.max(length, chars.length * 2)];
+		line.getChars(0, length, chars, 0);
+		out.write(chars, 0, length);
+	}
+
+	public void close() throws IOException
+	{
+		out.close();
+	}
+}
@@ -0,0 +1,277 @@
+package ontologizer.calculation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+/**
+ * A table of enrichment results whose values are kept in typed
+ * columns. Tables are obtained by reading the tables that have been
+ * written by an EnrichedGOTermsStreamWriter.
+ *
+ * @author Sebastian Bauer
+ */
+public class EnrichedGOTermsTable
+{
+	private String name;
+	private String [] columnNames;
+	private int [] columnTypes;
+	private int numberOfRows;
+
+	/** The values of each column as int [], double [], boolean [] or String [] */
+	private Object [] columns;
+
+	/**
+	 * Constructs the table.
+	 *
+	 * @param name the name of the table.
+	 * @param columnNames
+	 * @param columnTypes the types of the columns, one of the PROPERTY_
+	 *  constants of AbstractGOTermProperties.
+	 * @param columns the values of the columns, int [] for PROPERTY_INT,
+	 *  double [] for PROPERTY_DOUBLE, boolean [] for PROPERTY_BOOLEAN and
+	 *  String [] otherwise.
+	 * @param numberOfRows
+	 */
+	public EnrichedGOTermsTable(String name, String [] columnNames, int [] columnTypes, Object [] columns, int numberOfRows)
+	{
+		this.name = name;
+		this.columnNames = columnNames;
+		this.columnTypes = columnTypes;
+		this.columns = columns;
+		this.numberOfRows = numberOfRows;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public int getNumberOfColumns()
+	{
+		return columnNames.length;
+	}
+
+	public int getNumberOfRows()
+	{
+		return numberOfRows;
+	}
+
+	public String getColumnName(int column)
+	{
+		return columnNames[column];
+	}
+
+	/**
+	 * Returns the type of the given column.
+	 *
+	 * @param column
+	 * @return one of the PROPERTY_ constants of AbstractGOTermProperties.
+	 */
+	public int getColumnType(int column)
+	{
+		return columnTypes[column];
+	}
+
+	/**
+	 * Returns the index of the column with the given name.
+	 *
+	 * @param columnName
+	 * @return the index or -1 if there is no such column.
+	 */
+	public int getColumnIndex(String columnName)
+	{
+		for (int i = 0; i < columnNames.length; i++)
+			if (columnNames[i].equals(columnName))
+				return i;
+		return -1;
+	}
+
+	public int getInt(int column, int row)
+	{
+		return ((int [])columns[column])[row];
+	}
+
+	public double getDouble(int column, int row)
+	{
+		return ((double [])columns[column])[row];
+	}
+
+	public boolean getBoolean(int column, int row)
+	{
+		return ((boolean [])columns[column])[row];
+	}
+
+	/**
+	 * Returns the value of a string column. Quoted strings are returned
+	 * without the quotes.
+	 *
+	 * @param column
+	 * @param row
+	 * @return the value.
+	 */
+	public String getString(int column, int row)
+	{
+		return ((String [])columns[column])[row];
+	}
+
+	/**
+	 * Appends the textual representation of the given value as it
+	 * appears in a tab-separated table.
+	 *
+	 * @param column
+	 * @param row
+	 * @param sb
+	 */
+	public void appendValue(int column, int row, StringBuilder sb)
+	{
+		switch (columnTypes[column])
+		{
+			case	AbstractGOTermProperties.PROPERTY_INT: sb.append(getInt(column, row)); break;
+			case	AbstractGOTermProperties.PROPERTY_DOUBLE: sb.append(getDouble(column, row)); break;
+			case	AbstractGOTermProperties.PROPERTY_BOOLEAN: sb.append(getBoolean(column, row)); break;
+			case	AbstractGOTermProperties.PROPERTY_QUOTED_STRING: sb.append('"').append(getString(column, row)).append('"'); break;
+			default: sb.append(getString(column, row)); break;
+		}
+	}
+
+	/**
+	 * Reads a table in the tab-separated format as written by the
+	 * EnrichedGOTermsTSVWriter. As the format doesn't store the types of
+	 * the columns, a column gets the most specific type that reproduces
+	 * all of its values exactly.
+	 *
+	 * @param name the name of the table.
+	 * @param is the stream from which the table is read.
+	 * @return the table.
+	 * @throws IOException
+	 */
+	public static EnrichedGOTermsTable readTSV(String name, InputStream is) throws IOException
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(is));
+		String header = in.readLine();
+		if (header == null || header.length() == 0)
+			return new EnrichedGOTermsTable(name, new String[0], new int[0], new Object[0], 0);
+
+		String [] columnNames = header.split("\t", -1);
+		ArrayList<String []> rows = new ArrayList<String []>();
+		String line;
+		while ((line = in.readLine()) != null)
+		{
+			String [] values = line.split("\t", -1);
+			if (values.length != columnNames.length)
+				throw new IOException("Line " + (rows.size() + 2) + " of table \"" + name + "\" has " + values.length + " columns but " + columnNames.length + " were expected");
+			rows.add(values);
+		}
+
+		int numberOfRows = rows.size();
+		int [] columnTypes = new int[columnNames.length];
+		Object [] columns = new Object[columnNames.length];
+		for (int c = 0; c < columnNames.length; c++)
+		{
+			int type = inferType(rows, c);
+			columnTypes[c] = type;
+			switch (type)
+			{
+				case	AbstractGOTermProperties.PROPERTY_INT:
+						{
+							int [] values = new int[numberOfRows];
+							for (int r = 0; r < numberOfRows; r++)
+								values[r] = Integer.parseInt(rows.get(r)[c]);
+							columns[c] = values;
+							break;
+						}
+				case	AbstractGOTermProperties.PROPERTY_DOUBLE:
+						{
+							double [] values = new double[numberOfRows];
+							for (int r = 0; r < numberOfRows; r++)
+								values[r] = Double.parseDouble(rows.get(r)[c]);
+							columns[c] = values;
+							break;
+						}
+				case	AbstractGOTermProperties.PROPERTY_BOOLEAN:
+						{
+							boolean [] values = new boolean[numberOfRows];
+							for (int r = 0; r < numberOfRows; r++)
+								values[r] = rows.get(r)[c].equals("true");
+							columns[c] = values;
+							break;
+						}
+				case	AbstractGOTermProperties.PROPERTY_QUOTED_STRING:
+						{
+							String [] values = new String[numberOfRows];
+							for (int r = 0; r < numberOfRows; r++)
+							{
+								String v = rows.get(r)[c];
+								values[r] = v.substring(1, v.length() - 1);
+							}
+							columns[c] = values;
+							break;
+						}
+				default:
+						{
+							String [] values = new String[numberOfRows];
+							for (int r = 0; r < numberOfRows; r++)
+								values[r] = rows.get(r)[c];
+							columns[c] = values;
+							break;
+						}
+			}
+		}
+		return new EnrichedGOTermsTable(name, columnNames, columnTypes, columns, numberOfRows);
+	}
+
+	/**
+	 * Determines the most specific type of a column of a textual table.
+	 *
+	 * @param rows
+	 * @param c
+	 * @return the type.
+	 */
+	private static int inferType(ArrayList<String []> rows, int c)
+	{
+		if (rows.isEmpty())
+			return AbstractGOTermProperties.PROPERTY_STRING;
+
+		boolean isInt = true;
+		boolean isDouble = true;
+		boolean isBoolean = true;
+		boolean isQuoted = true;
+
+		for (String [] row : rows)
+		{
+			String v = row[c];
+			if (isInt)
+			{
+				try
+				{
+					isInt = Integer.toString(Integer.parseInt(v)).equals(v);
+				} catch (NumberFormatException e)
+				{
+					isInt = false;
+				}
+			}
+			if (isDouble)
+			{
+				try
+				{
+					isDouble = Double.toString(Double.parseDouble(v)).equals(v);
+				} catch (NumberFormatException e)
+				{
+					isDouble = false;
+				}
+			}
+			if (isBoolean)
+				isBoolean = v.equals("true") || v.equals("false");
+			if (isQuoted)
+				isQuoted = v.length() >= 2 && v.charAt(0) == '"' && v.charAt(v.length() - 1) == '"';
+		}
+		if (isInt) return AbstractGOTermProperties.PROPERTY_INT;
+		if (isDouble) return AbstractGOTermProperties.PROPERTY_DOUBLE;
+		if (isBoolean) return AbstractGOTermProperties.PROPERTY_BOOLEAN;
+		if (isQuoted) return AbstractGOTermProperties.PROPERTY_QUOTED_STRING;
+		return AbstractGOTermProperties.PROPERTY_STRING;
+	}
+}
@@ -0,0 +1,115 @@
+package ontologizer.calculation;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Combines the tables of several files, e.g., the per study outputs
+ * of a batch run, into a single indexed columnar file. Inputs may be
+ * columnar files, whose tables are copied as they are, or tab-separated
+ * tables, which may be gzip compressed. Tables of inputs that contain a
+ * single table are named after the file name without the suffix, which
+ * keeps the tables of different calculations of the same study apart.
+ * Tables of inputs that contain several tables keep their names.
+ *
+ * @author Sebastian Bauer
+ */
+public class EnrichedGOTermsTableMerger
+{
+	private static Logger logger = Logger.getLogger(EnrichedGOTermsTableMerger.class.getName());
+
+	/**
+	 * Merges the tables of the given files into the given output file.
+	 *
+	 * @param inputs
+	 * @param output
+	 * @throws IOException
+	 * @throws IllegalArgumentException if two tables have the same name.
+	 */
+	public static void merge(File [] inputs, File output) throws IOException
+	{
+		EnrichedGOTermsColumnarWriter writer = new EnrichedGOTermsColumnarWriter(new FileOutputStream(output));
+		try
+		{
+			for (File input : inputs)
+			{
+				logger.log(Level.INFO, "Merging \"" + input.getPath() + "\".");
+
+				if (EnrichedGOTermsColumnarReader.isColumnar(input))
+				{
+					EnrichedGOTermsColumnarReader reader = new EnrichedGOTermsColumnarReader(input);
+					try
+					{
+						if (reader.getNumberOfTables() == 1)
+						{
+							writer.copyTable(reader, 0, getTableName(input));
+						} else
+						{
+							for (int i = 0; i < reader.getNumberOfTables(); i++)
+								writer.copyTable(reader, i, reader.getTableName(i));
+						}
+					} finally
+					{
+						reader.close();
+					}
+				} else
+				{
+					InputStream is = openTSV(input);
+					try
+					{
+						writer.writeTable(EnrichedGOTermsTable.readTSV(getTableName(input), is));
+					} finally
+					{
+						is.close();
+					}
+				}
+			}
+		} finally
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * Opens a tab-separated file, which is decompressed if it starts
+	 * like a gzip file.
+	 *
+	 * @param input
+	 * @return the stream.
+	 * @throws IOException
+	 */
+	private static InputStream openTSV(File input) throws IOException
+	{
+		InputStream is = new BufferedInputStream(new FileInputStream(input));
+		is.mark(2);
+		int b1 = is.read();
+		int b2 = is.read();
+		is.reset();
+		if (b1 == 0x1f && b2 == 0x8b)
+			is = new GZIPInputStream(is, 65536);
+		return is;
+	}
+
+	/**
+	 * Returns the name of the table of a file that contains a single table.
+	 *
+	 * @param input
+	 * @return the name.
+	 */
+	static String getTableName(File input)
+	{
+		String name = input.getName();
+		if (name.endsWith(".gz"))
+			name = name.substring(0, name.length() - 3);
+		if (name.endsWith(".txt") || name.endsWith(".tsv") || name.endsWith(".otc"))
+			name = name.substring(0, name.length() - 4);
+		return name;
+	}
+}
@@ -4,9 +4,6 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,28 +24,35 @@ public class EnrichedGOTermsTableWriter
 	 */
 	public static void writeTable(OutputStream os, EnrichedGOTermsResult result)
 	{
-		AbstractGOTermProperties first = result.iterator().next();
-
-		PrintWriter out = new PrintWriter(os);
-
-		/* Write out the table header */
-
-		out.write(first.propHeaderToString());
-
-		/* Place the result into an own list, so we can sort the results */
-		ArrayList<AbstractGOTermProperties> propsList = new ArrayList<AbstractGOTermProperties>();
-		for (AbstractGOTermProperties props : result)
-			propsList.add(props);
-		Collections.sort(propsList);
-
-		/* Write out table contents */
-		for (AbstractGOTermProperties props : propsList)
+		try
+		{
+			writeTable(os, result, EnrichedGOTermsStreamWriter.Format.TSV);
+		} catch (IOException e)
 		{
-			out.println(props.propLineToString(result.getPopulationGeneCount(), result.getStudyGeneCount()));
+			logger.log(Level.SEVERE, "Exception occured when writing the table.", e);
 		}
+	}
 
-		out.flush();
-		out.close();
+	/**
+	 * Write the results in the given format to the given output stream.
+	 * The stream is closed afterwards.
+	 *
+	 * @param os the stream in which the data is written to.
+	 * @param result the results to save
+	 * @param format the format of the table
+	 * @throws IOException
+	 */
+	public static void writeTable(OutputStream os, EnrichedGOTermsResult result, EnrichedGOTermsStreamWriter.Format format) throws IOException
+	{
+		EnrichedGOTermsStreamWriter writer = EnrichedGOTermsStreamWriter.create(os, format);
+		try
+		{
+			String name = result.getStudySet() != null ? result.getStudySet().getName() : "";
+			writer.writeTable(name, result);
+		} finally
+		{
+			writer.close();
+		}
 	}
 
 	/**
@@ -58,12 +62,24 @@ public class EnrichedGOTermsTableWriter
 	 * @param result the results to save
 	 */
 	public static void writeTable(File file, EnrichedGOTermsResult result)
+	{
+		writeTable(file, result, EnrichedGOTermsStreamWriter.Format.TSV);
+	}
+
+	/**
+	 * Write the results as file of the given format.
+	 *
+	 * @param file the filename that is used for the newly created file.
+	 * @param result the results to save
+	 * @param format the format of the file
+	 */
+	public static void writeTable(File file, EnrichedGOTermsResult result, EnrichedGOTermsStreamWriter.Format format)
 	{
 		try
 		{
 			logger.log(Level.INFO, "Writing to \"" + file.getCanonicalPath() + "\".");
 
-			writeTable(new FileOutputStream(file), result);
+			writeTable(new FileOutputStream(file), result, format);
 
 			logger.log(Level.INFO, "\"" + file.getCanonicalPath() + "\"" + " successfully written.");
 		} catch (IOException e)
@@ -1,5 +1,7 @@
 package ontologizer.calculation;
 
+import java.util.Random;
+
 import ontologizer.association.AssociationContainer;
 import ontologizer.go.Ontology;
 import ontologizer.go.Term;
@@ -8,6 +10,7 @@ import ontologizer.set.StudySet;
 import ontologizer.statistics.AbstractTestCorrection;
 import ontologizer.statistics.IPValueCalculation;
 import ontologizer.statistics.PValue;
+import ontologizer.statistics.PValueSet;
 
 /**
  *
@@ -68,6 +71,11 @@ public class IndependentUniformCalculation implements ICalculation
 			}
 
 			private PValue[] calculatePValues(StudySet studySet)
+			{
+				return calculatePValues(studySet, null);
+			}
+
+			private PValue[] calculatePValues(StudySet studySet, Random rnd)
 			{
 				int i = 0;
 
@@ -86,7 +94,7 @@ public class IndependentUniformCalculation implements ICalculation
 					myP.annotatedStudyGenes = goidAnnotatedStudyGeneCount;
 					myP.annotatedPopulationGenes = goidAnnotatedPopGeneCount;
 
-					myP.p = Math.random();
+					myP.p = rnd != null ? rnd.nextDouble() : Math.random();
 					myP.p_min = 0.0;
 
 					p[i++] = myP;
@@ -103,6 +111,11 @@ public class IndependentUniformCalculation implements ICalculation
 			{
 				return calculatePValues(populationSet.generateRandomStudySet(observedStudySet.getGeneCount()));
 			}
+
+			public PValueSet calculateRandomPValueSet(Random rnd)
+			{
+				return new PValueSet(calculatePValues(populationSet.generateRandomStudySet(observedStudySet.getGeneCount(), rnd), rnd));
+			}
 		}
 
 		SinglePValuesCalculation pValueCalculation = new SinglePValuesCalculation();
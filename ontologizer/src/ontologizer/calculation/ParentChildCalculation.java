@@ -1,9 +1,11 @@
 package ontologizer.calculation;
 
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 
 import ontologizer.association.AssociationContainer;
+import ontologizer.enumeration.GOTermBitsetCounter;
 import ontologizer.enumeration.GOTermEnumerator;
 import ontologizer.go.Ontology;
 import ontologizer.go.TermID;
@@ -12,6 +14,7 @@ import ontologizer.set.StudySet;
 import ontologizer.statistics.AbstractTestCorrection;
 import ontologizer.statistics.IPValueCalculation;
 import ontologizer.statistics.PValue;
+import ontologizer.statistics.PValueSet;
 import ontologizer.types.ByteString;
 
 public class ParentChildCalculation extends
@@ -60,12 +63,16 @@ public class ParentChildCalculation extends
 			public PopulationSet populationSet;
 			public GOTermEnumerator popTermEnumerator;
 			public StudySet observedStudySet;
+			public GOTermBitsetCounter counter;
 
 			private PValue [] calculatePValues(StudySet studySet)
 			{
-				/* We need this to get genes annotated in the study set */
-				GOTermEnumerator studyTermEnumerator = studySet.enumerateGOTerms(graph,
-						goAssociations);
+				/* We only need counts, the genes annotated in the study set are
+				 * enumerated only if the study can't be represented by the counter */
+				GOTermBitsetCounter.Study study = counter.createStudy(studySet);
+				GOTermEnumerator studyTermEnumerator = null;
+				if (study == null)
+					studyTermEnumerator = studySet.enumerateGOTerms(graph, goAssociations);
 
 				//PValue p [] = new PValue[populationTermCounter.getTotalNumberOfAnnotatedTerms()];
 				PValue p [] = new PValue[popTermEnumerator.getTotalNumberOfAnnotatedTerms()];
@@ -75,8 +82,11 @@ public class ParentChildCalculation extends
 				for (TermID term : popTermEnumerator)
 				{
 					// calculating properties of term
-					ParentChildGOTermProperties termProp = calculateTerm(term, graph,
-							popTermEnumerator, studyTermEnumerator);
+					ParentChildGOTermProperties termProp;
+					if (study != null)
+						termProp = calculateTerm(term, graph, study);
+					else
+						termProp = calculateTerm(term, graph, popTermEnumerator, studyTermEnumerator);
 
 					// adding properties to p Vector
 					p[i++] = termProp;
@@ -85,6 +95,41 @@ public class ParentChildCalculation extends
 				return p;
 			}
 
+			/**
+			 * Same as calculatePValues() but the p values are stored directly
+			 * in their primitive representation.
+			 */
+			private PValueSet calculatePValueSet(StudySet studySet)
+			{
+				GOTermBitsetCounter.Study study = counter.createStudy(studySet);
+				if (study == null)
+					return new PValueSet(calculatePValues(studySet));
+
+				PValueSet p = new PValueSet(popTermEnumerator.getTotalNumberOfAnnotatedTerms());
+				int i = 0;
+
+				/* Same as calculateTerm() and calculateFamily(), but only for p values that are not ignored */
+				for (TermID term : popTermEnumerator)
+				{
+					int studyTermCount;
+					if (!graph.isRootTerm(term) && (studyTermCount = study.getCount(term)) != 0)
+					{
+						int popTermCount = counter.getPopulationCount(term);
+						int popFamilyCount = counter.getPopulationParentCount(term);
+						if (popFamilyCount != popTermCount)
+						{
+							p.add(i, hyperg.phypergeometric(
+									popFamilyCount,
+									(double)popTermCount / (double)popFamilyCount,
+									study.getParentCount(term),
+									studyTermCount));
+						}
+					}
+					i++;
+				}
+				return p;
+			}
+
 			public int currentStudySetSize()
 			{
 				return observedStudySet.getGeneCount();
@@ -100,6 +145,36 @@ public class ParentChildCalculation extends
 				return calculatePValues(populationSet.generateRandomStudySet(observedStudySet.getGeneCount()));
 			}
 
+			public PValueSet calculateRandomPValueSet(Random rnd)
+			{
+				return calculatePValueSet(populationSet.generateRandomStudySet(observedStudySet.getGeneCount(), rnd));
+			}
+
+			/**
+			 * Calculates the properties of the given term by means of the counter.
+			 */
+			private ParentChildGOTermProperties calculateTerm(
+					TermID term,
+					Ontology graph,
+					GOTermBitsetCounter.Study study)
+			{
+				ParentChildGOTermProperties prop = new ParentChildGOTermProperties();
+				prop.goTerm = graph.getTerm(term);
+				prop.annotatedPopulationGenes = counter.getPopulationCount(term);
+				prop.annotatedStudyGenes = study.getCount(term);
+
+				if (graph.isRootTerm(term)) {
+					prop.nparents = 0;
+					calculateRootTerm(prop);
+				} else {
+					prop.popFamilyGenes = counter.getPopulationParentCount(term);
+					prop.studyFamilyGenes = study.getParentCount(term);
+					prop.nparents = counter.getNumberOfParents(term);
+					calculateFamily(prop);
+				}
+				return prop;
+			}
+
 			private ParentChildGOTermProperties calculateTerm(
 					TermID term,
 					Ontology graph,
@@ -118,10 +193,7 @@ public class ParentChildCalculation extends
 
 				if (graph.isRootTerm(term)) {
 					prop.nparents = 0;
-					prop.ignoreAtMTC = true;
-					prop.p = 1.0;
-					prop.p_adjusted = 1.0;
-					prop.p_min = 1.0;
+					calculateRootTerm(prop);
 				} else {
 					// getting parents
 					Set<TermID> parents = graph.getTermParents(term);
@@ -148,37 +220,58 @@ public class ParentChildCalculation extends
 					prop.popFamilyGenes = popFamilyCount;
 					prop.studyFamilyGenes = studyFamilyCount;
 					prop.nparents = parents.size();
+					calculateFamily(prop);
+				}
 
-					if (studyTermCount != 0) {
-						if (popFamilyCount == popTermCount) {
-							prop.ignoreAtMTC = true;
-							prop.p = 1.0;
-							prop.p_adjusted = 1.0;
-							prop.p_min = 1.0;
-						} else {
-							double p = hyperg.phypergeometric(
-									popFamilyCount,
-									(double)popTermCount / (double)popFamilyCount,
-									studyFamilyCount,
-									studyTermCount);
+				return prop;
+			}
 
-							prop.ignoreAtMTC = false;
-							prop.p = p;
-							prop.p_min = hyperg.dhyper(
-									popTermCount,
-									popFamilyCount,
-									popTermCount,
-									popTermCount);
-						}
-					} else {
+			private void calculateRootTerm(ParentChildGOTermProperties prop)
+			{
+				prop.ignoreAtMTC = true;
+				prop.p = 1.0;
+				prop.p_adjusted = 1.0;
+				prop.p_min = 1.0;
+			}
+
+			/**
+			 * Calculates the p values of a non-root term whose counts
+			 * have been set already.
+			 */
+			private void calculateFamily(ParentChildGOTermProperties prop)
+			{
+				int popTermCount = prop.annotatedPopulationGenes;
+				int studyTermCount = prop.annotatedStudyGenes;
+				int popFamilyCount = prop.popFamilyGenes;
+				int studyFamilyCount = prop.studyFamilyGenes;
+
+				if (studyTermCount != 0) {
+					if (popFamilyCount == popTermCount) {
 						prop.ignoreAtMTC = true;
 						prop.p = 1.0;
 						prop.p_adjusted = 1.0;
 						prop.p_min = 1.0;
+					} else {
+						double p = hyperg.phypergeometric(
+								popFamilyCount,
+								(double)popTermCount / (double)popFamilyCount,
+								studyFamilyCount,
+								studyTermCount);
+
+						prop.ignoreAtMTC = false;
+						prop.p = p;
+						prop.p_min = hyperg.dhyper(
+								popTermCount,
+								popFamilyCount,
+								popTermCount,
+								popTermCount);
 					}
+				} else {
+					prop.ignoreAtMTC = true;
+					prop.p = 1.0;
+					prop.p_adjusted = 1.0;
+					prop.p_min = 1.0;
 				}
-
-				return prop;
 			}
 		};
 
@@ -188,6 +281,7 @@ public class ParentChildCalculation extends
 		pValueCalculation.populationSet = popSet;
 		pValueCalculation.popTermEnumerator = popSet.enumerateGOTerms(graph, goAssociations);
 		pValueCalculation.observedStudySet = studySet;
+		pValueCalculation.counter = popSet.getBitsetCounter(graph, goAssociations);
 		PValue p[] = testCorrection.adjustPValues(pValueCalculation);
 
 		/* Add the results to the result list and filter out terms
@@ -1,6 +1,7 @@
 package ontologizer.calculation;
 
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 
 import ontologizer.association.AssociationContainer;
@@ -12,6 +13,7 @@ import ontologizer.set.StudySet;
 import ontologizer.statistics.AbstractTestCorrection;
 import ontologizer.statistics.IPValueCalculation;
 import ontologizer.statistics.PValue;
+import ontologizer.statistics.PValueSet;
 import ontologizer.types.ByteString;
 
 public class ParentChildCutCalculation extends
@@ -104,6 +106,11 @@ public class ParentChildCutCalculation extends
 				return calculatePValues(populationSet.generateRandomStudySet(observedStudySet.getGeneCount()));
 			}
 
+			public PValueSet calculateRandomPValueSet(Random rnd)
+			{
+				return new PValueSet(calculatePValues(populationSet.generateRandomStudySet(observedStudySet.getGeneCount(), rnd)));
+			}
+
 			private ParentChildGOTermProperties calculateTerm(TermID term,
 					Ontology graph, GOTermEnumerator popTermEnumerator,
 					GOTermEnumerator studyTermEnumerator)
@@ -15,6 +15,10 @@ public class ParentChildGOTermProperties extends AbstractGOTermProperties
 		"ID","Pop.total","Pop.term","Study.total","Study.term","Pop.family", "Study.family", "nparents", "is.trivial", "p", "p.adjusted", "p.min", "name"
 		};
 
+	private static final int [] propertyTypes = new int[]{
+		PROPERTY_STRING, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_BOOLEAN, PROPERTY_DOUBLE, PROPERTY_DOUBLE, PROPERTY_DOUBLE, PROPERTY_QUOTED_STRING
+		};
+
 	@Override
 	public int getNumberOfProperties()
 	{
@@ -49,6 +53,59 @@ public class ParentChildGOTermProperties extends AbstractGOTermProperties
 		return null;
 	}
 
+	@Override
+	public int getPropertyType(int propNumber)
+	{
+		return propertyTypes[propNumber];
+	}
+
+	@Override
+	public String getStringProperty(int propNumber)
+	{
+		switch (propNumber)
+		{
+			case	0: return goTerm.getIDAsString();
+			case	12: return goTerm.getName();
+		}
+		return super.getStringProperty(propNumber);
+	}
+
+	@Override
+	public int getIntProperty(int propNumber)
+	{
+		switch (propNumber)
+		{
+			case	2: return annotatedPopulationGenes;
+			case	4: return annotatedStudyGenes;
+			case	5: return popFamilyGenes;
+			case	6: return studyFamilyGenes;
+			case	7: return nparents;
+		}
+		return super.getIntProperty(propNumber);
+	}
+
+	@Override
+	public double getDoubleProperty(int propNumber)
+	{
+		switch (propNumber)
+		{
+			case	9: return p;
+			case	10: return p_adjusted;
+			case	11: return p_min;
+		}
+		return super.getDoubleProperty(propNumber);
+	}
+
+	@Override
+	public boolean getBooleanProperty(int propNumber)
+	{
+		switch (propNumber)
+		{
+			case	8: return ignoreAtMTC;
+		}
+		return super.getBooleanProperty(propNumber);
+	}
+
 	public boolean isPropertyPopulationGeneCount(int propNumber)
 	{
 		return propNumber == 1;
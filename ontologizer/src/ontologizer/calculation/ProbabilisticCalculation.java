@@ -1,10 +1,18 @@
 package ontologizer.calculation;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ontologizer.association.AssociationContainer;
 import ontologizer.enumeration.GOTermEnumerator;
@@ -27,6 +35,87 @@ import ontologizer.types.ByteString;
  */
 public class ProbabilisticCalculation implements ICalculation
 {
+	/** The maximal number of terms that are initially active in a restart */
+	private static final int MAX_INITIAL_TERMS = 20;
+
+	/**
+	 * The fixed part of a run. Terms are identified by their position
+	 * within the list of all terms, genes are identified by indices.
+	 */
+	private static class Problem
+	{
+		public TermID [] terms;
+
+		/** The distinct study genes of each term */
+		public int [][] termStudyGenes;
+
+		/** How often each study gene of a term is annotated to the term */
+		public int [][] termStudyGeneMultiplicities;
+
+		/** The number of annotations of each term to genes not in the study */
+		public int [] termOtherCounts;
+
+		/** The number of genes */
+		public int numberOfGenes;
+
+		/** The number of study genes */
+		public int numberOfActiveGenes;
+
+		/** The number of annotations to genes not in the study */
+		public int st;
+
+		public Problem(GOTermEnumerator popEnumerator, Set<ByteString> activeGenes)
+		{
+			List<TermID> allTerms = popEnumerator.getAllAnnotatedTermsAsList();
+			terms = allTerms.toArray(new TermID[allTerms.size()]);
+			termStudyGenes = new int[terms.length][];
+			termStudyGeneMultiplicities = new int[terms.length][];
+			termOtherCounts = new int[terms.length];
+			numberOfActiveGenes = activeGenes.size();
+
+			HashMap<ByteString,Integer> gene2Index = new HashMap<ByteString,Integer>();
+			int [] counts = new int[16];
+			for (int t = 0; t < terms.length; t++)
+			{
+				/* Count the study genes of the term, as genes may occur more
+				 * than once we first count per index */
+				List<ByteString> genes = popEnumerator.getAnnotatedGenes(terms[t]).totalAnnotated;
+				int [] indices = new int[genes.size()];
+				int numberOfIndices = 0;
+				for (ByteString g : genes)
+				{
+					if (!activeGenes.contains(g))
+					{
+						/* Gene is inactive */
+						termOtherCounts[t]++;
+						continue;
+					}
+
+					Integer idx = gene2Index.get(g);
+					if (idx == null)
+					{
+						idx = gene2Index.size();
+						gene2Index.put(g, idx);
+						if (idx == counts.length)
+							counts = Arrays.copyOf(counts, idx * 2);
+					}
+					if (counts[idx]++ == 0)
+						indices[numberOfIndices++] = idx;
+				}
+
+				termStudyGenes[t] = Arrays.copyOf(indices, numberOfIndices);
+				termStudyGeneMultiplicities[t] = new int[numberOfIndices];
+				for (int i = 0; i < numberOfIndices; i++)
+				{
+					termStudyGeneMultiplicities[t][i] = counts[indices[i]];
+					counts[indices[i]] = 0;
+				}
+				st += termOtherCounts[t];
+			}
+			numberOfGenes = gene2Index.size();
+		}
+	}
+
 	/** Run data */
 	private static class Data
 	{
@@ -42,65 +131,97 @@ public class ProbabilisticCalculation implements ICalculation
 
 		public int nsg;
 
-		public Set<TermID> activeTerms = new LinkedHashSet<TermID>();
+		/* Fixed (initialized from outside) */
+		private Problem problem;
 
+		/** Whether a term is active */
+		private boolean [] activeTerms;
 
-		/** Active gene nodes connected to at least one active term */
-		private HashMap<ByteString,Integer> Ag = new HashMap<ByteString,Integer>();
+		/** The number of active terms */
+		private int numberOfActiveTerms;
 
+		/** The number of annotations of a gene to active terms */
+		private int [] coverage;
 
-		/* Fixed (initialized from outside) */
-		private GOTermEnumerator popEnumerator;
-		private HashSet<ByteString> activeGenes; /* Study genes */
-		private HashSet<ByteString> allGenes;
-		private List<TermID> allTerms;
+		/** The number of study genes that are annotated to at least one active term */
+		private int coveredGenes;
+
+		public Data(Problem problem)
+		{
+			this.problem = problem;
+			st = problem.st;
+			activeTerms = new boolean[problem.terms.length];
+			coverage = new int[problem.numberOfGenes];
+		}
 
 		/**
 		 * Switch the given term (i.e., make it active if not active,
 		 * make it inactive if active)
 		 * @param t
 		 */
-		public void switchTerm(TermID t)
+		public void switchTerm(int t)
 		{
-			if (activeTerms.contains(t))
+			int [] genes = problem.termStudyGenes[t];
+			int [] multiplicities = problem.termStudyGeneMultiplicities[t];
+
+			if (activeTerms[t])
 			{
 				/* Term is going to be deactivated */
-				activeTerms.remove(t);
+				activeTerms[t] = false;
+				numberOfActiveTerms--;
 
-				for (ByteString g : popEnumerator.getAnnotatedGenes(t).totalAnnotated)
+				for (int i = 0; i < genes.length; i++)
 				{
-					if (activeGenes.contains(g))
-					{
-						Integer cnt = Ag.get(g);
-						if (cnt == 1) Ag.remove(g);
-						else Ag.put(g,cnt-1);
-					}
-					else
-					{
-						/* Gene is inactive but term active */
-						nsg--;
-					}
+					coverage[genes[i]] -= multiplicities[i];
+					if (coverage[genes[i]] == 0)
+						coveredGenes--;
 				}
+				nsg -= problem.termOtherCounts[t];
 			} else
 			{
 				/* Term is going to be activated */
-				activeTerms.add(t);
+				activeTerms[t] = true;
+				numberOfActiveTerms++;
 
-				for (ByteString g : popEnumerator.getAnnotatedGenes(t).totalAnnotated)
+				for (int i = 0; i < genes.length; i++)
 				{
-					if (activeGenes.contains(g))
-					{
-						Integer cnt = Ag.get(g);
-						if (cnt == null) Ag.put(g,1);
-						else Ag.put(g,cnt+1);
-					}
-					else
-					{
-						/* Gene is inactive but term active */
-						nsg++;
-					}
+					if (coverage[genes[i]] == 0)
+						coveredGenes++;
+					coverage[genes[i]] += multiplicities[i];
+				}
+				nsg += problem.termOtherCounts[t];
+			}
+		}
+
+		/**
+		 * Returns the number of study genes that are annotated to at least
+		 * one active term after the given term would have been switched.
+		 *
+		 * @param t
+		 * @return
+		 */
+		private int coveredGenesAfterSwitch(int t)
+		{
+			int [] genes = problem.termStudyGenes[t];
+			int covered = coveredGenes;
+
+			if (activeTerms[t])
+			{
+				int [] multiplicities = problem.termStudyGeneMultiplicities[t];
+				for (int i = 0; i < genes.length; i++)
+				{
+					if (coverage[genes[i]] == multiplicities[i])
+						covered--;
+				}
+			} else
+			{
+				for (int i = 0; i < genes.length; i++)
+				{
+					if (coverage[genes[i]] == 0)
+						covered++;
 				}
 			}
+			return covered;
 		}
 
 		/**
@@ -113,80 +234,44 @@ public class ProbabilisticCalculation implements ICalculation
 		{
 			calculateParamters();
 
+			return objective(ag, an, sg, sn, numberOfActiveTerms);
+		}
+
+		private double objective(int ag, int an, int sg, int sn, int numberOfActiveTerms)
+		{
 			double obj;
 
-			obj = ag*Math.log(p) + an * Math.log(q) + sg * Math.log(1-p) + sn * Math.log(1-q) - alpha*activeTerms.size();
+			obj = ag*Math.log(p) + an * Math.log(q) + sg * Math.log(1-p) + sn * Math.log(1-q) - alpha*numberOfActiveTerms;
 
 			return obj;
 		}
 
-
 		/**
-		 * Recalculate all parameters based upon the active terms from
-		 * scratch.
+		 * Returns the objective after the given term would have been
+		 * switched. The state is not altered.
+		 *
+		 * @param t
+		 * @return
 		 */
-		public void calculateParamtersOld()
+		private double objectiveAfterSwitch(int t)
 		{
-			/* Active gene nodes connected to at least one active term */
-//			Set<ByteString> Ag = new HashSet<ByteString>();
-			HashMap<ByteString,Integer> Ag = new HashMap<ByteString,Integer>();
-
-			/* I inactive gene nodes */
-			/* Number of edges connecting nodes in I with active term nodes */
-			sg = 0;
-
-			/* Number of edges connecting nodes in I with inactive term nodes */
-			sn = 0;
-
-			Ag.clear();
-
-			for (TermID t : activeTerms)
+			int ag = coveredGenesAfterSwitch(t);
+			int sg;
+			int numberOfActiveTerms;
+			if (activeTerms[t])
 			{
-				for (ByteString g : popEnumerator.getAnnotatedGenes(t).totalAnnotated)
-				{
-					if (activeGenes.contains(g))
-					{
-//						Ag.add(g);
-						Integer cnt = Ag.get(g);
-						if (cnt == null) Ag.put(g,1);
-						else Ag.put(g,cnt+1);
-					}
-					else
-					{
-						/* Gene is inactive but term active */
-						sg++;
-					}
-				}
+				sg = nsg - problem.termOtherCounts[t];
+				numberOfActiveTerms = this.numberOfActiveTerms - 1;
+			} else
+			{
+				sg = nsg + problem.termOtherCounts[t];
+				numberOfActiveTerms = this.numberOfActiveTerms + 1;
 			}
-
-//			for (TermID t : allTerms)
-//			{
-//				if (activeTerms.contains(t))
-//					continue;
-//
-//				/* Inactive terms */
-//				for (ByteString g : popEnumerator.getAnnotatedGenes(t).totalAnnotated)
-//				{
-//					if (!activeGenes.contains(g))
-//					{
-//						/* Gene is inactive as terms are inactive */
-//						sn++;
-//					}
-//				}
-//			}
-
-			/* Active gene nodes connected to at least one active term */
-			ag = Ag.size();
-
-			/* Active gene nodes not connected to any active term */
-			an = activeGenes.size() - ag;
-
-			sn = st - sg;
+			return objective(ag, problem.numberOfActiveGenes - ag, sg, st - sg, numberOfActiveTerms);
 		}
 
 		/**
-		 * Recalculate all parameters based upon the active terms from
-		 * scratch.
+		 * Recalculate all parameters based upon the active terms.
 		 */
 		public void calculateParamters()
 		{
@@ -198,50 +283,55 @@ public class ProbabilisticCalculation implements ICalculation
 			sn = st - sg;
 
 			/* Active gene nodes connected to at least one active term */
-			ag = Ag.size();
+			ag = coveredGenes;
 
 			/* Active gene nodes not connected to any active term */
-			an = activeGenes.size() - ag;
+			an = problem.numberOfActiveGenes - ag;
+		}
+
+		/**
+		 * Deactivates all terms.
+		 */
+		private void clear()
+		{
+			Arrays.fill(activeTerms, false);
+			Arrays.fill(coverage, 0);
+			numberOfActiveTerms = 0;
+			coveredGenes = 0;
+			sg = 0;
+			nsg = 0;
 		}
 
 		/**
 		 * Optimize the objective the for active terms.
 		 *
-		 * @param graph
+		 * @param initialTerms the terms that are active at the start.
 		 * @return
 		 */
-		private double optimizeForTerms(Ontology graph)
+		public double optimizeForTerms(int [] initialTerms)
 		{
-			/* No active terms in the init phase. */
-			activeTerms.clear();
-			Ag.clear();
-			sg = 0;
-			nsg = 0;
+			clear();
+			for (int t : initialTerms)
+				switchTerm(t);
 
 			double obj = objective();
 
 			do
 			{
 				double best = Double.NEGATIVE_INFINITY;
-				TermID bestTerm = null;
-
-//				System.out.println(obj + "  " + best + "  " + activeTerms.size());
+				int bestTerm = -1;
 
-				for (TermID t : allTerms)
+				for (int t = 0; t < activeTerms.length; t++)
 				{
-					switchTerm(t);
-
-					double o = objective();
+					double o = objectiveAfterSwitch(t);
 					if (o>best)
 					{
 						best = o;
 						bestTerm = t;
 					}
-
-					switchTerm(t);
 				}
 
-				if (bestTerm != null && best > obj)
+				if (bestTerm != -1 && best > obj)
 				{
 					switchTerm(bestTerm);
 					obj = objective();
@@ -254,11 +344,33 @@ public class ProbabilisticCalculation implements ICalculation
 			return obj;
 		}
 
+		/**
+		 * @return the active terms.
+		 */
+		public Set<TermID> getActiveTerms()
+		{
+			Set<TermID> terms = new LinkedHashSet<TermID>();
+			for (int t = 0; t < activeTerms.length; t++)
+			{
+				if (activeTerms[t])
+					terms.add(problem.terms[t]);
+			}
+			return terms;
+		}
 	}
 
 	private double defaultP = Double.NaN;
 	private double defaultQ = Double.NaN;
 
+	/** The number of searches per optimization */
+	private int numberOfRestarts = 1;
+
+	/** The number of threads that perform the searches */
+	private int numberOfThreads = 1;
+
+	/** The seed of the random starts, null for a random seed */
+	private Long seed;
+
 	public ProbabilisticCalculation()
 	{
 	}
@@ -268,6 +380,9 @@ public class ProbabilisticCalculation implements ICalculation
 	{
 		defaultP = calc.defaultP;
 		defaultQ = calc.defaultQ;
+		numberOfRestarts = calc.numberOfRestarts;
+		numberOfThreads = calc.numberOfThreads;
+		seed = calc.seed;
 	}
 
 
@@ -281,68 +396,214 @@ public class ProbabilisticCalculation implements ICalculation
 		this.defaultQ = defaultQ;
 	}
 
-	public EnrichedGOTermsResult calculateStudySet(Ontology graph,
-			AssociationContainer goAssociations, PopulationSet populationSet,
-			StudySet studySet, AbstractTestCorrection testCorrection)
+	/**
+	 * Sets the number of independent searches that are performed for
+	 * each optimization of the active terms. The first search starts
+	 * with no active term, all others start with a random set of active
+	 * terms. The result of the search with the best objective is taken.
+	 *
+	 * @param numberOfRestarts
+	 */
+	public void setNumberOfRestarts(int numberOfRestarts)
 	{
-		Data data = new Data();
-		data.popEnumerator = populationSet.enumerateGOTerms(graph, goAssociations);
-		data.allTerms = data.popEnumerator.getAllAnnotatedTermsAsList();
-		data.allGenes = populationSet.getAllGeneNames();
-		data.activeGenes = studySet.getAllGeneNames();
-
-		int total = 0;
-		for (TermID t : data.allTerms)
+		this.numberOfRestarts = Math.max(1, numberOfRestarts);
+	}
+
+	/**
+	 * Sets the number of threads that perform the searches in parallel.
+	 *
+	 * @param numberOfThreads
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+	}
+
+	/**
+	 * Sets the seed from which the random starts of the searches are
+	 * derived. The results are reproducible for a given seed, regardless
+	 * of the number of threads.
+	 *
+	 * @param seed
+	 */
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * Chooses the random terms that are active at the start of a search.
+	 *
+	 * @param numberOfTerms
+	 * @param rnd
+	 * @return
+	 */
+	private static int [] chooseInitialTerms(int numberOfTerms, Random rnd)
+	{
+		int k = 1 + rnd.nextInt(Math.min(numberOfTerms, MAX_INITIAL_TERMS));
+		HashSet<Integer> chosen = new HashSet<Integer>();
+		int [] terms = new int[k];
+		int i = 0;
+		while (i < k)
+		{
+			int t = rnd.nextInt(numberOfTerms);
+			if (chosen.add(t))
+				terms[i++] = t;
+		}
+		return terms;
+	}
+
+	/**
+	 * Performs the searches for the current parameters and returns the
+	 * search with the best objective. Ties are resolved in favour of the
+	 * search with the lower index.
+	 *
+	 * @param searches
+	 * @param random the random streams of the searches.
+	 * @param executor the executor that performs the searches, may be null.
+	 * @param p
+	 * @param q
+	 * @return
+	 */
+	private static Data optimize(final Data [] searches, Random [] random, ExecutorService executor, double p, double q)
+	{
+		final int [][] initialTerms = new int[searches.length][];
+		initialTerms[0] = new int[0];
+		for (int i = 1; i < searches.length; i++)
+		{
+			if (searches[i].activeTerms.length > 0)
+				initialTerms[i] = chooseInitialTerms(searches[i].activeTerms.length, random[i]);
+			else
+				initialTerms[i] = new int[0];
+		}
+
+		double [] objectives = new double[searches.length];
+		for (Data search : searches)
 		{
-			/* Inactive terms */
-			for (ByteString g : data.popEnumerator.getAnnotatedGenes(t).totalAnnotated)
+			search.p = p;
+			search.q = q;
+		}
+
+		if (executor == null)
+		{
+			for (int i = 0; i < searches.length; i++)
+				objectives[i] = searches[i].optimizeForTerms(initialTerms[i]);
+		} else
+		{
+			ArrayList<Future<Double>> futures = new ArrayList<Future<Double>>(searches.length);
+			try
+			{
+				for (int i = 0; i < searches.length; i++)
+				{
+					final int search = i;
+					futures.add(executor.submit(new Callable<Double>()
+					{
+						public Double call()
+						{
+							return searches[search].optimizeForTerms(initialTerms[search]);
+						}
+					}));
+				}
+				for (int i = 0; i < searches.length; i++)
+					objectives[i] = futures.get(i).get();
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e)
+			{
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+				if (cause instanceof Error)
+					throw (Error)cause;
+				throw new RuntimeException(cause);
+			} finally
 			{
-				if (!data.activeGenes.contains(g))
-					total++;
+				for (Future<Double> future : futures)
+					future.cancel(true);
 			}
 		}
-		data.st = total;
 
+		int best = 0;
+		for (int i = 1; i < searches.length; i++)
+		{
+			if (objectives[i] > objectives[best])
+				best = i;
+		}
+		return searches[best];
+	}
+
+	public EnrichedGOTermsResult calculateStudySet(Ontology graph,
+			AssociationContainer goAssociations, PopulationSet populationSet,
+			StudySet studySet, AbstractTestCorrection testCorrection)
+	{
+		HashSet<ByteString> allGenes = populationSet.getAllGeneNames();
+		HashSet<ByteString> activeGenes = studySet.getAllGeneNames();
+		Problem problem = new Problem(populationSet.enumerateGOTerms(graph, goAssociations), activeGenes);
+
+		Data [] searches = new Data[numberOfRestarts];
+		Random [] random = new Random[numberOfRestarts];
+		long baseSeed = seed != null ? seed : new Random().nextLong();
+		for (int i = 0; i < numberOfRestarts; i++)
+		{
+			searches[i] = new Data(problem);
+			random[i] = new Random(baseSeed + i * 0x9e3779b97f4a7c15L);
+		}
+		Data data = searches[0];
 
 		if (Double.isNaN(defaultP))
 			data.p = 0.5;
 		else data.p = defaultP;
 
 		if (Double.isNaN(defaultQ))
-			data.q = ((double)data.activeGenes.size())/data.allGenes.size();
+			data.q = ((double)activeGenes.size())/allGenes.size();
 		else data.q = defaultQ;
 
 		double eps = 0.0001;
 
 		data.calculateParamters();
 
-		while (true)
+		ExecutorService executor = null;
+		if (numberOfThreads > 1 && numberOfRestarts > 1)
+			executor = Executors.newFixedThreadPool(Math.min(numberOfThreads, numberOfRestarts));
+
+		try
 		{
-			data.optimizeForTerms(graph);
+			while (true)
+			{
+				data = optimize(searches, random, executor, data.p, data.q);
 
-			data.calculateParamters();
-			double pNext = (double)(data.ag) / (data.ag + data.sg);
-			double qNext = (double)(data.an) / (data.an + data.sn);
+				data.calculateParamters();
+				double pNext = (double)(data.ag) / (data.ag + data.sg);
+				double qNext = (double)(data.an) / (data.an + data.sn);
 
-			if (!Double.isNaN(defaultP) && !Double.isNaN(defaultQ))
-				break;
+				if (!Double.isNaN(defaultP) && !Double.isNaN(defaultQ))
+					break;
 
-			if (Double.isNaN(pNext) || Double.isNaN(qNext))
-			{
-				System.err.println("Breaked: #terms=" + data.activeTerms.size() + " ag=" + data.ag + " sg="+data.sg);
-				break;
-			}
+				if (Double.isNaN(pNext) || Double.isNaN(qNext))
+				{
+					System.err.println("Breaked: #terms=" + data.numberOfActiveTerms + " ag=" + data.ag + " sg="+data.sg);
+					break;
+				}
 
 
-//			System.out.println("p=" + data.p + " q=" + data.q + "  pNext="+pNext + " qNext="+qNext);
+//				System.out.println("p=" + data.p + " q=" + data.q + "  pNext="+pNext + " qNext="+qNext);
 
-			if (Math.abs(qNext - data.q) < eps) break;
-			if (Math.abs(pNext - data.p) < eps) break;
+				if (Math.abs(qNext - data.q) < eps) break;
+				if (Math.abs(pNext - data.p) < eps) break;
 
-			data.p = pNext;
-			data.q = qNext;
+				data.p = pNext;
+				data.q = qNext;
+			}
+		} finally
+		{
+			if (executor != null)
+				executor.shutdown();
 		}
 
+		Set<TermID> activeTerms = data.getActiveTerms();
+
 		/* Now do the term for term calculation */
 		/* TODO: Fix  MTC issue */
 		TermForTermCalculation tftc = new TermForTermCalculation();
@@ -351,11 +612,11 @@ public class ProbabilisticCalculation implements ICalculation
 
 		/* Merge results and flag all inactive terms as insignificant */
 
-		System.out.println("Found " + data.activeTerms.size() + " terms");
+		System.out.println("Found " + activeTerms.size() + " terms");
 
 		for (AbstractGOTermProperties prop : results)
 		{
-			if (!data.activeTerms.contains(prop.goTerm.getID()))
+			if (!activeTerms.contains(prop.goTerm.getID()))
 			{
 				prop.p = prop.p_adjusted = 1;
 				prop.ignoreAtMTC = true;
@@ -1,17 +1,20 @@
 package ontologizer.calculation;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import ontologizer.DOTDumper;
@@ -21,6 +24,8 @@ import ontologizer.association.Gene2Associations;
 import ontologizer.dotwriter.AbstractDotAttributesProvider;
 import ontologizer.dotwriter.GODOTWriter;
 import ontologizer.enumeration.GOTermEnumerator;
+import ontologizer.go.CompactOntology;
+import ontologizer.go.MICAIndex;
 import ontologizer.go.Ontology;
 import ontologizer.go.ParentTermID;
 import ontologizer.go.Term;
@@ -29,471 +34,236 @@ import ontologizer.go.TermID;
 import ontologizer.go.TermRelation;
 import ontologizer.set.StudySet;
 import ontologizer.types.ByteString;
+import sonumina.collections.LongDoubleCache;
 
-/**
- * Stripped-down-version of the general HashMap function suitable
- * for integer keys and double values.
- *
- * @author Sebastian Bauer
- * @see java.util.HashMap
- */
-class IntHashMapForDoubles
+public class SemanticCalculation
 {
-	/**
-	 * The default initial capacity - MUST be a power of two.
-	 */
-	static final int DEFAULT_INITIAL_CAPACITY = 16;
+	private static Logger logger = Logger.getLogger(SemanticCalculation.class.getCanonicalName());
 
-	/**
-	 * The maximum capacity, used if a higher value is implicitly specified
-	 * by either of the constructors with arguments.
-	 * MUST be a power of two <= 1<<30.
-	 */
-	static final int MAXIMUM_CAPACITY = 1 << 30;
+	public static interface ISemanticCalculationProgress
+	{
+		void init(int max);
+		void update(int update);
+	};
 
 	/**
-	 * The load factor used when none specified in constructor.
+	 * Receives the tiles of the similarity matrix.
 	 */
-	static final float DEFAULT_LOAD_FACTOR = 0.75f;
+	public static interface ITileConsumer
+	{
+		/**
+		 * Called for every tile of the upper triangle of the matrix, i.e.,
+		 * rowStart <= columnStart. The tile with swapped coordinates is the
+		 * transposed one and is not supplied separately. The method may be
+		 * called concurrently for different tiles.
+		 *
+		 * @param rowStart the first row of the tile.
+		 * @param columnStart the first column of the tile.
+		 * @param rows the number of rows of the tile.
+		 * @param columns the number of columns of the tile.
+		 * @param tile the similarities in row major order. The array is
+		 *  reused for the next tile.
+		 */
+		void consume(int rowStart, int columnStart, int rows, int columns, double [] tile);
+	}
 
 	/**
-	 * The table, resized as necessary. Length MUST Always be a power of two.
+	 * How the similarities of the term pairs of two genes are combined to
+	 * the similarity of the genes.
 	 */
-	transient Entry[] table;
+	public static enum Aggregation
+	{
+		/** The maximum over all pairs of terms */
+		MAX,
 
-	/**
-	 * The number of key-value mappings contained in this map.
-	 */
-	transient int size;
+		/** The average of the best matches of the terms of both genes */
+		BMA,
 
-	/**
-	 * The next size value at which to resize (capacity * load factor).
-	 * @serial
-	 */
-	int threshold;
+		/** The average over all pairs of terms */
+		AVERAGE
+	};
 
-	/**
-	 * The load factor for the hash table.
-	 *
-	 * @serial
-	 */
-	final float loadFactor;
+	/** The default number of rows and columns of a tile */
+	public static final int DEFAULT_TILE_SIZE = 128;
 
-	/**
-	 * The number of times this HashMap has been structurally modified
-	 * Structural modifications are those that change the number of mappings in
-	 * the HashMap or otherwise modify its internal structure (e.g.,
-	 * rehash).  This field is used to make iterators on Collection-views of
-	 * the HashMap fail-fast.  (See ConcurrentModificationException).
-	 */
-	transient volatile int modCount;
+	/** The default maximal number of gene pairs whose similarity is cached */
+	public static final int DEFAULT_CACHE_SIZE = 1 << 18;
 
-	/**
-	 * Constructs an empty <tt>HashMap</tt> with the specified initial
-	 * capacity and load factor.
-	 *
-	 * @param  initialCapacity the initial capacity
-	 * @param  loadFactor      the load factor
-	 * @throws IllegalArgumentException if the initial capacity is negative
-	 *         or the load factor is nonpositive
-	 */
-	public IntHashMapForDoubles(int initialCapacity, float loadFactor)
-	{
-	    if (initialCapacity < 0)
-	        throw new IllegalArgumentException("Illegal initial capacity: " +
-	                                           initialCapacity);
-	    if (initialCapacity > MAXIMUM_CAPACITY)
-	        initialCapacity = MAXIMUM_CAPACITY;
-	    if (loadFactor <= 0 || Float.isNaN(loadFactor))
-	        throw new IllegalArgumentException("Illegal load factor: " +
-	                                           loadFactor);
-
-	    // Find a power of 2 >= initialCapacity
-	    int capacity = 1;
-	    while (capacity < initialCapacity)
-	        capacity <<= 1;
-
-	    this.loadFactor = loadFactor;
-	    threshold = (int)(capacity * loadFactor);
-	    table = new Entry[capacity];
-	    init();
-	}
+	private int numberOfProcessors = Runtime.getRuntime().availableProcessors();
 
-	/**
-	 * Constructs an empty <tt>HashMap</tt> with the specified initial
-	 * capacity and the default load factor (0.75).
-	 *
-	 * @param  initialCapacity the initial capacity.
-	 * @throws IllegalArgumentException if the initial capacity is negative.
-	 */
-	public IntHashMapForDoubles(int initialCapacity)
-	{
-	    this(initialCapacity, DEFAULT_LOAD_FACTOR);
-	}
+	private int tileSize = DEFAULT_TILE_SIZE;
 
-	/**
-	 * Constructs an empty <tt>HashMap</tt> with the default initial capacity
-	 * (16) and the default load factor (0.75).
-	 */
-	public IntHashMapForDoubles()
-	{
-	    this.loadFactor = DEFAULT_LOAD_FACTOR;
-	    threshold = (int)(DEFAULT_INITIAL_CAPACITY * DEFAULT_LOAD_FACTOR);
-	    table = new Entry[DEFAULT_INITIAL_CAPACITY];
-	    init();
-	}
+	private Aggregation aggregation = Aggregation.MAX;
 
+	private Ontology graph;
+	private AssociationContainer goAssociations;
 
-	// internal utilities
+	private StudySet allGenesStudy;
+	private GOTermEnumerator enumerator;
+	private int totalAnnotated;
 
-	/**
-	 * Initialization hook for subclasses. This method is called
-	 * in all constructors and pseudo-constructors (clone, readObject)
-	 * after HashMap has been initialized but before any entries have
-	 * been inserted.  (In the absence of this method, readObject would
-	 * require explicit knowledge of subclasses.)
-	 */
-	void init()
-	{
-	}
+	/** The structure of the ontology */
+	private CompactOntology compactOntology;
 
-	/**
-	 * Applies a supplemental hash function to a given hashCode, which
-	 * defends against poor quality hash functions.  This is critical
-	 * because HashMap uses power-of-two length hash tables, that
-	 * otherwise encounter collisions for hashCodes that do not differ
-	 * in lower bits. Note: Null keys always map to hash 0, thus index 0.
-	 */
-	static int hash(int h) {
-	    // This function ensures that hashCodes that differ only by
-	    // constant multiples at each bit position have a bounded
-	    // number of collisions (approximately 8 at default load factor).
-	    h ^= (h >>> 20) ^ (h >>> 12);
-	    return h ^ (h >>> 7) ^ (h >>> 4);
-	}
+	/** Index for the most informative common ancestors of terms */
+	private MICAIndex micaIndex;
 
-	/**
-	 * Returns index for hash code h.
-	 */
-	static int indexFor(int h, int length) {
-	    return h & (length-1);
-	}
+	/** The similarities of terms indexed by the ranks of the MICAIndex */
+	private double [] simOfRank;
 
-	/**
-	 * Returns the number of key-value mappings in this map.
-	 *
-	 * @return the number of key-value mappings in this map
-	 */
-	public int size() {
-	    return size;
-	}
+	/** Non-redundant associations as term ordinals (indexed by genes) */
+	private int [][] associations;
 
 	/**
-	 * Returns <tt>true</tt> if this map contains no key-value mappings.
-	 *
-	 * @return <tt>true</tt> if this map contains no key-value mappings
+	 * Ancestor ranks of the annotated terms (indexed by genes).
+	 * See MICAIndex.getAncestorRanks().
 	 */
-	public boolean isEmpty() {
-	    return size == 0;
-	}
+	private int [][] ancestorRanks;
+
+	private HashMap<ByteString,Integer> gene2index = new HashMap<ByteString,Integer>();
 
 	/**
-	 * Returns the value to which the specified key is mapped,
-	 * or {@code null} if this map contains no mapping for the key.
-	 *
-	 * <p>More formally, if this map contains a mapping from a key
-	 * {@code k} to a value {@code v} such that {@code (key==null ? k==null :
-	 * key.equals(k))}, then this method returns {@code v}; otherwise
-	 * it returns {@code null}.  (There can be at most one such mapping.)
-	 *
-	 * <p>A return value of {@code null} does not <i>necessarily</i>
-	 * indicate that the map contains no mapping for the key; it's also
-	 * possible that the map explicitly maps the key to {@code null}.
-	 * The {@link #containsKey containsKey} operation may be used to
-	 * distinguish these two cases.
-	 *
-	 * @see #put(Object, Object)
+	 * Similarity cache (indexed by ordered pairs of gene indices). Only
+	 * used for aggregations that consider every term of both genes, as
+	 * for MAX a single scan is cheaper than a lookup.
 	 */
-	public double get(int key)
-	{
-	    int hash = hash(key);
-	    for (Entry e = table[indexFor(hash, table.length)]; e != null; e = e.next)
-	    {
-
-	        if (/*e.hash == hash &&*/ e.key == key)
-	            return e.value;
-	    }
-	    return Double.NaN;
-	}
+	private LongDoubleCache cache;
 
 	/**
-	 * Returns <tt>true</tt> if this map contains a mapping for the
-	 * specified key.
+	 * Constructs the calculation.
 	 *
-	 * @param   key   The key whose presence in this map is to be tested
-	 * @return <tt>true</tt> if this map contains a mapping for the specified
-	 * key.
+	 * @param g
+	 * @param assoc
 	 */
-	public boolean containsKey(int key)
+	public SemanticCalculation(Ontology g, AssociationContainer assoc)
 	{
-		int hash = hash(key);
-	    for (Entry e = table[indexFor(hash, table.length)]; e != null; e = e.next)
-	    {
-	        if (/*e.hash == hash && */e.key == key)
-	            return true;
-	    }
-	    return false;
+		this(g, assoc, DEFAULT_CACHE_SIZE);
 	}
 
 	/**
-	 * Associates the specified value with the specified key in this map.
-	 * If the map previously contained a mapping for the key, the old
-	 * value is replaced.
+	 * Constructs the calculation.
 	 *
-	 * @param key key with which the specified value is to be associated
-	 * @param value value to be associated with the specified key
-	 * @return the previous value associated with <tt>key</tt>, or
-	 *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
-	 *         (A <tt>null</tt> return can also indicate that the map
-	 *         previously associated <tt>null</tt> with <tt>key</tt>.)
+	 * @param g
+	 * @param assoc
+	 * @param cacheSize the maximal number of gene pairs whose similarity is cached.
 	 */
-	public void put(int  key, double value)
+	public SemanticCalculation(Ontology g, AssociationContainer assoc, int cacheSize)
 	{
-	    int hash = hash(key);
-	    int i = indexFor(hash, table.length);
-	    for (Entry e = table[i]; e != null; e = e.next)
-	    {
-	        if (/*e.hash == hash && */e.key == key)
-	        {
-	            e.value = value;
-	            return;
-	        }
-	    }
-
-	    modCount++;
-	    addEntry(hash, key, value, i);
+		this.graph = g;
+		this.goAssociations = assoc;
+
+		allGenesStudy = new StudySet("population");
+		for (ByteString gene : goAssociations.getAllAnnotatedGenes())
+			allGenesStudy.addGene(gene,"");
+
+		enumerator = allGenesStudy.enumerateGOTerms(graph, goAssociations);
+		totalAnnotated = enumerator.getAnnotatedGenes(graph.getRootTerm().getID()).totalAnnotated.size();
+
+		compactOntology = graph.getCompactOntology();
+		double [] p = new double[compactOntology.getNumberOfTerms()];
+		for (int t = 0; t < p.length; t++)
+			p[t] = p(compactOntology.getTerm(t).getID());
+		micaIndex = new MICAIndex(compactOntology, p);
+
+		simOfRank = new double[p.length];
+		for (int r = 0; r < p.length; r++)
+			simOfRank[r] = sim(micaIndex.getPOfRank(r));
+
+		associations = new int[allGenesStudy.getGeneCount()][];
+		ancestorRanks = new int[allGenesStudy.getGeneCount()][];
+		int i = 0;
+		for (ByteString gene : allGenesStudy)
+		{
+			gene2index.put(gene,i);
+			associations[i] = getNonRedundantTerms(assoc.get(gene).getAssociations());
+			ancestorRanks[i] = micaIndex.getAncestorRanks(associations[i]);
+			i++;
+		}
+
+		cache = new LongDoubleCache(cacheSize, numberOfProcessors);
 	}
 
 	/**
-	 * Rehashes the contents of this map into a new array with a
-	 * larger capacity.  This method is called automatically when the
-	 * number of keys in this map reaches its threshold.
-	 *
-	 * If current capacity is MAXIMUM_CAPACITY, this method does not
-	 * resize the map, but sets threshold to Integer.MAX_VALUE.
-	 * This has the effect of preventing future calls.
+	 * Returns the ordinals of the given terms without the terms that are
+	 * ancestors of other given terms. Terms that are not part of the
+	 * ontology are ignored.
 	 *
-	 * @param newCapacity the new capacity, MUST be a power of two;
-	 *        must be greater than current capacity unless current
-	 *        capacity is MAXIMUM_CAPACITY (in which case value
-	 *        is irrelevant).
+	 * @param terms
+	 * @return the ordinals in ascending order.
 	 */
-	void resize(int newCapacity)
+	private int [] getNonRedundantTerms(List<TermID> terms)
 	{
-	    Entry[] oldTable = table;
-	    int oldCapacity = oldTable.length;
-	    if (oldCapacity == MAXIMUM_CAPACITY) {
-	        threshold = Integer.MAX_VALUE;
-	        return;
-	    }
-
-	    Entry[] newTable = new Entry[newCapacity];
-	    transfer(newTable);
-	    table = newTable;
-	    threshold = (int)(newCapacity * loadFactor);
-	}
+		int [] indices = new int[terms.size()];
+		int n = 0;
+		for (TermID tid : terms)
+		{
+			int t = compactOntology.getTermIndex(tid);
+			if (t >= 0) indices[n++] = t;
+		}
+		Arrays.sort(indices, 0, n);
 
-	/**
-	 * Transfers all entries from current table to newTable.
-	 */
-	void transfer(Entry[] newTable) {
-	    Entry[] src = table;
-	    int newCapacity = newTable.length;
-	    for (int j = 0; j < src.length; j++) {
-	        Entry e = src[j];
-	        if (e != null)
-	        {
-	            src[j] = null;
-	            do
-	            {
-	                Entry next = e.next;
-	                int i = indexFor(e.hash, newCapacity);
-	                e.next = newTable[i];
-	                newTable[i] = e;
-	                e = next;
-	            } while (e != null);
-	        }
-	    }
-	}
-	/**
-	 * Removes all of the mappings from this map.
-	 * The map will be empty after this call returns.
-	 */
-	public void clear() {
-	    modCount++;
-	    Entry[] tab = table;
-	    for (int i = 0; i < tab.length; i++)
-	        tab[i] = null;
-	    size = 0;
-	}
+		int [] nonRedundant = new int[n];
+		int m = 0;
 
-	private static final class Entry
-	{
-	    final int key;
-	    double value;
-	    Entry next;
-	    final int hash;
-
-	    /**
-	     * Creates new entry.
-	     */
-	    Entry(int h, int k, double v, Entry n)
-	    {
-	        value = v;
-	        next = n;
-	        key = k;
-	        hash = h;
-	    }
-
-	    public final int getKey()
-	    {
-	        return key;
-	    }
-
-	    public final double getValue()
-	    {
-	        return value;
-	    }
-
-	    public final double setValue(double newValue)
-	    {
-	    	double oldValue = value;
-	        value = newValue;
-	        return oldValue;
-	    }
+		termloop:
+		for (int i = 0; i < n; i++)
+		{
+			if (i > 0 && indices[i] == indices[i - 1])
+				continue;
+
+			for (int j = 0; j < n; j++)
+			{
+				if (indices[j] != indices[i] && compactOntology.isAncestor(indices[i], indices[j]))
+					continue termloop;
+			}
+			nonRedundant[m++] = indices[i];
+		}
+		return Arrays.copyOf(nonRedundant, m);
 	}
 
 	/**
-	 * Adds a new entry with the specified key, value and hash code to
-	 * the specified bucket.  It is the responsibility of this
-	 * method to resize the table if appropriate.
+	 * Sets the number of threads used by calculate().
 	 *
-	 * Subclass overrides this to alter the behavior of put method.
+	 * @param numberOfProcessors
 	 */
-	void addEntry(int hash, int key, double value, int bucketIndex)
+	public void setNumberOfProcessors(int numberOfProcessors)
 	{
-		Entry e = table[bucketIndex];
-
-	    table[bucketIndex] = new Entry(hash, key, value, e);
-	    if (size++ >= threshold)
-	        resize(2 * table.length);
+		this.numberOfProcessors = Math.max(1, numberOfProcessors);
 	}
 
 	/**
-	 * Like addEntry except that this version is used when creating entries
-	 * as part of Map construction or "pseudo-construction" (cloning,
-	 * deserialization).  This version needn't worry about resizing the table.
+	 * Sets the number of rows and columns of the tiles processed by
+	 * calculate().
 	 *
-	 * Subclass overrides this to alter the behavior of HashMap(Map),
-	 * clone, and readObject.
+	 * @param tileSize
 	 */
-	void createEntry(int hash, int key, double value, int bucketIndex)
+	public void setTileSize(int tileSize)
 	{
-		Entry e = table[bucketIndex];
-	    table[bucketIndex] = new Entry(hash, key, value, e);
-	    size++;
+		this.tileSize = Math.max(1, tileSize);
 	}
-}
-
-
-public class SemanticCalculation
-{
-	private static Logger logger = Logger.getLogger(SemanticCalculation.class.getCanonicalName());
-
-	public static interface ISemanticCalculationProgress
-	{
-		void init(int max);
-		void update(int update);
-	};
-
-	private int numberOfProcessors = 1;//Runtime.getRuntime().availableProcessors();
-
-	private Ontology graph;
-	private AssociationContainer goAssociations;
-
-	private StudySet allGenesStudy;
-	private GOTermEnumerator enumerator;
-	private int totalAnnotated;
-
-	/** Similarity cache (indexed by term) */
-	private IntHashMapForDoubles [] cache;
-
-	private ReentrantReadWriteLock cacheLock;
-	private ReadLock readLock;
-	private WriteLock writeLock;
 
 	/**
-	 * Non-redundant associations (indexed by genes).
-	 * Objects is an array of terms
+	 * Sets how the similarities of the terms of two genes are aggregated.
+	 *
+	 * @param aggregation
 	 */
-	private Object [] associations;
-
-	private HashMap<ByteString,Integer> gene2index = new HashMap<ByteString,Integer>();
-
-	public SemanticCalculation(Ontology g, AssociationContainer assoc)
+	public void setAggregation(Aggregation aggregation)
 	{
-		this.graph = g;
-		this.goAssociations = assoc;
-
-		allGenesStudy = new StudySet("population");
-		for (ByteString gene : goAssociations.getAllAnnotatedGenes())
-			allGenesStudy.addGene(gene,"");
-
-		enumerator = allGenesStudy.enumerateGOTerms(graph, goAssociations);
-		totalAnnotated = enumerator.getAnnotatedGenes(graph.getRootTerm().getID()).totalAnnotated.size();
-
-		cache = new IntHashMapForDoubles[g.maximumTermID()];
-
-		/* Making associations non-redundant */
-		associations = new Object[allGenesStudy.getGeneCount()];
-		int i = 0;
-		for (ByteString gene : allGenesStudy)
+		if (aggregation != this.aggregation)
 		{
-			gene2index.put(gene,i);
-
-			ArrayList<TermID> assocList = assoc.get(gene).getAssociations();
-			HashSet<TermID> inducedNodes = new HashSet<TermID>();
-			for (TermID tid : assocList)
-				inducedNodes.addAll(g.getTermsOfInducedGraph(null, tid));
-			HashSet<TermID> nonRedundantTerms = new HashSet<TermID>();
-
-			termloop:
-			for (TermID tid : assocList)
-			{
-				for (TermID desc : g.getTermChildren(tid))
-				{
-					if (inducedNodes.contains(desc))
-						continue termloop;
-				}
-				nonRedundantTerms.add(tid);
-			}
-
-			TermID terms[] = new TermID[nonRedundantTerms.size()];
-			int j=0;
-			for (TermID t : nonRedundantTerms)
-				terms[j++]=t;
-
-			/* TODO: Sort terms according to their information content */
-			associations[i] = terms;
-			i++;
+			this.aggregation = aggregation;
+			cache.clear();
 		}
+	}
 
-		if (numberOfProcessors > 1)
-		{
-			cacheLock = new ReentrantReadWriteLock();
-			readLock = cacheLock.readLock();
-			writeLock = cacheLock.writeLock();
-		}
+	/**
+	 * Returns how the similarities of the terms of two genes are aggregated.
+	 *
+	 * @return
+	 */
+	public Aggregation getAggregation()
+	{
+		return aggregation;
 	}
 
 	/**
@@ -508,80 +278,50 @@ public class SemanticCalculation
 	}
 
 	/**
-	 * Returns the shared information content of two given terms
+	 * Converts the given shared information content to a similarity.
 	 *
-	 * @param t1
-	 * @param t2
+	 * @param p
 	 * @return
 	 */
-	private double p(TermID t1, TermID t2)
+	private static double sim(double p)
 	{
-		Collection<TermID> sharedParents = graph.getSharedParents(t1, t2);
-		double p = 1.0;
-
-		/* The information content of two terms is defined as the minimum of
-		 * the information content of the shared parents.
-		 */
-		for (TermID t : sharedParents)
-		{
-			double newP = p(t);
-			if (newP < p) p = newP;
-		}
-		return p;
+		if (p >= 1.0) return 0.0;
+		return -Math.log(p);
 	}
 
 	/**
-	 * Returns the similarity of the two given terms.
+	 * Returns the similarity of two genes given by their non-redundant
+	 * terms and the ancestor ranks of these terms.
 	 *
-	 * @param t1
-	 * @param t2
+	 * @param terms1
+	 * @param ranks1
+	 * @param terms2
+	 * @param ranks2
 	 * @return
 	 */
-	private double sim(TermID t1, TermID t2)
+	private double sim(int [] terms1, int [] ranks1, int [] terms2, int [] ranks2)
 	{
-		/* Similarity of terms is symmetric */
-		if (t1.id > t2.id)
-		{
-			TermID s = t2;
-			t2 = t1;
-			t1 = s;
-		}
-
-		if (cacheLock != null)
-			readLock.lock();
+		if (terms1.length == 0 || terms2.length == 0) return 0;
 
-		IntHashMapForDoubles map2 = cache[t1.id];
-		if (map2 != null)
+		switch (aggregation)
 		{
-			double val = map2.get(t2.id);
-			if (!Double.isNaN(val))
-			{
-				if (cacheLock != null) cacheLock.readLock().unlock();
-				return val;
-			}
+			case	BMA:
+					double sum1 = micaIndex.getBestMatchSum(terms1, ranks2, simOfRank);
+					double sum2 = micaIndex.getBestMatchSum(terms2, ranks1, simOfRank);
+					return (sum1 / terms1.length + sum2 / terms2.length) / 2;
+
+			case	AVERAGE:
+					double sum = micaIndex.getPairSum(terms1, terms2, simOfRank);
+					return sum / ((double)terms1.length * terms2.length);
+
+			case	MAX:
+			default:
+					/* The maximum over all pairs of terms is given by the
+					 * ancestors that are shared by all terms of both genes */
+					int r = micaIndex.getMICARankOfRanks(ranks1, ranks2);
+					if (r < 0) return 0;
+					return simOfRank[r];
 		}
-
-		if (cacheLock != null)
-		{
-			/* Upgrade lock, must unlock the read lock manually before */
-			readLock.unlock();
-			writeLock.lock();
-		}
-
-		/* Create HashMap when needed, but the value is definitively not there */
-		if (map2 == null)
-		{
-			map2 = new IntHashMapForDoubles();
-			cache[t1.id] = map2;
-		}
-
-		double p = -Math.log(p(t1,t2));
-		map2.put(t2.id,p);
-
-		if (cacheLock != null)
-			writeLock.unlock();
-
-		return p;
 	}
 
 	/**
@@ -593,27 +333,29 @@ public class SemanticCalculation
 	 */
 	private double sim(int g1, int g2)
 	{
-		double sim;
-
 		if (g1 < 0 || g2 < 0) return 0;
 
-		sim = 0.0;
+		if (aggregation == Aggregation.MAX)
+			return sim(associations[g1], ancestorRanks[g1], associations[g2], ancestorRanks[g2]);
 
-		TermID [] tl1 = (TermID[])associations[g1];
-		TermID [] tl2 = (TermID[])associations[g2];
+		/* Order the pair, so the value doesn't depend on the order of the
+		 * summation whether it comes from the cache or not */
+		if (g1 > g2)
+		{
+			int g = g1;
+			g1 = g2;
+			g2 = g;
+		}
 
-		/* TODO: Research if we can employ sorting omit some or many of
-		 * the pairs.
-		 */
-		for (TermID t1 : tl1)
+		long key = ((long)g1 << 32) | g2;
+		double s = cache.get(key);
+		if (Double.isNaN(s))
 		{
-			for (TermID t2 : tl2)
-			{
-				double newSim = sim(t1,t2);
-				if (newSim > sim) sim = newSim;
-			}
+			/* Concurrent threads may calculate the same value, which is harmless */
+			s = sim(associations[g1], ancestorRanks[g1], associations[g2], ancestorRanks[g2]);
+			cache.put(key, s);
 		}
-		return sim;
+		return s;
 	}
 
 	/**
@@ -625,23 +367,17 @@ public class SemanticCalculation
 	 */
 	public double sim(ByteString g1, ByteString g2)
 	{
-		double sim = 0.0;
-
 		if (!(goAssociations.containsGene(g1))) return 0;
 		if (!(goAssociations.containsGene(g2))) return 0;
 
-		List<TermID> tl1 = goAssociations.get(g1).getAssociations();
-		List<TermID> tl2 = goAssociations.get(g2).getAssociations();
+		int i1 = getIndex(g1);
+		int i2 = getIndex(g2);
+		if (i1 >= 0 && i2 >= 0)
+			return sim(i1, i2);
 
-		for (TermID t1 : tl1)
-		{
-			for (TermID t2 : tl2)
-			{
-				double newSim = sim(t1,t2);
-				if (newSim > sim) sim = newSim;
-			}
-		}
-		return sim;
+		int [] terms1 = getNonRedundantTerms(goAssociations.get(g1).getAssociations());
+		int [] terms2 = getNonRedundantTerms(goAssociations.get(g2).getAssociations());
+		return sim(terms1, micaIndex.getAncestorRanks(terms1), terms2, micaIndex.getAncestorRanks(terms2));
 	}
 
 	/**
@@ -655,239 +391,247 @@ public class SemanticCalculation
 		return calculate(study,null);
 	}
 
-	class WorkerThread extends Thread
+	/**
+	 * Maps the genes of the given study to the indices used by sim().
+	 *
+	 * @param study
+	 * @return the indices, -1 for genes without associations.
+	 */
+	private int [] getIndices(StudySet study)
 	{
-		class Message {};
-		class BeginWorkMessage extends Message{};
-		class FinishMessage extends Message{};
-
-		/** Where the thread is put in when it is unemployed */
-		private BlockingQueue<WorkerThread> unemployedQueue;
-
-		private BlockingQueue<Message> messageQueue = new LinkedBlockingQueue<Message>();
-
-		private int addPairCount;
-		private int pairsDone;
-
-		/** Array of entries that need to be processed by this thread */
-		private int [] work;
-
-		private final static int WORK_LENGTH = 4000;
-
-		private double [][] mat;
-		private int [] indices;
+		int [] indices = new int[study.getGeneCount()];
+		int k=0;
+		for (ByteString g : study)
+			indices[k++] = getIndex(g);
+		return indices;
+	}
 
-		/**
-		 *
-		 * @param unemployedQueue defines the queue in which the threads adds itself when a job has been finished.
-		 * @param mat the result matrix
-		 * @param indices matrix coordinates to coordinates used by the sim() method.
-		 */
-		public WorkerThread(BlockingQueue<WorkerThread> unemployedQueue, double [][] mat, int [] indices)
+	/**
+	 * Maps the given gene to the index used by sim().
+	 *
+	 * @param g
+	 * @return the index, -1 for genes without associations.
+	 */
+	private int getIndex(ByteString g)
+	{
+		Integer idx = gene2index.get(g);
+		if (idx == null)
 		{
-			work = new int[WORK_LENGTH];
-			this.unemployedQueue = unemployedQueue;
-			this.mat = mat;
-			this.indices = indices;
+			/* Maybe we can find the gene via a mapping */
+			Gene2Associations o2a = goAssociations.get(g);
+			if (o2a != null)
+				idx = gene2index.get(o2a.name());
 		}
+		if (idx != null) return idx;
+		return -1;
+	}
 
-		@Override
-		public void run()
-		{
-			try {
-				unemployedQueue.put(this);
-
-				while (true)
-				{
-					Message msg =  messageQueue.take();
-
-					if (msg instanceof BeginWorkMessage)
-					{
-						for (int i=0;i<addPairCount;i+=2)
-						{
-							int i1 = indices[work[i]];
-							int i2 = indices[work[i+1]];
+	/**
+	 * Calculates the similarity of genes of the study set.
+	 *
+	 * @param study
+	 * @param progress
+	 * @return
+	 */
+	public SemanticResult calculate(StudySet study, ISemanticCalculationProgress progress)
+	{
+		long start = System.currentTimeMillis();
 
-							if (i1 >= 0 || i2 >=0)
-								mat[work[i]][work[i+1]] = sim(i1,i2);
-						}
+		int entries = study.getGeneCount();
+		final double [][] mat =  new double[entries][entries];
 
-						pairsDone = addPairCount / 2;
-						addPairCount = 0;
-						unemployedQueue.put(this);
-					} else
-					{
-						if (msg instanceof FinishMessage)
-							break;
-					}
-				}
-			}
-			catch (InterruptedException e)
+		calculate(study, new ITileConsumer()
+		{
+			public void consume(int rowStart, int columnStart, int rows, int columns, double [] tile)
 			{
+				for (int r=0;r<rows;r++)
+				{
+					for (int c=0;c<columns;c++)
+						mat[rowStart + r][columnStart + c] = mat[columnStart + c][rowStart + r] = tile[r * columns + c];
+				}
 			}
-		}
+		}, progress);
 
-		/**
-		 *
-		 * @param g1
-		 * @param g2
-		 * @return whether there is more place in the queue.
-		 *
-		 */
-		public boolean addPairForWork(int g1, int g2)
-		{
-			work[addPairCount] = g1;
-			work[addPairCount+1] = g2;
-			addPairCount += 2;
-			return addPairCount < WORK_LENGTH;
-		}
-
-		/**
-		 * Start working on the feeded pairs.
-		 * @param unemployedQueue
-		 * @throws InterruptedException
-		 */
-		public void fire() throws InterruptedException
-		{
-			messageQueue.put(new BeginWorkMessage());
-		}
+		SemanticResult sr = createResult(study);
+		sr.mat = mat;
 
-		public int getPairsDone()
-		{
-			return pairsDone;
-		}
+		long end = System.currentTimeMillis();
+		logger.info("Took " + ((end - start) / 1000.0f) + "s for the analysis");
 
-		public void finish() throws InterruptedException
-		{
-			messageQueue.put(new FinishMessage());
-		}
+		return sr;
 	}
 
-	public SemanticResult calculate(StudySet study, ISemanticCalculationProgress progress)
+	/**
+	 * Calculates the similarity of genes of the study set and stores the
+	 * matrix in the given file rather than in memory.
+	 *
+	 * @param study
+	 * @param file the file to which the matrix is written. See SimilarityMatrixFile.
+	 * @param progress
+	 * @return the result whose similarities are backed by the file.
+	 * @throws IOException
+	 */
+	public SemanticResult calculate(StudySet study, File file, ISemanticCalculationProgress progress) throws IOException
 	{
-		SemanticResult sr = new SemanticResult();
-
-		long start = System.currentTimeMillis();
-
-		int entries = study.getGeneCount();
-
-		double [][] mat =  new double[entries][entries];
-		int i=0,counter=0;
+		SemanticResult sr = createResult(study);
+		SimilarityMatrixFile matrix = SimilarityMatrixFile.create(file, sr.names);
+		calculate(study, matrix, progress);
+		matrix.flush();
+		sr.matrix = matrix;
+		return sr;
+	}
 
-		if (progress != null)
-			progress.init(entries * (entries + 1) / 2);
+	/**
+	 * Determines the k most similar genes of every gene of the study set.
+	 * Only the neighbours are kept in memory, not the entire matrix.
+	 *
+	 * @param study
+	 * @param k
+	 * @param progress
+	 * @return the result whose similarities are given by the neighbours.
+	 */
+	public SemanticResult calculateNeighbours(StudySet study, int k, ISemanticCalculationProgress progress)
+	{
+		SemanticResult sr = createResult(study);
+		SimilarityNeighbours neighbours = new SimilarityNeighbours(sr.names, k);
+		calculate(study, neighbours, progress);
+		neighbours.finish();
+		sr.neighbours = neighbours;
+		return sr;
+	}
 
-		long millis = System.currentTimeMillis();
+	/**
+	 * Creates a result for the given study without any similarities.
+	 *
+	 * @param study
+	 * @return
+	 */
+	private SemanticResult createResult(StudySet study)
+	{
+		SemanticResult sr = new SemanticResult();
+		sr.names = study.getGenes();
+		sr.name = study.getName();
+		sr.assoc = goAssociations;
+		sr.g = graph;
+		sr.calculation = this;
+		return sr;
+	}
 
-		/* Create the association mapping, i.e, which gene maps to which entry in the array
-		 * of non-redundant association  */
-		int [] indices = new int[study.getGeneCount()];
-		int k=0;
-		for (ByteString g : study)
+	/**
+	 * Calculates the similarity of all pairs of genes of the study set
+	 * tile by tile.
+	 *
+	 * The upper triangle of the matrix is divided into square tiles of
+	 * tileSize x tileSize pairs. Working on a tile at a time keeps the
+	 * ancestor ranks of the involved genes in the cache. The tiles are
+	 * distributed dynamically among numberOfProcessors threads and are
+	 * supplied to the consumer as soon as they are complete.
+	 *
+	 * @param study
+	 * @param consumer receives the tiles, possibly concurrently.
+	 * @param progress
+	 */
+	public void calculate(StudySet study, final ITileConsumer consumer, ISemanticCalculationProgress progress)
+	{
+		final int [] indices = getIndices(study);
+		final int n = indices.length;
+		final int size = tileSize;
+		int tilesPerRow = (n + size - 1) / size;
+
+		/* Tiles of the upper triangle in row major order, so concurrently
+		 * processed tiles mostly share their rows */
+		int numberOfTiles = tilesPerRow * (tilesPerRow + 1) / 2;
+		final int [] tileRows = new int[numberOfTiles];
+		final int [] tileColumns = new int[numberOfTiles];
+		int t = 0;
+		for (int i=0;i<tilesPerRow;i++)
 		{
-			Integer idx = gene2index.get(g);
-			if (idx == null)
+			for (int j=i;j<tilesPerRow;j++)
 			{
-				/* Maybe we can find the gene via a mapping */
-				Gene2Associations o2a = goAssociations.get(g);
-				if (o2a != null)
-					idx = gene2index.get(o2a.name());
+				tileRows[t] = i * size;
+				tileColumns[t] = j * size;
+				t++;
 			}
-			if (idx != null) indices[k] = idx;
-			else indices[k] = -1;
-			k++;
 		}
 
-		if (numberOfProcessors > 1)
+		final AtomicInteger nextTile = new AtomicInteger();
+		final AtomicLong pairsDone = new AtomicLong();
+
+		if (progress != null)
+			progress.init((int)Math.min(Integer.MAX_VALUE, (long)n * (n + 1) / 2));
+
+		Runnable worker = new Runnable()
 		{
-			try
+			public void run()
 			{
-				/* Create and start the worker threads and put them in the queue */
-				WorkerThread [] wt = new WorkerThread[numberOfProcessors];
-				BlockingQueue<WorkerThread> unemployedQueue = new LinkedBlockingQueue<WorkerThread>();
-				for (int j=0;j<numberOfProcessors;j++)
-				{
-					wt[j] = new WorkerThread(unemployedQueue,mat,indices);
-					wt[j].start();
-				}
-
-				/* Take first unemployed thread */
-				WorkerThread currentWorker = unemployedQueue.take();
+				double [] tile = new double[size * size];
+				int t;
 
-				for (i=0;i<indices.length;i++)
+				while ((t = nextTile.getAndIncrement()) < tileRows.length)
 				{
-					for (int j=0;j<indices.length;j++)
+					int rowStart = tileRows[t];
+					int columnStart = tileColumns[t];
+					int rows = Math.min(size, n - rowStart);
+					int columns = Math.min(size, n - columnStart);
+					boolean diagonal = rowStart == columnStart;
+
+					for (int r=0;r<rows;r++)
 					{
-						if (!currentWorker.addPairForWork(i,j))
+						int g1 = indices[rowStart + r];
+
+						/* Diagonal tiles are symmetric */
+						for (int c=diagonal?r:0;c<columns;c++)
 						{
-							currentWorker.fire();
-
-							/* Take next unemployed thread (may wait if there is no unemployed thread left) */
-							currentWorker = unemployedQueue.take();
-							counter += currentWorker.pairsDone;
-							currentWorker.pairsDone = 0;
-
-							long newMillis = System.currentTimeMillis();
-							if (newMillis - millis > 200)
-							{
-								millis = newMillis;
-								progress.update(counter);
-							}
+							double s = sim(g1,indices[columnStart + c]);
+							tile[r * columns + c] = s;
+							if (diagonal)
+								tile[c * columns + r] = s;
 						}
 					}
-				}
 
-				for (int j=0;j<numberOfProcessors;j++)
-				{
-					wt[j].finish();
-					wt[j].join();
+					consumer.consume(rowStart, columnStart, rows, columns, tile);
+					pairsDone.addAndGet(diagonal ? rows * (rows + 1) / 2 : rows * columns);
 				}
-
-			} catch(InterruptedException e)
-			{
-				e.printStackTrace();
 			}
+		};
 
-		} else
+		if (numberOfProcessors > 1 && numberOfTiles > 1)
 		{
-			/* Single threaded */
-			for (i=0;i<indices.length;i++)
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(numberOfProcessors, numberOfTiles));
+			try
 			{
-				for (int j=i;j<indices.length;j++)
-				{
-					mat[i][j] = mat[j][i] = sim(indices[i],indices[j]);
+				ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+				for (int i=0;i<numberOfProcessors && i<numberOfTiles;i++)
+					futures.add(executor.submit(worker));
+				executor.shutdown();
 
+				while (!executor.awaitTermination(200, TimeUnit.MILLISECONDS))
+				{
 					if (progress != null)
-					{
-						if (counter++ % 1000 == 0)
-						{
-							long newMillis = System.currentTimeMillis();
-							if (newMillis - millis > 200)
-							{
-								millis = newMillis;
-								progress.update(counter);
-							}
-						}
-					}
+						progress.update((int)Math.min(Integer.MAX_VALUE, pairsDone.get()));
 				}
-			}
-
-			if (progress != null)
-				progress.update(counter);
 
+				for (Future<?> f : futures)
+					f.get();
+			} catch (InterruptedException e)
+			{
+				throw new RuntimeException(e);
+			} catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException)e.getCause();
+				throw new RuntimeException(e.getCause());
+			} finally
+			{
+				executor.shutdownNow();
+			}
+		} else
+		{
+			worker.run();
 		}
-		sr.mat = mat;
-		sr.names = study.getGenes();
-		sr.name = study.getName();
-		sr.assoc = goAssociations;
-		sr.g = graph;
-		sr.calculation = this;
-
-		long end = System.currentTimeMillis();
-
-		logger.info("Took " + ((end - start) / 1000.0f) + "s for the analysis");
 
-		return sr;
+		if (progress != null)
+			progress.update((int)Math.min(Integer.MAX_VALUE, pairsDone.get()));
 	}
 
 	public void calculate()
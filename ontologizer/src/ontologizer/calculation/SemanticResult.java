@@ -17,11 +17,64 @@ public class SemanticResult
 	public AssociationContainer assoc;
 
 	public ByteString [] names;
-	public double [][] mat;
 	public String name;
 
+	/** The similarities if held in memory */
+	public double [][] mat;
+
+	/** The similarities if they are backed by a file */
+	public SimilarityMatrixFile matrix;
+
+	/** The nearest neighbours if only those have been determined */
+	public SimilarityNeighbours neighbours;
+
 	public SemanticCalculation calculation;
 
+	/**
+	 * Reads a result that has been written as a SimilarityMatrixFile or by
+	 * SimilarityNeighbours.write(). The file is mapped into memory, so the
+	 * similarities are read lazily.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static SemanticResult read(File file) throws IOException
+	{
+		SemanticResult sr = new SemanticResult();
+		sr.name = file.getName();
+
+		if (SimilarityFile.readHeader(file).kind == SimilarityFile.KIND_MATRIX)
+		{
+			sr.matrix = SimilarityMatrixFile.open(file);
+			sr.names = sr.matrix.getNames();
+		} else
+		{
+			sr.neighbours = SimilarityNeighbours.open(file);
+			sr.names = sr.neighbours.getNames();
+		}
+		return sr;
+	}
+
+	/**
+	 * Returns the similarity of the given genes.
+	 *
+	 * @param i index of the first gene within names.
+	 * @param j index of the second gene within names.
+	 * @return the similarity or NaN if only the neighbours are known and j
+	 *  is not a neighbour of i.
+	 */
+	public double getSimilarity(int i, int j)
+	{
+		if (mat != null)
+			return mat[i][j];
+		if (matrix != null)
+			return matrix.get(i, j);
+		if (neighbours != null)
+			return neighbours.findSimilarity(i, j);
+		return Double.NaN;
+	}
+
 	public void writeTable(File file)
 	{
 		try
@@ -48,7 +101,7 @@ public class SemanticResult
 					for (int j=0;j<names.length;j++)
 					{
 						out.print("\t");
-						out.print(mat[i][j]);
+						out.print(getSimilarity(i,j));
 					}
 
 					out.println();
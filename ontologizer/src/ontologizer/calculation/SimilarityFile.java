@@ -0,0 +1,145 @@
+package ontologizer.calculation;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import ontologizer.types.ByteString;
+
+/**
+ * Common layout of files that store gene similarities. A file starts
+ * with a header that consists of a magic, the version, the kind of the
+ * file, the number of genes, a kind specific parameter, and the names
+ * of the genes. The payload follows at an offset that is a multiple of
+ * eight. Mapped regions of the payload are limited to MAX_REGION bytes
+ * each, so large payloads are covered by several mappings.
+ *
+ * @author Sebastian Bauer
+ */
+class SimilarityFile
+{
+	public static final byte [] MAGIC = new byte[]{'O', 'S', 'I', 'M'};
+	public static final int VERSION = 1;
+
+	/** A dense matrix of floats in row major order */
+	public static final int KIND_MATRIX = 1;
+
+	/** The nearest neighbours of each gene */
+	public static final int KIND_NEIGHBOURS = 2;
+
+	/** The maximal size of a single mapped region */
+	public static final int MAX_REGION = 1 << 30;
+
+	public int kind;
+	public int parameter;
+	public ByteString [] names;
+	public long payloadOffset;
+
+	/**
+	 * Writes the header to the start of the given file.
+	 *
+	 * @param raf
+	 * @param kind
+	 * @param parameter
+	 * @param names
+	 * @return the offset of the payload.
+	 * @throws IOException
+	 */
+	public static long writeHeader(RandomAccessFile raf, int kind, int parameter, ByteString [] names) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.write(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(kind);
+		out.writeInt(names.length);
+		out.writeInt(parameter);
+		for (ByteString name : names)
+		{
+			out.writeInt(name.length());
+			out.write(name.getBytes());
+		}
+		while (bytes.size() % 8 != 0)
+			out.writeByte(0);
+		out.flush();
+
+		raf.seek(0);
+		raf.write(bytes.toByteArray());
+		return bytes.size();
+	}
+
+	/**
+	 * Reads the header of the given file and checks its kind.
+	 *
+	 * @param file
+	 * @param kind the expected kind
+	 * @return the header
+	 * @throws IOException if the file is not a similarity file of the
+	 *  given kind.
+	 */
+	public static SimilarityFile readHeader(File file, int kind) throws IOException
+	{
+		SimilarityFile header = readHeader(file);
+		if (header.kind != kind)
+			throw new IOException("\"" + file.getPath() + "\" is of an unexpected kind");
+		return header;
+	}
+
+	/**
+	 * Reads the header of the given file.
+	 *
+	 * @param file
+	 * @return the header
+	 * @throws IOException if the file is not a similarity file.
+	 */
+	public static SimilarityFile readHeader(File file) throws IOException
+	{
+		/* The header is read sequentially, so only its bytes are touched */
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+		try
+		{
+			byte [] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			for (int i = 0; i < magic.length; i++)
+			{
+				if (magic[i] != MAGIC[i])
+					throw new IOException("\"" + file.getPath() + "\" is not a similarity file");
+			}
+			if (in.readInt() != VERSION)
+				throw new IOException("\"" + file.getPath() + "\" has an unsupported version");
+
+			SimilarityFile header = new SimilarityFile();
+			header.kind = in.readInt();
+			int numberOfNames = in.readInt();
+			if (numberOfNames < 0)
+				throw new IOException("\"" + file.getPath() + "\" is corrupt");
+			header.names = new ByteString[numberOfNames];
+			header.parameter = in.readInt();
+			long position = MAGIC.length + 16;
+			for (int i = 0; i < header.names.length; i++)
+			{
+				int length = in.readInt();
+				if (length < 0)
+					throw new IOException("\"" + file.getPath() + "\" is corrupt");
+				byte [] name = new byte[length];
+				in.readFully(name);
+				header.names[i] = new ByteString(name);
+				position += 4 + length;
+			}
+			header.payloadOffset = (position + 7) & ~7;
+			return header;
+		} catch (EOFException e)
+		{
+			throw new IOException("\"" + file.getPath() + "\" is truncated");
+		} finally
+		{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package ontologizer.calculation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ontologizer.types.ByteString;
+
+/**
+ * A symmetric similarity matrix of genes that is stored as a memory
+ * mapped file of floats in row major order. Only the accessed pages are
+ * held in memory, hence the matrix can be much larger than the heap.
+ *
+ * The rows are divided into bands whose size doesn't exceed the maximal
+ * size of a single mapping. Instances can be filled concurrently by the
+ * tiled similarity calculation, as the tiles cover disjoint parts of
+ * the matrix.
+ *
+ * @author Sebastian Bauer
+ */
+public class SimilarityMatrixFile implements SemanticCalculation.ITileConsumer
+{
+	private ByteString [] names;
+
+	/** Number of rows of a band */
+	private int rowsPerBand;
+
+	/** The mapped bands */
+	private FloatBuffer [] bands;
+
+	private MappedByteBuffer [] mappedBands;
+
+	private SimilarityMatrixFile(ByteString [] names)
+	{
+		this.names = names;
+	}
+
+	/**
+	 * Maps the payload of the given file.
+	 */
+	private void map(RandomAccessFile raf, FileChannel.MapMode mode, long payloadOffset) throws IOException
+	{
+		int n = names.length;
+		long rowSize = 4L * n;
+		rowsPerBand = (int)Math.max(1, SimilarityFile.MAX_REGION / Math.max(1, rowSize));
+		int numberOfBands = (n + rowsPerBand - 1) / rowsPerBand;
+
+		FileChannel fc = raf.getChannel();
+		bands = new FloatBuffer[numberOfBands];
+		mappedBands = new MappedByteBuffer[numberOfBands];
+		for (int b = 0; b < numberOfBands; b++)
+		{
+			int rows = Math.min(rowsPerBand, n - b * rowsPerBand);
+			mappedBands[b] = fc.map(mode, payloadOffset + b * rowsPerBand * rowSize, rows * rowSize);
+			bands[b] = mappedBands[b].asFloatBuffer();
+		}
+	}
+
+	/**
+	 * Creates a new matrix file for the given genes. Existing files are
+	 * overwritten.
+	 *
+	 * @param file
+	 * @param names
+	 * @return
+	 * @throws IOException
+	 */
+	public static SimilarityMatrixFile create(File file, ByteString [] names) throws IOException
+	{
+		SimilarityMatrixFile matrix = new SimilarityMatrixFile(names);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			long payloadOffset = SimilarityFile.writeHeader(raf, SimilarityFile.KIND_MATRIX, 0, names);
+			raf.setLength(payloadOffset + 4L * names.length * names.length);
+			matrix.map(raf, FileChannel.MapMode.READ_WRITE, payloadOffset);
+		} finally
+		{
+			/* The mappings stay valid after closing */
+			raf.close();
+		}
+		return matrix;
+	}
+
+	/**
+	 * Opens an existing matrix file for reading.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static SimilarityMatrixFile open(File file) throws IOException
+	{
+		SimilarityFile header = SimilarityFile.readHeader(file, SimilarityFile.KIND_MATRIX);
+		SimilarityMatrixFile matrix = new SimilarityMatrixFile(header.names);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			int n = header.names.length;
+			if (raf.length() < header.payloadOffset + 4L * n * n)
+				throw new IOException("\"" + file.getPath() + "\" is truncated");
+			matrix.map(raf, FileChannel.MapMode.READ_ONLY, header.payloadOffset);
+		} finally
+		{
+			raf.close();
+		}
+		return matrix;
+	}
+
+	/**
+	 * Returns the names of the genes that correspond to the rows.
+	 *
+	 * @return
+	 */
+	public ByteString [] getNames()
+	{
+		return names;
+	}
+
+	/**
+	 * Returns the number of genes, i.e., rows and columns.
+	 *
+	 * @return
+	 */
+	public int getNumberOfGenes()
+	{
+		return names.length;
+	}
+
+	/**
+	 * Returns the similarity of the given genes.
+	 *
+	 * @param i the row
+	 * @param j the column
+	 * @return
+	 */
+	public float get(int i, int j)
+	{
+		return bands[i / rowsPerBand].get((i % rowsPerBand) * names.length + j);
+	}
+
+	/**
+	 * Sets the similarity of the given genes. Note that the matrix is not
+	 * symmetrized automatically.
+	 *
+	 * @param i the row
+	 * @param j the column
+	 * @param value
+	 */
+	public void set(int i, int j, float value)
+	{
+		bands[i / rowsPerBand].put((i % rowsPerBand) * names.length + j, value);
+	}
+
+	public void consume(int rowStart, int columnStart, int rows, int columns, double [] tile)
+	{
+		int n = names.length;
+
+		/* The tile itself */
+		for (int r = 0; r < rows; r++)
+		{
+			int i = rowStart + r;
+			FloatBuffer band = bands[i / rowsPerBand];
+			int offset = (i % rowsPerBand) * n + columnStart;
+			for (int c = 0; c < columns; c++)
+				band.put(offset + c, (float)tile[r * columns + c]);
+		}
+
+		/* The transposed tile, written row by row */
+		if (rowStart != columnStart)
+		{
+			for (int c = 0; c < columns; c++)
+			{
+				int j = columnStart + c;
+				FloatBuffer band = bands[j / rowsPerBand];
+				int offset = (j % rowsPerBand) * n + rowStart;
+				for (int r = 0; r < rows; r++)
+					band.put(offset + r, (float)tile[r * columns + c]);
+			}
+		}
+	}
+
+	/**
+	 * Writes all changes to the storage device.
+	 */
+	public void flush()
+	{
+		for (MappedByteBuffer b : mappedBands)
+			b.force();
+	}
+}
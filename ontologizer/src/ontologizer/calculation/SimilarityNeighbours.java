@@ -0,0 +1,354 @@
+package ontologizer.calculation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+import ontologizer.types.ByteString;
+
+/**
+ * Stores the k most similar other genes of each gene, which is a sparse
+ * alternative to the dense similarity matrix. Neighbours with the same
+ * similarity are ordered by their index, so the result doesn't depend on
+ * the order in which the similarities are supplied.
+ *
+ * While being filled by the tiled similarity calculation, the neighbours
+ * of each gene are kept in a bounded heap whose root is the least similar
+ * neighbour. Heaps are guarded by striped locks, as tiles are supplied
+ * concurrently. After calling finish(), the neighbours are sorted by
+ * decreasing similarity and can be written to a file, which can be read
+ * lazily via open().
+ *
+ * @author Sebastian Bauer
+ */
+public class SimilarityNeighbours implements SemanticCalculation.ITileConsumer
+{
+	/** Number of locks guarding the heaps, must be a power of two */
+	private static final int NUMBER_OF_LOCKS = 64;
+
+	private ByteString [] names;
+
+	/** The maximal number of neighbours per gene */
+	private int k;
+
+	/** The number of neighbours per gene */
+	private IntBuffer counts;
+
+	/** The neighbours, k entries per gene */
+	private IntBuffer neighbours;
+
+	/** The similarities of the neighbours, k entries per gene */
+	private FloatBuffer similarities;
+
+	private Object [] locks;
+
+	private SimilarityNeighbours()
+	{
+	}
+
+	/**
+	 * Constructs an empty instance that can be filled by the calculation.
+	 *
+	 * @param names the names of the genes.
+	 * @param k the maximal number of neighbours per gene.
+	 */
+	public SimilarityNeighbours(ByteString [] names, int k)
+	{
+		if (k < 1)
+			throw new IllegalArgumentException("k must be positive");
+
+		this.names = names;
+		this.k = k;
+		counts = IntBuffer.allocate(names.length);
+		neighbours = IntBuffer.allocate(names.length * k);
+		similarities = FloatBuffer.allocate(names.length * k);
+		locks = new Object[NUMBER_OF_LOCKS];
+		for (int i = 0; i < NUMBER_OF_LOCKS; i++)
+			locks[i] = new Object();
+	}
+
+	/**
+	 * Opens a file that has been written via write(). The file is mapped
+	 * into memory.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static SimilarityNeighbours open(File file) throws IOException
+	{
+		SimilarityFile header = SimilarityFile.readHeader(file, SimilarityFile.KIND_NEIGHBOURS);
+		int n = header.names.length;
+		int k = header.parameter;
+		long size = 4L * n + 8L * n * k;
+		if (size > SimilarityFile.MAX_REGION)
+			throw new IOException("\"" + file.getPath() + "\" is too large");
+
+		SimilarityNeighbours result = new SimilarityNeighbours();
+		result.names = header.names;
+		result.k = k;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			if (raf.length() < header.payloadOffset + size)
+				throw new IOException("\"" + file.getPath() + "\" is truncated");
+
+			ByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, header.payloadOffset, size);
+			buf.limit(4 * n);
+			result.counts = buf.slice().asIntBuffer();
+			buf.limit(4 * n + 4 * n * k).position(4 * n);
+			result.neighbours = buf.slice().asIntBuffer();
+			buf.limit(4 * n + 8 * n * k).position(4 * n + 4 * n * k);
+			result.similarities = buf.slice().asFloatBuffer();
+		} finally
+		{
+			/* The mapping stays valid after closing */
+			raf.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the neighbours to the given file.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException
+	{
+		int n = names.length;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			long payloadOffset = SimilarityFile.writeHeader(raf, SimilarityFile.KIND_NEIGHBOURS, k, names);
+			raf.setLength(payloadOffset);
+
+			ByteBuffer buf = ByteBuffer.allocate(4 * n + 8 * n * k);
+			for (int i = 0; i < n; i++)
+				buf.putInt(counts.get(i));
+			for (int i = 0; i < n * k; i++)
+				buf.putInt(neighbours.get(i));
+			for (int i = 0; i < n * k; i++)
+				buf.putFloat(similarities.get(i));
+			raf.seek(payloadOffset);
+			raf.write(buf.array());
+		} finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns the names of the genes.
+	 *
+	 * @return
+	 */
+	public ByteString [] getNames()
+	{
+		return names;
+	}
+
+	/**
+	 * Returns the number of genes.
+	 *
+	 * @return
+	 */
+	public int getNumberOfGenes()
+	{
+		return names.length;
+	}
+
+	/**
+	 * Returns the maximal number of neighbours per gene.
+	 *
+	 * @return
+	 */
+	public int getK()
+	{
+		return k;
+	}
+
+	/**
+	 * Returns the number of neighbours of the given gene.
+	 *
+	 * @param i
+	 * @return
+	 */
+	public int getNumberOfNeighbours(int i)
+	{
+		return counts.get(i);
+	}
+
+	/**
+	 * Returns the index of a neighbour of the given gene.
+	 *
+	 * @param i the gene
+	 * @param r the rank of the neighbour, 0 denotes the most similar one.
+	 * @return
+	 */
+	public int getNeighbour(int i, int r)
+	{
+		return neighbours.get(i * k + r);
+	}
+
+	/**
+	 * Returns the similarity of a neighbour of the given gene.
+	 *
+	 * @param i the gene
+	 * @param r the rank of the neighbour, 0 denotes the most similar one.
+	 * @return
+	 */
+	public float getSimilarity(int i, int r)
+	{
+		return similarities.get(i * k + r);
+	}
+
+	/**
+	 * Returns the similarity of gene j to gene i, provided that j is one
+	 * of the neighbours of i.
+	 *
+	 * @param i
+	 * @param j
+	 * @return the similarity or NaN if j isn't a neighbour of i.
+	 */
+	public double findSimilarity(int i, int j)
+	{
+		int count = counts.get(i);
+		for (int r = 0; r < count; r++)
+		{
+			if (neighbours.get(i * k + r) == j)
+				return similarities.get(i * k + r);
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Returns whether neighbour (j, sj) is less similar than (l, sl).
+	 */
+	private static boolean less(int j, float sj, int l, float sl)
+	{
+		if (sj != sl) return sj < sl;
+		return j > l;
+	}
+
+	/**
+	 * Swaps two entries.
+	 */
+	private void swap(int a, int b)
+	{
+		int n = neighbours.get(a);
+		float s = similarities.get(a);
+		neighbours.put(a, neighbours.get(b));
+		similarities.put(a, similarities.get(b));
+		neighbours.put(b, n);
+		similarities.put(b, s);
+	}
+
+	/**
+	 * Restores the heap property of the heap with the given offset
+	 * downwards from position p.
+	 */
+	private void siftDown(int offset, int size, int p)
+	{
+		while (true)
+		{
+			int least = p;
+			int left = 2 * p + 1;
+			int right = left + 1;
+			if (left < size && less(neighbours.get(offset + left), similarities.get(offset + left), neighbours.get(offset + least), similarities.get(offset + least)))
+				least = left;
+			if (right < size && less(neighbours.get(offset + right), similarities.get(offset + right), neighbours.get(offset + least), similarities.get(offset + least)))
+				least = right;
+			if (least == p)
+				return;
+			swap(offset + p, offset + least);
+			p = least;
+		}
+	}
+
+	/**
+	 * Offers j as neighbour of i. The caller must hold the lock of i.
+	 */
+	private void offer(int i, int j, float s)
+	{
+		int offset = i * k;
+		int size = counts.get(i);
+		if (size < k)
+		{
+			/* Sift up */
+			int p = size;
+			neighbours.put(offset + p, j);
+			similarities.put(offset + p, s);
+			while (p > 0)
+			{
+				int parent = (p - 1) / 2;
+				if (!less(j, s, neighbours.get(offset + parent), similarities.get(offset + parent)))
+					break;
+				swap(offset + p, offset + parent);
+				p = parent;
+			}
+			counts.put(i, size + 1);
+		} else if (less(neighbours.get(offset), similarities.get(offset), j, s))
+		{
+			neighbours.put(offset, j);
+			similarities.put(offset, s);
+			siftDown(offset, size, 0);
+		}
+	}
+
+	public void consume(int rowStart, int columnStart, int rows, int columns, double [] tile)
+	{
+		boolean diagonal = rowStart == columnStart;
+
+		for (int r = 0; r < rows; r++)
+		{
+			int i = rowStart + r;
+			synchronized (locks[i & (NUMBER_OF_LOCKS - 1)])
+			{
+				for (int c = 0; c < columns; c++)
+				{
+					int j = columnStart + c;
+					if (i != j)
+						offer(i, j, (float)tile[r * columns + c]);
+				}
+			}
+		}
+
+		/* The diagonal tiles contain both directions already */
+		if (diagonal)
+			return;
+
+		for (int c = 0; c < columns; c++)
+		{
+			int j = columnStart + c;
+			synchronized (locks[j & (NUMBER_OF_LOCKS - 1)])
+			{
+				for (int r = 0; r < rows; r++)
+					offer(j, rowStart + r, (float)tile[r * columns + c]);
+			}
+		}
+	}
+
+	/**
+	 * Sorts the neighbours of each gene by decreasing similarity. Must be
+	 * called after all tiles have been supplied.
+	 */
+	public void finish()
+	{
+		for (int i = 0; i < names.length; i++)
+		{
+			/* Heap sort, the least similar neighbour moves to the end */
+			int offset = i * k;
+			for (int size = counts.get(i); size > 1; size--)
+			{
+				swap(offset, offset + size - 1);
+				siftDown(offset, size - 1, 0);
+			}
+		}
+	}
+}
@@ -1,6 +1,9 @@
 package ontologizer.calculation;
 
+import java.util.Random;
+
 import ontologizer.association.AssociationContainer;
+import ontologizer.enumeration.GOTermBitsetCounter;
 import ontologizer.enumeration.GOTermEnumerator;
 import ontologizer.go.Ontology;
 import ontologizer.go.TermID;
@@ -9,6 +12,7 @@ import ontologizer.set.StudySet;
 import ontologizer.statistics.AbstractTestCorrection;
 import ontologizer.statistics.IPValueCalculation;
 import ontologizer.statistics.PValue;
+import ontologizer.statistics.PValueSet;
 
 /**
  *
@@ -63,12 +67,19 @@ public class TermForTermCalculation extends AbstractHypergeometricCalculation
 			public StudySet observedStudySet;
 			public AssociationContainer goAssociations;
 			public Ontology graph;
+			public GOTermBitsetCounter counter;
 
 			private PValue [] calculatePValues(StudySet studySet)
 			{
-				GOTermEnumerator studyTermEnumerator = studySet.enumerateGOTerms(graph, goAssociations);
 				GOTermEnumerator populationTermEnumerator = populationSet.enumerateGOTerms(graph, goAssociations);
 
+				/* We only need the counts, so we don't enumerate the genes of the study
+				 * unless the study can't be represented by the counter */
+				GOTermBitsetCounter.Study study = counter.createStudy(studySet);
+				GOTermEnumerator studyTermEnumerator = null;
+				if (study == null)
+					studyTermEnumerator = studySet.enumerateGOTerms(graph, goAssociations);
+
 				int i = 0;
 
 				PValue p [] = new PValue[populationTermEnumerator.getTotalNumberOfAnnotatedTerms()];
@@ -80,7 +91,9 @@ public class TermForTermCalculation extends AbstractHypergeometricCalculation
 					int goidAnnotatedPopGeneCount = populationTermEnumerator.getAnnotatedGenes(term).totalAnnotatedCount();
 					int popGeneCount = populationSet.getGeneCount();
 					int studyGeneCount = studySet.getGeneCount();
-					int goidAnnotatedStudyGeneCount = studyTermEnumerator.getAnnotatedGenes(term).totalAnnotatedCount();
+					int goidAnnotatedStudyGeneCount;
+					if (study != null) goidAnnotatedStudyGeneCount = study.getCount(term);
+					else goidAnnotatedStudyGeneCount = studyTermEnumerator.getAnnotatedGenes(term).totalAnnotatedCount();
 
 					myP = new TermForTermGOTermProperties();
 					myP.goTerm = graph.getTerm(term);
@@ -121,6 +134,37 @@ public class TermForTermCalculation extends AbstractHypergeometricCalculation
 				return p;
 			}
 
+			/**
+			 * Same as calculatePValues() but the p values are stored directly
+			 * in their primitive representation.
+			 */
+			private PValueSet calculatePValueSet(StudySet studySet)
+			{
+				GOTermBitsetCounter.Study study = counter.createStudy(studySet);
+				if (study == null)
+					return new PValueSet(calculatePValues(studySet));
+
+				GOTermEnumerator populationTermEnumerator = populationSet.enumerateGOTerms(graph, goAssociations);
+				int popGeneCount = populationSet.getGeneCount();
+				int studyGeneCount = studySet.getGeneCount();
+
+				PValueSet p = new PValueSet(populationTermEnumerator.getTotalNumberOfAnnotatedTerms());
+				int i = 0;
+
+				for (TermID term : populationTermEnumerator)
+				{
+					int goidAnnotatedStudyGeneCount = study.getCount(term);
+					if (goidAnnotatedStudyGeneCount != 0)
+					{
+						int goidAnnotatedPopGeneCount = populationTermEnumerator.getAnnotatedGenes(term).totalAnnotatedCount();
+						p.add(i, hyperg.phypergeometric(popGeneCount, (double)goidAnnotatedPopGeneCount / (double)popGeneCount,
+								studyGeneCount, goidAnnotatedStudyGeneCount));
+					}
+					i++;
+				}
+				return p;
+			}
+
 			public PValue[] calculateRawPValues()
 			{
 				return calculatePValues(observedStudySet);
@@ -135,6 +179,11 @@ public class TermForTermCalculation extends AbstractHypergeometricCalculation
 			{
 				return calculatePValues(populationSet.generateRandomStudySet(observedStudySet.getGeneCount()));
 			}
+
+			public PValueSet calculateRandomPValueSet(Random rnd)
+			{
+				return calculatePValueSet(populationSet.generateRandomStudySet(observedStudySet.getGeneCount(), rnd));
+			}
 		};
 
 		SinglePValuesCalculation pValueCalculation = new SinglePValuesCalculation();
@@ -142,6 +191,7 @@ public class TermForTermCalculation extends AbstractHypergeometricCalculation
 		pValueCalculation.graph = graph;
 		pValueCalculation.populationSet = populationSet;
 		pValueCalculation.observedStudySet = studySet;
+		pValueCalculation.counter = populationSet.getBitsetCounter(graph, goAssociations);
 		PValue p[] = testCorrection.adjustPValues(pValueCalculation);
 
 		/* Add the results to the result list and filter out terms
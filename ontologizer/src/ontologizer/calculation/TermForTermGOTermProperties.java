@@ -12,6 +12,10 @@ public class TermForTermGOTermProperties extends AbstractGOTermProperties
 		"ID","Pop.total","Pop.term","Study.total","Study.term","p","p.adjusted","p.min","name"
 		};
 
+	private static final int [] propertyTypes = new int[]{
+		PROPERTY_STRING, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_DOUBLE, PROPERTY_DOUBLE, PROPERTY_DOUBLE, PROPERTY_QUOTED_STRING
+		};
+
 	@Override
 	public int getNumberOfProperties()
 	{
@@ -42,6 +46,46 @@ public class TermForTermGOTermProperties extends AbstractGOTermProperties
 		return null;
 	}
 
+	@Override
+	public int getPropertyType(int propNumber)
+	{
+		return propertyTypes[propNumber];
+	}
+
+	@Override
+	public String getStringProperty(int propNumber)
+	{
+		switch (propNumber)
+		{
+			case	0: return goTerm.getIDAsString();
+			case	8: return goTerm.getName();
+		}
+		return super.getStringProperty(propNumber);
+	}
+
+	@Override
+	public int getIntProperty(int propNumber)
+	{
+		switch (propNumber)
+		{
+			case	2: return annotatedPopulationGenes;
+			case	4: return annotatedStudyGenes;
+		}
+		return super.getIntProperty(propNumber);
+	}
+
+	@Override
+	public double getDoubleProperty(int propNumber)
+	{
+		switch (propNumber)
+		{
+			case	5: return p;
+			case	6: return p_adjusted;
+			case	7: return p_min;
+		}
+		return super.getDoubleProperty(propNumber);
+	}
+
 	@Override
 	public boolean isPropertyPopulationGeneCount(int propNumber)
 	{
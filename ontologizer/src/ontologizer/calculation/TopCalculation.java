@@ -1,134 +1,194 @@
 package ontologizer.calculation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 
 import ontologizer.association.AssociationContainer;
+import ontologizer.enumeration.GOTermBitsetCounter;
 import ontologizer.enumeration.GOTermEnumerator;
 import ontologizer.enumeration.GOTermEnumerator.GOTermAnnotatedGenes;
 import ontologizer.go.Ontology;
 import ontologizer.go.TermID;
-import ontologizer.go.Ontology.GOLevels;
 import ontologizer.set.PopulationSet;
 import ontologizer.set.StudySet;
 import ontologizer.statistics.AbstractTestCorrection;
 import ontologizer.statistics.IPValueCalculation;
 import ontologizer.statistics.PValue;
+import ontologizer.statistics.PValueSet;
 import ontologizer.types.ByteString;
 
+/**
+ * Calculation according to the elim algorithm of Alexa et al. Terms are
+ * processed from the bottom to the top, genes of significant terms are
+ * removed from all of their ancestors. If the study set can be represented
+ * by the bitset counter of the population, the elimination is performed
+ * on bitsets (see TopologyElimination), otherwise it is performed on the
+ * gene names.
+ *
+ * @author Sebastian Bauer
+ */
 public class TopCalculation extends AbstractHypergeometricCalculation
 {
 	static final double SIGNIFICANCE_LEVEL = 0.01;
 
-	public EnrichedGOTermsResult calculateStudySet(Ontology graph,
-			AssociationContainer goAssociations, PopulationSet populationSet,
-			StudySet studySet, AbstractTestCorrection testCorrection)
+	/**
+	 *
+	 * This class hides all the details about how the p values are calculated
+	 * from the multiple test correction.
+	 *
+	 * @author Sebastian Bauer
+	 *
+	 */
+	private class SinglePValuesCalculation implements IPValueCalculation
 	{
-		EnrichedGOTermsResult studySetResult = new EnrichedGOTermsResult(graph, goAssociations, studySet, populationSet.getGeneCount());
-		studySetResult.setCalculationName(this.getName());
-		studySetResult.setCorrectionName(testCorrection.getName());
+		public PopulationSet populationSet;
+		public StudySet observedStudySet;
+		public AssociationContainer goAssociations;
+		public Ontology graph;
+		public TopologyElimination elimination;
+
+		/** The raw p values if they have been calculated in advance */
+		public PValue [] rawPValues;
 
 		/**
 		 *
-		 * This class hides all the details about how the p values are calculated
-		 * from the multiple test correction.
-		 *
-		 * @author Sebastian Bauer
+		 * Recursive function performing elim.
 		 *
+		 * @param populationTermEnumerator
+		 * @param studyTermEnumerator
+		 * @param studySet
+		 * @param term
+		 * @param p
+		 * @param markedGenesMap already processed terms and their marked genes
+		 * @return
 		 */
-		class SinglePValuesCalculation implements IPValueCalculation
+		private HashSet<ByteString> calculateTerm(GOTermEnumerator populationTermEnumerator, GOTermEnumerator studyTermEnumerator, StudySet studySet, TermID term, ArrayList<PValue> pList, HashMap<TermID,HashSet<ByteString>> markedGenesMap)
 		{
-			public PopulationSet populationSet;
-			public StudySet observedStudySet;
-			public AssociationContainer goAssociations;
-			public Ontology graph;
-
-			private HashMap<TermID,HashSet<ByteString>> markedGenesMap;
-
-			/**
-			 *
-			 * Recursive function performing elim.
-			 *
-			 * @param populationTermEnumerator
-			 * @param studyTermEnumerator
-			 * @param studySet
-			 * @param term
-			 * @param p
-			 * @return
-			 */
-			private HashSet<ByteString> calculateTerm(GOTermEnumerator populationTermEnumerator, GOTermEnumerator studyTermEnumerator, StudySet studySet, TermID term, ArrayList<PValue> pList)
+			/* Leave early if we already processed this term */
+			if (markedGenesMap.containsKey(term))
+				return markedGenesMap.get(term);
+
+			/* Determine genes that are marked */
+			HashSet<ByteString> markedGenes = new HashSet<ByteString>();
+			Set<TermID> d = graph.getTermChildren(term);
+			if (d != null)
 			{
-				if (term.id == 5982)
-					System.out.println("HUHUHUH" + markedGenesMap.containsKey(term));
+				for (TermID c : d)
+					markedGenes.addAll(calculateTerm(populationTermEnumerator, studyTermEnumerator, studySet, c, pList, markedGenesMap));
+			}
 
-				/* Leave early if we already processed this term */
-				if (markedGenesMap.containsKey(term))
-					return markedGenesMap.get(term);
+			/* Now calculate the p value */
+			int popGeneCount = populationSet.getGeneCount();
+			int studyGeneCount = studySet.getGeneCount();
 
-				/* Determine genes that are marked */
-				HashSet<ByteString> markedGenes = new HashSet<ByteString>();
-				Set<TermID> d = graph.getTermChildren(term);
-				if (d != null)
-				{
-					for (TermID c : d)
-						markedGenes.addAll(calculateTerm(populationTermEnumerator, studyTermEnumerator, studySet, c, pList));
-				}
+			GOTermAnnotatedGenes studyAnnotatedGenes = studyTermEnumerator.getAnnotatedGenes(term);
 
-				/* Now calculate the p value */
-				int popGeneCount = populationSet.getGeneCount();
-				int studyGeneCount = studySet.getGeneCount();
+			int goidAnnotatedPopGeneCount = 0;
+			int goidAnnotatedStudyGeneCount = 0;
 
-				GOTermAnnotatedGenes studyAnnotatedGenes = studyTermEnumerator.getAnnotatedGenes(term);
+			GOTermAnnotatedGenes annotated = studyTermEnumerator.getAnnotatedGenes(term);
+			for (ByteString gene : annotated.totalAnnotated)
+			{
+				if (!markedGenes.contains(gene))
+					goidAnnotatedStudyGeneCount++;
+			}
 
-				int goidAnnotatedPopGeneCount = 0;
-				int goidAnnotatedStudyGeneCount = 0;
+			annotated = populationTermEnumerator.getAnnotatedGenes(term);
+			for (ByteString gene : annotated.totalAnnotated)
+			{
+				if (!markedGenes.contains(gene))
+					goidAnnotatedPopGeneCount++;
+			}
+			/* We have to use the real count here */
+			if (annotated.totalAnnotated.size() == 0)
+			{
+				markedGenesMap.put(term,markedGenes);
+				return markedGenes;
+			}
 
-				GOTermAnnotatedGenes annotated = studyTermEnumerator.getAnnotatedGenes(term);
-				for (ByteString gene : annotated.totalAnnotated)
-				{
-					if (!markedGenes.contains(gene))
-						goidAnnotatedStudyGeneCount++;
-				}
+			TopGOTermProperties myP = new TopGOTermProperties();
+			myP.goTerm = graph.getTerm(term);
+			myP.annotatedStudyGenes = studyAnnotatedGenes.totalAnnotatedCount();
+			myP.annotatedPopulationGenes = populationTermEnumerator.getAnnotatedGenes(term).totalAnnotatedCount();
 
-				annotated = populationTermEnumerator.getAnnotatedGenes(term);
-				for (ByteString gene : annotated.totalAnnotated)
-				{
-					if (!markedGenes.contains(gene))
-						goidAnnotatedPopGeneCount++;
-				}
-				/* We have to use the real count here */
-				if (annotated.totalAnnotated.size() == 0)
-				{
-					markedGenesMap.put(term,markedGenes);
-					return markedGenes;
-				}
+			if (goidAnnotatedStudyGeneCount != 0)
+			{
+				/* Imagine the following...
+				 *
+				 * In an urn you put popGeneCount number of balls where a color of a
+				 * ball can be white or black. The number of balls having white color
+				 * is goidAnnontatedPopGeneCount (all genes of the population which
+				 * are annotated by the current GOID).
+				 *
+				 * You choose to draw studyGeneCount number of balls without replacement.
+				 * How big is the probability, that you got goidAnnotatedStudyGeneCount
+				 * white balls after the whole drawing process?
+				 */
+
+				myP.p = hyperg.phypergeometric(popGeneCount, (double)goidAnnotatedPopGeneCount / (double)popGeneCount, studyGeneCount, goidAnnotatedStudyGeneCount);
+				myP.p_min = hyperg.dhyper(goidAnnotatedPopGeneCount,popGeneCount,goidAnnotatedPopGeneCount,goidAnnotatedPopGeneCount);
+
+				if (myP.p < SIGNIFICANCE_LEVEL)
+					markedGenes.addAll(studyAnnotatedGenes.totalAnnotated);
+			} else
+			{
+				/* Mark this p value as irrelevant so it isn't considered in an mtc */
+				myP.p = 1.0;
+				myP.ignoreAtMTC = true;
+				myP.p_min = 1.0;
+			}
+			myP.p_adjusted = myP.p;
+			pList.add(myP);
+			markedGenesMap.put(term,markedGenes);
+			return markedGenes;
+		}
+
+		private PValue [] calculatePValues(StudySet studySet)
+		{
+			GOTermBitsetCounter.Study study = elimination.getCounter().createStudy(studySet);
+			if (study != null)
+				return createPValues(elimination.calculate(study, populationSet.getGeneCount(), studySet.getGeneCount()));
+
+			/* The study can't be represented by the counter, so we work on the gene names */
+			HashMap<TermID,HashSet<ByteString>> markedGenesMap = new HashMap<TermID, HashSet<ByteString>>();
+			GOTermEnumerator studyTermEnumerator = studySet.enumerateGOTerms(graph,goAssociations);
+			GOTermEnumerator populationTermEnumerator = populationSet.enumerateGOTerms(graph,goAssociations);
+			ArrayList<PValue> list = new ArrayList<PValue>(100);
+			calculateTerm(populationTermEnumerator, studyTermEnumerator, studySet, graph.getRootTerm().getID(), list, markedGenesMap);
+			PValue p [] = new PValue[list.size()];
+			return list.toArray(p);
+		}
+
+		/**
+		 * Creates the p values of the given result of the elimination.
+		 *
+		 * @param result
+		 * @return
+		 */
+		public PValue [] createPValues(TopologyElimination.Result result)
+		{
+			GOTermBitsetCounter counter = elimination.getCounter();
+			int popGeneCount = populationSet.getGeneCount();
+			PValue [] p = new PValue[elimination.getNumberOfTests()];
+
+			for (int i = 0; i < p.length; i++)
+			{
+				TermID term = elimination.getTerm(i);
 
 				TopGOTermProperties myP = new TopGOTermProperties();
 				myP.goTerm = graph.getTerm(term);
-				myP.annotatedStudyGenes = studyAnnotatedGenes.totalAnnotatedCount();
-				myP.annotatedPopulationGenes = populationTermEnumerator.getAnnotatedGenes(term).totalAnnotatedCount();
+				myP.annotatedStudyGenes = result.annotatedStudyCounts[i];
+				myP.annotatedPopulationGenes = counter.getPopulationCount(term);
 
-				if (goidAnnotatedStudyGeneCount != 0)
+				if (result.studyCounts[i] != 0)
 				{
-					/* Imagine the following...
-					 *
-					 * In an urn you put popGeneCount number of balls where a color of a
-					 * ball can be white or black. The number of balls having white color
-					 * is goidAnnontatedPopGeneCount (all genes of the population which
-					 * are annotated by the current GOID).
-					 *
-					 * You choose to draw studyGeneCount number of balls without replacement.
-					 * How big is the probability, that you got goidAnnotatedStudyGeneCount
-					 * white balls after the whole drawing process?
-					 */
-
-					myP.p = hyperg.phypergeometric(popGeneCount, (double)goidAnnotatedPopGeneCount / (double)popGeneCount, studyGeneCount, goidAnnotatedStudyGeneCount);
+					int goidAnnotatedPopGeneCount = result.populationCounts[i];
+					myP.p = result.p[i];
 					myP.p_min = hyperg.dhyper(goidAnnotatedPopGeneCount,popGeneCount,goidAnnotatedPopGeneCount,goidAnnotatedPopGeneCount);
-
-					if (myP.p < SIGNIFICANCE_LEVEL)
-						markedGenes.addAll(studyAnnotatedGenes.totalAnnotated);
 				} else
 				{
 					/* Mark this p value as irrelevant so it isn't considered in an mtc */
@@ -137,43 +197,139 @@ public class TopCalculation extends AbstractHypergeometricCalculation
 					myP.p_min = 1.0;
 				}
 				myP.p_adjusted = myP.p;
-				pList.add(myP);
-				markedGenesMap.put(term,markedGenes);
-				return markedGenes;
+				p[i] = myP;
 			}
+			return p;
+		}
 
-			private PValue [] calculatePValues(StudySet studySet)
-			{
-				markedGenesMap = new HashMap<TermID, HashSet<ByteString>>();
-				GOTermEnumerator studyTermEnumerator = studySet.enumerateGOTerms(graph,goAssociations);
-				GOTermEnumerator populationTermEnumerator = populationSet.enumerateGOTerms(graph,goAssociations);
-				ArrayList<PValue> list = new ArrayList<PValue>(100);
-				calculateTerm(populationTermEnumerator, studyTermEnumerator, studySet, graph.getRootTerm().getID(), list);
-				PValue p [] = new PValue[list.size()];
-				return list.toArray(p);
-			}
+		/**
+		 * Same as calculatePValues() but the p values are stored directly
+		 * in their primitive representation.
+		 */
+		private PValueSet calculatePValueSet(StudySet studySet)
+		{
+			GOTermBitsetCounter.Study study = elimination.getCounter().createStudy(studySet);
+			if (study == null)
+				return new PValueSet(calculatePValues(studySet));
 
-			public PValue[] calculateRawPValues()
+			TopologyElimination.Result result = elimination.calculate(study, populationSet.getGeneCount(), studySet.getGeneCount());
+			PValueSet p = new PValueSet(elimination.getNumberOfTests());
+			for (int i = 0; i < result.p.length; i++)
 			{
-				return calculatePValues(observedStudySet);
+				if (result.studyCounts[i] != 0)
+					p.add(i, result.p[i]);
 			}
+			return p;
+		}
 
-			public PValue[] calculateRandomPValues()
-			{
-				return calculatePValues(populationSet.generateRandomStudySet(observedStudySet.getGeneCount()));
-			}
+		public PValue[] calculateRawPValues()
+		{
+			if (rawPValues != null)
+				return rawPValues;
+			return calculatePValues(observedStudySet);
+		}
 
-			public int currentStudySetSize()
-			{
-				return observedStudySet.getGeneCount();
-			}
+		public PValue[] calculateRandomPValues()
+		{
+			return calculatePValues(populationSet.generateRandomStudySet(observedStudySet.getGeneCount()));
+		}
+
+		public PValueSet calculateRandomPValueSet(Random rnd)
+		{
+			return calculatePValueSet(populationSet.generateRandomStudySet(observedStudySet.getGeneCount(), rnd));
 		}
 
+		public int currentStudySetSize()
+		{
+			return observedStudySet.getGeneCount();
+		}
+	}
+
+	/**
+	 * Creates the elimination for the given population.
+	 */
+	private TopologyElimination createElimination(Ontology graph, AssociationContainer goAssociations, PopulationSet populationSet)
+	{
+		return new TopologyElimination(graph, populationSet.getBitsetCounter(graph, goAssociations), hyperg, SIGNIFICANCE_LEVEL);
+	}
+
+	public EnrichedGOTermsResult calculateStudySet(Ontology graph,
+			AssociationContainer goAssociations, PopulationSet populationSet,
+			StudySet studySet, AbstractTestCorrection testCorrection)
+	{
+		return calculateStudySet(graph, goAssociations, populationSet, studySet, testCorrection, createElimination(graph, goAssociations, populationSet), null);
+	}
+
+	/**
+	 * Calculates several study sets with respect to the same population.
+	 * The raw p values of all study sets that can be represented by the
+	 * bitset counter of the population are determined in a single pass
+	 * over the terms. The test correction is then applied to each study
+	 * set.
+	 *
+	 * @param graph
+	 * @param goAssociations
+	 * @param populationSet
+	 * @param studySets
+	 * @param testCorrection
+	 * @return the results in the order of the study sets.
+	 */
+	public EnrichedGOTermsResult [] calculateStudySets(Ontology graph,
+			AssociationContainer goAssociations, PopulationSet populationSet,
+			StudySet [] studySets, AbstractTestCorrection testCorrection)
+	{
+		TopologyElimination elimination = createElimination(graph, goAssociations, populationSet);
+
+		/* Collect the studies that can be represented by the counter */
+		GOTermBitsetCounter.Study [] studies = new GOTermBitsetCounter.Study[studySets.length];
+		int [] studyIndices = new int[studySets.length];
+		int [] studyGeneCounts = new int[studySets.length];
+		int numberOfStudies = 0;
+		for (int i = 0; i < studySets.length; i++)
+		{
+			GOTermBitsetCounter.Study study = elimination.getCounter().createStudy(studySets[i]);
+			if (study == null) continue;
+
+			studies[numberOfStudies] = study;
+			studyIndices[numberOfStudies] = i;
+			studyGeneCounts[numberOfStudies] = studySets[i].getGeneCount();
+			numberOfStudies++;
+		}
+
+		TopologyElimination.Result [] batchResults = elimination.calculate(Arrays.copyOf(studies, numberOfStudies), populationSet.getGeneCount(), Arrays.copyOf(studyGeneCounts, numberOfStudies));
+		TopologyElimination.Result [] results = new TopologyElimination.Result[studySets.length];
+		for (int i = 0; i < numberOfStudies; i++)
+			results[studyIndices[i]] = batchResults[i];
+
+		EnrichedGOTermsResult [] studySetResults = new EnrichedGOTermsResult[studySets.length];
+		for (int i = 0; i < studySets.length; i++)
+			studySetResults[i] = calculateStudySet(graph, goAssociations, populationSet, studySets[i], testCorrection, elimination, results[i]);
+		return studySetResults;
+	}
+
+	/**
+	 * Calculates the study set using the given elimination.
+	 *
+	 * @param result the result of the elimination for the study set if it has
+	 *  been calculated in advance, otherwise null.
+	 */
+	private EnrichedGOTermsResult calculateStudySet(Ontology graph,
+			AssociationContainer goAssociations, PopulationSet populationSet,
+			StudySet studySet, AbstractTestCorrection testCorrection,
+			TopologyElimination elimination, TopologyElimination.Result result)
+	{
+		EnrichedGOTermsResult studySetResult = new EnrichedGOTermsResult(graph, goAssociations, studySet, populationSet.getGeneCount());
+		studySetResult.setCalculationName(this.getName());
+		studySetResult.setCorrectionName(testCorrection.getName());
+
 		SinglePValuesCalculation pValueCalculation = new SinglePValuesCalculation();
 		pValueCalculation.goAssociations = goAssociations;
 		pValueCalculation.graph = graph;
 		pValueCalculation.populationSet = populationSet;
 		pValueCalculation.observedStudySet = studySet;
+		pValueCalculation.elimination = elimination;
+		if (result != null)
+			pValueCalculation.rawPValues = pValueCalculation.createPValues(result);
 		PValue p[] = testCorrection.adjustPValues(pValueCalculation);
 
 		/* Add the results to the result list and filter out terms
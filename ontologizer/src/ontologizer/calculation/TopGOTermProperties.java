@@ -6,6 +6,10 @@ public class TopGOTermProperties extends AbstractGOTermProperties
 		"ID","Pop.total","Pop.term","Study.total","Study.term","Pop.family", "Study.family", "is.trivial", "p", "p.adjusted", "p.min"
 		};
 
+	private static final int [] propertyTypes = new int[]{
+		PROPERTY_STRING, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_BOOLEAN, PROPERTY_DOUBLE, PROPERTY_DOUBLE, PROPERTY_DOUBLE
+		};
+
 	/** Number of genes annotated to family (term and parents) in population set. */
 	public int popFamilyGenes;
 
@@ -38,6 +42,57 @@ public class TopGOTermProperties extends AbstractGOTermProperties
 		return null;
 	}
 
+	@Override
+	public int getPropertyType(int propNumber)
+	{
+		return propertyTypes[propNumber];
+	}
+
+	@Override
+	public String getStringProperty(int propNumber)
+	{
+		switch (propNumber)
+		{
+			case	0: return goTerm.getIDAsString();
+		}
+		return super.getStringProperty(propNumber);
+	}
+
+	@Override
+	public int getIntProperty(int propNumber)
+	{
+		switch (propNumber)
+		{
+			case	2: return annotatedPopulationGenes;
+			case	4: return annotatedStudyGenes;
+			case	5: return popFamilyGenes;
+			case	6: return studyFamilyGenes;
+		}
+		return super.getIntProperty(propNumber);
+	}
+
+	@Override
+	public double getDoubleProperty(int propNumber)
+	{
+		switch (propNumber)
+		{
+			case	8: return p;
+			case	9: return p_adjusted;
+			case	10: return p_min;
+		}
+		return super.getDoubleProperty(propNumber);
+	}
+
+	@Override
+	public boolean getBooleanProperty(int propNumber)
+	{
+		switch (propNumber)
+		{
+			case	7: return ignoreAtMTC;
+		}
+		return super.getBooleanProperty(propNumber);
+	}
+
 	@Override
 	public String getPropertyName(int propNumber)
 	{
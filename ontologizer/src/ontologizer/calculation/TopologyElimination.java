@@ -0,0 +1,308 @@
+package ontologizer.calculation;
+
+import ontologizer.enumeration.GOTermBitsetCounter;
+import ontologizer.enumeration.TermAnnotationIndex;
+import ontologizer.go.Ontology;
+import ontologizer.go.TermID;
+import ontologizer.statistics.Hypergeometric;
+
+/**
+ * Performs the elim algorithm of Alexa et al. on the bitsets of a
+ * GOTermBitsetCounter. Terms are visited in a post order of the graph,
+ * i.e., every term is visited after all of its children. The genes that
+ * have been eliminated below a term are represented as a bitset of
+ * population genes, which is the union of the bitsets of the children
+ * and which is extended by the study genes of the term if the term is
+ * significant. The counts of a term are then obtained by masking the
+ * bitsets of the term with the elimination bitset.
+ *
+ * Every term to which at least one gene of the population is annotated
+ * constitutes a test. Tests are numbered in the order in which the terms
+ * are visited.
+ *
+ * Instances are immutable and can be shared among threads.
+ *
+ * @author Sebastian Bauer
+ */
+public class TopologyElimination
+{
+	/** The counter of the population */
+	private GOTermBitsetCounter counter;
+
+	/** The index underlying the counter */
+	private TermAnnotationIndex index;
+
+	/** Used to calculate the p values */
+	private Hypergeometric hyperg;
+
+	/** Terms with a p value below this level eliminate their genes */
+	private double significanceLevel;
+
+	/** The terms reachable from the root in post order */
+	private int [] order;
+
+	/** The tests of the terms, -1 if no gene of the population is annotated to the term */
+	private int [] termTests;
+
+	/** The terms of the tests */
+	private TermID [] testTerms;
+
+	/**
+	 * The result of a study set.
+	 */
+	public static class Result
+	{
+		/** The number of genes of the study that are annotated to the term of a test */
+		public int [] annotatedStudyCounts;
+
+		/** The number of genes of the study that are annotated to the term of a test and that haven't been eliminated */
+		public int [] studyCounts;
+
+		/** The number of genes of the population that are annotated to the term of a test and that haven't been eliminated */
+		public int [] populationCounts;
+
+		/** The p value of a test, undefined if studyCounts is 0 */
+		public double [] p;
+
+		private Result(int numberOfTests)
+		{
+			annotatedStudyCounts = new int[numberOfTests];
+			studyCounts = new int[numberOfTests];
+			populationCounts = new int[numberOfTests];
+			p = new double[numberOfTests];
+		}
+	}
+
+	/**
+	 * Constructs the elimination.
+	 *
+	 * @param graph the graph whose root is the start of the traversal.
+	 * @param counter the counter of the population.
+	 * @param hyperg the object that is used to calculate the p values.
+	 * @param significanceLevel terms with a p value below this level
+	 *  eliminate their genes.
+	 */
+	public TopologyElimination(Ontology graph, GOTermBitsetCounter counter, Hypergeometric hyperg, double significanceLevel)
+	{
+		this.counter = counter;
+		this.index = counter.getIndex();
+		this.hyperg = hyperg;
+		this.significanceLevel = significanceLevel;
+
+		int numberOfTerms = index.getNumberOfTerms();
+		int root = index.getTermIndex(graph.getRootTerm().getID());
+
+		/* Determine the post order by a depth first search */
+		boolean [] visited = new boolean[numberOfTerms];
+		int [] stack = new int[numberOfTerms];
+		int [] next = new int[numberOfTerms];
+		int depth = 0;
+		int numberOfVisited = 0;
+		order = new int[numberOfTerms];
+
+		stack[depth++] = root;
+		visited[root] = true;
+		while (depth > 0)
+		{
+			int t = stack[depth - 1];
+			int [] children = index.getChildTerms(t);
+			if (next[depth - 1] < children.length)
+			{
+				int c = children[next[depth - 1]++];
+				if (!visited[c])
+				{
+					visited[c] = true;
+					stack[depth] = c;
+					next[depth] = 0;
+					depth++;
+				}
+			} else
+			{
+				order[numberOfVisited++] = t;
+				depth--;
+			}
+		}
+		if (numberOfVisited != numberOfTerms)
+		{
+			int [] newOrder = new int[numberOfVisited];
+			System.arraycopy(order, 0, newOrder, 0, numberOfVisited);
+			order = newOrder;
+		}
+
+		/* Assign the tests */
+		termTests = new int[numberOfTerms];
+		int numberOfTests = 0;
+		for (int i = 0; i < numberOfTerms; i++)
+			termTests[i] = -1;
+		for (int t : order)
+		{
+			if (counter.getPopulationCount(t) != 0)
+				termTests[t] = numberOfTests++;
+		}
+		testTerms = new TermID[numberOfTests];
+		for (int t : order)
+		{
+			if (termTests[t] != -1)
+				testTerms[termTests[t]] = index.getTermID(t);
+		}
+	}
+
+	/**
+	 * @return the number of tests.
+	 */
+	public int getNumberOfTests()
+	{
+		return testTerms.length;
+	}
+
+	/**
+	 * Returns the term of the given test.
+	 *
+	 * @param test
+	 * @return the term id.
+	 */
+	public TermID getTerm(int test)
+	{
+		return testTerms[test];
+	}
+
+	/**
+	 * @return the counter of the population.
+	 */
+	public GOTermBitsetCounter getCounter()
+	{
+		return counter;
+	}
+
+	/**
+	 * Performs the elimination for a single study.
+	 *
+	 * @param study
+	 * @param populationGeneCount the number of genes of the population.
+	 * @param studyGeneCount the number of genes of the study.
+	 * @return the result.
+	 */
+	public Result calculate(GOTermBitsetCounter.Study study, int populationGeneCount, int studyGeneCount)
+	{
+		return calculate(new GOTermBitsetCounter.Study[]{study}, populationGeneCount, new int[]{studyGeneCount})[0];
+	}
+
+	/**
+	 * Performs the elimination for several studies in one pass over the
+	 * terms.
+	 *
+	 * @param studies
+	 * @param populationGeneCount the number of genes of the population.
+	 * @param studyGeneCounts the number of genes of each study.
+	 * @return the results in the order of the studies.
+	 */
+	public Result [] calculate(GOTermBitsetCounter.Study [] studies, int populationGeneCount, int [] studyGeneCounts)
+	{
+		int numberOfWords = counter.getNumberOfWords();
+		int numberOfTerms = index.getNumberOfTerms();
+
+		Result [] results = new Result[studies.length];
+		for (int s = 0; s < studies.length; s++)
+			results[s] = new Result(testTerms.length);
+
+		/* The eliminated genes per study and term. A bitset may be shared
+		 * with children unless it is owned by the term, in which case it
+		 * has been allocated for the term */
+		long [][][] eliminated = new long[studies.length][numberOfTerms][];
+
+		for (int t : order)
+		{
+			int [] children = index.getChildTerms(t);
+			int test = termTests[t];
+			long [] populationBits = counter.getPopulationBits(t);
+			int populationCount = counter.getPopulationCount(t);
+
+			for (int s = 0; s < studies.length; s++)
+			{
+				long [][] studyEliminated = eliminated[s];
+
+				/* Union of the genes eliminated below */
+				long [] mask = null;
+				boolean owned = false;
+				for (int c : children)
+				{
+					long [] childMask = studyEliminated[c];
+					if (childMask == null || childMask == mask)
+						continue;
+					if (mask == null)
+					{
+						mask = childMask;
+						continue;
+					}
+					if (!owned)
+					{
+						mask = mask.clone();
+						owned = true;
+					}
+					for (int w = 0; w < numberOfWords; w++)
+						mask[w] |= childMask[w];
+				}
+
+				if (test != -1)
+				{
+					Result result = results[s];
+					long [] studyBits = studies[s].getBits();
+					int annotatedStudyCount = studies[s].getCount(t);
+					int studyCount;
+					int remainingPopulationCount;
+
+					if (mask == null || annotatedStudyCount == 0)
+					{
+						studyCount = annotatedStudyCount;
+						remainingPopulationCount = populationCount;
+						if (mask != null)
+						{
+							remainingPopulationCount = 0;
+							for (int w = 0; w < numberOfWords; w++)
+								remainingPopulationCount += Long.bitCount(populationBits[w] & ~mask[w]);
+						}
+					} else
+					{
+						studyCount = 0;
+						remainingPopulationCount = 0;
+						for (int w = 0; w < numberOfWords; w++)
+						{
+							long remaining = populationBits[w] & ~mask[w];
+							remainingPopulationCount += Long.bitCount(remaining);
+							studyCount += Long.bitCount(remaining & studyBits[w]);
+						}
+					}
+
+					result.annotatedStudyCounts[test] = annotatedStudyCount;
+					result.studyCounts[test] = studyCount;
+					result.populationCounts[test] = remainingPopulationCount;
+
+					if (studyCount != 0)
+					{
+						double p = hyperg.phypergeometric(populationGeneCount, (double)remainingPopulationCount / (double)populationGeneCount,
+								studyGeneCounts[s], studyCount);
+						result.p[test] = p;
+
+						/* Eliminate the study genes of the term */
+						if (p < significanceLevel)
+						{
+							if (mask == null)
+							{
+								mask = new long[numberOfWords];
+								owned = true;
+							} else if (!owned)
+							{
+								mask = mask.clone();
+								owned = true;
+							}
+							for (int w = 0; w < numberOfWords; w++)
+								mask[w] |= populationBits[w] & studyBits[w];
+						}
+					}
+				}
+				studyEliminated[t] = mask;
+			}
+		}
+		return results;
+	}
+}
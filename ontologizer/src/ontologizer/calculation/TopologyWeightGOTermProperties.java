@@ -1,6 +1,5 @@
 package ontologizer.calculation;
 
-import java.util.HashMap;
 import java.util.HashSet;
 
 import ontologizer.types.ByteString;
@@ -11,6 +10,10 @@ public class TopologyWeightGOTermProperties extends AbstractGOTermProperties
 		"ID","Pop.total","Pop.term","Study.total","Study.term","Pop.family", "Study.family", "is.trivial", "p", "p.adjusted", "p.min"
 		};
 
+	private static final int [] propertyTypes = new int[]{
+		PROPERTY_STRING, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_INT, PROPERTY_BOOLEAN, PROPERTY_DOUBLE, PROPERTY_DOUBLE, PROPERTY_DOUBLE
+		};
+
 	/** Number of genes annotated to family (term and parents) in population set. */
 	public int popFamilyGenes;
 
@@ -20,9 +23,6 @@ public class TopologyWeightGOTermProperties extends AbstractGOTermProperties
 	/** Genes which should be removed for terms in upper levels */
 	public HashSet<ByteString> markedGenes;
 
-	/** Weight of the annotated genes */
-	private HashMap<ByteString,Double> weight = new HashMap<ByteString,Double>();
-
 	@Override
 	public int getNumberOfProperties()
 	{
@@ -50,46 +50,71 @@ public class TopologyWeightGOTermProperties extends AbstractGOTermProperties
 	}
 
 	@Override
-	public String getPropertyName(int propNumber)
+	public int getPropertyType(int propNumber)
 	{
-		return propertyNames[propNumber];
+		return propertyTypes[propNumber];
 	}
 
 	@Override
-	public boolean isPropertyPopulationGeneCount(int propNumber)
+	public String getStringProperty(int propNumber)
 	{
-		return propNumber == 1;
+		switch (propNumber)
+		{
+			case	0: return goTerm.getIDAsString();
+		}
+		return super.getStringProperty(propNumber);
 	}
 
 	@Override
-	public boolean isPropertyStudyGeneCount(int propNumber)
+	public int getIntProperty(int propNumber)
 	{
-		return propNumber == 3;
+		switch (propNumber)
+		{
+			case	2: return annotatedPopulationGenes;
+			case	4: return annotatedStudyGenes;
+			case	5: return popFamilyGenes;
+			case	6: return studyFamilyGenes;
+		}
+		return super.getIntProperty(propNumber);
 	}
 
-	/**
-	 * Returns the weight of the given gene. If no weight
-	 * has been set yet, returns 1.
-	 *
-	 * @param gene
-	 * @return
-	 */
-	public double getWeight(ByteString gene)
+	@Override
+	public double getDoubleProperty(int propNumber)
 	{
-		Double w = weight.get(gene);
-		if (w == null) return 1;
-		return w;
+		switch (propNumber)
+		{
+			case	8: return p;
+			case	9: return p_adjusted;
+			case	10: return p_min;
+		}
+		return super.getDoubleProperty(propNumber);
 	}
 
-	/**
-	 * Sets the weight.
-	 *
-	 * @param gene
-	 * @param w
-	 */
-	public void setWeight(ByteString gene, double w)
+	@Override
+	public boolean getBooleanProperty(int propNumber)
 	{
-		weight.put(gene,w);
+		switch (propNumber)
+		{
+			case	7: return ignoreAtMTC;
+		}
+		return super.getBooleanProperty(propNumber);
+	}
+
+	@Override
+	public String getPropertyName(int propNumber)
+	{
+		return propertyNames[propNumber];
+	}
+
+	@Override
+	public boolean isPropertyPopulationGeneCount(int propNumber)
+	{
+		return propNumber == 1;
 	}
 
+	@Override
+	public boolean isPropertyStudyGeneCount(int propNumber)
+	{
+		return propNumber == 3;
+	}
 }
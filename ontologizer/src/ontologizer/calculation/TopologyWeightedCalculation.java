@@ -1,12 +1,13 @@
 package ontologizer.calculation;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import ontologizer.association.AssociationContainer;
 import ontologizer.enumeration.GOTermEnumerator;
-import ontologizer.enumeration.GOTermEnumerator.GOTermAnnotatedGenes;
 import ontologizer.go.Ontology;
 import ontologizer.go.TermID;
 import ontologizer.go.Ontology.GOLevels;
@@ -15,152 +16,471 @@ import ontologizer.set.StudySet;
 import ontologizer.statistics.AbstractTestCorrection;
 import ontologizer.types.ByteString;
 
+/**
+ * Calculation according to the weight algorithm of Alexa et al. Terms are
+ * processed level by level from the bottom to the top. The genes of a term
+ * are weighted according to the significance of the term relative to its
+ * children, and the weighted Fisher test of a term is repeated only if its
+ * weights have actually been changed.
+ *
+ * Genes are identified by dense indices, the indices of the genes of the
+ * population correspond to their order within the population. Weights that
+ * differ from one are kept per term in a primitive hash map.
+ *
+ * @author Sebastian Bauer
+ */
 public class TopologyWeightedCalculation extends AbstractHypergeometricCalculation
 {
 	static final double SIGNIFICANCE_LEVEL = 0.01;
 
-	private void computeTermSig(PopulationSet populationSet, StudySet studySet, Ontology graph, TermID u, Set<TermID> children, EnrichedGOTermsResult studySetResult, GOTermEnumerator studyTermEnumerator, GOTermEnumerator populationTermEnumerator)
+	/**
+	 * Weights of genes that differ from one. Genes are identified by their
+	 * non-negative indices.
+	 */
+	static class Weights
 	{
-		if (graph.isRootTerm(u)) return;
+		private int [] keys = new int[16];
+		private double [] values = new double[16];
+		private int size;
+		private int shift = 28;
 
-		/* Execute Fisher */
-		TopologyWeightGOTermProperties prop = wFisher(populationSet, studySet, graph, u, studySetResult, studyTermEnumerator, populationTermEnumerator);
+		public Weights()
+		{
+			Arrays.fill(keys, -1);
+		}
 
-		if (children == null || children.size() == 0) return;
+		private int slot(int gene)
+		{
+			int mask = keys.length - 1;
+			int slot = (gene * 0x9e3779b9) >>> shift;
+			while (keys[slot] != -1 && keys[slot] != gene)
+				slot = (slot + 1) & mask;
+			return slot;
+		}
 
-		HashMap<TermID,Double> weights = new HashMap<TermID,Double>();
-		HashSet<TermID> sigChildren = new HashSet<TermID>();
-		for (TermID child : children)
+		/**
+		 * Returns the weight of the given gene, which is one if it
+		 * has not been set yet.
+		 *
+		 * @param gene
+		 * @return
+		 */
+		public double get(int gene)
 		{
-			TopologyWeightGOTermProperties childProp = (TopologyWeightGOTermProperties)studySetResult.getGOTermProperties(child);
-			double w = sigRatio(childProp.p, prop.p);
-			weights.put(child,w);
-			if (w > 1) sigChildren.add(child);
+			int slot = slot(gene);
+			if (keys[slot] == -1) return 1;
+			return values[slot];
 		}
 
-		if (sigChildren.size() == 0)
+		/**
+		 * Sets the weight of the given gene.
+		 *
+		 * @param gene
+		 * @param w
+		 */
+		public void set(int gene, double w)
 		{
-			/* Case 1: U is the most significant term in the family */
-			for (TermID child : children)
+			int slot = slot(gene);
+			if (keys[slot] == -1)
 			{
-				TopologyWeightGOTermProperties childProp = (TopologyWeightGOTermProperties)studySetResult.getGOTermProperties(child);
-				double w = weights.get(child);
-
-				/* Readjust the weight for every gene annotated to the child */
-				GOTermAnnotatedGenes childAnnotatedGenes = populationTermEnumerator.getAnnotatedGenes(u);
-				for (ByteString gene : childAnnotatedGenes.totalAnnotated)
-					childProp.setWeight(gene, childProp.getWeight(gene) * w);
-
-				/* Recalculate the child's significance */
-				wFisher(populationSet, studySet, graph, child, studySetResult, studyTermEnumerator, populationTermEnumerator);
+				if (2 * (size + 1) > keys.length)
+				{
+					grow();
+					slot = slot(gene);
+				}
+				keys[slot] = gene;
+				size++;
 			}
-			return;
+			values[slot] = w;
 		}
 
-		/* Case 2: At least one child is more significant than u */
-		for (TermID child : sigChildren)
+		/**
+		 * Multiplies the weight of the given gene with the given factor.
+		 *
+		 * @param gene
+		 * @param w
+		 */
+		public void multiply(int gene, double w)
 		{
-			double w = weights.get(child);
+			int slot = slot(gene);
+			if (keys[slot] == -1) set(gene, w);
+			else values[slot] *= w;
+		}
 
-			Set<TermID> upper = graph.getTermsOfInducedGraph(graph.getRootTerm().getID(), u);
-			upper.remove(u);
-			upper.remove(graph.getRootTerm().getID());
+		/**
+		 * Divides the weight of the given gene by the given divisor.
+		 *
+		 * @param gene
+		 * @param w
+		 */
+		public void divide(int gene, double w)
+		{
+			int slot = slot(gene);
+			if (keys[slot] == -1) set(gene, 1 / w);
+			else values[slot] /= w;
+		}
 
-			for (TermID up : upper)
+		private void grow()
+		{
+			int [] oldKeys = keys;
+			double [] oldValues = values;
+			keys = new int[oldKeys.length * 2];
+			values = new double[oldKeys.length * 2];
+			shift--;
+			Arrays.fill(keys, -1);
+			for (int i = 0; i < oldKeys.length; i++)
 			{
-				ensureGOTermPropertiesExistence(graph, up, studySetResult, studyTermEnumerator, populationTermEnumerator);
-
-				TopologyWeightGOTermProperties upProp = (TopologyWeightGOTermProperties)studySetResult.getGOTermProperties(up);
-
-				GOTermAnnotatedGenes upAnnotatedGenes = populationTermEnumerator.getAnnotatedGenes(up);
-
-				for (ByteString gene : upAnnotatedGenes.totalAnnotated)
-					upProp.setWeight(gene, upProp.getWeight(gene) / w);
+				if (oldKeys[i] == -1) continue;
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
 			}
 		}
 
-		HashSet<TermID> newChildren = new HashSet<TermID>();
-		for (TermID t : children)
+		/**
+		 * Returns the sorted genes whose weight has been set and whose
+		 * index is smaller than the given limit.
+		 *
+		 * @param limit
+		 * @return
+		 */
+		public int [] getGenes(int limit)
 		{
-			if (!sigChildren.contains(t))
-				newChildren.add(t);
+			int [] genes = new int[size];
+			int n = 0;
+			for (int key : keys)
+			{
+				if (key != -1 && key < limit)
+					genes[n++] = key;
+			}
+			genes = Arrays.copyOf(genes, n);
+			Arrays.sort(genes);
+			return genes;
 		}
 	}
 
 	/**
-	 * Perform the weighted fisher test.
+	 * Returns the result of adding one to the given sum for the given
+	 * number of times, one addition after the other. Additions that are
+	 * exact are combined, hence the result is identical to the one of the
+	 * naive loop, including all roundings, but is obtained in time that
+	 * is logarithmic in the number of additions.
 	 *
-	 * @param populationSet
-	 * @param studySet
-	 * @param graph
-	 * @param u
-	 * @param studySetResult
-	 * @param studyTermEnumerator
-	 * @param populationTermEnumerator
+	 * @param sum
+	 * @param times
 	 * @return
 	 */
-	private TopologyWeightGOTermProperties wFisher(PopulationSet populationSet,
-			StudySet studySet, Ontology graph, TermID u,
-			EnrichedGOTermsResult studySetResult,
-			GOTermEnumerator studyTermEnumerator,
-			GOTermEnumerator populationTermEnumerator)
+	static double addOnes(double sum, int times)
 	{
+		if (Double.isNaN(sum) || Double.isInfinite(sum))
+			return sum;
 
-		TopologyWeightGOTermProperties prop = ensureGOTermPropertiesExistence(
-				graph, u, studySetResult, studyTermEnumerator,
-				populationTermEnumerator);
+		while (times > 0)
+		{
+			if (sum >= 1 && sum < 0x1p53)
+			{
+				/* Within [2^e,2^(e+1)), the spacing of doubles divides one,
+				 * so additions are exact until the upper bound is reached */
+				double bound = Math.scalb(1.0, Math.getExponent(sum) + 1);
+				int exact = (int)Math.min(times, Math.ceil(bound - sum) - 1);
+				sum += exact;
+				times -= exact;
+				if (times == 0)
+					break;
+			}
+			sum += 1;
+			times--;
+		}
+		return sum;
+	}
 
-		GOTermAnnotatedGenes populationAnnotatedGenes = populationTermEnumerator.getAnnotatedGenes(u);
-		GOTermAnnotatedGenes studyAnnotatedGenes = studyTermEnumerator.getAnnotatedGenes(u);
+	/**
+	 * The state of a term during the calculation of a study set.
+	 */
+	private static class TermState
+	{
+		public TopologyWeightGOTermProperties prop;
 
-		double goidAnnotatedPopGeneCount = 0;
-		double goidAnnotatedStudyGeneCount = 0;
-		double popGeneCount = 0;
-		double studyGeneCount = 0;
+		/** The genes of the population that are annotated to the term */
+		public int [] populationGenes;
 
-		for (ByteString gene : populationAnnotatedGenes.totalAnnotated)
-			goidAnnotatedPopGeneCount += prop.getWeight(gene);
+		/** The genes of the study that are annotated to the term */
+		public int [] studyGenes;
 
-		for (ByteString gene : studyAnnotatedGenes.totalAnnotated)
-			goidAnnotatedStudyGeneCount += prop.getWeight(gene);
+		/** The weights of the genes, null if all weights are one */
+		public Weights weights;
 
-		for (ByteString gene : populationSet)
-			popGeneCount += prop.getWeight(gene);
+		/** Whether the significance needs to be (re)calculated */
+		public boolean dirty = true;
 
-		for (ByteString gene : studySet)
-			studyGeneCount += prop.getWeight(gene);
+		/** The ancestors of the term excluding the term itself and the root, null if not known yet */
+		public TermID [] upper;
 
-		if (goidAnnotatedStudyGeneCount != 0)
-		{
-			prop.p = hyperg.phypergeometric((int)Math.ceil(popGeneCount), Math.ceil(goidAnnotatedPopGeneCount) / Math.ceil(popGeneCount),
-					(int)studyGeneCount, (int)goidAnnotatedStudyGeneCount);
-		} else
+		public Weights getWeights()
 		{
-			prop.p = 1;
-			prop.p_min = 1.0;
+			if (weights == null)
+				weights = new Weights();
+			return weights;
 		}
-		prop.p_adjusted = prop.p;
-		return prop;
 	}
 
-	private TopologyWeightGOTermProperties ensureGOTermPropertiesExistence(
-			Ontology graph, TermID u, EnrichedGOTermsResult studySetResult,
-			GOTermEnumerator studyTermEnumerator,
-			GOTermEnumerator populationTermEnumerator)
+	/**
+	 * The calculation of a single study set.
+	 */
+	class Calculation
 	{
-		TopologyWeightGOTermProperties prop = (TopologyWeightGOTermProperties)studySetResult.getGOTermProperties(u);
-		if (prop == null)
+		private Ontology graph;
+		private EnrichedGOTermsResult studySetResult;
+		private GOTermEnumerator studyTermEnumerator;
+		private GOTermEnumerator populationTermEnumerator;
+
+		/** The indices of the gene names */
+		private HashMap<ByteString,Integer> gene2Index = new HashMap<ByteString,Integer>();
+
+		/** The number of genes of the population, these have the indices below */
+		private int populationGeneCount;
+
+		/** The genes of the study in order of the study */
+		private int [] studyGenes;
+
+		private HashMap<TermID,TermState> states = new HashMap<TermID,TermState>();
+
+		public Calculation(Ontology graph, PopulationSet populationSet, StudySet studySet, EnrichedGOTermsResult studySetResult, GOTermEnumerator studyTermEnumerator, GOTermEnumerator populationTermEnumerator)
+		{
+			this.graph = graph;
+			this.studySetResult = studySetResult;
+			this.studyTermEnumerator = studyTermEnumerator;
+			this.populationTermEnumerator = populationTermEnumerator;
+
+			for (ByteString gene : populationSet)
+				getGeneIndex(gene);
+			populationGeneCount = gene2Index.size();
+
+			studyGenes = new int[studySet.getGeneCount()];
+			int i = 0;
+			for (ByteString gene : studySet)
+				studyGenes[i++] = getGeneIndex(gene);
+		}
+
+		/**
+		 * Returns the index of the given gene. Note that weights are
+		 * associated to names, i.e., a gene that is referred to by a
+		 * synonym within a set has different weights than the gene
+		 * referred to by its actual name.
+		 */
+		/**
+		 * @return the result of the study set.
+		 */
+		public EnrichedGOTermsResult getResult()
 		{
-			GOTermAnnotatedGenes populationAnnotatedGenes = populationTermEnumerator.getAnnotatedGenes(u);
-			GOTermAnnotatedGenes studyAnnotatedGenes = studyTermEnumerator.getAnnotatedGenes(u);
+			return studySetResult;
+		}
 
-			prop = new TopologyWeightGOTermProperties();
-			prop.goTerm = graph.getTerm(u);
-			prop.annotatedStudyGenes = studyAnnotatedGenes.totalAnnotatedCount();
-			prop.annotatedPopulationGenes = populationAnnotatedGenes.totalAnnotatedCount();
-			studySetResult.addGOTermProperties(prop);
+		/**
+		 * Returns the weight of the given gene with respect to the
+		 * given term.
+		 *
+		 * @param u
+		 * @param gene
+		 * @return the weight, which is one if the weight has never
+		 *  been altered.
+		 */
+		public double getWeight(TermID u, ByteString gene)
+		{
+			TermState state = states.get(u);
+			Integer idx = gene2Index.get(gene);
+			if (state == null || state.weights == null || idx == null)
+				return 1.0;
+			return state.weights.get(idx);
+		}
+
+		private int getGeneIndex(ByteString gene)
+		{
+			Integer idx = gene2Index.get(gene);
+			if (idx == null)
+			{
+				idx = gene2Index.size();
+				gene2Index.put(gene, idx);
+			}
+			return idx;
+		}
+
+		private int [] getGeneIndices(List<ByteString> genes)
+		{
+			int [] indices = new int[genes.size()];
+			int i = 0;
+			for (ByteString gene : genes)
+				indices[i++] = getGeneIndex(gene);
+			return indices;
+		}
+
+		/**
+		 * Returns the state of the given term, creating it and the
+		 * corresponding properties if they don't exist yet.
+		 */
+		private TermState getState(TermID u)
+		{
+			TermState state = states.get(u);
+			if (state == null)
+			{
+				state = new TermState();
+				state.populationGenes = getGeneIndices(populationTermEnumerator.getAnnotatedGenes(u).totalAnnotated);
+				state.studyGenes = getGeneIndices(studyTermEnumerator.getAnnotatedGenes(u).totalAnnotated);
+
+				state.prop = new TopologyWeightGOTermProperties();
+				state.prop.goTerm = graph.getTerm(u);
+				state.prop.annotatedStudyGenes = state.studyGenes.length;
+				state.prop.annotatedPopulationGenes = state.populationGenes.length;
+				studySetResult.addGOTermProperties(state.prop);
+				states.put(u, state);
+			}
+			return state;
+		}
+
+		/**
+		 * Returns the strict ancestors of the given term without the root.
+		 */
+		private TermID [] getUpper(TermState state, TermID u)
+		{
+			if (state.upper == null)
+			{
+				Set<TermID> upper = graph.getTermsOfInducedGraph(graph.getRootTerm().getID(), u);
+				upper.remove(u);
+				upper.remove(graph.getRootTerm().getID());
+				state.upper = upper.toArray(new TermID[upper.size()]);
+			}
+			return state.upper;
+		}
+
+		/**
+		 * Sums up the weights of the given genes in the given order.
+		 */
+		private double sum(Weights weights, int [] genes)
+		{
+			if (weights == null)
+				return genes.length;
+
+			double sum = 0;
+			for (int gene : genes)
+				sum += weights.get(gene);
+			return sum;
+		}
+
+		/**
+		 * Perform the weighted fisher test, unless the weights of
+		 * the term haven't changed since the last test.
+		 *
+		 * @param u
+		 * @return
+		 */
+		public TopologyWeightGOTermProperties wFisher(TermID u)
+		{
+			TermState state = getState(u);
+			TopologyWeightGOTermProperties prop = state.prop;
+			if (!state.dirty)
+				return prop;
+			state.dirty = false;
+
+			Weights weights = state.weights;
+			double goidAnnotatedPopGeneCount = sum(weights, state.populationGenes);
+			double goidAnnotatedStudyGeneCount = sum(weights, state.studyGenes);
+			double studyGeneCount = sum(weights, studyGenes);
+
+			/* The population genes are summed up in their order, consecutive
+			 * genes with a weight of one are added at once */
+			double popGeneCount;
+			if (weights == null)
+			{
+				popGeneCount = populationGeneCount;
+			} else
+			{
+				popGeneCount = 0;
+				int next = 0;
+				for (int gene : weights.getGenes(populationGeneCount))
+				{
+					popGeneCount = addOnes(popGeneCount, gene - next);
+					popGeneCount += weights.get(gene);
+					next = gene + 1;
+				}
+				popGeneCount = addOnes(popGeneCount, populationGeneCount - next);
+			}
+
+			if (goidAnnotatedStudyGeneCount != 0)
+			{
+				prop.p = hyperg.phypergeometric((int)Math.ceil(popGeneCount), Math.ceil(goidAnnotatedPopGeneCount) / Math.ceil(popGeneCount),
+						(int)studyGeneCount, (int)goidAnnotatedStudyGeneCount);
+			} else
+			{
+				prop.p = 1;
+				prop.p_min = 1.0;
+			}
+			prop.p_adjusted = prop.p;
+			return prop;
+		}
+
+		public void computeTermSig(TermID u, Set<TermID> children)
+		{
+			if (graph.isRootTerm(u)) return;
+
+			/* Execute Fisher */
+			TopologyWeightGOTermProperties prop = wFisher(u);
+
+			if (children == null || children.size() == 0) return;
+
+			HashMap<TermID,Double> weights = new HashMap<TermID,Double>();
+			HashSet<TermID> sigChildren = new HashSet<TermID>();
+			for (TermID child : children)
+			{
+				TopologyWeightGOTermProperties childProp = states.get(child).prop;
+				double w = sigRatio(childProp.p, prop.p);
+				weights.put(child,w);
+				if (w > 1) sigChildren.add(child);
+			}
+
+			if (sigChildren.size() == 0)
+			{
+				/* Case 1: U is the most significant term in the family */
+				int [] genes = states.get(u).populationGenes;
+				for (TermID child : children)
+				{
+					double w = weights.get(child);
+
+					/* Readjust the weight for every gene annotated to the child.
+					 * Note that, as ever, we take the genes annotated to u */
+					if (w != 1 && genes.length != 0)
+					{
+						TermState childState = states.get(child);
+						Weights childWeights = childState.getWeights();
+						for (int gene : genes)
+							childWeights.multiply(gene, w);
+						childState.dirty = true;
+					}
+
+					/* Recalculate the child's significance, if necessary */
+					wFisher(child);
+				}
+				return;
+			}
+
+			/* Case 2: At least one child is more significant than u */
+			TermID [] upper = getUpper(states.get(u), u);
+			for (TermID child : sigChildren)
+			{
+				double w = weights.get(child);
+
+				for (TermID up : upper)
+				{
+					TermState upState = getState(up);
+					if (upState.populationGenes.length == 0)
+						continue;
+
+					Weights upWeights = upState.getWeights();
+					for (int gene : upState.populationGenes)
+						upWeights.divide(gene, w);
+					upState.dirty = true;
+				}
+			}
 		}
-		return prop;
 	}
 
 	private double sigRatio(double a, double b)
@@ -171,6 +491,16 @@ public class TopologyWeightedCalculation extends AbstractHypergeometricCalculati
 	public EnrichedGOTermsResult calculateStudySet(Ontology graph,
 			AssociationContainer goAssociations, PopulationSet populationSet,
 			StudySet studySet, AbstractTestCorrection testCorrection)
+	{
+		return calculate(graph, goAssociations, populationSet, studySet, testCorrection).getResult();
+	}
+
+	/**
+	 * Performs the calculation of calculateStudySet() and returns its
+	 * state, which includes the final weights.
+	 */
+	Calculation calculate(Ontology graph, AssociationContainer goAssociations,
+			PopulationSet populationSet, StudySet studySet, AbstractTestCorrection testCorrection)
 	{
 		EnrichedGOTermsResult studySetResult = new EnrichedGOTermsResult(graph, goAssociations, studySet, populationSet.getGeneCount());
 		studySetResult.setCalculationName(this.getName());
@@ -179,6 +509,8 @@ public class TopologyWeightedCalculation extends AbstractHypergeometricCalculati
 		GOTermEnumerator studyTermEnumerator = studySet.enumerateGOTerms(graph,goAssociations);
 		GOTermEnumerator populationTermEnumerator = populationSet.enumerateGOTerms(graph,goAssociations);
 
+		Calculation calculation = new Calculation(graph, populationSet, studySet, studySetResult, studyTermEnumerator, populationTermEnumerator);
+
 		Set<TermID> allAnnotatedTerms = studyTermEnumerator.getAllAnnotatedTermsAsSet();
 		GOLevels levels = graph.getGOLevels(allAnnotatedTerms);
 
@@ -196,11 +528,11 @@ public class TopologyWeightedCalculation extends AbstractHypergeometricCalculati
 						annotatedDescs.add(d);
 				}
 
-				computeTermSig(populationSet, studySet, graph, t, annotatedDescs, studySetResult, studyTermEnumerator, populationTermEnumerator);
+				calculation.computeTermSig(t, annotatedDescs);
 			}
 		}
 
-		return studySetResult;
+		return calculation;
 	}
 
 	public String getDescription()
@@ -7,6 +7,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import ontologizer.association.AssociationContainer;
@@ -54,6 +59,36 @@ public class Bayes2GOCalculation implements ICalculation
 	private int mcmcSteps = 1020000;
 	private int updateReportTime = 1000; /* Update report time in ms */
 
+	/** Number of chains that are run */
+	private int numberOfChains = 1;
+
+	/** Number of threads on which the chains are run */
+	private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+	/** Temperature difference of two neighbored chains, 0 means independent chains */
+	private double temperatureStep = 0;
+
+	/** Number of steps after which chains of neighbored temperatures propose to swap */
+	private int swapInterval = 1000;
+
+	/** Number of steps that are not recorded */
+	private static final int BURNIN = 20000;
+
+	/**
+	 * The term/gene incidence structure of a population, which is kept
+	 * for subsequent calculations with the same population.
+	 */
+	private static class CachedIncidence
+	{
+		public Ontology graph;
+		public AssociationContainer assoc;
+		public PopulationSet populationSet;
+		public int populationSize;
+		public TermGeneIncidence incidence;
+	}
+
+	private CachedIncidence cachedIncidence = new CachedIncidence();
+
 	public Bayes2GOCalculation()
 	{
 	}
@@ -68,6 +103,11 @@ public class Bayes2GOCalculation implements ICalculation
 		this.calculationProgress = calc.calculationProgress;
 		this.takePopulationAsReference = calc.takePopulationAsReference;
 		this.mcmcSteps = calc.mcmcSteps;
+		this.numberOfChains = calc.numberOfChains;
+		this.numberOfThreads = calc.numberOfThreads;
+		this.temperatureStep = calc.temperatureStep;
+		this.swapInterval = calc.swapInterval;
+		this.cachedIncidence = calc.cachedIncidence;
 	}
 
 	/**
@@ -199,6 +239,46 @@ public class Bayes2GOCalculation implements ICalculation
 		this.mcmcSteps = mcmcSteps;
 	}
 
+	/**
+	 * Sets the number of chains that are run. Each chain performs the
+	 * number of mcmc steps set via setMcmcSteps() and has its own source
+	 * of randomness. The records of all chains are merged. If more than
+	 * one independent chain is run, the potential scale reduction (R-hat)
+	 * is determined.
+	 *
+	 * @param numberOfChains
+	 */
+	public void setNumberOfChains(int numberOfChains)
+	{
+		this.numberOfChains = Math.max(1, numberOfChains);
+	}
+
+	/**
+	 * Sets the number of threads on which the chains are run.
+	 *
+	 * @param numberOfThreads
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+	}
+
+	/**
+	 * Enables parallel tempering. The i'th chain is run at a temperature
+	 * of 1 + i * temperatureStep and, every swapInterval steps, chains of
+	 * neighbored temperatures propose to exchange their temperatures.
+	 * Only states of the chain at temperature 1 are recorded.
+	 *
+	 * @param temperatureStep the temperature difference of two neighbored
+	 *  chains. 0 means that the chains are independent.
+	 * @param swapInterval
+	 */
+	public void setParallelTempering(double temperatureStep, int swapInterval)
+	{
+		this.temperatureStep = Math.max(0, temperatureStep);
+		this.swapInterval = Math.max(1, swapInterval);
+	}
+
 	/**
 	 * Sets whether a random start should be used.
 	 *
@@ -256,7 +336,7 @@ public class Bayes2GOCalculation implements ICalculation
 		System.out.println("Starting calculation: expectedNumberOfTerms=" + expectedNumberOfTerms + " alpha=" + alpha + " beta=" + beta + "  numberOfPop=" + populationEnumerator.getGenes().size() + " numberOfStudy=" + studyEnumerator.getGenes().size());
 
 		long start = System.currentTimeMillis();
-		calculateByMCMC(graph, result, populationEnumerator, studyEnumerator, populationSet, studySet, valuedCalculation);//, llr);
+		calculateByMCMC(graph, goAssociations, result, populationEnumerator, studyEnumerator, populationSet, studySet, valuedCalculation);//, llr);
 		long end = System.currentTimeMillis();
 		System.out.println((end - start) + "ms");
 		return result;
@@ -274,7 +354,39 @@ public class Bayes2GOCalculation implements ICalculation
 		this.usePrior = usePrior;
 	}
 
+	/**
+	 * Returns the incidence structure of terms and genes of the given
+	 * population. The structure is built only if the previous calculation
+	 * was performed on another population or if it doesn't cover the given
+	 * terms.
+	 */
+	private TermGeneIncidence getIncidence(Ontology graph, AssociationContainer goAssociations,
+			PopulationSet populationSet, GOTermEnumerator populationEnumerator, List<TermID> allTerms)
+	{
+		CachedIncidence c = cachedIncidence;
+		synchronized (c)
+		{
+			if (c.incidence == null || c.graph != graph || c.assoc != goAssociations ||
+				c.populationSet != populationSet || c.populationSize != populationSet.getGeneCount() ||
+				c.incidence.getNumberOfGenes() != populationEnumerator.getGenes().size() ||
+				!c.incidence.containsAll(allTerms))
+			{
+				long start = System.currentTimeMillis();
+				c.incidence = new TermGeneIncidence(populationEnumerator);
+				if (!c.incidence.containsAll(allTerms))
+					c.incidence = new TermGeneIncidence(allTerms, populationEnumerator);
+				c.graph = graph;
+				c.assoc = goAssociations;
+				c.populationSet = populationSet;
+				c.populationSize = populationSet.getGeneCount();
+				logger.info("Built term/gene incidences in " + (System.currentTimeMillis() - start) + "ms");
+			}
+			return c.incidence;
+		}
+	}
+
 	private void calculateByMCMC(Ontology graph,
+			AssociationContainer goAssociations,
 			Bayes2GOEnrichedGOTermsResult result,
 			GOTermEnumerator populationEnumerator,
 			GOTermEnumerator studyEnumerator,
@@ -287,17 +399,23 @@ public class Bayes2GOCalculation implements ICalculation
 		if (takePopulationAsReference) allTerms = populationEnumerator.getAllAnnotatedTermsAsList();
 		else allTerms = studyEnumerator.getAllAnnotatedTermsAsList();
 
-		Random rnd;
-		if (seed != 0)
-		{
-			rnd = new Random(seed);
-			logger.info("Use a random seed of: " + seed);
-		} else
-		{
-			long newSeed = new Random().nextLong();
-			logger.info("Use a random seed of: " + newSeed);
-			rnd = new Random(newSeed);
-		}
+		/* Shared by all chains and iterations */
+		TermGeneIncidence incidence = getIncidence(graph, goAssociations, populationSet, populationEnumerator, allTerms);
+
+		long baseSeed = seed;
+		if (baseSeed == 0)
+			baseSeed = new Random().nextLong();
+		logger.info("Use a random seed of: " + baseSeed);
+		Random rnd = new Random(baseSeed);
+
+		/* The first chain uses the main source of randomness, each further chain gets its own one */
+		Random [] chainRnd = new Random[numberOfChains];
+		chainRnd[0] = rnd;
+		for (int c=1;c<numberOfChains;c++)
+			chainRnd[c] = new Random(baseSeed + c * 0x9e3779b97f4a7c15L);
+		Random swapRnd = new Random(~baseSeed);
+
+		boolean tempering = numberOfChains > 1 && temperatureStep > 0;
 
 		boolean doAlphaEm = false;
 		boolean doBetaEm = false;
@@ -348,86 +466,419 @@ public class Bayes2GOCalculation implements ICalculation
 		} catch (IOException e) {
 		}
 
-		for (int i=0;i<maxIter;i++)
+		ExecutorService executor = null;
+		if (numberOfChains > 1)
+			executor = Executors.newFixedThreadPool(Math.min(numberOfThreads, numberOfChains));
+
+		try
 		{
-			Bayes2GOScore bayes2GOScore;
+			for (int i=0;i<maxIter;i++)
+			{
+				if (!valuedCalculation)
+				{
+					if (doEm)
+					{
+						System.out.println("EM-Iter("+i+")" + alpha + "  " + beta + "  " + expectedNumberOfTerms);
+					} else
+					{
+						System.out.println("MCMC only: " + alpha + "  " + beta + "  " + expectedNumberOfTerms);
+					}
+				}
 
-			FixedAlphaBetaScore fixedAlphaBetaScore = null;
-			ValuedGOScore valuedScore = null;
+				int maxSteps = mcmcSteps;
 
-			if (!valuedCalculation)
-			{
-				fixedAlphaBetaScore = new FixedAlphaBetaScore(rnd, allTerms, populationEnumerator,  studyEnumerator.getGenes());
-				fixedAlphaBetaScore.setIntegrateParams(integrateParams);
+				/* Create the chains. Chains are ordered by their temperature, which is
+				 * changed by swaps in case of parallel tempering */
+				Chain [] chains = new Chain[numberOfChains];
+				Chain [] chainAtLevel = new Chain[numberOfChains];
+				for (int c=0;c<numberOfChains;c++)
+				{
+					Bayes2GOScore score = createScore(chainRnd[c], allTerms, incidence, studyEnumerator, studySet, valuedCalculation, alpha, beta, expectedNumberOfTerms);
+					chains[c] = new Chain(i, chainRnd[c], score);
+					if (tempering)
+						chains[c].invTemperature = 1 / (1 + c * temperatureStep);
+					chainAtLevel[c] = chains[c];
+				}
+				chains[0].reportProgress = true;
+				chains[0].statsFile = statsFile;
 
-				if (doEm)
+				Bayes2GOScore bayes2GOScore = chains[0].score;
+				FixedAlphaBetaScore fixedAlphaBetaScore = chains[0].fixedAlphaBetaScore;
+
+				result.setScore(bayes2GOScore);
+
+				if (calculationProgress != null)
+					calculationProgress.init(maxSteps);
+
+				if (numberOfChains == 1)
 				{
-					System.out.println("EM-Iter("+i+")" + alpha + "  " + beta + "  " + expectedNumberOfTerms);
+					chains[0].run(maxSteps);
 				} else
 				{
-					System.out.println("MCMC only: " + alpha + "  " + beta + "  " + expectedNumberOfTerms);
+					int roundLength = tempering ? swapInterval : maxSteps;
+					int numSwapProposals = 0;
+					int numSwaps = 0;
+
+					for (int done=0;done<maxSteps;done+=roundLength)
+					{
+						final int steps = Math.min(roundLength, maxSteps - done);
+
+						ArrayList<Future<?>> futures = new ArrayList<Future<?>>(numberOfChains);
+						for (final Chain chain : chains)
+						{
+							futures.add(executor.submit(new Callable<Object>()
+							{
+								public Object call()
+								{
+									chain.run(steps);
+									return null;
+								}
+							}));
+						}
+						for (Future<?> f : futures)
+						{
+							try
+							{
+								f.get();
+							} catch (InterruptedException e)
+							{
+								throw new RuntimeException(e);
+							} catch (ExecutionException e)
+							{
+								if (e.getCause() instanceof RuntimeException)
+									throw (RuntimeException)e.getCause();
+								throw new RuntimeException(e.getCause());
+							}
+						}
+
+						if (tempering)
+						{
+							/* Propose to swap the temperatures of neighbored chains */
+							for (int l=0;l<numberOfChains-1;l++)
+							{
+								Chain c1 = chainAtLevel[l];
+								Chain c2 = chainAtLevel[l+1];
+								double logAcceptProb = (c1.invTemperature - c2.invTemperature) * (c2.currentScore - c1.currentScore);
+
+								numSwapProposals++;
+								if (Math.log(swapRnd.nextDouble()) < logAcceptProb)
+								{
+									double invTemperature = c1.invTemperature;
+									c1.invTemperature = c2.invTemperature;
+									c2.invTemperature = invTemperature;
+									chainAtLevel[l] = c2;
+									chainAtLevel[l+1] = c1;
+									numSwaps++;
+								}
+							}
+						}
+					}
+
+					if (tempering)
+					{
+						System.out.println("swaps/proposals=" + numSwaps + "/" + numSwapProposals);
+					} else
+					{
+						/* Determine the convergence diagnostics before the records are merged */
+						int numChainRecords = chains[0].score.getNumberOfRecords();
+						double [] means = new double[numberOfChains];
+						double [] variances = new double[numberOfChains];
+
+						for (int c=0;c<numberOfChains;c++)
+						{
+							means[c] = chains[c].meanOfScores;
+							variances[c] = chains[c].numScores > 1 ? chains[c].m2OfScores / (chains[c].numScores - 1) : 0;
+						}
+						double scoreRHat = potentialScaleReduction(means, variances, numChainRecords);
+
+						double maxTermRHat = 1;
+						double [] termRHat = new double[allTerms.size()];
+						for (int j=0;j<allTerms.size();j++)
+						{
+							for (int c=0;c<numberOfChains;c++)
+							{
+								double m = (double)chains[c].score.getTermActivationCount(j) / numChainRecords;
+								means[c] = m;
+								variances[c] = numChainRecords > 1 ? m * (1 - m) * numChainRecords / (numChainRecords - 1) : 0;
+							}
+							termRHat[j] = potentialScaleReduction(means, variances, numChainRecords);
+							if (termRHat[j] > maxTermRHat || Double.isNaN(termRHat[j])) maxTermRHat = termRHat[j];
+						}
+						result.setRHat(scoreRHat, termRHat);
+
+						logger.info("R-hat of the score: " + scoreRHat + ", maximal R-hat of the term marginals: " + maxTermRHat);
+					}
+
+					for (int c=1;c<numberOfChains;c++)
+						bayes2GOScore.mergeRecords(chains[c].score);
+				}
+
+				if (fixedAlphaBetaScore != null)
+				{
+					if (doAlphaEm)
+					{
+						double newAlpha = (double)fixedAlphaBetaScore.getAvgN10()/(fixedAlphaBetaScore.getAvgN00() + fixedAlphaBetaScore.getAvgN10());
+						if (newAlpha < 0.0000001) newAlpha = 0.0000001;
+						if (newAlpha > 0.9999999) newAlpha = 0.9999999;
+						System.out.println("alpha=" + alpha + "  newAlpha=" + newAlpha);
+						alpha = newAlpha;
+					}
+
+					if (doBetaEm)
+					{
+						double newBeta = (double)fixedAlphaBetaScore.getAvgN01()/(fixedAlphaBetaScore.getAvgN01() + fixedAlphaBetaScore.getAvgN11());
+						if (newBeta < 0.0000001) newBeta = 0.0000001;
+						if (newBeta > 0.9999999) newBeta = 0.9999999;
+						System.out.println("beta=" + beta + "  newBeta=" + newBeta);
+						beta = newBeta;
+					}
 
+					if (doPEm)
+					{
+						double newExpectedNumberOfTerms = (double)fixedAlphaBetaScore.getAvgT();
+						if (newExpectedNumberOfTerms < 0.0000001) newExpectedNumberOfTerms = 0.0000001;
+						System.out.println("expectedNumberOfTerms=" + expectedNumberOfTerms + "  newExpectedNumberOfTerms=" + newExpectedNumberOfTerms);
+						expectedNumberOfTerms = newExpectedNumberOfTerms;
+					}
 				}
 
-				fixedAlphaBetaScore.setAlpha(alpha);
-				if (this.alpha.hasMax())
-					fixedAlphaBetaScore.setMaxAlpha(this.alpha.getMax());
-				fixedAlphaBetaScore.setBeta(beta);
-				if (this.beta.hasMax())
-					fixedAlphaBetaScore.setMaxBeta(this.beta.getMax());
-				fixedAlphaBetaScore.setExpectedNumberOfTerms(expectedNumberOfTerms);
-				fixedAlphaBetaScore.setUsePrior(usePrior);
+				if (i==maxIter - 1)
+				{
+					double [] termRHat = result.getTermRHat();
 
-				logger.info("Score of empty set: " + fixedAlphaBetaScore.getScore());
+					for (TermID t : allTerms)
+					{
+						int idx = bayes2GOScore.term2TermsIdx.get(t);
+
+						Bayes2GOGOTermProperties prop = new Bayes2GOGOTermProperties();
+						prop.goTerm = graph.getTerm(t);
+						prop.annotatedStudyGenes = studyEnumerator.getAnnotatedGenes(t).totalAnnotatedCount();
+						prop.annotatedPopulationGenes = populationEnumerator.getAnnotatedGenes(t).totalAnnotatedCount();
+						prop.marg = ((double)bayes2GOScore.termActivationCounts[idx] / bayes2GOScore.numRecords);
+						if (termRHat != null)
+							prop.rhat = termRHat[idx];
+
+						/* At the moment, we need these fields for technical reasons */
+						prop.p = 1 - ((double)bayes2GOScore.termActivationCounts[idx] / bayes2GOScore.numRecords);
+						prop.p_adjusted = prop.p;
+						prop.p_min = 0.001;
+
+						result.addGOTermProperties(prop);
+					}
+				}
 
-				/* Provide a starting point */
-				if (randomStart)
+				/* Determine the chain that reached the maximal score */
+				Chain best = chains[0];
+				int numAccepts = 0;
+				int numRejects = 0;
+				for (Chain chain : chains)
 				{
-					int numberOfTerms = fixedAlphaBetaScore.EXPECTED_NUMBER_OF_TERMS[rnd.nextInt(fixedAlphaBetaScore.EXPECTED_NUMBER_OF_TERMS.length)];
-					double pForStart = ((double)numberOfTerms) / allTerms.size();
+					if (chain.maxScore > best.maxScore)
+						best = chain;
+					numAccepts += chain.numAccepts;
+					numRejects += chain.numRejects;
+				}
 
-					for (int j=0;j<allTerms.size();j++)
-						if (rnd.nextDouble() < pForStart) fixedAlphaBetaScore.switchState(j);
+				System.out.println("numAccepts=" + numAccepts + "  numRejects = " + numRejects);
 
-					logger.info("Starting with " + fixedAlphaBetaScore.getActiveTerms().size() + " terms (p=" + pForStart + ")");
+				/* Print out the term combination which scored max */
+				System.out.println("Term combination that reaches score of " + best.maxScore + " when alpha=" + best.maxScoredAlpha + ", beta=" + best.maxScoredBeta + ", p=" + best.maxScoredP + " at step " + best.maxWhenSeen);
+				for (TermID tid : best.score.getTerms(best.maxScoredTerms))
+				{
+					System.out.println(tid.toString() + "/" + graph.getTerm(tid).getName());
 				}
 
-				bayes2GOScore = fixedAlphaBetaScore;
-			} else
-			{
-				valuedScore = new ValuedGOScore(rnd,  allTerms,  populationEnumerator, studySet);
-				bayes2GOScore = valuedScore;
+				if (fixedAlphaBetaScore != null)
+				{
+					if (Double.isNaN(alpha))
+					{
+						for (int j=0;j<fixedAlphaBetaScore.totalAlpha.length;j++)
+							System.out.println("alpha(" + fixedAlphaBetaScore.ALPHA[j] + ")=" + (double)fixedAlphaBetaScore.totalAlpha[j] / fixedAlphaBetaScore.numRecords);
+					}
+
+					if (Double.isNaN(beta))
+					{
+						for (int j=0;j<fixedAlphaBetaScore.totalBeta.length;j++)
+							System.out.println("beta(" + fixedAlphaBetaScore.BETA[j] + ")=" + (double)fixedAlphaBetaScore.totalBeta[j] / fixedAlphaBetaScore.numRecords);
+					}
+
+					if (Double.isNaN(expectedNumberOfTerms))
+					{
+						for (int j=0;j<fixedAlphaBetaScore.totalExp.length;j++)
+							System.out.println("exp(" + fixedAlphaBetaScore.EXPECTED_NUMBER_OF_TERMS[j] + ")=" + (double)fixedAlphaBetaScore.totalExp[j] / fixedAlphaBetaScore.numRecords);
+
+					}
+				}
+			}
+		} finally
+		{
+			if (executor != null)
+				executor.shutdown();
+		}
+
+		if (statsFile != null)
+		{
+			try {
+				statsFile.flush();
+			} catch (IOException e) {
 			}
+		}
+	}
 
-			result.setScore(bayes2GOScore);
+	/**
+	 * Creates the score for a single chain.
+	 */
+	private Bayes2GOScore createScore(Random rnd, List<TermID> allTerms,
+			TermGeneIncidence incidence,
+			GOTermEnumerator studyEnumerator,
+			StudySet studySet,
+			boolean valuedCalculation,
+			double alpha, double beta, double expectedNumberOfTerms)
+	{
+		if (valuedCalculation)
+			return new ValuedGOScore(rnd,  allTerms,  incidence, studySet);
 
-			double score = bayes2GOScore.getScore();
-			logger.info("Score of initial set: " + score);
+		FixedAlphaBetaScore fixedAlphaBetaScore = new FixedAlphaBetaScore(rnd, allTerms, incidence,  studyEnumerator.getGenes());
+		fixedAlphaBetaScore.setIntegrateParams(integrateParams);
 
-			int maxSteps = mcmcSteps;
-			int burnin = 20000;
-			int numAccepts = 0;
-			int numRejects = 0;
+		fixedAlphaBetaScore.setAlpha(alpha);
+		if (this.alpha.hasMax())
+			fixedAlphaBetaScore.setMaxAlpha(this.alpha.getMax());
+		fixedAlphaBetaScore.setBeta(beta);
+		if (this.beta.hasMax())
+			fixedAlphaBetaScore.setMaxBeta(this.beta.getMax());
+		fixedAlphaBetaScore.setExpectedNumberOfTerms(expectedNumberOfTerms);
+		fixedAlphaBetaScore.setUsePrior(usePrior);
+
+		logger.info("Score of empty set: " + fixedAlphaBetaScore.getScore());
 
-			if (calculationProgress != null)
-				calculationProgress.init(maxSteps);
+		/* Provide a starting point */
+		if (randomStart)
+		{
+			int numberOfTerms = fixedAlphaBetaScore.EXPECTED_NUMBER_OF_TERMS[rnd.nextInt(fixedAlphaBetaScore.EXPECTED_NUMBER_OF_TERMS.length)];
+			double pForStart = ((double)numberOfTerms) / allTerms.size();
+
+			for (int j=0;j<allTerms.size();j++)
+				if (rnd.nextDouble() < pForStart) fixedAlphaBetaScore.switchState(j);
 
-			double maxScore = score;
-			ArrayList<TermID> maxScoredTerms = bayes2GOScore.getActiveTerms();
-			double maxScoredAlpha = Double.NaN;
-			double maxScoredBeta = Double.NaN;
-			double maxScoredP = Double.NaN;
-			int maxWhenSeen = -1;
+			logger.info("Starting with " + fixedAlphaBetaScore.getActiveTerms().size() + " terms (p=" + pForStart + ")");
+		}
+		return fixedAlphaBetaScore;
+	}
 
-			long start = System.currentTimeMillis();
+	/**
+	 * Returns the potential scale reduction (R-hat) of Gelman and Rubin
+	 * for the given chain statistics.
+	 *
+	 * @param means the means of the chains.
+	 * @param variances the (unbiased) variances of the chains.
+	 * @param n the number of samples per chain.
+	 * @return the potential scale reduction, which approaches 1
+	 *  if the chains have converged.
+	 */
+	static double potentialScaleReduction(double [] means, double [] variances, int n)
+	{
+		int m = means.length;
+		if (m < 2 || n < 2) return Double.NaN;
 
-			for (int t=0;t<maxSteps;t++)
+		double mean = 0;
+		double w = 0;
+		for (int c=0;c<m;c++)
+		{
+			mean += means[c];
+			w += variances[c];
+		}
+		mean /= m;
+		w /= m;
+
+		/* The between chain variance divided by n */
+		double bn = 0;
+		for (int c=0;c<m;c++)
+			bn += (means[c] - mean) * (means[c] - mean);
+		bn /= m - 1;
+
+		if (w == 0)
+			return bn == 0 ? 1 : Double.POSITIVE_INFINITY;
+
+		double var = (n - 1) * w / n + bn;
+		return Math.sqrt(var / w);
+	}
+
+	/**
+	 * A single Metropolis-Hastings chain.
+	 *
+	 * @author Sebastian Bauer
+	 */
+	private class Chain
+	{
+		private int iter;
+		private Random rnd;
+
+		private Bayes2GOScore score;
+		private FixedAlphaBetaScore fixedAlphaBetaScore;
+
+		/** The inverse temperature of the chain */
+		private double invTemperature = 1;
+
+		/** Score of the current state */
+		private double currentScore;
+
+		/** Number of steps performed so far */
+		private int t;
+
+		private int numAccepts;
+		private int numRejects;
+
+		private double maxScore;
+
+		/** The terms of the state with the maximal score */
+		private long [] maxScoredTerms;
+		private double maxScoredAlpha = Double.NaN;
+		private double maxScoredBeta = Double.NaN;
+		private double maxScoredP = Double.NaN;
+		private int maxWhenSeen = -1;
+
+		/* Running statistics of the recorded scores */
+		private int numScores;
+		private double meanOfScores;
+		private double m2OfScores;
+
+		private boolean reportProgress;
+		private BufferedWriter statsFile;
+		private long start = System.currentTimeMillis();
+
+		public Chain(int iter, Random rnd, Bayes2GOScore score)
+		{
+			this.iter = iter;
+			this.rnd = rnd;
+			this.score = score;
+			if (score instanceof FixedAlphaBetaScore)
+				fixedAlphaBetaScore = (FixedAlphaBetaScore)score;
+
+			currentScore = score.getScore();
+			logger.info("Score of initial set: " + currentScore);
+
+			maxScore = currentScore;
+			maxScoredTerms = score.newTermBitset();
+			score.getActiveTerms(maxScoredTerms);
+		}
+
+		/**
+		 * Performs the given number of steps.
+		 *
+		 * @param steps
+		 */
+		public void run(int steps)
+		{
+			int maxSteps = mcmcSteps;
+
+			for (int end = t + steps;t<end;t++)
 			{
 				/* Remember maximum score and terms */
-				if (score > maxScore)
+				if (currentScore > maxScore)
 				{
-					maxScore = score;
-					maxScoredTerms = bayes2GOScore.getActiveTerms();
+					maxScore = currentScore;
+					score.getActiveTerms(maxScoredTerms);
 					if (fixedAlphaBetaScore != null)
 					{
 						maxScoredAlpha = fixedAlphaBetaScore.getAlpha();
@@ -437,142 +888,59 @@ public class Bayes2GOCalculation implements ICalculation
 					maxWhenSeen = t;
 				}
 
-				long now = System.currentTimeMillis();
-				if (now - start > updateReportTime)
+				if (reportProgress && (t & 1023) == 0)
 				{
-					logger.info((t*100/maxSteps) + "% (score=" + score +" maxScore=" + maxScore + " #terms="+bayes2GOScore.getActiveTerms().size()+
-										" accept/reject=" + String.format("%g",(double)numAccepts / (double)numRejects) +
-										" accept/steps=" + String.format("%g",(double)numAccepts / (double)t) +
-										" exp=" + expectedNumberOfTerms + " usePrior=" + usePrior + ")");
-					start = now;
-
-					if (calculationProgress != null)
-						calculationProgress.update(t);
+					long now = System.currentTimeMillis();
+					if (now - start > updateReportTime)
+					{
+						logger.info((t*100/maxSteps) + "% (score=" + currentScore +" maxScore=" + maxScore + " #terms="+score.getNumberOfActiveTerms()+
+											" accept/reject=" + String.format("%g",(double)numAccepts / (double)numRejects) +
+											" accept/steps=" + String.format("%g",(double)numAccepts / (double)t) +
+											" usePrior=" + usePrior + ")");
+						start = now;
+
+						if (calculationProgress != null)
+							calculationProgress.update(t);
+					}
 				}
 
-				long oldPossibilities = bayes2GOScore.getNeighborhoodSize();
+				long oldPossibilities = score.getNeighborhoodSize();
 				long r = rnd.nextLong();
-				bayes2GOScore.proposeNewState(r);
-				double newScore = bayes2GOScore.getScore();
-				long newPossibilities = bayes2GOScore.getNeighborhoodSize();
-
-				double acceptProb = Math.exp(newScore - score)*(double)oldPossibilities/(double)newPossibilities; /* last quotient is the hasting ratio */
-
-				boolean DEBUG = false;
+				score.proposeNewState(r);
+				double newScore = score.getScore();
+				long newPossibilities = score.getNeighborhoodSize();
 
-				if (DEBUG) System.out.print(bayes2GOScore.getActiveTerms().size() + "  score=" + score + " newScore="+newScore + " maxScore=" + maxScore + " a=" + acceptProb);
+				double acceptProb = Math.exp((newScore - currentScore) * invTemperature)*(double)oldPossibilities/(double)newPossibilities; /* last quotient is the hasting ratio */
 
 				double u = rnd.nextDouble();
 				if (u >= acceptProb)
 				{
-					bayes2GOScore.undoProposal();
+					score.undoProposal();
 					numRejects++;
 				} else
 				{
-					score = newScore;
+					currentScore = newScore;
 					numAccepts++;
 				}
-				if (DEBUG) System.out.println();
 
-				if (t>burnin)
-					bayes2GOScore.record();
+				if (t>BURNIN && invTemperature == 1)
+				{
+					score.record();
 
+					numScores++;
+					double delta = currentScore - meanOfScores;
+					meanOfScores += delta / numScores;
+					m2OfScores += delta * (currentScore - meanOfScores);
+				}
 
 				if (statsFile != null)
 				{
 					try {
-						statsFile.append(i + "\t" + t + "\t" + acceptProb + "\t" + numAccepts + "\t" + score + "\n");
+						statsFile.append(iter + "\t" + t + "\t" + acceptProb + "\t" + numAccepts + "\t" + currentScore + "\n");
 					} catch (IOException e) {
 					}
 				}
 			}
-
-			if (fixedAlphaBetaScore != null)
-			{
-				if (doAlphaEm)
-				{
-					double newAlpha = (double)fixedAlphaBetaScore.getAvgN10()/(fixedAlphaBetaScore.getAvgN00() + fixedAlphaBetaScore.getAvgN10());
-					if (newAlpha < 0.0000001) newAlpha = 0.0000001;
-					if (newAlpha > 0.9999999) newAlpha = 0.9999999;
-					System.out.println("alpha=" + alpha + "  newAlpha=" + newAlpha);
-					alpha = newAlpha;
-				}
-
-				if (doBetaEm)
-				{
-					double newBeta = (double)fixedAlphaBetaScore.getAvgN01()/(fixedAlphaBetaScore.getAvgN01() + fixedAlphaBetaScore.getAvgN11());
-					if (newBeta < 0.0000001) newBeta = 0.0000001;
-					if (newBeta > 0.9999999) newBeta = 0.9999999;
-					System.out.println("beta=" + beta + "  newBeta=" + newBeta);
-					beta = newBeta;
-				}
-
-				if (doPEm)
-				{
-					double newExpectedNumberOfTerms = (double)fixedAlphaBetaScore.getAvgT();
-					if (newExpectedNumberOfTerms < 0.0000001) newExpectedNumberOfTerms = 0.0000001;
-					System.out.println("expectedNumberOfTerms=" + expectedNumberOfTerms + "  newExpectedNumberOfTerms=" + newExpectedNumberOfTerms);
-					expectedNumberOfTerms = newExpectedNumberOfTerms;
-				}
-			}
-
-			if (i==maxIter - 1)
-			{
-				for (TermID t : allTerms)
-				{
-					Bayes2GOGOTermProperties prop = new Bayes2GOGOTermProperties();
-					prop.goTerm = graph.getTerm(t);
-					prop.annotatedStudyGenes = studyEnumerator.getAnnotatedGenes(t).totalAnnotatedCount();
-					prop.annotatedPopulationGenes = populationEnumerator.getAnnotatedGenes(t).totalAnnotatedCount();
-					prop.marg = ((double)bayes2GOScore.termActivationCounts[bayes2GOScore.term2TermsIdx.get(t)] / bayes2GOScore.numRecords);
-
-					/* At the moment, we need these fields for technical reasons */
-					prop.p = 1 - ((double)bayes2GOScore.termActivationCounts[bayes2GOScore.term2TermsIdx.get(t)] / bayes2GOScore.numRecords);
-					prop.p_adjusted = prop.p;
-					prop.p_min = 0.001;
-
-					result.addGOTermProperties(prop);
-				}
-			}
-
-			System.out.println("numAccepts=" + numAccepts + "  numRejects = " + numRejects);
-
-			/* Print out the term combination which scored max */
-			System.out.println("Term combination that reaches score of " + maxScore + " when alpha=" + maxScoredAlpha + ", beta=" + maxScoredBeta + ", p=" + maxScoredP + " at step " + maxWhenSeen);
-			for (TermID tid : maxScoredTerms)
-			{
-				System.out.println(tid.toString() + "/" + graph.getTerm(tid).getName());
-			}
-
-			if (fixedAlphaBetaScore != null)
-			{
-				if (Double.isNaN(alpha))
-				{
-					for (int j=0;j<fixedAlphaBetaScore.totalAlpha.length;j++)
-						System.out.println("alpha(" + fixedAlphaBetaScore.ALPHA[j] + ")=" + (double)fixedAlphaBetaScore.totalAlpha[j] / fixedAlphaBetaScore.numRecords);
-				}
-
-				if (Double.isNaN(beta))
-				{
-					for (int j=0;j<fixedAlphaBetaScore.totalBeta.length;j++)
-						System.out.println("beta(" + fixedAlphaBetaScore.BETA[j] + ")=" + (double)fixedAlphaBetaScore.totalBeta[j] / fixedAlphaBetaScore.numRecords);
-				}
-
-				if (Double.isNaN(expectedNumberOfTerms))
-				{
-					for (int j=0;j<fixedAlphaBetaScore.totalExp.length;j++)
-						System.out.println("exp(" + fixedAlphaBetaScore.EXPECTED_NUMBER_OF_TERMS[j] + ")=" + (double)fixedAlphaBetaScore.totalExp[j] / fixedAlphaBetaScore.numRecords);
-
-				}
-			}
-		}
-
-		if (statsFile != null)
-		{
-			try {
-				statsFile.flush();
-			} catch (IOException e) {
-			}
 		}
 	}
 
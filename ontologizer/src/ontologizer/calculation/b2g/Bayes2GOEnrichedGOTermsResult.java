@@ -15,6 +15,12 @@ public class Bayes2GOEnrichedGOTermsResult extends EnrichedGOTermsResult
 {
 	private Bayes2GOScore score;
 
+	/** R-hat of the score */
+	private double scoreRHat = Double.NaN;
+
+	/** R-hat of the term marginals, indexed like the terms of the score */
+	private double [] termRHat;
+
 	public Bayes2GOEnrichedGOTermsResult(Ontology go,
 			AssociationContainer associations, StudySet studySet,
 			int populationGeneCount)
@@ -31,4 +37,36 @@ public class Bayes2GOEnrichedGOTermsResult extends EnrichedGOTermsResult
 	{
 		return score;
 	}
+
+	/**
+	 * Sets the convergence diagnostics of a multi chain calculation.
+	 *
+	 * @param scoreRHat
+	 * @param termRHat
+	 */
+	public void setRHat(double scoreRHat, double [] termRHat)
+	{
+		this.scoreRHat = scoreRHat;
+		this.termRHat = termRHat;
+	}
+
+	/**
+	 * Returns the potential scale reduction (R-hat) of the score.
+	 *
+	 * @return the R-hat or NaN if it was not determined.
+	 */
+	public double getScoreRHat()
+	{
+		return scoreRHat;
+	}
+
+	/**
+	 * Returns the potential scale reduction (R-hat) of the term marginals.
+	 *
+	 * @return the R-hats or null if they were not determined.
+	 */
+	public double [] getTermRHat()
+	{
+		return termRHat;
+	}
 }
@@ -16,6 +16,9 @@ public class Bayes2GOGOTermProperties extends AbstractGOTermProperties
 
 	public double marg;
 
+	/** The potential scale reduction of the marginal, NaN if not determined */
+	public double rhat = Double.NaN;
+
 	@Override
 	public int getNumberOfProperties()
 	{
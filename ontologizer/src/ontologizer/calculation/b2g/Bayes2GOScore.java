@@ -1,6 +1,7 @@
 package ontologizer.calculation.b2g;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -11,21 +12,6 @@ import ontologizer.enumeration.GOTermEnumerator;
 import ontologizer.go.TermID;
 import ontologizer.types.ByteString;
 
-/**
- * A basic container representing a set of genes
- *
- * @author Sebastian Bauer
- */
-class GeneIDs
-{
-	public int [] gid;
-
-	public GeneIDs(int size)
-	{
-		gid = new int[size];
-	}
-}
-
 /**
  * The base class of bayes2go Score.
  *
@@ -38,8 +24,8 @@ abstract public class Bayes2GOScore
 	/** Source of randomness */
 	protected Random rnd;
 
-	protected GOTermEnumerator populationEnumerator;
-	protected Set<ByteString> population;
+	/** The shared incidence structure of terms and genes */
+	protected TermGeneIncidence incidence;
 
 	/** Array of terms */
 	protected TermID [] termsArray;
@@ -73,16 +59,23 @@ abstract public class Bayes2GOScore
 	/** Array that indicate the activation counts of the genes */
 	protected int [] activeHiddenGenes;
 
-	/** Maps genes to an unique gene index */
-	protected HashMap<ByteString,Integer> gene2GenesIdx = new HashMap<ByteString,Integer>();
+	/** Maps genes to an unique gene index (shared) */
+	protected HashMap<ByteString,Integer> gene2GenesIdx;
 
+	/** The genes indexed by the gene index (shared) */
 	protected ByteString [] genes;
 
-	/** Maps the term to the index in allTermsArray */
-	protected HashMap<TermID,Integer> term2TermsIdx = new HashMap<TermID,Integer>();
+	/** Maps the term to the index in termsArray */
+	protected HashMap<TermID,Integer> term2TermsIdx;
 
-	/** Maps a term id to the ids of the genes to that the term is annotated */
-	protected GeneIDs [] termLinks;
+	/** Maps the index of a term to the index within the incidence structure */
+	private int [] termRows;
+
+	/** Start of the genes of the terms of the incidence structure (shared) */
+	private int [] termOffsets;
+
+	/** The genes of the terms of the incidence structure (shared) */
+	private int [] geneIndices;
 
 	protected int numRecords;
 	protected int [] termActivationCounts;
@@ -131,63 +124,85 @@ abstract public class Bayes2GOScore
 	 * @param geneValueProvider
 	 */
 	public Bayes2GOScore(Random rnd, List<TermID> termList, GOTermEnumerator populationEnumerator, IGeneValueProvider geneValueProvider)
+	{
+		this(rnd, termList, new TermGeneIncidence(termList, populationEnumerator), geneValueProvider);
+	}
+
+	/**
+	 * Constructs a class for calculating the Bayes2GO/MGSA score suitable for an MCMC algorithm.
+	 * The score only references the given incidence structure, which hence can be shared
+	 * by many scores.
+	 *
+	 * @param rnd
+	 * @param termList list of terms that can possibly be selected. Each of it must be part
+	 *  of the incidence structure. If null, all terms of the structure can be selected.
+	 * @param incidence the terms to genes incidences of the population.
+	 * @param geneValueProvider
+	 */
+	public Bayes2GOScore(Random rnd, List<TermID> termList, TermGeneIncidence incidence, IGeneValueProvider geneValueProvider)
 	{
 		int i;
 
 		this.rnd = rnd;
+		this.incidence = incidence;
 
 		double threshold = geneValueProvider.getThreshold();
 		boolean smallerIsBetter = geneValueProvider.smallerIsBetter();
 
 		/* Initialize basics of genes */
-		population = populationEnumerator.getGenes();
-		genes = new ByteString[population.size()];
+		genes = incidence.genes;
+		gene2GenesIdx = incidence.gene2GenesIdx;
 		observedGenes = new boolean[genes.length];
 		observedValueOfGene = new double[genes.length];
-		i=0;
-		for (ByteString g : population)
+		for (i=0;i<genes.length;i++)
 		{
-			gene2GenesIdx.put(g,i);
-			genes[i] = g;
-			observedValueOfGene[i] = geneValueProvider.getGeneValue(g);
+			observedValueOfGene[i] = geneValueProvider.getGeneValue(genes[i]);
 			if (smallerIsBetter)
 				observedGenes[i] = observedValueOfGene[i] <= threshold;
 			else
 				observedGenes[i] = observedValueOfGene[i] >= threshold;
-			i++;
 		}
-		activeHiddenGenes = new int[population.size()];
+		activeHiddenGenes = new int[genes.length];
 
 		/* Initialize basics of terms */
-		isActive = new boolean[termList.size()];
-		termsArray = new TermID[termList.size()];
-		termPartition = new int[termList.size()];
-		positionOfTermInPartition = new int[termList.size()];
-		numInactiveTerms = termList.size();
-		termActivationCounts = new int[termList.size()];
-		termLinks = new GeneIDs[termList.size()];
-
-		i=0;
-		for (TermID tid : termList)
+		termOffsets = incidence.termOffsets;
+		geneIndices = incidence.geneIndices;
+		if (termList == null)
 		{
-			term2TermsIdx.put(tid,i);
-			termsArray[i]=tid;
-			termPartition[i] = i;
-			positionOfTermInPartition[i] = i;
-
-			/* Fill in the links */
-			termLinks[i] = new GeneIDs(populationEnumerator.getAnnotatedGenes(tid).totalAnnotated.size());
-			int j=0;
-			for (ByteString gene : populationEnumerator.getAnnotatedGenes(tid).totalAnnotated)
+			termRows = incidence.identity;
+			termsArray = incidence.terms;
+			term2TermsIdx = incidence.term2TermsIdx;
+		} else
+		{
+			termRows = incidence.getTermIndices(termList);
+			if (termRows == incidence.identity)
 			{
-				termLinks[i].gid[j] = gene2GenesIdx.get(gene);
-				j++;
+				termsArray = incidence.terms;
+				term2TermsIdx = incidence.term2TermsIdx;
+			} else
+			{
+				termsArray = new TermID[termRows.length];
+				term2TermsIdx = new HashMap<TermID,Integer>(termRows.length * 2);
+				for (i=0;i<termRows.length;i++)
+				{
+					termsArray[i] = incidence.terms[termRows[i]];
+					term2TermsIdx.put(termsArray[i], i);
+				}
 			}
-
-			i++;
 		}
 
-		this.populationEnumerator = populationEnumerator;
+		int numberOfTerms = termsArray.length;
+		isActive = new boolean[numberOfTerms];
+		termPartition = new int[numberOfTerms];
+		positionOfTermInPartition = new int[numberOfTerms];
+		numInactiveTerms = numberOfTerms;
+		termActivationCounts = new int[numberOfTerms];
+
+		for (i=0;i<numberOfTerms;i++)
+		{
+			termPartition[i] = i;
+			positionOfTermInPartition[i] = i;
+		}
 	}
 
 	/**
@@ -216,7 +231,25 @@ abstract public class Bayes2GOScore
 		 * to values some values. A gene, that is observed gets a -1, a gene that is not observed
 		 * gets a 1. Applied with a threshold of one, this gives back the same set of observed genes.
 		 */
-		this(rnd, termList, populationEnumerator, new IGeneValueProvider() {
+		this(rnd, termList, new TermGeneIncidence(termList, populationEnumerator), observedActiveGenes);
+	}
+
+	/**
+	 * Constructs a class for calculating the Bayes2GO score suitable for an MCMC algorithm.
+	 *
+	 * @param rnd Random source for proposing states.
+	 * @param termList list of terms that can possibly be selected, null for all terms of the
+	 *  incidence structure.
+	 * @param incidence the terms to genes incidences of the population.
+	 * @param observedActiveGenes defines the set of genes that are observed as active.
+	 */
+	public Bayes2GOScore(Random rnd, List<TermID> termList, TermGeneIncidence incidence, final Set<ByteString> observedActiveGenes)
+	{
+		/* Here a gene value provider is constructed that maps the boolean observed state back
+		 * to values some values. A gene, that is observed gets a -1, a gene that is not observed
+		 * gets a 1. Applied with a threshold of one, this gives back the same set of observed genes.
+		 */
+		this(rnd, termList, incidence, new IGeneValueProvider() {
 			@Override
 			public boolean smallerIsBetter() {
 				return true;
@@ -314,14 +347,17 @@ abstract public class Bayes2GOScore
 	{
 //		long enterTime = System.nanoTime();
 
-		int [] geneIDs = termLinks[toSwitch].gid;
+		int row = termRows[toSwitch];
+		int start = termOffsets[row];
+		int end = termOffsets[row + 1];
 
 		isActive[toSwitch] = !isActive[toSwitch];
 		if (isActive[toSwitch])
 		{
 			/* A term was added, activate/deactivate genes */
-			for (int gid : geneIDs)
+			for (int k=start;k<end;k++)
 			{
+				int gid = geneIndices[k];
 				if (activeHiddenGenes[gid] == 0)
 				{
 					activeHiddenGenes[gid] = 1;
@@ -351,8 +387,9 @@ abstract public class Bayes2GOScore
 		} else
 		{
 			/* Update hiddenActiveGenes */
-			for (int gid : geneIDs)
+			for (int k=start;k<end;k++)
 			{
+				int gid = geneIndices[k];
 				if (activeHiddenGenes[gid] == 1)
 				{
 					activeHiddenGenes[gid] = 0;
@@ -389,8 +426,19 @@ abstract public class Bayes2GOScore
 
 	public void exchange(TermID t1, TermID t2)
 	{
-		switchState(term2TermsIdx.get(t1));
-		switchState(term2TermsIdx.get(t2));
+		exchange(term2TermsIdx.get(t1), term2TermsIdx.get(t2));
+	}
+
+	/**
+	 * Exchanges the states of the terms of the given indices.
+	 *
+	 * @param t1
+	 * @param t2
+	 */
+	public void exchange(int t1, int t2)
+	{
+		switchState(t1);
+		switchState(t2);
 	}
 
 
@@ -409,6 +457,40 @@ abstract public class Bayes2GOScore
 		numRecords++;
 	}
 
+	/**
+	 * Adds the records of the given score, which must have been
+	 * constructed for the same terms and genes, to the records
+	 * of this score.
+	 *
+	 * @param other
+	 */
+	void mergeRecords(Bayes2GOScore other)
+	{
+		for (int i=0;i<termActivationCounts.length;i++)
+			termActivationCounts[i] += other.termActivationCounts[i];
+		numRecords += other.numRecords;
+	}
+
+	/**
+	 * @return the number of recorded states.
+	 */
+	public int getNumberOfRecords()
+	{
+		return numRecords;
+	}
+
+	/**
+	 * Returns how often the term of the given index was active
+	 * in the recorded states.
+	 *
+	 * @param termIdx
+	 * @return
+	 */
+	public int getTermActivationCount(int termIdx)
+	{
+		return termActivationCounts[termIdx];
+	}
+
 	public ArrayList<TermID> getActiveTerms()
 	{
 		ArrayList<TermID> list = new ArrayList<TermID>(termsArray.length - numInactiveTerms);
@@ -416,4 +498,56 @@ abstract public class Bayes2GOScore
 			list.add(termsArray[termPartition[i]]);
 		return list;
 	}
+
+	/**
+	 * @return the number of active terms.
+	 */
+	public int getNumberOfActiveTerms()
+	{
+		return termsArray.length - numInactiveTerms;
+	}
+
+	/**
+	 * Allocates a bitset that can hold the states of all terms.
+	 *
+	 * @return the bitset
+	 * @see #getActiveTerms(long[])
+	 */
+	public long [] newTermBitset()
+	{
+		return new long[(termsArray.length + 63) / 64];
+	}
+
+	/**
+	 * Stores the current states of all terms in the given bitset
+	 * without allocating any memory.
+	 *
+	 * @param bitset a bitset allocated via newTermBitset().
+	 */
+	public void getActiveTerms(long [] bitset)
+	{
+		Arrays.fill(bitset, 0);
+		for (int i=numInactiveTerms;i<termsArray.length;i++)
+		{
+			int t = termPartition[i];
+			bitset[t >>> 6] |= 1L << t;
+		}
+	}
+
+	/**
+	 * Returns the terms that are set in the given bitset.
+	 *
+	 * @param bitset
+	 * @return
+	 */
+	public ArrayList<TermID> getTerms(long [] bitset)
+	{
+		ArrayList<TermID> list = new ArrayList<TermID>();
+		for (int i=0;i<termsArray.length;i++)
+		{
+			if ((bitset[i >>> 6] & (1L << i)) != 0)
+				list.add(termsArray[i]);
+		}
+		return list;
+	}
 }
@@ -19,8 +19,8 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 	private boolean integrateParams = false;
 
 	private int proposalSwitch;
-	private TermID proposalT1;
-	private TermID proposalT2;
+	private int proposalT1;
+	private int proposalT2;
 
 	protected  double [] ALPHA = new double[] {0.0000001,0.05, 0.1,0.15,0.2,0.25,0.3,0.35,0.4,0.45,0.5, 0.55,0.6,0.65,0.7,0.75,0.8,0.85,0.9,0.95};
 	private int alphaIdx = 0;
@@ -61,16 +61,38 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 	private long totalN11;
 	private long totalT;
 
+	/*
+	 * The logarithms of the parameters. As the score is evaluated in every
+	 * step, they are not determined in getScore() but whenever a parameter
+	 * changes. The arrays are indexed like ALPHA, BETA and
+	 * EXPECTED_NUMBER_OF_TERMS.
+	 */
+	private double [] logAlphas;
+	private double [] log1MinusAlphas;
+	private double [] logBetas;
+	private double [] log1MinusBetas;
+	private double [] logPs;
+	private double [] log1MinusPs;
+
+	private double logAlpha;
+	private double log1MinusAlpha;
+	private double logBeta;
+	private double log1MinusBeta;
+	private double logP;
+	private double log1MinusP;
+
 	public void setAlpha(double alpha)
 	{
 		this.alpha = alpha;
 		doAlphaMCMC = Double.isNaN(alpha);
+		updateAlpha();
 	}
 
 	public void setBeta(double beta)
 	{
 		this.beta = beta;
 		doBetaMCMC = Double.isNaN(beta);
+		updateBeta();
 	}
 
 	@Override
@@ -78,6 +100,55 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 	{
 		super.setExpectedNumberOfTerms(terms);
 		doExpMCMC = Double.isNaN(terms);
+		updateP();
+	}
+
+	/**
+	 * Updates the logarithms of the current alpha.
+	 */
+	private void updateAlpha()
+	{
+		if (Double.isNaN(this.alpha))
+		{
+			logAlpha = logAlphas[alphaIdx];
+			log1MinusAlpha = log1MinusAlphas[alphaIdx];
+		} else
+		{
+			logAlpha = Math.log(alpha);
+			log1MinusAlpha = Math.log(1-alpha);
+		}
+	}
+
+	/**
+	 * Updates the logarithms of the current beta.
+	 */
+	private void updateBeta()
+	{
+		if (Double.isNaN(this.beta))
+		{
+			logBeta = logBetas[betaIdx];
+			log1MinusBeta = log1MinusBetas[betaIdx];
+		} else
+		{
+			logBeta = Math.log(beta);
+			log1MinusBeta = Math.log(1-beta);
+		}
+	}
+
+	/**
+	 * Updates the logarithms of the current p.
+	 */
+	private void updateP()
+	{
+		if (Double.isNaN(this.p))
+		{
+			logP = logPs[expIdx];
+			log1MinusP = log1MinusPs[expIdx];
+		} else
+		{
+			logP = Math.log(p);
+			log1MinusP = Math.log(1-p);
+		}
 	}
 
 	public void setMaxAlpha(double maxAlpha)
@@ -96,6 +167,15 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 		ALPHA[0] = 0.0000001;
 		for (int i=1;i<20;i++)
 			ALPHA[i] = i * maxAlpha / span;
+
+		logAlphas = new double[20];
+		log1MinusAlphas = new double[20];
+		for (int i=0;i<20;i++)
+		{
+			logAlphas[i] = Math.log(ALPHA[i]);
+			log1MinusAlphas[i] = Math.log(1-ALPHA[i]);
+		}
+		updateAlpha();
 	}
 
 	public void setMaxBeta(double maxBeta)
@@ -115,6 +195,14 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 		for (int i=1;i<20;i++)
 			BETA[i] = i * maxBeta / span;
 
+		logBetas = new double[20];
+		log1MinusBetas = new double[20];
+		for (int i=0;i<20;i++)
+		{
+			logBetas[i] = Math.log(BETA[i]);
+			log1MinusBetas[i] = Math.log(1-BETA[i]);
+		}
+		updateBeta();
 	}
 
 	public void setIntegrateParams(boolean integrateParams)
@@ -124,14 +212,39 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 
 	public FixedAlphaBetaScore(Random rnd, List<TermID> termList, GOTermEnumerator populationEnumerator, Set<ByteString> observedActiveGenes)
 	{
-		super(rnd, termList, populationEnumerator, observedActiveGenes);
+		this(rnd, termList, new TermGeneIncidence(termList, populationEnumerator), observedActiveGenes);
+	}
+
+	/**
+	 * Constructs the score for the given incidence structure, which can
+	 * be shared by many scores.
+	 *
+	 * @param rnd
+	 * @param termList the terms that can be selected, null for all terms
+	 *  of the incidence structure.
+	 * @param incidence
+	 * @param observedActiveGenes
+	 */
+	public FixedAlphaBetaScore(Random rnd, List<TermID> termList, TermGeneIncidence incidence, Set<ByteString> observedActiveGenes)
+	{
+		super(rnd, termList, incidence, observedActiveGenes);
+
+		logPs = new double[EXPECTED_NUMBER_OF_TERMS.length];
+		log1MinusPs = new double[EXPECTED_NUMBER_OF_TERMS.length];
+		for (int i=0;i<EXPECTED_NUMBER_OF_TERMS.length;i++)
+		{
+			double p = (double)EXPECTED_NUMBER_OF_TERMS[i] / termsArray.length;
+			logPs[i] = Math.log(p);
+			log1MinusPs[i] = Math.log(1-p);
+		}
+		updateP();
 
 		setMaxAlpha(1.);
 		setMaxBeta(1.);
 
 		/* At this state, all terms are inactive, hence all observed genes are false positive */
 		n10 = observedActiveGenes.size();
-		n00 = population.size() - n10;
+		n00 = genes.length - n10;
 	}
 
 	@Override
@@ -183,8 +296,8 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 		long oldPossibilities = getNeighborhoodSize();
 
 		proposalSwitch = -1;
-		proposalT1 = null;
-		proposalT2 = null;
+		proposalT1 = -1;
+		proposalT2 = -1;
 		oldAlphaIdx = -1;
 		oldBetaIdx = -1;
 		oldExpIdx = -1;
@@ -205,8 +318,8 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 				int activeTermPos = (int)(base / numInactiveTerms);
 				int inactiveTermPos = (int)(base % numInactiveTerms);
 
-				proposalT1 = termsArray[termPartition[activeTermPos + numInactiveTerms]];
-				proposalT2 = termsArray[termPartition[inactiveTermPos]];
+				proposalT1 = termPartition[activeTermPos + numInactiveTerms];
+				proposalT2 = termPartition[inactiveTermPos];
 
 				exchange(proposalT1, proposalT2);
 			}
@@ -226,6 +339,7 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 				{
 					oldAlphaIdx = alphaIdx;
 					alphaIdx = choose;
+					updateAlpha();
 					return;
 				}
 				choose -= ALPHA.length;
@@ -237,6 +351,7 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 				{
 					oldBetaIdx = betaIdx;
 					betaIdx = choose;
+					updateBeta();
 					return;
 				}
 				choose -= BETA.length;
@@ -247,6 +362,7 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 
 			oldExpIdx = expIdx;
 			expIdx = choose;
+			updateP();
 		}
 	}
 
@@ -313,18 +429,10 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 
 		if (!integrateParams)
 		{
-			double alpha;
-			double beta;
-			double p;
-
-			alpha = getAlpha();
-			beta = getBeta();
-			p = getP();
-
-			newScore2 = Math.log(alpha) * n10 + Math.log(1-alpha)*n00 + Math.log(1-beta)*n11 + Math.log(beta)*n01;
+			newScore2 = logAlpha * n10 + log1MinusAlpha*n00 + log1MinusBeta*n11 + logBeta*n01;
 
 			if (usePrior)
-				newScore2 += Math.log(p)*(termsArray.length - numInactiveTerms) + Math.log(1-p)*numInactiveTerms;
+				newScore2 += logP*(termsArray.length - numInactiveTerms) + log1MinusP*numInactiveTerms;
 		} else
 		{
 			/* Prior */
@@ -352,10 +460,10 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 	public void undoProposal()
 	{
 		if (proposalSwitch != -1)	switchState(proposalSwitch);
-		else if (proposalT1 != null) exchange(proposalT2, proposalT1);
-		else if (oldAlphaIdx != -1) alphaIdx = oldAlphaIdx;
-		else if (oldBetaIdx != -1) betaIdx = oldBetaIdx;
-		else if (oldExpIdx != -1) expIdx = oldExpIdx;
+		else if (proposalT1 != -1) exchange(proposalT2, proposalT1);
+		else if (oldAlphaIdx != -1) { alphaIdx = oldAlphaIdx; updateAlpha(); }
+		else if (oldBetaIdx != -1) { betaIdx = oldBetaIdx; updateBeta(); }
+		else if (oldExpIdx != -1) { expIdx = oldExpIdx; updateP(); }
 		else throw new RuntimeException("Wanted to undo a proposal that wasn't proposed");
 	}
 
@@ -381,6 +489,25 @@ public class FixedAlphaBetaScore extends Bayes2GOScore
 		totalT += (termsArray.length - numInactiveTerms);
 	}
 
+	@Override
+	void mergeRecords(Bayes2GOScore other)
+	{
+		super.mergeRecords(other);
+
+		FixedAlphaBetaScore o = (FixedAlphaBetaScore)other;
+		totalN00 += o.totalN00;
+		totalN01 += o.totalN01;
+		totalN10 += o.totalN10;
+		totalN11 += o.totalN11;
+		totalT += o.totalT;
+		for (int i=0;i<totalAlpha.length;i++)
+			totalAlpha[i] += o.totalAlpha[i];
+		for (int i=0;i<totalBeta.length;i++)
+			totalBeta[i] += o.totalBeta[i];
+		for (int i=0;i<totalExp.length;i++)
+			totalExp[i] += o.totalExp[i];
+	}
+
 	public double getAvgN00()
 	{
 		return (double)totalN00 / numRecords;
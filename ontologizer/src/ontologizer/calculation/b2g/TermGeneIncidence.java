@@ -0,0 +1,219 @@
+package ontologizer.calculation.b2g;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import ontologizer.enumeration.GOTermEnumerator;
+import ontologizer.go.TermID;
+import ontologizer.types.ByteString;
+
+/**
+ * An immutable incidence structure of terms and genes of a population in
+ * compressed sparse row form. Terms and genes are represented by indices.
+ * The genes annotated to the term of index t are stored in
+ * geneIndices[termOffsets[t]] to geneIndices[termOffsets[t+1]-1].
+ *
+ * The structure is built once per population and annotation and can be
+ * shared by any number of Bayes2GOScore instances, also concurrently.
+ *
+ * @author Sebastian Bauer
+ */
+public class TermGeneIncidence
+{
+	/** The genes of the population */
+	final ByteString [] genes;
+
+	/** Maps genes to their index */
+	final HashMap<ByteString,Integer> gene2GenesIdx;
+
+	/** The terms */
+	final TermID [] terms;
+
+	/** Maps the terms to their index */
+	final HashMap<TermID,Integer> term2TermsIdx;
+
+	/** Start of the genes of a term in geneIndices. Has one more element than there are terms */
+	final int [] termOffsets;
+
+	/** The annotated genes of all terms */
+	final int [] geneIndices;
+
+	/** Maps each term index to itself */
+	final int [] identity;
+
+	/**
+	 * Constructs the incidence structure for all terms to which the genes
+	 * of the population are annotated.
+	 *
+	 * @param populationEnumerator
+	 */
+	public TermGeneIncidence(GOTermEnumerator populationEnumerator)
+	{
+		this(populationEnumerator.getAllAnnotatedTermsAsList(), populationEnumerator);
+	}
+
+	/**
+	 * Constructs the incidence structure for the given terms.
+	 *
+	 * @param termList
+	 * @param populationEnumerator
+	 */
+	public TermGeneIncidence(List<TermID> termList, GOTermEnumerator populationEnumerator)
+	{
+		int i;
+
+		genes = new ByteString[populationEnumerator.getGenes().size()];
+		gene2GenesIdx = new HashMap<ByteString,Integer>(genes.length * 2);
+		i = 0;
+		for (ByteString g : populationEnumerator.getGenes())
+		{
+			gene2GenesIdx.put(g,i);
+			genes[i] = g;
+			i++;
+		}
+
+		terms = new TermID[termList.size()];
+		term2TermsIdx = new HashMap<TermID,Integer>(terms.length * 2);
+		termOffsets = new int[terms.length + 1];
+		identity = new int[terms.length];
+
+		int numberOfLinks = 0;
+		i = 0;
+		for (TermID tid : termList)
+		{
+			term2TermsIdx.put(tid,i);
+			terms[i] = tid;
+			identity[i] = i;
+			numberOfLinks += populationEnumerator.getAnnotatedGenes(tid).totalAnnotated.size();
+			termOffsets[i + 1] = numberOfLinks;
+			i++;
+		}
+
+		geneIndices = new int[numberOfLinks];
+		for (i=0;i<terms.length;i++)
+		{
+			int j = termOffsets[i];
+			for (ByteString gene : populationEnumerator.getAnnotatedGenes(terms[i]).totalAnnotated)
+				geneIndices[j++] = gene2GenesIdx.get(gene);
+		}
+	}
+
+	/**
+	 * @return the number of genes.
+	 */
+	public int getNumberOfGenes()
+	{
+		return genes.length;
+	}
+
+	/**
+	 * Returns the gene of the given index.
+	 *
+	 * @param gid
+	 * @return
+	 */
+	public ByteString getGene(int gid)
+	{
+		return genes[gid];
+	}
+
+	/**
+	 * Returns the index of the given gene.
+	 *
+	 * @param gene
+	 * @return the index or -1 if the gene is not part of the structure.
+	 */
+	public int getGeneIndex(ByteString gene)
+	{
+		Integer idx = gene2GenesIdx.get(gene);
+		if (idx == null) return -1;
+		return idx;
+	}
+
+	/**
+	 * @return the number of terms.
+	 */
+	public int getNumberOfTerms()
+	{
+		return terms.length;
+	}
+
+	/**
+	 * Returns the term of the given index.
+	 *
+	 * @param tid
+	 * @return
+	 */
+	public TermID getTerm(int tid)
+	{
+		return terms[tid];
+	}
+
+	/**
+	 * Returns the index of the given term.
+	 *
+	 * @param term
+	 * @return the index or -1 if the term is not part of the structure.
+	 */
+	public int getTermIndex(TermID term)
+	{
+		Integer idx = term2TermsIdx.get(term);
+		if (idx == null) return -1;
+		return idx;
+	}
+
+	/**
+	 * Returns whether all given terms are part of the structure.
+	 *
+	 * @param termList
+	 * @return
+	 */
+	public boolean containsAll(Collection<TermID> termList)
+	{
+		for (TermID t : termList)
+		{
+			if (!term2TermsIdx.containsKey(t))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of genes that are annotated to the term
+	 * of the given index.
+	 *
+	 * @param tid
+	 * @return
+	 */
+	public int getNumberOfAnnotatedGenes(int tid)
+	{
+		return termOffsets[tid + 1] - termOffsets[tid];
+	}
+
+	/**
+	 * Returns the indices of the given terms.
+	 *
+	 * @param termList
+	 * @return the indices. If the list consists of all terms of the
+	 *  structure in their order, a shared array is returned.
+	 */
+	int [] getTermIndices(List<TermID> termList)
+	{
+		boolean isIdentity = termList.size() == terms.length;
+		int [] indices = new int[termList.size()];
+		int i = 0;
+		for (TermID t : termList)
+		{
+			Integer idx = term2TermsIdx.get(t);
+			if (idx == null)
+				throw new IllegalArgumentException("Term " + t + " is not part of the incidence structure");
+			indices[i] = idx;
+			if (idx != i) isIdentity = false;
+			i++;
+		}
+		if (isIdentity)
+			return identity;
+		return indices;
+	}
+}
@@ -20,14 +20,31 @@ import ontologizer.types.ByteString;
 public class ValuedGOScore extends Bayes2GOScore
 {
 	private int proposalSwitch;
-	private TermID proposalT1;
-	private TermID proposalT2;
+	private int proposalT1;
+	private int proposalT2;
 
 	public ValuedGOScore(Random rnd, List<TermID> termList,
 			GOTermEnumerator populationEnumerator,
 			final StudySet valuedStudySet)
 	{
-		super(rnd, termList, populationEnumerator, new Bayes2GOScore.IGeneValueProvider() {
+		this(rnd, termList, new TermGeneIncidence(termList, populationEnumerator), valuedStudySet);
+	}
+
+	/**
+	 * Constructs the score for the given incidence structure, which can
+	 * be shared by many scores.
+	 *
+	 * @param rnd
+	 * @param termList the terms that can be selected, null for all terms
+	 *  of the incidence structure.
+	 * @param incidence
+	 * @param valuedStudySet
+	 */
+	public ValuedGOScore(Random rnd, List<TermID> termList,
+			TermGeneIncidence incidence,
+			final StudySet valuedStudySet)
+	{
+		super(rnd, termList, incidence, new Bayes2GOScore.IGeneValueProvider() {
 			@Override
 			public boolean smallerIsBetter() {
 				return true;
@@ -59,8 +76,8 @@ public class ValuedGOScore extends Bayes2GOScore
 		long oldPossibilities = getNeighborhoodSize();
 
 		proposalSwitch = -1;
-		proposalT1 = null;
-		proposalT2 = null;
+		proposalT1 = -1;
+		proposalT2 = -1;
 
 		long choose = Math.abs(rand) % oldPossibilities;
 
@@ -76,8 +93,8 @@ public class ValuedGOScore extends Bayes2GOScore
 			int activeTermPos = (int)(base / numInactiveTerms);
 			int inactiveTermPos = (int)(base % numInactiveTerms);
 
-			proposalT1 = termsArray[termPartition[activeTermPos + numInactiveTerms]];
-			proposalT2 = termsArray[termPartition[inactiveTermPos]];
+			proposalT1 = termPartition[activeTermPos + numInactiveTerms];
+			proposalT2 = termPartition[inactiveTermPos];
 
 			exchange(proposalT1, proposalT2);
 		}
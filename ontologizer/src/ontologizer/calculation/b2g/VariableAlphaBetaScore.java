@@ -34,9 +34,9 @@ class VariableAlphaBetaScore extends Bayes2GOScore
 
 	public void calcLLR()
 	{
-		for (ByteString g : population)
+		for (int gid=0;gid<genes.length;gid++)
 		{
-			int gid = gene2GenesIdx.get(g);
+			ByteString g = genes[gid];
 			if (observedGenes[gid])
 				llr.put(g, Math.log(1-beta) - Math.log(alpha)); // P(oi=1|h=1) / P(oi=1|h=0)
 			else
@@ -46,8 +46,8 @@ class VariableAlphaBetaScore extends Bayes2GOScore
 	}
 
 	private int proposalSwitch;
-	private TermID proposalT1;
-	private TermID proposalT2;
+	private int proposalT1;
+	private int proposalT2;
 
 	public void hiddenGeneActivated(int gid)
 	{
@@ -67,8 +67,8 @@ class VariableAlphaBetaScore extends Bayes2GOScore
 		long oldPossibilities = getNeighborhoodSize();
 
 		proposalSwitch = -1;
-		proposalT1 = null;
-		proposalT2 = null;
+		proposalT1 = -1;
+		proposalT2 = -1;
 
 		long choose = Math.abs(rand) % oldPossibilities;
 
@@ -84,8 +84,8 @@ class VariableAlphaBetaScore extends Bayes2GOScore
 			int activeTermPos = (int)(base / numInactiveTerms);
 			int inactiveTermPos = (int)(base % numInactiveTerms);
 
-			proposalT1 = termsArray[termPartition[activeTermPos + numInactiveTerms]];
-			proposalT2 = termsArray[termPartition[inactiveTermPos]];
+			proposalT1 = termPartition[activeTermPos + numInactiveTerms];
+			proposalT2 = termPartition[inactiveTermPos];
 
 			exchange(proposalT1, proposalT2);
 		}
@@ -0,0 +1,338 @@
+package ontologizer.enumeration;
+
+import java.util.Arrays;
+
+import ontologizer.association.AssociationContainer;
+import ontologizer.go.TermID;
+import ontologizer.types.ByteString;
+
+/**
+ * Counts annotations of study sets with respect to a fixed population.
+ * For every term, the genes of the population that are annotated to
+ * the term are kept as a bitset. Counts of study sets are then obtained
+ * without materializing gene lists, counts of the union of several terms
+ * (as required by the parent-child approaches) are obtained by
+ * intersecting the bitsets of the study set and the terms.
+ *
+ * Instances are immutable and can be shared among threads.
+ *
+ * @author Sebastian Bauer
+ */
+public class GOTermBitsetCounter
+{
+	/** The underlying index */
+	private TermAnnotationIndex index;
+
+	/** The association container from which the genes are taken */
+	private AssociationContainer associationContainer;
+
+	/** Maps the gene indices of the index to population gene indices */
+	private int [] gene2Population;
+
+	/** The number of annotated genes of the population */
+	private int numberOfGenes;
+
+	/** Whether the population contains a gene more than once, e.g., via a synonym */
+	private boolean duplicates;
+
+	/** The number of words of a bitset */
+	private int numberOfWords;
+
+	/** The population bitsets of all terms, null if no gene is annotated */
+	private long [][] termBits;
+
+	/** The population counts of all terms */
+	private int [] termCounts;
+
+	/** The population counts of the union of the parents, -1 if not yet known */
+	private int [] parentCounts;
+
+	/**
+	 * The annotations of a study set.
+	 */
+	public class Study
+	{
+		/** The bitset of the genes in terms of population gene indices */
+		private long [] bits = new long[numberOfWords];
+
+		/** The counts of all terms */
+		private int [] counts = new int[index.getNumberOfTerms()];
+
+		/**
+		 * Returns the number of genes that are annotated to the given term.
+		 *
+		 * @param tid
+		 * @return the count.
+		 */
+		public int getCount(TermID tid)
+		{
+			int t = index.getTermIndex(tid);
+			if (t == -1) return 0;
+			return counts[t];
+		}
+
+		/**
+		 * Returns the number of genes that are annotated to the term with
+		 * the given index of the underlying index.
+		 *
+		 * @param termIndex
+		 * @return the count.
+		 */
+		public int getCount(int termIndex)
+		{
+			return counts[termIndex];
+		}
+
+		/**
+		 * Returns the bitset of the genes of the study in terms of
+		 * population gene indices. The array must not be altered.
+		 *
+		 * @return the bitset.
+		 */
+		public long [] getBits()
+		{
+			return bits;
+		}
+
+		/**
+		 * Returns the number of genes that are annotated to any of the
+		 * parents of the given term.
+		 *
+		 * @param tid
+		 * @return the count.
+		 */
+		public int getParentCount(TermID tid)
+		{
+			int t = index.getTermIndex(tid);
+			if (t == -1) return 0;
+
+			int [] parents = index.getParentTerms(t);
+			if (parents.length == 1)
+				return counts[parents[0]];
+
+			int nonEmpty = 0;
+			for (int p : parents)
+			{
+				if (counts[p] != 0)
+					nonEmpty++;
+			}
+			if (nonEmpty == 0)
+				return 0;
+			if (nonEmpty == 1)
+			{
+				for (int p : parents)
+				{
+					if (counts[p] != 0)
+						return counts[p];
+				}
+			}
+
+			int count = 0;
+			for (int w = 0; w < numberOfWords; w++)
+			{
+				long union = 0;
+				for (int p : parents)
+				{
+					if (counts[p] != 0)
+						union |= termBits[p][w];
+				}
+				count += Long.bitCount(union & bits[w]);
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Constructs the counter.
+	 *
+	 * @param index the index that is used to resolve the genes.
+	 * @param associationContainer
+	 * @param population the names of the genes of the population.
+	 */
+	public GOTermBitsetCounter(TermAnnotationIndex index, AssociationContainer associationContainer, Iterable<ByteString> population)
+	{
+		this.index = index;
+		this.associationContainer = associationContainer;
+
+		int [] genes = index.getGeneIndices(population, associationContainer);
+		numberOfGenes = genes.length;
+
+		gene2Population = new int[index.getNumberOfGenes()];
+		Arrays.fill(gene2Population, -1);
+		numberOfWords = (numberOfGenes + 63) / 64;
+
+		int numberOfTerms = index.getNumberOfTerms();
+		termBits = new long[numberOfTerms][];
+		termCounts = new int[numberOfTerms];
+		parentCounts = new int[numberOfTerms];
+		Arrays.fill(parentCounts, -1);
+
+		for (int i = 0; i < numberOfGenes; i++)
+		{
+			if (gene2Population[genes[i]] != -1)
+			{
+				duplicates = true;
+				continue;
+			}
+			gene2Population[genes[i]] = i;
+
+			for (int t : index.getTotalTerms(genes[i]))
+			{
+				if (termBits[t] == null)
+					termBits[t] = new long[numberOfWords];
+				termBits[t][i >> 6] |= 1L << i;
+				termCounts[t]++;
+			}
+		}
+	}
+
+	/**
+	 * @return the underlying index.
+	 */
+	public TermAnnotationIndex getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * @return the association container from which the genes are taken.
+	 */
+	public AssociationContainer getAssociationContainer()
+	{
+		return associationContainer;
+	}
+
+	/**
+	 * Returns the number of genes of the population that are annotated to
+	 * the given term.
+	 *
+	 * @param tid
+	 * @return the count.
+	 */
+	public int getPopulationCount(TermID tid)
+	{
+		int t = index.getTermIndex(tid);
+		if (t == -1) return 0;
+		return termCounts[t];
+	}
+
+	/**
+	 * Returns the number of genes of the population that are annotated to
+	 * the term with the given index of the underlying index.
+	 *
+	 * @param termIndex
+	 * @return the count.
+	 */
+	public int getPopulationCount(int termIndex)
+	{
+		return termCounts[termIndex];
+	}
+
+	/**
+	 * Returns the bitset of the genes of the population that are annotated
+	 * to the term with the given index of the underlying index. The array
+	 * must not be altered.
+	 *
+	 * @param termIndex
+	 * @return the bitset or null if no gene is annotated to the term.
+	 */
+	public long [] getPopulationBits(int termIndex)
+	{
+		return termBits[termIndex];
+	}
+
+	/**
+	 * @return the number of words of the bitsets.
+	 */
+	public int getNumberOfWords()
+	{
+		return numberOfWords;
+	}
+
+	/**
+	 * Returns the number of genes of the population that are annotated to
+	 * any of the parents of the given term.
+	 *
+	 * @param tid
+	 * @return the count.
+	 */
+	public int getPopulationParentCount(TermID tid)
+	{
+		int t = index.getTermIndex(tid);
+		if (t == -1) return 0;
+
+		/* There is no need for synchronization, as the value is always the same */
+		int count = parentCounts[t];
+		if (count == -1)
+		{
+			int [] parents = index.getParentTerms(t);
+			if (parents.length == 1)
+			{
+				count = termCounts[parents[0]];
+			} else
+			{
+				count = 0;
+				for (int w = 0; w < numberOfWords; w++)
+				{
+					long union = 0;
+					for (int p : parents)
+					{
+						if (termBits[p] != null)
+							union |= termBits[p][w];
+					}
+					count += Long.bitCount(union);
+				}
+			}
+			parentCounts[t] = count;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of parents of the given term.
+	 *
+	 * @param tid
+	 * @return the number of parents.
+	 */
+	public int getNumberOfParents(TermID tid)
+	{
+		int t = index.getTermIndex(tid);
+		if (t == -1) return 0;
+		return index.getParentTerms(t).length;
+	}
+
+	/**
+	 * Creates the study representation of the given genes.
+	 *
+	 * @param genes
+	 * @return the study or null if the genes are not a subset of the
+	 *  population or if a gene is contained more than once (e.g., via
+	 *  a synonym) in the study or population. In either case, the counts
+	 *  can't be represented by this class.
+	 */
+	public Study createStudy(Iterable<ByteString> genes)
+	{
+		if (duplicates)
+			return null;
+
+		Study study = new Study();
+
+		for (int idx : index.getGeneIndices(genes, associationContainer))
+		{
+			if (idx >= gene2Population.length)
+				return null;
+			int i = gene2Population[idx];
+			if (i == -1)
+				return null;
+
+			long mask = 1L << i;
+			if ((study.bits[i >> 6] & mask) != 0)
+				return null;
+			study.bits[i >> 6] |= mask;
+
+			for (int t : index.getTotalTerms(idx))
+				study.counts[t]++;
+		}
+		return study;
+	}
+}
@@ -2,6 +2,7 @@ package ontologizer.enumeration;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -25,6 +26,13 @@ import ontologizer.types.ByteString;
  * are only interested in the gene counts per term you should use
  * the class GOTermCounter as this is much faster.
  *
+ * An enumerator can be frozen, after which it is immutable and can be
+ * shared, e.g., the enumerator of a population that is used for many
+ * study sets. Enumerators of subsets of the genes of a frozen enumerator
+ * that has been created by the TermAnnotationIndex can be derived from
+ * it, see TermAnnotationIndex.enumerate(GOTermEnumerator, Iterable,
+ * AssociationContainer).
+ *
  * @author Sebastian Bauer
  */
 public class GOTermEnumerator implements Iterable<TermID>
@@ -37,6 +45,19 @@ public class GOTermEnumerator implements Iterable<TermID>
 		/** List of genes annotated at whole TODO: Make private */
 		public List<ByteString> totalAnnotated = new ArrayList<ByteString>();
 
+		/**
+		 * Ensures that the lists can be altered. This is not the case
+		 * for lists that have been created by the TermAnnotationIndex.
+		 */
+		private void makeModifiable()
+		{
+			checkNotFrozen();
+			if (!(directAnnotated instanceof ArrayList))
+				directAnnotated = new ArrayList<ByteString>(directAnnotated);
+			if (!(totalAnnotated instanceof ArrayList))
+				totalAnnotated = new ArrayList<ByteString>(totalAnnotated);
+		}
+
 		public int directAnnotatedCount()
 		{
 			return directAnnotated.size();
@@ -53,6 +74,24 @@ public class GOTermEnumerator implements Iterable<TermID>
 
 	private HashMap<TermID,GOTermAnnotatedGenes> map;
 
+	/** Whether the enumerator can no longer be altered */
+	private boolean frozen;
+
+	/** The index that created this enumerator, null if it has been altered afterwards */
+	TermAnnotationIndex index;
+
+	/** The enumerated genes in terms of gene indices of the index */
+	int [] geneIndices;
+
+	/** The sorted distinct gene indices, available once frozen */
+	int [] sortedGeneIndices;
+
+	/** The sorted indices of the annotated terms, available once frozen */
+	int [] slotTerms;
+
+	/** Maps term indices of the index to positions within slotTerms or -1 */
+	int [] termSlots;
+
 	/** Holds the number of suspicious annotations */
 //	private int suspiciousCount;
 
@@ -87,6 +126,9 @@ public class GOTermEnumerator implements Iterable<TermID>
 	 */
 	public void push(Gene2Associations geneAssociations, Set<ByteString> evidences)
 	{
+		checkNotFrozen();
+		index = null;
+
 		ByteString geneName = geneAssociations.name();
 
 		/* Check for suspicious annotations. An annotation i is suspicious
@@ -146,6 +188,7 @@ public class GOTermEnumerator implements Iterable<TermID>
 				map.put(termID,termGenes);
 			}
 
+			termGenes.makeModifiable();
 			termGenes.directAnnotated.add(geneName);
 
 			/* This term is annotated */
@@ -181,6 +224,7 @@ public class GOTermEnumerator implements Iterable<TermID>
 						termGenes = new GOTermAnnotatedGenes();
 						map.put(term.getID(),termGenes);
 					}
+					termGenes.makeModifiable();
 					termGenes.totalAnnotated.add(geneName);
 				}
 				return true;
@@ -194,6 +238,24 @@ public class GOTermEnumerator implements Iterable<TermID>
 		graph.walkToSource(termIDSet,vistingGOVertex);
 	}
 
+	/**
+	 * Puts the given gene lists for the given term into the enumerator.
+	 * Used by the TermAnnotationIndex.
+	 *
+	 * @param termID
+	 * @param directAnnotated
+	 * @param totalAnnotated
+	 */
+	void put(TermID termID, List<ByteString> directAnnotated, List<ByteString> totalAnnotated)
+	{
+		checkNotFrozen();
+
+		GOTermAnnotatedGenes termGenes = new GOTermAnnotatedGenes();
+		termGenes.directAnnotated = directAnnotated;
+		termGenes.totalAnnotated = totalAnnotated;
+		map.put(termID,termGenes);
+	}
+
 	/**
 	 * Return genes directly or indirectly annotated to the given
 	 * goTermID.
@@ -351,6 +413,9 @@ public class GOTermEnumerator implements Iterable<TermID>
 	 */
 	public void removeTerms(IRemover remove)
 	{
+		checkNotFrozen();
+		index = null;
+
 		ArrayList<TermID> toBeRemoved = new ArrayList<TermID>();
 		for (Entry<TermID, GOTermAnnotatedGenes> entry : map.entrySet())
 		{
@@ -360,4 +425,60 @@ public class GOTermEnumerator implements Iterable<TermID>
 		for (TermID tid : toBeRemoved)
 			map.remove(tid);
 	}
+
+	/**
+	 * Freezes the enumerator. Afterwards, any attempt to alter the enumerator
+	 * or its gene lists fails with an IllegalStateException or
+	 * UnsupportedOperationException, respectively. Freezing an already
+	 * frozen enumerator has no effect.
+	 */
+	public synchronized void freeze()
+	{
+		if (frozen) return;
+
+		for (GOTermAnnotatedGenes termGenes : map.values())
+		{
+			termGenes.directAnnotated = Collections.unmodifiableList(termGenes.directAnnotated);
+			termGenes.totalAnnotated = Collections.unmodifiableList(termGenes.totalAnnotated);
+		}
+
+		if (index != null)
+		{
+			/* Prepare the derivation of subsets */
+			sortedGeneIndices = geneIndices.clone();
+			Arrays.sort(sortedGeneIndices);
+
+			slotTerms = new int[map.size()];
+			int i = 0;
+			for (TermID tid : map.keySet())
+				slotTerms[i++] = index.getTermIndex(tid);
+			Arrays.sort(slotTerms);
+
+			termSlots = new int[index.getNumberOfTerms()];
+			Arrays.fill(termSlots, -1);
+			for (i = 0; i < slotTerms.length; i++)
+				termSlots[slotTerms[i]] = i;
+		}
+		frozen = true;
+	}
+
+	/**
+	 * Returns whether the enumerator has been frozen.
+	 *
+	 * @return
+	 * @see #freeze()
+	 */
+	public synchronized boolean isFrozen()
+	{
+		return frozen;
+	}
+
+	/**
+	 * Throws an IllegalStateException if the enumerator is frozen.
+	 */
+	private void checkNotFrozen()
+	{
+		if (frozen)
+			throw new IllegalStateException("The enumerator is frozen");
+	}
 }
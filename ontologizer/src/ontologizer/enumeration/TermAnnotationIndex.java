@@ -0,0 +1,665 @@
+package ontologizer.enumeration;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import ontologizer.association.Association;
+import ontologizer.association.AssociationContainer;
+import ontologizer.association.Gene2Associations;
+import ontologizer.association.GeneNameIndex;
+import ontologizer.go.Ontology;
+import ontologizer.go.Subset;
+import ontologizer.go.Term;
+import ontologizer.go.TermID;
+import ontologizer.types.ByteString;
+import sonumina.math.graph.SlimDirectedGraphView;
+
+/**
+ * An index of the annotations of an association container with respect
+ * to a graph. Terms are identified by the indices of the slim graph view,
+ * genes get dense indices in the order in which they are first requested.
+ * For every gene, the index keeps the relevant terms to which the gene is
+ * directly annotated and the sorted relevant terms of the induced graph.
+ *
+ * Once a gene has been indexed, enumerating a gene set reduces to
+ * counting over plain int arrays, which is much faster than pushing the
+ * associations of each gene into a new GOTermEnumerator. This matters for
+ * the resampling procedures, which enumerate many sets of the same
+ * population.
+ *
+ * Instances are safe to be used by multiple threads. Genes are indexed
+ * under the lock of the instance, but the data of indexed genes is read
+ * without locking. For this purpose, the gene arrays are only replaced
+ * by grown copies and are published via volatile fields.
+ *
+ * @author Sebastian Bauer
+ */
+public class TermAnnotationIndex
+{
+	private static final int [] EMPTY = new int[0];
+
+	/** The last index per association container */
+	private static WeakHashMap<AssociationContainer, TermAnnotationIndex> indices = new WeakHashMap<AssociationContainer, TermAnnotationIndex>();
+
+	/** The graph */
+	private Ontology graph;
+
+	/** The considered evidences (may be null) */
+	private Set<ByteString> evidences;
+
+	/** The relevant subset and subontology at the time the index was created */
+	private Subset relevantSubset;
+	private TermID relevantSubontology;
+
+	/** The term ids of the slim graph view indices */
+	private TermID [] termIDs;
+
+	/** The indices of the term ids */
+	private HashMap<TermID, Integer> termID2Index;
+
+	/** The parents of each term */
+	private int [][] termParents;
+
+	/** The children of each term */
+	private int [][] termChildren;
+
+	/** The compact slim graph view that answers reachability queries */
+	private SlimDirectedGraphView<Term> slim;
+
+	/** The ancestors of each term, including the term itself, determined on demand */
+	private int [][] termAncestors;
+
+	/** Whether the term is relevant */
+	private boolean [] relevant;
+
+	/** The names of the indexed genes */
+	private volatile ByteString [] genes = new ByteString[1024];
+
+	/** The indices of the gene names */
+	private HashMap<ByteString, Integer> gene2Index = new HashMap<ByteString, Integer>();
+
+	/** The terms to which a gene is directly annotated, possibly with duplicates */
+	private volatile int [][] geneDirectTerms = new int[1024][];
+
+	/** The sorted terms to which a gene is annotated directly or indirectly */
+	private volatile int [][] geneTotalTerms = new int[1024][];
+
+	/** The number of indexed genes */
+	private volatile int numberOfGenes;
+
+	/**
+	 * Maps the ordinals of a name index to gene indices.
+	 */
+	private static class OrdinalMap
+	{
+		/** The name index to which the ordinals refer */
+		final GeneNameIndex names;
+
+		/** The index of the gene of each ordinal, -1 if not indexed yet */
+		final AtomicIntegerArray geneIndices;
+
+		OrdinalMap(GeneNameIndex names)
+		{
+			this.names = names;
+			geneIndices = new AtomicIntegerArray(names.getNumberOfGenes());
+			for (int i = 0; i < geneIndices.length(); i++)
+				geneIndices.set(i, -1);
+		}
+	}
+
+	/** The ordinal map of the name index that has been used last */
+	private volatile OrdinalMap ordinalMap;
+
+	/**
+	 * Constructs the index.
+	 *
+	 * @param graph the graph.
+	 * @param evidences consider only annotations that correspond to the
+	 *  given evidence codes (null for all).
+	 */
+	public TermAnnotationIndex(Ontology graph, Set<ByteString> evidences)
+	{
+		this.graph = graph;
+		this.evidences = evidences;
+		this.relevantSubset = graph.getRelevantSubset();
+		this.relevantSubontology = graph.getRelevantSubontology();
+
+		slim = graph.getCompactSlimGraphView();
+		int numberOfTerms = slim.getNumberOfVertices();
+
+		termIDs = new TermID[numberOfTerms];
+		termID2Index = new HashMap<TermID, Integer>(numberOfTerms * 2);
+		for (int i = 0; i < numberOfTerms; i++)
+		{
+			termIDs[i] = slim.getVertex(i).getID();
+			termID2Index.put(termIDs[i], i);
+		}
+		termParents = slim.vertexParents;
+		termChildren = slim.vertexChildren;
+		termAncestors = new int[numberOfTerms][];
+
+		/* Determine the relevant terms. Note that we don't use isRelevantTerm()
+		 * here, as it checks the existence of a path for each term */
+		int subontologyIndex = -1;
+		if (!graph.isRootTerm(relevantSubontology))
+			subontologyIndex = termID2Index.get(relevantSubontology);
+
+		relevant = new boolean[numberOfTerms];
+		for (int i = 0; i < numberOfTerms; i++)
+		{
+			if (subontologyIndex != -1 && !slim.isAncestor(subontologyIndex, i))
+				continue;
+
+			if (relevantSubset != null)
+			{
+				boolean found = false;
+				for (Subset s : slim.getVertex(i).getSubsets())
+				{
+					if (s.equals(relevantSubset))
+					{
+						found = true;
+						break;
+					}
+				}
+				if (!found) continue;
+			}
+			relevant[i] = true;
+		}
+	}
+
+	/**
+	 * Returns the index for the given association container. Indices are
+	 * shared, i.e., the index is created only if no index for the given
+	 * parameters exist yet.
+	 *
+	 * @param graph
+	 * @param associationContainer
+	 * @param evidences
+	 * @return the index
+	 */
+	public static synchronized TermAnnotationIndex get(Ontology graph, AssociationContainer associationContainer, Set<ByteString> evidences)
+	{
+		TermAnnotationIndex index = indices.get(associationContainer);
+		if (index == null || !index.isValidFor(graph, evidences))
+		{
+			index = new TermAnnotationIndex(graph, evidences);
+			indices.put(associationContainer, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns whether the index can be used for the given graph and evidences.
+	 * An index gets invalid if the relevant subset or subontology of the graph
+	 * have been changed since its creation.
+	 *
+	 * @param graph
+	 * @param evidences
+	 * @return whether the index is valid.
+	 */
+	public boolean isValidFor(Ontology graph, Set<ByteString> evidences)
+	{
+		if (this.graph != graph)
+			return false;
+		if (this.evidences == null ? evidences != null : !this.evidences.equals(evidences))
+			return false;
+		if (relevantSubset != graph.getRelevantSubset())
+			return false;
+		return relevantSubontology.equals(graph.getRelevantSubontology());
+	}
+
+	/**
+	 * @return the graph of the index.
+	 */
+	public Ontology getGraph()
+	{
+		return graph;
+	}
+
+	/**
+	 * @return the number of terms.
+	 */
+	public int getNumberOfTerms()
+	{
+		return termIDs.length;
+	}
+
+	/**
+	 * Returns the term id of the given term index.
+	 *
+	 * @param termIndex
+	 * @return the term id
+	 */
+	public TermID getTermID(int termIndex)
+	{
+		return termIDs[termIndex];
+	}
+
+	/**
+	 * Returns the index of the given term.
+	 *
+	 * @param tid
+	 * @return the index or -1 if the term is not part of the graph.
+	 */
+	public int getTermIndex(TermID tid)
+	{
+		Integer idx = termID2Index.get(tid);
+		if (idx == null) return -1;
+		return idx;
+	}
+
+	/**
+	 * Returns the parents of the given term. The array must not be
+	 * altered.
+	 *
+	 * @param termIndex
+	 * @return the indices of the parents
+	 */
+	public int [] getParentTerms(int termIndex)
+	{
+		return termParents[termIndex];
+	}
+
+	/**
+	 * Returns the children of the given term. The array must not be
+	 * altered.
+	 *
+	 * @param termIndex
+	 * @return the indices of the children
+	 */
+	public int [] getChildTerms(int termIndex)
+	{
+		return termChildren[termIndex];
+	}
+
+	/**
+	 * @return the number of genes that have been indexed so far.
+	 */
+	public int getNumberOfGenes()
+	{
+		return numberOfGenes;
+	}
+
+	/**
+	 * Returns the name of the gene with the given index.
+	 *
+	 * @param geneIndex
+	 * @return the name
+	 */
+	public ByteString getGene(int geneIndex)
+	{
+		return genes[geneIndex];
+	}
+
+	/**
+	 * Returns the index of the given gene, indexing the gene if
+	 * this has not been done before.
+	 *
+	 * @param geneAssociations
+	 * @return the index of the gene
+	 */
+	public synchronized int getGeneIndex(Gene2Associations geneAssociations)
+	{
+		Integer idx = gene2Index.get(geneAssociations.name());
+		if (idx != null)
+			return idx;
+
+		int geneIndex = numberOfGenes;
+		if (geneIndex == genes.length)
+		{
+			/* Readers may still use the old arrays, so they are copied */
+			genes = Arrays.copyOf(genes, geneIndex * 2);
+			geneDirectTerms = Arrays.copyOf(geneDirectTerms, geneIndex * 2);
+			geneTotalTerms = Arrays.copyOf(geneTotalTerms, geneIndex * 2);
+		}
+
+		/* Direct terms, as in GOTermEnumerator.push() we keep duplicates */
+		int [] direct = new int[geneAssociations.getAssociations().size()];
+		int numberOfDirect = 0;
+		for (Association a : geneAssociations)
+		{
+			if (evidences != null && !evidences.contains(a.getEvidence()))
+				continue;
+
+			Integer termIndex = termID2Index.get(a.getTermID());
+			if (termIndex == null || !relevant[termIndex])
+				continue;
+
+			direct[numberOfDirect++] = termIndex;
+		}
+		direct = Arrays.copyOf(direct, numberOfDirect);
+
+		/* Total terms, i.e., the relevant terms of the induced graph */
+		int size = 0;
+		for (int i = 0; i < numberOfDirect; i++)
+			size += getAncestors(direct[i]).length;
+		int [] total = new int[size];
+		size = 0;
+		for (int i = 0; i < numberOfDirect; i++)
+		{
+			int [] ancestors = getAncestors(direct[i]);
+			System.arraycopy(ancestors, 0, total, size, ancestors.length);
+			size += ancestors.length;
+		}
+		if (numberOfDirect > 1)
+			Arrays.sort(total);
+		int numberOfTotal = 0;
+		for (int i = 0; i < total.length; i++)
+		{
+			if (!relevant[total[i]])
+				continue;
+			if (numberOfTotal > 0 && total[numberOfTotal - 1] == total[i])
+				continue;
+			total[numberOfTotal++] = total[i];
+		}
+		if (numberOfTotal != total.length)
+			total = Arrays.copyOf(total, numberOfTotal);
+
+		genes[geneIndex] = geneAssociations.name();
+		geneDirectTerms[geneIndex] = direct;
+		geneTotalTerms[geneIndex] = total;
+		gene2Index.put(geneAssociations.name(), geneIndex);
+		numberOfGenes = geneIndex + 1;
+		return geneIndex;
+	}
+
+	/**
+	 * Returns the sorted ancestors of the given term including the term
+	 * itself. Only terms to which genes are directly annotated need them,
+	 * so they are taken from the compact view on demand. Must be called
+	 * with the lock held.
+	 *
+	 * @param termIndex
+	 * @return the indices of the ancestors
+	 */
+	private int [] getAncestors(int termIndex)
+	{
+		int [] ancestors = termAncestors[termIndex];
+		if (ancestors == null)
+		{
+			ancestors = slim.getAncestorIndices(termIndex);
+			termAncestors[termIndex] = ancestors;
+		}
+		return ancestors;
+	}
+
+	/**
+	 * Returns the relevant terms to which the gene with the given index is
+	 * directly annotated. The array must not be altered.
+	 *
+	 * @param geneIndex
+	 * @return the term indices
+	 */
+	public int [] getDirectTerms(int geneIndex)
+	{
+		return geneDirectTerms[geneIndex];
+	}
+
+	/**
+	 * Returns the sorted relevant terms to which the gene with the given
+	 * index is annotated directly or indirectly. The array must not be
+	 * altered.
+	 *
+	 * @param geneIndex
+	 * @return the term indices
+	 */
+	public int [] getTotalTerms(int geneIndex)
+	{
+		return geneTotalTerms[geneIndex];
+	}
+
+	/**
+	 * A read only list of genes that is backed by an array of gene indices.
+	 */
+	private static class GeneList extends AbstractList<ByteString> implements RandomAccess
+	{
+		private ByteString [] genes;
+		private int [] indices;
+		private int size;
+
+		public GeneList(ByteString [] genes, int [] indices, int size)
+		{
+			this.genes = genes;
+			this.indices = indices;
+			this.size = size;
+		}
+
+		@Override
+		public ByteString get(int index)
+		{
+			if (index >= size)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			return genes[indices[index]];
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+	}
+
+	/**
+	 * Enumerates the given genes. The result is equivalent to pushing the
+	 * associations of each gene into a fresh GOTermEnumerator.
+	 *
+	 * @param geneNames the names of the genes to be enumerated. Genes without
+	 *  associations are skipped.
+	 * @param associationContainer the container from which the associations
+	 *  of the genes are taken.
+	 * @return the enumerator
+	 */
+	public GOTermEnumerator enumerate(Iterable<ByteString> geneNames, AssociationContainer associationContainer)
+	{
+		return enumerate(getGeneIndices(geneNames, associationContainer), null);
+	}
+
+	/**
+	 * Enumerates the given genes, which are expected to be a subset of the
+	 * genes of the given population enumerator. If the population enumerator
+	 * is frozen and unaltered since it has been created by this index, the
+	 * enumeration is derived from it, i.e., the genes are filtered against
+	 * the gene indices of the population and only the terms of the
+	 * population are considered. Otherwise, or if a gene doesn't belong to
+	 * the population, this is the same as enumerate(Iterable,
+	 * AssociationContainer).
+	 *
+	 * @param population
+	 * @param geneNames
+	 * @param associationContainer
+	 * @return the enumerator
+	 */
+	public GOTermEnumerator enumerate(GOTermEnumerator population, Iterable<ByteString> geneNames, AssociationContainer associationContainer)
+	{
+		int [] geneIndices = getGeneIndices(geneNames, associationContainer);
+
+		if (!population.isFrozen() || population.index != this)
+			return enumerate(geneIndices, null);
+
+		for (int idx : geneIndices)
+		{
+			if (Arrays.binarySearch(population.sortedGeneIndices, idx) < 0)
+				return enumerate(geneIndices, null);
+		}
+		return enumerate(geneIndices, population);
+	}
+
+	/**
+	 * Returns the indices of the given genes. Genes without associations
+	 * are skipped. The names are resolved via the name index of the
+	 * container. The lock is only taken if a gene has not been indexed
+	 * yet.
+	 *
+	 * @param geneNames
+	 * @param associationContainer
+	 * @return the gene indices in the order of the genes.
+	 */
+	int [] getGeneIndices(Iterable<ByteString> geneNames, AssociationContainer associationContainer)
+	{
+		GeneNameIndex names = associationContainer.getNameIndex();
+
+		int [] ordinals = new int[64];
+		int numberOfOrdinals = 0;
+		for (ByteString geneName : geneNames)
+		{
+			int ordinal = names.getOrdinal(geneName);
+			if (ordinal == -1) continue;
+
+			if (numberOfOrdinals == ordinals.length)
+				ordinals = Arrays.copyOf(ordinals, numberOfOrdinals * 2);
+			ordinals[numberOfOrdinals++] = ordinal;
+		}
+
+		int [] geneIndices = new int[numberOfOrdinals];
+		int i = 0;
+
+		/* Fast path, all genes have been indexed before */
+		OrdinalMap map = ordinalMap;
+		if (map != null && map.names == names)
+		{
+			for (; i < numberOfOrdinals; i++)
+			{
+				int idx = map.geneIndices.get(ordinals[i]);
+				if (idx == -1) break;
+				geneIndices[i] = idx;
+			}
+		}
+
+		if (i < numberOfOrdinals)
+		{
+			synchronized (this)
+			{
+				map = ordinalMap;
+				if (map == null || map.names != names)
+				{
+					map = new OrdinalMap(names);
+					ordinalMap = map;
+				}
+
+				for (; i < numberOfOrdinals; i++)
+				{
+					int idx = map.geneIndices.get(ordinals[i]);
+					if (idx == -1)
+					{
+						idx = getGeneIndex(names.getGeneAssociations(ordinals[i]));
+						map.geneIndices.set(ordinals[i], idx);
+					}
+					geneIndices[i] = idx;
+				}
+			}
+		}
+		return geneIndices;
+	}
+
+	/**
+	 * Enumerates the genes with the given indices.
+	 *
+	 * @param geneIndices
+	 * @param population if not null, the frozen enumerator whose terms
+	 *  cover all terms of the genes. Only these terms are considered.
+	 * @return the enumerator
+	 */
+	private GOTermEnumerator enumerate(int [] geneIndices, GOTermEnumerator population)
+	{
+		/* We keep our own references of the gene arrays, as the index may
+		 * grow concurrently */
+		int numberOfGenes = geneIndices.length;
+		int [][] directTerms = new int[numberOfGenes][];
+		int [][] totalTerms = new int[numberOfGenes][];
+		int [][] geneDirectTerms = this.geneDirectTerms;
+		int [][] geneTotalTerms = this.geneTotalTerms;
+		ByteString [] geneArray = genes;
+
+		for (int i = 0; i < numberOfGenes; i++)
+		{
+			directTerms[i] = geneDirectTerms[geneIndices[i]];
+			totalTerms[i] = geneTotalTerms[geneIndices[i]];
+		}
+
+		/* Terms are counted in slots, which are either the term indices
+		 * or the positions within the terms of the population */
+		int [] termSlots = population != null ? population.termSlots : null;
+		int numberOfSlots = population != null ? population.slotTerms.length : termIDs.length;
+
+		/* Count */
+		int [] directCounts = new int[numberOfSlots];
+		int [] totalCounts = new int[numberOfSlots];
+		for (int i = 0; i < numberOfGenes; i++)
+		{
+			for (int t : directTerms[i])
+				directCounts[termSlots != null ? termSlots[t] : t]++;
+			for (int t : totalTerms[i])
+				totalCounts[termSlots != null ? termSlots[t] : t]++;
+		}
+
+		/* Fill */
+		int [][] directGenes = new int[numberOfSlots][];
+		int [][] totalGenes = new int[numberOfSlots][];
+		for (int s = 0; s < numberOfSlots; s++)
+		{
+			if (totalCounts[s] == 0) continue;
+
+			directGenes[s] = directCounts[s] == 0 ? EMPTY : new int[directCounts[s]];
+			totalGenes[s] = new int[totalCounts[s]];
+			directCounts[s] = 0;
+			totalCounts[s] = 0;
+		}
+		for (int i = 0; i < numberOfGenes; i++)
+		{
+			int idx = geneIndices[i];
+			for (int t : directTerms[i])
+			{
+				int s = termSlots != null ? termSlots[t] : t;
+				directGenes[s][directCounts[s]++] = idx;
+			}
+			for (int t : totalTerms[i])
+			{
+				int s = termSlots != null ? termSlots[t] : t;
+				totalGenes[s][totalCounts[s]++] = idx;
+			}
+		}
+
+		GOTermEnumerator enumerator = new GOTermEnumerator(graph);
+		for (int s = 0; s < numberOfSlots; s++)
+		{
+			if (totalGenes[s] == null) continue;
+
+			int t = population != null ? population.slotTerms[s] : s;
+			enumerator.put(termIDs[t],
+					new GeneList(geneArray, directGenes[s], directCounts[s]),
+					new GeneList(geneArray, totalGenes[s], totalCounts[s]));
+		}
+		enumerator.index = this;
+		enumerator.geneIndices = geneIndices;
+		return enumerator;
+	}
+
+	/**
+	 * Enumerates the given genes. The index is taken from the shared
+	 * indices.
+	 *
+	 * @param graph
+	 * @param associationContainer
+	 * @param evidences
+	 * @param geneNames
+	 * @return the enumerator
+	 * @see #get(Ontology, AssociationContainer, Set)
+	 */
+	public static GOTermEnumerator enumerate(Ontology graph, AssociationContainer associationContainer, Set<ByteString> evidences, Iterable<ByteString> geneNames)
+	{
+		return get(graph, associationContainer, evidences).enumerate(geneNames, associationContainer);
+	}
+
+	/**
+	 * Removes all shared indices.
+	 */
+	public static synchronized void clear()
+	{
+		indices.clear();
+	}
+}
@@ -9,8 +9,10 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.HashMap;
+import java.util.Map;
 
 import ontologizer.types.ByteString;
+import ontologizer.types.ByteStringIndex;
 
 /**
  *
@@ -24,10 +26,15 @@ import ontologizer.types.ByteString;
  */
 public class GeneFilter
 {
-	private HashMap<ByteString,ByteString> mapping = new HashMap<ByteString,ByteString>();
+	/** The names that are mapped */
+	private ByteStringIndex names;
+
+	/** The mapped names in the order of the index */
+	private ByteString [] mappedNames;
 
 	public GeneFilter(Reader reader) throws IOException
 	{
+		HashMap<ByteString,ByteString> mapping = new HashMap<ByteString,ByteString>();
 		BufferedReader is = new BufferedReader(reader);
 		String inputLine;
 		while ((inputLine = is.readLine()) != null)
@@ -70,7 +77,17 @@ public class GeneFilter
 		}
 		is.close();
 
-
+		/* Compile the mapping */
+		ByteString [] nameArray = new ByteString[mapping.size()];
+		mappedNames = new ByteString[mapping.size()];
+		int i = 0;
+		for (Map.Entry<ByteString,ByteString> entry : mapping.entrySet())
+		{
+			nameArray[i] = entry.getKey();
+			mappedNames[i] = entry.getValue();
+			i++;
+		}
+		names = new ByteStringIndex(nameArray);
 	}
 
 	/**
@@ -101,6 +118,8 @@ public class GeneFilter
 	 */
 	public ByteString mapGene(ByteString gene)
 	{
-		return mapping.get(gene);
+		int idx = names.indexOf(gene);
+		if (idx == -1) return null;
+		return mappedNames[idx];
 	}
 }
@@ -0,0 +1,824 @@
+package ontologizer.go;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import sonumina.math.graph.DirectedGraph;
+import sonumina.math.graph.Edge;
+import sonumina.math.graph.ReachabilityIndex;
+import sonumina.math.graph.AbstractGraph.IVisitor;
+
+/**
+ * An immutable compact representation of the structure of an ontology.
+ *
+ * Each term is identified by a dense ordinal from 0 to the number of
+ * terms minus one. Parents and children of the terms are stored in
+ * compressed sparse row form, i.e., the parents of the term with
+ * ordinal t are parents[parentOffsets[t]] to parents[parentOffsets[t+1]-1].
+ * Each of these links is accompanied by a byte whose bits denote the
+ * relations (see getRelationMask()) by which the two terms are linked.
+ *
+ * Transitive closures are not stored. Reachability queries are answered
+ * by a ReachabilityIndex that is built on first use. Other closures are
+ * determined on demand by traversals that use per thread scratch space,
+ * so they don't allocate any temporary objects. Instances can be used
+ * concurrently.
+ *
+ * @author Sebastian Bauer
+ */
+public class CompactOntology
+{
+	/** Mask of all relations */
+	public static final int ALL_RELATIONS = 0xff;
+
+	/** The bit that represents links without a relation */
+	private static final int NULL_RELATION = 0x80;
+
+	/**
+	 * Visitor of terms given by ordinals.
+	 */
+	public static interface ITermOrdinalVisitor
+	{
+		/**
+		 * Called for every visited term.
+		 *
+		 * @param t the ordinal of the term.
+		 * @return false if the traversal shall be stopped.
+		 */
+		boolean visited(int t);
+	}
+
+	/**
+	 * Scratch space of a traversal.
+	 */
+	private static class Traversal
+	{
+		/** Marks of the terms, valid if equal to a stamp of the current traversal */
+		public int [] stamps;
+
+		/** The last used stamp */
+		public int stamp;
+
+		/** The queue */
+		public int [] queue;
+
+		/** Whether the scratch space is currently used */
+		public boolean busy;
+
+		public Traversal(int numberOfTerms)
+		{
+			stamps = new int[numberOfTerms];
+			queue = new int[numberOfTerms];
+		}
+
+		/**
+		 * Reserves the given number of new consecutive stamps.
+		 *
+		 * @param n
+		 * @return the first of the new stamps.
+		 */
+		public int newStamps(int n)
+		{
+			if (stamp > Integer.MAX_VALUE - n)
+			{
+				Arrays.fill(stamps, 0);
+				stamp = 0;
+			}
+			int first = stamp + 1;
+			stamp += n;
+			return first;
+		}
+	}
+
+	/** The terms */
+	private final Term [] terms;
+
+	/** Maps the term ids to the ordinals */
+	private final HashMap<TermID,Integer> termID2Ordinal;
+
+	/** Start of the parents of a term, has one more element than there are terms */
+	private final int [] parentOffsets;
+
+	/** The parents of all terms */
+	private final int [] parents;
+
+	/** The relations of the terms to their parents */
+	private final byte [] parentRelations;
+
+	/** Start of the children of a term, has one more element than there are terms */
+	private final int [] childOffsets;
+
+	/** The children of all terms */
+	private final int [] children;
+
+	/** The relations of the children to the terms */
+	private final byte [] childRelations;
+
+	/** The modification count of the graph from which this representation was derived */
+	private final int modificationCount;
+
+	/** The reachability index, built on demand */
+	private volatile ReachabilityIndex reachabilityIndex;
+
+	/** Whether the graph contains a cycle, in which case there is no reachability index */
+	private volatile boolean cyclic;
+
+	/** The scratch space of the threads */
+	private final ThreadLocal<Traversal> traversals = new ThreadLocal<Traversal>()
+	{
+		@Override
+		protected Traversal initialValue()
+		{
+			return new Traversal(terms.length);
+		}
+	};
+
+	/**
+	 * Constructs the compact representation of the given graph. Terms get the
+	 * ordinals in the iteration order of the graph.
+	 *
+	 * @param graph
+	 */
+	public CompactOntology(DirectedGraph<Term> graph)
+	{
+		int n = graph.getNumberOfVertices();
+
+		modificationCount = graph.getModificationCount();
+		terms = new Term[n];
+		termID2Ordinal = new HashMap<TermID,Integer>(n * 2);
+
+		int i = 0;
+		for (Term t : graph)
+		{
+			terms[i] = t;
+			termID2Ordinal.put(t.getID(), i);
+			i++;
+		}
+
+		parentOffsets = new int[n + 1];
+		childOffsets = new int[n + 1];
+		int numberOfParentLinks = 0;
+		int numberOfChildLinks = 0;
+		for (i = 0; i < n; i++)
+		{
+			numberOfParentLinks += graph.getNumberOfInEdges(terms[i]);
+			numberOfChildLinks += graph.getNumberOfOutEdges(terms[i]);
+		}
+
+		int [] parentLinks = new int[numberOfParentLinks];
+		byte [] parentLinkRelations = new byte[numberOfParentLinks];
+		int [] childLinks = new int[numberOfChildLinks];
+		byte [] childLinkRelations = new byte[numberOfChildLinks];
+
+		numberOfParentLinks = 0;
+		numberOfChildLinks = 0;
+		for (i = 0; i < n; i++)
+		{
+			Iterator<Edge<Term>> inIter = graph.getInEdges(terms[i]);
+			while (inIter.hasNext())
+			{
+				Edge<Term> e = inIter.next();
+				numberOfParentLinks = addLink(parentLinks, parentLinkRelations, parentOffsets[i], numberOfParentLinks, e.getSource(), e);
+			}
+			parentOffsets[i + 1] = numberOfParentLinks;
+
+			Iterator<Edge<Term>> outIter = graph.getOutEdges(terms[i]);
+			while (outIter.hasNext())
+			{
+				Edge<Term> e = outIter.next();
+				numberOfChildLinks = addLink(childLinks, childLinkRelations, childOffsets[i], numberOfChildLinks, e.getDest(), e);
+			}
+			childOffsets[i + 1] = numberOfChildLinks;
+		}
+
+		parents = Arrays.copyOf(parentLinks, numberOfParentLinks);
+		parentRelations = Arrays.copyOf(parentLinkRelations, numberOfParentLinks);
+		children = Arrays.copyOf(childLinks, numberOfChildLinks);
+		childRelations = Arrays.copyOf(childLinkRelations, numberOfChildLinks);
+	}
+
+	/**
+	 * Adds a link to the given neighbour to the row that starts at
+	 * rowStart and ends at end. Several edges to the same neighbour
+	 * are joined, neighbours that are not part of the graph are ignored.
+	 *
+	 * @return the new end of the row.
+	 */
+	private int addLink(int [] links, byte [] relations, int rowStart, int end, Term neighbour, Edge<Term> edge)
+	{
+		Integer ordinal = termID2Ordinal.get(neighbour.getID());
+		if (ordinal == null)
+			return end;
+
+		int mask = getRelationMask(edge instanceof OntologyEdge ? ((OntologyEdge)edge).getRelation() : null);
+		for (int j = rowStart; j < end; j++)
+		{
+			if (links[j] == ordinal)
+			{
+				relations[j] |= mask;
+				return end;
+			}
+		}
+		links[end] = ordinal;
+		relations[end] = (byte)mask;
+		return end + 1;
+	}
+
+	/**
+	 * Returns the bit that represents the given relation.
+	 *
+	 * @param relation the relation, may be null.
+	 * @return
+	 */
+	public static int getRelationMask(TermRelation relation)
+	{
+		if (relation == null)
+			return NULL_RELATION;
+		return 1 << relation.ordinal();
+	}
+
+	/**
+	 * Returns the mask that represents all of the given relations.
+	 *
+	 * @param relations
+	 * @return
+	 */
+	public static int getRelationMask(Collection<TermRelation> relations)
+	{
+		int mask = 0;
+		for (TermRelation r : relations)
+			mask |= getRelationMask(r);
+		return mask;
+	}
+
+	/**
+	 * Returns whether the given relation is a member of the given mask.
+	 *
+	 * @param mask
+	 * @param relation
+	 * @return
+	 */
+	public static boolean hasRelation(int mask, TermRelation relation)
+	{
+		return (mask & getRelationMask(relation)) != 0;
+	}
+
+	/**
+	 * @return the modification count of the graph from which this
+	 *  instance was derived.
+	 */
+	int getModificationCount()
+	{
+		return modificationCount;
+	}
+
+	/**
+	 * @return the number of terms.
+	 */
+	public int getNumberOfTerms()
+	{
+		return terms.length;
+	}
+
+	/**
+	 * Returns the term with the given ordinal.
+	 *
+	 * @param t
+	 * @return
+	 */
+	public Term getTerm(int t)
+	{
+		return terms[t];
+	}
+
+	/**
+	 * Returns the ordinal of the term with the given id.
+	 *
+	 * @param tid
+	 * @return the ordinal or -1 if the term is not part of the ontology.
+	 */
+	public int getTermIndex(TermID tid)
+	{
+		Integer ordinal = termID2Ordinal.get(tid);
+		if (ordinal == null)
+			return -1;
+		return ordinal;
+	}
+
+	/**
+	 * Returns the number of parents of the given term.
+	 *
+	 * @param t
+	 * @return
+	 */
+	public int getNumberOfParents(int t)
+	{
+		return parentOffsets[t + 1] - parentOffsets[t];
+	}
+
+	/**
+	 * Returns the i'th parent of the given term.
+	 *
+	 * @param t
+	 * @param i
+	 * @return
+	 */
+	public int getParent(int t, int i)
+	{
+		return parents[parentOffsets[t] + i];
+	}
+
+	/**
+	 * Returns the relations of the given term to its i'th parent as mask.
+	 *
+	 * @param t
+	 * @param i
+	 * @return
+	 */
+	public int getParentRelations(int t, int i)
+	{
+		return parentRelations[parentOffsets[t] + i] & 0xff;
+	}
+
+	/**
+	 * Returns the number of children of the given term.
+	 *
+	 * @param t
+	 * @return
+	 */
+	public int getNumberOfChildren(int t)
+	{
+		return childOffsets[t + 1] - childOffsets[t];
+	}
+
+	/**
+	 * Returns the i'th child of the given term.
+	 *
+	 * @param t
+	 * @param i
+	 * @return
+	 */
+	public int getChild(int t, int i)
+	{
+		return children[childOffsets[t] + i];
+	}
+
+	/**
+	 * Returns the relations of the i'th child to the given term as mask.
+	 *
+	 * @param t
+	 * @param i
+	 * @return
+	 */
+	public int getChildRelations(int t, int i)
+	{
+		return childRelations[childOffsets[t] + i] & 0xff;
+	}
+
+	/**
+	 * Returns the ids of the parents of the given term as immutable set.
+	 *
+	 * @param t
+	 * @return
+	 */
+	public Set<TermID> getParentIDs(int t)
+	{
+		return new TermIDSet(parents, parentOffsets[t], parentOffsets[t + 1]);
+	}
+
+	/**
+	 * Returns the ids of the children of the given term as immutable set.
+	 *
+	 * @param t
+	 * @return
+	 */
+	public Set<TermID> getChildIDs(int t)
+	{
+		return new TermIDSet(children, childOffsets[t], childOffsets[t + 1]);
+	}
+
+	/**
+	 * Returns the parents of the given term as immutable set.
+	 *
+	 * @param t
+	 * @return
+	 */
+	public Set<Term> getParentTerms(int t)
+	{
+		return new TermSet(parents, parentOffsets[t], parentOffsets[t + 1]);
+	}
+
+	/**
+	 * Returns the children of the given term as immutable set.
+	 *
+	 * @param t
+	 * @return
+	 */
+	public Set<Term> getChildTerms(int t)
+	{
+		return new TermSet(children, childOffsets[t], childOffsets[t + 1]);
+	}
+
+	/**
+	 * Returns the reachability index of the ontology.
+	 *
+	 * @return the index or null if the ontology contains a cycle.
+	 */
+	public ReachabilityIndex getReachabilityIndex()
+	{
+		ReachabilityIndex index = reachabilityIndex;
+		if (index == null && !cyclic)
+		{
+			synchronized (this)
+			{
+				index = reachabilityIndex;
+				if (index == null && !cyclic)
+				{
+					try
+					{
+						index = new ReachabilityIndex(parentOffsets, parents, childOffsets, children);
+						reachabilityIndex = index;
+					} catch (IllegalArgumentException e)
+					{
+						cyclic = true;
+					}
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Acquires scratch space for a traversal. Traversals may be nested,
+	 * e.g., if a visitor starts another traversal.
+	 *
+	 * @return
+	 */
+	private Traversal acquire()
+	{
+		Traversal traversal = traversals.get();
+		if (traversal.busy)
+			traversal = new Traversal(terms.length);
+		traversal.busy = true;
+		return traversal;
+	}
+
+	/**
+	 * Performs a breadth-first search starting at the given terms. Every
+	 * reached term is visited exactly once, starting with the given terms.
+	 *
+	 * @param start the ordinals of the terms to start with.
+	 * @param toSource whether the search is done towards the source (i.e.,
+	 *  to the parents) or towards the sinks (i.e., to the children).
+	 * @param relationMask only links with a relation contained in this mask
+	 *  are followed.
+	 * @param visitor
+	 */
+	public void walkOrdinals(int [] start, boolean toSource, int relationMask, ITermOrdinalVisitor visitor)
+	{
+		int [] offsets = toSource ? parentOffsets : childOffsets;
+		int [] links = toSource ? parents : children;
+		byte [] relations = toSource ? parentRelations : childRelations;
+
+		Traversal traversal = acquire();
+		try
+		{
+			int [] stamps = traversal.stamps;
+			int [] queue = traversal.queue;
+			int stamp = traversal.newStamps(1);
+			int head = 0;
+			int tail = 0;
+
+			for (int t : start)
+			{
+				if (stamps[t] == stamp)
+					continue;
+				stamps[t] = stamp;
+				queue[tail++] = t;
+				if (!visitor.visited(t))
+					return;
+			}
+
+			while (head < tail)
+			{
+				int t = queue[head++];
+				for (int i = offsets[t]; i < offsets[t + 1]; i++)
+				{
+					int n = links[i];
+					if (stamps[n] == stamp || (relations[i] & relationMask) == 0)
+						continue;
+					stamps[n] = stamp;
+					queue[tail++] = n;
+					if (!visitor.visited(n))
+						return;
+				}
+			}
+		} finally
+		{
+			traversal.busy = false;
+		}
+	}
+
+	/**
+	 * Performs a breadth-first search starting at the given terms. Every
+	 * reached term is visited exactly once, starting with the given terms.
+	 * Same as {@link #walkOrdinals(int[], boolean, int, ITermOrdinalVisitor)}
+	 * but the visitor receives the terms rather than their ordinals.
+	 *
+	 * @param start the ordinals of the terms to start with.
+	 * @param toSource whether the search is done towards the source or towards the sinks.
+	 * @param relationMask only links with a relation contained in this mask are followed.
+	 * @param visitor
+	 */
+	public void walk(int [] start, boolean toSource, int relationMask, final IVisitor<Term> visitor)
+	{
+		walkOrdinals(start, toSource, relationMask, new ITermOrdinalVisitor()
+		{
+			public boolean visited(int t)
+			{
+				return visitor.visited(terms[t]);
+			}
+		});
+	}
+
+	/**
+	 * Collects the terms reachable from the given term including the term itself.
+	 *
+	 * @param t
+	 * @param toSource
+	 * @return the ordinals in ascending order.
+	 */
+	private int [] reachable(int t, boolean toSource)
+	{
+		int [] offsets = toSource ? parentOffsets : childOffsets;
+		int [] links = toSource ? parents : children;
+
+		Traversal traversal = acquire();
+		try
+		{
+			int [] stamps = traversal.stamps;
+			int [] queue = traversal.queue;
+			int stamp = traversal.newStamps(1);
+			int head = 0;
+			int tail = 0;
+
+			stamps[t] = stamp;
+			queue[tail++] = t;
+			while (head < tail)
+			{
+				int v = queue[head++];
+				for (int i = offsets[v]; i < offsets[v + 1]; i++)
+				{
+					int n = links[i];
+					if (stamps[n] != stamp)
+					{
+						stamps[n] = stamp;
+						queue[tail++] = n;
+					}
+				}
+			}
+
+			int [] result = Arrays.copyOf(queue, tail);
+			Arrays.sort(result);
+			return result;
+		} finally
+		{
+			traversal.busy = false;
+		}
+	}
+
+	/**
+	 * Returns the ancestors of the given term including the term itself.
+	 *
+	 * @param t
+	 * @return the ordinals of the ancestors in ascending order.
+	 */
+	public int [] getAncestors(int t)
+	{
+		ReachabilityIndex index = getReachabilityIndex();
+		if (index != null)
+			return index.getAncestors(t);
+		return reachable(t, true);
+	}
+
+	/**
+	 * Returns the descendants of the given term including the term itself.
+	 *
+	 * @param t
+	 * @return the ordinals of the descendants in ascending order.
+	 */
+	public int [] getDescendants(int t)
+	{
+		ReachabilityIndex index = getReachabilityIndex();
+		if (index != null)
+			return index.getDescendants(t);
+		return reachable(t, false);
+	}
+
+	/**
+	 * Determines whether a is an ancestor of t. A term is considered as
+	 * ancestor of itself.
+	 *
+	 * @param a
+	 * @param t
+	 * @return
+	 */
+	public boolean isAncestor(final int a, int t)
+	{
+		if (a == t)
+			return true;
+
+		ReachabilityIndex index = getReachabilityIndex();
+		if (index != null)
+			return index.isAncestor(a, t);
+
+		final boolean [] found = new boolean[1];
+		walkOrdinals(new int[]{t}, true, ALL_RELATIONS, new ITermOrdinalVisitor()
+		{
+			public boolean visited(int v)
+			{
+				if (v != a)
+					return true;
+				found[0] = true;
+				return false;
+			}
+		});
+		return found[0];
+	}
+
+	/**
+	 * Returns the ids of the terms of the graph that is induced by the given
+	 * term, i.e., the ancestors of the term. If root is not -1, only those
+	 * ancestors are considered that are also descendants of the term with
+	 * ordinal root.
+	 *
+	 * @param root the ordinal of the root or -1.
+	 * @param t the ordinal of the inducing term.
+	 * @return the ids in a new set.
+	 */
+	public HashSet<TermID> getInducedTermIDs(int root, int t)
+	{
+		Traversal traversal = acquire();
+		try
+		{
+			int [] stamps = traversal.stamps;
+			int [] queue = traversal.queue;
+			int ancestorStamp = traversal.newStamps(2);
+			int inducedStamp = ancestorStamp + 1;
+			int head = 0;
+			int tail = 0;
+
+			stamps[t] = ancestorStamp;
+			queue[tail++] = t;
+			while (head < tail)
+			{
+				int v = queue[head++];
+				for (int i = parentOffsets[v]; i < parentOffsets[v + 1]; i++)
+				{
+					int p = parents[i];
+					if (stamps[p] != ancestorStamp)
+					{
+						stamps[p] = ancestorStamp;
+						queue[tail++] = p;
+					}
+				}
+			}
+
+			if (root != -1)
+			{
+				/* Every term on a path from the root to an ancestor of t is itself an
+				 * ancestor of t, hence we walk down from the root within the ancestors */
+				head = 0;
+				tail = 0;
+				if (stamps[root] == ancestorStamp)
+				{
+					stamps[root] = inducedStamp;
+					queue[tail++] = root;
+				}
+				while (head < tail)
+				{
+					int v = queue[head++];
+					for (int i = childOffsets[v]; i < childOffsets[v + 1]; i++)
+					{
+						int c = children[i];
+						if (stamps[c] == ancestorStamp)
+						{
+							stamps[c] = inducedStamp;
+							queue[tail++] = c;
+						}
+					}
+				}
+			}
+
+			HashSet<TermID> induced = new HashSet<TermID>(tail * 2);
+			for (int i = 0; i < tail; i++)
+				induced.add(terms[queue[i]].getID());
+			return induced;
+		} finally
+		{
+			traversal.busy = false;
+		}
+	}
+
+	/**
+	 * Base of the immutable set views of a row of links.
+	 */
+	private abstract class LinkSet<T> extends AbstractSet<T>
+	{
+		private final int [] links;
+		private final int from;
+		private final int to;
+
+		public LinkSet(int [] links, int from, int to)
+		{
+			this.links = links;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected abstract T element(Term t);
+
+		@Override
+		public Iterator<T> iterator()
+		{
+			return new Iterator<T>()
+			{
+				private int i = from;
+
+				public boolean hasNext()
+				{
+					return i < to;
+				}
+
+				public T next()
+				{
+					if (i >= to)
+						throw new NoSuchElementException();
+					return element(terms[links[i++]]);
+				}
+
+				public void remove()
+				{
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o)
+		{
+			for (int i = from; i < to; i++)
+			{
+				if (element(terms[links[i]]).equals(o))
+					return true;
+			}
+			return false;
+		}
+
+		@Override
+		public int size()
+		{
+			return to - from;
+		}
+	}
+
+	/**
+	 * Set view of term ids.
+	 */
+	private class TermIDSet extends LinkSet<TermID>
+	{
+		public TermIDSet(int [] links, int from, int to)
+		{
+			super(links, from, to);
+		}
+
+		@Override
+		protected TermID element(Term t)
+		{
+			return t.getID();
+		}
+	}
+
+	/**
+	 * Set view of terms.
+	 */
+	private class TermSet extends LinkSet<Term>
+	{
+		public TermSet(int [] links, int from, int to)
+		{
+			super(links, from, to);
+		}
+
+		@Override
+		protected Term element(Term t)
+		{
+			return t;
+		}
+	}
+}
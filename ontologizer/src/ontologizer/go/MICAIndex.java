@@ -0,0 +1,423 @@
+package ontologizer.go;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An index for determining the most informative common ancestor (MICA)
+ * of terms, i.e., the shared ancestor with the smallest probability.
+ *
+ * All terms are ranked according to their probabilities in ascending
+ * order, so the rank of a more informative term is smaller. For each
+ * term, the ranks of its ancestors (including the term itself) are
+ * stored in ascending order in compressed sparse row form. The MICA of
+ * two terms is then the first common element of the two rank lists,
+ * which is found by a merge-like scan that stops at the first match.
+ * Hence, queries take at most O(ancestors) steps and don't allocate
+ * any objects.
+ *
+ * As the MICA of any pair of terms taken from two sets of terms is
+ * the first common element of the union of the rank lists of the sets,
+ * the same scan can be applied to the ancestor ranks of whole sets of
+ * terms (see getAncestorRanks(int[])). This is used to compare genes
+ * with many annotations without considering each term pair.
+ *
+ * Aggregations over many terms (getBestMatchSum(), getPairSum()) mark
+ * the ranks of one side in a per thread array, so the ancestors of each
+ * term of the other side are scanned only up to the first marked rank.
+ *
+ * Instances are immutable and can be used concurrently.
+ *
+ * @author Sebastian Bauer
+ */
+public class MICAIndex
+{
+	/** The ordinals of the terms indexed by their ranks */
+	private int [] terms;
+
+	/** The probabilities of the terms indexed by their ranks */
+	private double [] rankP;
+
+	/** The ranks of the terms indexed by their ordinals */
+	private int [] ranks;
+
+	/** Offsets of the ancestor ranks of a term */
+	private int [] ancestorOffsets;
+
+	/** The ancestor ranks of all terms, each section sorted in ascending order */
+	private int [] ancestorRanks;
+
+	/**
+	 * Per thread marks of ranks, a rank is marked if its entry equals
+	 * the current stamp.
+	 */
+	private static class Marks
+	{
+		public int [] stamps;
+		public int stamp;
+
+		public Marks(int numberOfTerms)
+		{
+			stamps = new int[numberOfTerms];
+		}
+
+		/**
+		 * Returns a new stamp, which invalidates all previous marks.
+		 *
+		 * @return
+		 */
+		public int newStamp()
+		{
+			if (stamp == Integer.MAX_VALUE)
+			{
+				Arrays.fill(stamps, 0);
+				stamp = 0;
+			}
+			return ++stamp;
+		}
+	}
+
+	private final ThreadLocal<Marks> marks = new ThreadLocal<Marks>()
+	{
+		@Override
+		protected Marks initialValue()
+		{
+			return new Marks(ranks.length);
+		}
+	};
+
+	/**
+	 * Constructs the index.
+	 *
+	 * @param ontology the ontology whose structure is indexed.
+	 * @param p the probabilities of the terms indexed by their ordinals.
+	 */
+	public MICAIndex(CompactOntology ontology, final double [] p)
+	{
+		int n = ontology.getNumberOfTerms();
+		if (p.length != n)
+			throw new IllegalArgumentException("Expected " + n + " probabilities but got " + p.length);
+
+		/* Rank the terms, ties are broken by the ordinals */
+		Integer [] order = new Integer[n];
+		for (int t = 0; t < n; t++)
+			order[t] = t;
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer o1, Integer o2)
+			{
+				int c = Double.compare(p[o1], p[o2]);
+				if (c != 0) return c;
+				return o1.compareTo(o2);
+			}
+		});
+
+		terms = new int[n];
+		rankP = new double[n];
+		ranks = new int[n];
+		for (int r = 0; r < n; r++)
+		{
+			terms[r] = order[r];
+			rankP[r] = p[order[r]];
+			ranks[order[r]] = r;
+		}
+
+		int [][] ancestors = new int[n][];
+		ancestorOffsets = new int[n + 1];
+		for (int t = 0; t < n; t++)
+		{
+			ancestors[t] = ontology.getAncestors(t);
+			ancestorOffsets[t + 1] = ancestorOffsets[t] + ancestors[t].length;
+		}
+
+		ancestorRanks = new int[ancestorOffsets[n]];
+		for (int t = 0; t < n; t++)
+		{
+			int o = ancestorOffsets[t];
+			for (int a : ancestors[t])
+				ancestorRanks[o++] = ranks[a];
+			Arrays.sort(ancestorRanks, ancestorOffsets[t], o);
+		}
+	}
+
+	/**
+	 * Returns the first element that is contained in both sorted sections
+	 * of the given arrays.
+	 *
+	 * @return the element or -1 if the sections are disjoint.
+	 */
+	private static int firstCommon(int [] a, int i, int iEnd, int [] b, int j, int jEnd)
+	{
+		while (i < iEnd && j < jEnd)
+		{
+			int ai = a[i];
+			int bj = b[j];
+			if (ai == bj) return ai;
+			if (ai < bj) i++;
+			else j++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of terms covered by the index.
+	 *
+	 * @return
+	 */
+	public int getNumberOfTerms()
+	{
+		return ranks.length;
+	}
+
+	/**
+	 * Returns the rank of the given term. Terms with smaller probabilities
+	 * have smaller ranks.
+	 *
+	 * @param t the ordinal of the term.
+	 * @return
+	 */
+	public int getRank(int t)
+	{
+		return ranks[t];
+	}
+
+	/**
+	 * Returns the probability of the given term.
+	 *
+	 * @param t the ordinal of the term.
+	 * @return
+	 */
+	public double getP(int t)
+	{
+		return rankP[ranks[t]];
+	}
+
+	/**
+	 * Returns the probability of the term with the given rank.
+	 *
+	 * @param r
+	 * @return
+	 */
+	public double getPOfRank(int r)
+	{
+		return rankP[r];
+	}
+
+	/**
+	 * Returns the rank of the most informative common ancestor of the two
+	 * given terms.
+	 *
+	 * @param t1 the ordinal of the first term.
+	 * @param t2 the ordinal of the second term.
+	 * @return the rank or -1 if the terms don't share an ancestor.
+	 */
+	public int getMICARank(int t1, int t2)
+	{
+		return firstCommon(ancestorRanks, ancestorOffsets[t1], ancestorOffsets[t1 + 1],
+				ancestorRanks, ancestorOffsets[t2], ancestorOffsets[t2 + 1]);
+	}
+
+	/**
+	 * Returns the rank of the most informative ancestor that the given
+	 * term shares with a set of terms.
+	 *
+	 * @param t the ordinal of the term.
+	 * @param ranks the ancestor ranks of the set as returned by
+	 *  getAncestorRanks(int[]).
+	 * @return the rank or -1 if there is no shared ancestor.
+	 */
+	public int getMICARank(int t, int [] ranks)
+	{
+		return firstCommon(ancestorRanks, ancestorOffsets[t], ancestorOffsets[t + 1], ranks, 0, ranks.length);
+	}
+
+	/**
+	 * Returns the rank of the most informative ancestor that is shared by
+	 * two sets of terms.
+	 *
+	 * @param ranks1 the ancestor ranks of the first set as returned by
+	 *  getAncestorRanks(int[]).
+	 * @param ranks2 the ancestor ranks of the second set.
+	 * @return the rank or -1 if there is no shared ancestor.
+	 */
+	public int getMICARankOfRanks(int [] ranks1, int [] ranks2)
+	{
+		return firstCommon(ranks1, 0, ranks1.length, ranks2, 0, ranks2.length);
+	}
+
+	/**
+	 * Returns the first element of the given section that is marked.
+	 *
+	 * @return the element or -1 if none is marked.
+	 */
+	private static int firstMarked(int [] a, int i, int iEnd, int [] stamps, int stamp)
+	{
+		for (; i < iEnd; i++)
+		{
+			if (stamps[a[i]] == stamp)
+				return a[i];
+		}
+		return -1;
+	}
+
+	/**
+	 * Determines the most informative ancestor that each of the given
+	 * terms shares with a set of terms and sums up the weights of these
+	 * ancestors. This is the sum of the best matches of the terms if the
+	 * weights decrease with the ranks.
+	 *
+	 * @param terms the ordinals of the terms.
+	 * @param ranks the ancestor ranks of the set as returned by
+	 *  getAncestorRanks(int[]).
+	 * @param weights the weights indexed by ranks.
+	 * @return the sum, terms without a shared ancestor don't contribute.
+	 */
+	public double getBestMatchSum(int [] terms, int [] ranks, double [] weights)
+	{
+		Marks m = marks.get();
+		int [] stamps = m.stamps;
+		int stamp = m.newStamp();
+		for (int i = 0; i < ranks.length; i++)
+			stamps[ranks[i]] = stamp;
+
+		double sum = 0;
+		for (int i = 0; i < terms.length; i++)
+		{
+			int t = terms[i];
+			int r = firstMarked(ancestorRanks, ancestorOffsets[t], ancestorOffsets[t + 1], stamps, stamp);
+			if (r >= 0) sum += weights[r];
+		}
+		return sum;
+	}
+
+	/**
+	 * Determines the most informative common ancestor of all pairs of
+	 * terms of two sets and sums up the weights of these ancestors.
+	 *
+	 * @param terms1 the ordinals of the terms of the first set.
+	 * @param terms2 the ordinals of the terms of the second set.
+	 * @param weights the weights indexed by ranks.
+	 * @return the sum, pairs without a shared ancestor don't contribute.
+	 */
+	public double getPairSum(int [] terms1, int [] terms2, double [] weights)
+	{
+		Marks m = marks.get();
+		int [] stamps = m.stamps;
+
+		double sum = 0;
+		for (int i = 0; i < terms1.length; i++)
+		{
+			int t1 = terms1[i];
+			int stamp = m.newStamp();
+			for (int k = ancestorOffsets[t1]; k < ancestorOffsets[t1 + 1]; k++)
+				stamps[ancestorRanks[k]] = stamp;
+
+			for (int j = 0; j < terms2.length; j++)
+			{
+				int t2 = terms2[j];
+				int r = firstMarked(ancestorRanks, ancestorOffsets[t2], ancestorOffsets[t2 + 1], stamps, stamp);
+				if (r >= 0) sum += weights[r];
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns the most informative common ancestor of the two given terms.
+	 *
+	 * @param t1 the ordinal of the first term.
+	 * @param t2 the ordinal of the second term.
+	 * @return the ordinal of the common ancestor or -1 if the terms don't
+	 *  share an ancestor.
+	 */
+	public int getMICA(int t1, int t2)
+	{
+		int r = getMICARank(t1, t2);
+		if (r < 0) return -1;
+		return terms[r];
+	}
+
+	/**
+	 * Returns the minimum of the probabilities of the ancestors that are
+	 * shared by the two given terms.
+	 *
+	 * @param t1 the ordinal of the first term.
+	 * @param t2 the ordinal of the second term.
+	 * @return the minimum or 1.0 if the terms don't share an ancestor.
+	 */
+	public double getMinSharedP(int t1, int t2)
+	{
+		int r = getMICARank(t1, t2);
+		if (r < 0) return 1.0;
+		return Math.min(1.0, rankP[r]);
+	}
+
+	/**
+	 * Determines the minima of the probabilities of the ancestors that
+	 * are shared by many pairs of terms.
+	 *
+	 * @param t1 the ordinals of the first terms of the pairs.
+	 * @param t2 the ordinals of the second terms of the pairs.
+	 * @param result the array to which the minimum of the i-th pair is
+	 *  written at position i.
+	 */
+	public void getMinSharedP(int [] t1, int [] t2, double [] result)
+	{
+		if (t1.length != t2.length || result.length < t1.length)
+			throw new IllegalArgumentException("Lengths of the arrays don't match");
+
+		for (int i = 0; i < t1.length; i++)
+			result[i] = getMinSharedP(t1[i], t2[i]);
+	}
+
+	/**
+	 * Returns the ranks of the ancestors of the given set of terms, i.e.,
+	 * the union of their ancestor ranks.
+	 *
+	 * @param t the ordinals of the terms.
+	 * @return the ranks in ascending order.
+	 */
+	public int [] getAncestorRanks(int [] t)
+	{
+		int size = 0;
+		for (int i = 0; i < t.length; i++)
+			size += ancestorOffsets[t[i] + 1] - ancestorOffsets[t[i]];
+
+		int [] all = new int[size];
+		size = 0;
+		for (int i = 0; i < t.length; i++)
+		{
+			int from = ancestorOffsets[t[i]];
+			int length = ancestorOffsets[t[i] + 1] - from;
+			System.arraycopy(ancestorRanks, from, all, size, length);
+			size += length;
+		}
+		Arrays.sort(all);
+
+		/* Remove duplicates */
+		int unique = 0;
+		for (int i = 0; i < all.length; i++)
+		{
+			if (unique == 0 || all[unique - 1] != all[i])
+				all[unique++] = all[i];
+		}
+		return Arrays.copyOf(all, unique);
+	}
+
+	/**
+	 * Returns the minimum of the probabilities of the ancestors that are
+	 * shared by two sets of terms. This is the minimum of getMinSharedP()
+	 * over all pairs of terms of the two sets.
+	 *
+	 * @param ranks1 the ancestor ranks of the first set as returned by
+	 *  getAncestorRanks(int[]).
+	 * @param ranks2 the ancestor ranks of the second set.
+	 * @return the minimum or 1.0 if the sets don't share an ancestor.
+	 */
+	public double getMinSharedPOfRanks(int [] ranks1, int [] ranks2)
+	{
+		int r = getMICARankOfRanks(ranks1, ranks2);
+		if (r < 0) return 1.0;
+		return Math.min(1.0, rankP[r]);
+	}
+}
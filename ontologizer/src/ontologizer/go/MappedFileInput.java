@@ -0,0 +1,169 @@
+package ontologizer.go;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPInputStream;
+
+import ontologizer.linescanner.ByteBufferInputStream;
+
+/**
+ * A parser input for a local file that is memory mapped rather
+ * than read via a file stream. This is beneficial for large
+ * uncompressed files, whose lines are found by the line scanners
+ * directly within the mapping. Compressed files are supported as
+ * well, in which case only the reading of the compressed bytes
+ * benefits from the mapping.
+ *
+ * Files larger than 2 GiB are mapped in multiple segments. The mapping
+ * is released when the input is closed, which is required on some
+ * platforms before the file can be modified or deleted. The input must
+ * not be used after it has been closed.
+ *
+ * @author Sebastian Bauer
+ */
+public class MappedFileInput implements IParserInput
+{
+	/** Maximum size of a single mapped segment */
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	private String filename;
+	private RandomAccessFile raf;
+	private FileChannel fc;
+	private long size;
+	private MappedByteBuffer [] segments;
+	private ByteBufferInputStream bbis;
+	private InputStream is;
+
+	public MappedFileInput(String filename) throws IOException
+	{
+		this.filename = filename;
+
+		raf = new RandomAccessFile(filename, "r");
+		try
+		{
+			fc = raf.getChannel();
+			size = fc.size();
+
+			int numberOfSegments = (int)((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+			segments = new MappedByteBuffer[numberOfSegments];
+			for (int i = 0; i < numberOfSegments; i++)
+			{
+				long start = i * SEGMENT_SIZE;
+				segments[i] = fc.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+			}
+
+			bbis = new ByteBufferInputStream(segments);
+
+			if (size >= 2 && segments[0].get(0) == (byte)0x1f && segments[0].get(1) == (byte)0x8b)
+				is = new GZIPInputStream(bbis);
+			else
+				is = bbis;
+		} catch (IOException e)
+		{
+			raf.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public InputStream inputStream()
+	{
+		return is;
+	}
+
+	@Override
+	public void close()
+	{
+		/* Make sure that the segments are no longer accessed before they are unmapped */
+		try
+		{
+			is.close();
+		} catch (IOException e)
+		{
+		}
+
+		if (segments != null)
+		{
+			for (MappedByteBuffer segment : segments)
+				unmap(segment);
+			segments = null;
+		}
+
+		try
+		{
+			raf.close();
+		} catch (IOException e)
+		{
+		}
+	}
+
+	/**
+	 * Releases the mapping of the given buffer immediately rather than
+	 * when the buffer is garbage collected. There is no public API for
+	 * this, so it is done via reflection. If this fails, the mapping is
+	 * released by the garbage collector as usual.
+	 *
+	 * @param buf the buffer to be unmapped. It must not be accessed afterwards.
+	 */
+	private static void unmap(ByteBuffer buf)
+	{
+		try
+		{
+			/* Java 9 and later */
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buf);
+			return;
+		} catch (Exception e)
+		{
+		}
+
+		try
+		{
+			/* Java 8 and earlier */
+			Method cleanerMethod = buf.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buf);
+			if (cleaner != null)
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+		} catch (Exception e)
+		{
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Note that the size is truncated for files larger than 2 GiB.
+	 */
+	@Override
+	public int getSize()
+	{
+		return (int)Math.min(size, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Note that the position is truncated for files larger than 2 GiB.
+	 */
+	@Override
+	public int getPosition()
+	{
+		return (int)Math.min(bbis.getPosition(), Integer.MAX_VALUE);
+	}
+
+	@Override
+	public String getFilename()
+	{
+		return filename;
+	}
+}
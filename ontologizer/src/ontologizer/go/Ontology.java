@@ -3,6 +3,7 @@ package ontologizer.go;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -14,38 +15,9 @@ import java.util.logging.Logger;
 import sonumina.math.graph.DirectedGraph;
 import sonumina.math.graph.Edge;
 import sonumina.math.graph.SlimDirectedGraphView;
-import sonumina.math.graph.AbstractGraph.INeighbourGrabber;
 import sonumina.math.graph.AbstractGraph.IVisitor;
 import sonumina.math.graph.DirectedGraph.IDistanceVisitor;
 
-/**
- * An edge in the go graph
- *
- * @author sba
- */
-class OntologyEdge extends Edge<Term>
-{
-	/** Relation always to the parent (source) */
-	private TermRelation relation;
-
-	public void setRelation(TermRelation relation)
-	{
-		this.relation = relation;
-	}
-
-	public TermRelation getRelation()
-	{
-		return relation;
-	}
-
-	public OntologyEdge(Term source, Term dest, TermRelation relation)
-	{
-		super(source, dest);
-
-		this.relation = relation;
-	}
-}
-
 /**
  * Represents the whole ontology.
  *
@@ -77,7 +49,22 @@ public class Ontology implements Iterable<Term>
 	 * Terms often have alternative IDs (mostly from term merges). This map is used by
 	 * getTermIncludingAlternatives(String termIdString) and initialized there lazily.
 	 */
-	private HashMap<String, String> alternativeId2primaryId;
+	private volatile HashMap<String, String> alternativeId2primaryId;
+
+	/** The compact representation of the graph, built on demand */
+	private volatile CompactOntology compactOntology;
+
+	/** The slim view of the graph, built on demand */
+	private SlimDirectedGraphView<Term> slimGraphView;
+
+	/** The modification count of the graph when the slim view was built */
+	private int slimGraphViewModificationCount;
+
+	/** The slim view of the graph that is backed by a reachability index, built on demand */
+	private SlimDirectedGraphView<Term> compactSlimGraphView;
+
+	/** The modification count of the graph when the compact slim view was built */
+	private int compactSlimGraphViewModificationCount;
 
 	/**
 	 * Construct the GO Graph from the given container.
@@ -163,13 +150,80 @@ public class Ontology implements Iterable<Term>
 	}
 
 	/**
-	 * Returns a slim representation of the ontology.
+	 * Returns a slim representation of the ontology. The representation is
+	 * shared by subsequent calls as long as the graph is not modified, hence
+	 * it must not be modified.
+	 *
+	 * @return
+	 */
+	public synchronized SlimDirectedGraphView<Term> getSlimGraphView()
+	{
+		if (slimGraphView == null || slimGraphViewModificationCount != graph.getModificationCount())
+		{
+			slimGraphView = SlimDirectedGraphView.create(graph);
+			slimGraphViewModificationCount = graph.getModificationCount();
+		}
+		return slimGraphView;
+	}
+
+	/**
+	 * Returns a slim representation of the ontology that is backed by a
+	 * reachability index rather than by the full ancestor and descendant
+	 * arrays. The representation is shared by subsequent calls as long as
+	 * the graph is not modified.
+	 *
+	 * @return
+	 * @see SlimDirectedGraphView#createCompact(DirectedGraph)
+	 */
+	public synchronized SlimDirectedGraphView<Term> getCompactSlimGraphView()
+	{
+		if (compactSlimGraphView == null || compactSlimGraphViewModificationCount != graph.getModificationCount())
+		{
+			compactSlimGraphView = SlimDirectedGraphView.createCompact(graph);
+			compactSlimGraphViewModificationCount = graph.getModificationCount();
+		}
+		return compactSlimGraphView;
+	}
+
+	/**
+	 * Returns the compact representation of the ontology. The representation
+	 * is built on first use and rebuilt whenever the graph has been
+	 * modified.
+	 *
+	 * @return
+	 */
+	public CompactOntology getCompactOntology()
+	{
+		CompactOntology c = compactOntology;
+		if (c == null || c.getModificationCount() != graph.getModificationCount())
+		{
+			synchronized (this)
+			{
+				c = compactOntology;
+				if (c == null || c.getModificationCount() != graph.getModificationCount())
+				{
+					c = new CompactOntology(graph);
+					compactOntology = c;
+				}
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Returns the ordinal of the given term in the compact representation.
 	 *
+	 * @param c
+	 * @param id
 	 * @return
+	 * @throws IllegalArgumentException if the term is not part of the graph.
 	 */
-	public SlimDirectedGraphView<Term> getSlimGraphView()
+	private static int termIndex(CompactOntology c, TermID id)
 	{
-		return SlimDirectedGraphView.create(graph);
+		int t = c.getTermIndex(id);
+		if (t == -1)
+			throw new IllegalArgumentException("\"" + id + "\" could not be mapped to a known term!");
+		return t;
 	}
 
 	/**
@@ -319,17 +373,10 @@ public class Ontology implements Iterable<Term>
 	 */
 	public Set<TermID> getTermChildren(TermID termID)
 	{
-		Term goTerm;
+		CompactOntology c = getCompactOntology();
 		if (rootTerm.getID().id == termID.id)
-			goTerm = rootTerm;
-		else
-			goTerm = termContainer.get(termID);
-
-		HashSet<TermID> terms = new HashSet<TermID>();
-		Iterator<Edge<Term>> edgeIter = graph.getOutEdges(goTerm);
-		while (edgeIter.hasNext())
-			terms.add(edgeIter.next().getDest().getID());
-		return terms;
+			return c.getChildIDs(c.getTermIndex(rootTerm.getID()));
+		return c.getChildIDs(termIndex(c, termID));
 	}
 
 	/**
@@ -340,17 +387,10 @@ public class Ontology implements Iterable<Term>
 	 */
 	public Set<Term> getTermChildren(Term term)
 	{
-		Term goTerm;
+		CompactOntology c = getCompactOntology();
 		if (rootTerm.getID().id == term.getID().id)
-			goTerm = rootTerm;
-		else
-			goTerm = termContainer.get(term.getID());
-
-		HashSet<Term> terms = new HashSet<Term>();
-		Iterator<Edge<Term>> edgeIter = graph.getOutEdges(goTerm);
-		while (edgeIter.hasNext())
-			terms.add(edgeIter.next().getDest());
-		return terms;
+			return c.getChildTerms(c.getTermIndex(rootTerm.getID()));
+		return c.getChildTerms(termIndex(c, term.getID()));
 	}
 
 	/**
@@ -361,20 +401,11 @@ public class Ontology implements Iterable<Term>
 	 */
 	public Set<TermID> getTermParents(TermID goTermID)
 	{
-		HashSet<TermID> terms = new HashSet<TermID>();
 		if (rootTerm.getID().id == goTermID.id)
-			return terms;
-
-		Term goTerm;
-		if (goTermID.equals(rootTerm.getIDAsString()))
-			goTerm = rootTerm;
-		else
-			goTerm = termContainer.get(goTermID);
+			return Collections.emptySet();
 
-		Iterator<Edge<Term>> edgeIter = graph.getInEdges(goTerm);
-		while (edgeIter.hasNext())
-			terms.add(edgeIter.next().getSource().getID());
-		return terms;
+		CompactOntology c = getCompactOntology();
+		return c.getParentIDs(termIndex(c, goTermID));
 	}
 
 	/**
@@ -385,20 +416,11 @@ public class Ontology implements Iterable<Term>
 	 */
 	public Set<Term> getTermParents(Term term)
 	{
-		HashSet<Term> terms = new HashSet<Term>();
 		if (rootTerm.getID().id == term.getID().id)
-			return terms;
-
-		Term goTerm;
-		if (term.getID().equals(rootTerm.getIDAsString()))
-			goTerm = rootTerm;
-		else
-			goTerm = termContainer.get(term.getID());
+			return Collections.emptySet();
 
-		Iterator<Edge<Term>> edgeIter = graph.getInEdges(goTerm);
-		while (edgeIter.hasNext())
-			terms.add(edgeIter.next().getSource());
-		return terms;
+		CompactOntology c = getCompactOntology();
+		return c.getParentTerms(termIndex(c, term.getID()));
 	}
 
 
@@ -415,19 +437,20 @@ public class Ontology implements Iterable<Term>
 		if (rootTerm.getID().id == goTermID.id)
 			return terms;
 
-		Term goTerm;
-		if (goTermID.equals(rootTerm.getIDAsString()))
-			goTerm = rootTerm;
-		else
-			goTerm = termContainer.get(goTermID);
-
-		Iterator<Edge<Term>> edgeIter = graph.getInEdges(goTerm);
-		while (edgeIter.hasNext())
+		CompactOntology c = getCompactOntology();
+		int t = termIndex(c, goTermID);
+		for (int i = 0; i < c.getNumberOfParents(t); i++)
 		{
-			OntologyEdge t = (OntologyEdge)edgeIter.next();
-			terms.add(new ParentTermID(t.getSource().getID(),t.getRelation()));
+			TermID parent = c.getTerm(c.getParent(t, i)).getID();
+			int relations = c.getParentRelations(t, i);
+			if (CompactOntology.hasRelation(relations, null))
+				terms.add(new ParentTermID(parent, null));
+			for (TermRelation r : TermRelation.values())
+			{
+				if (CompactOntology.hasRelation(relations, r))
+					terms.add(new ParentTermID(parent, r));
+			}
 		}
-
 		return terms;
 	}
 
@@ -484,25 +507,11 @@ public class Ontology implements Iterable<Term>
 		 * We walk from the destination to the source against the graph
 		 * direction. Basically a breadth-depth search is done.
 		 */
-
-		final boolean [] pathExists = new boolean[1];
-		final Term source = termContainer.get(sourceID);
-		Term dest = termContainer.get(destID);
-
-		graph.bfs(dest, true, new IVisitor<Term>()
-		{
-			@Override
-			public boolean visited(Term vertex)
-			{
-				if (!vertex.equals(source))
-					return true;
-
-				pathExists[0] = true;
-				return false;
-			}
-		});
-
-		return pathExists[0];
+		CompactOntology c = getCompactOntology();
+		int source = c.getTermIndex(sourceID);
+		if (source == -1)
+			return false;
+		return c.isAncestor(source, termIndex(c, destID));
 	}
 
 	/**
@@ -532,26 +541,22 @@ public class Ontology implements Iterable<Term>
 	}
 
 	/**
-	 * Convert a collection of termids to a list of terms.
+	 * Convert a collection of termids to the ordinals of the compact representation.
 	 *
+	 * @param c
 	 * @param termIDSet
 	 * @return
 	 */
-	private ArrayList<Term> termIDsToTerms(Collection<TermID> termIDSet)
+	private int [] termIDsToIndices(CompactOntology c, Collection<TermID> termIDSet)
 	{
-		ArrayList<Term> termList = new ArrayList<Term>(termIDSet.size());
+		int [] indices = new int[termIDSet.size()];
+		int i = 0;
 		for (TermID id : termIDSet)
 		{
-			Term t;
-
-			if (isRootTerm(id)) t = rootTerm;
-			else t = termContainer.get(id);
-			if (t == null)
-				throw new IllegalArgumentException("\"" + id + "\" could not be mapped to a known term!");
-
-			termList.add(t);
+			if (isRootTerm(id)) id = rootTerm.getID();
+			indices[i++] = termIndex(c, id);
 		}
-		return termList;
+		return indices;
 	}
 
 	/**
@@ -567,7 +572,8 @@ public class Ontology implements Iterable<Term>
 	 */
 	public void walkToSource(Collection<TermID> termIDSet, IVisitingGOVertex vistingVertex)
 	{
-		graph.bfs(termIDsToTerms(termIDSet), true, vistingVertex);
+		CompactOntology c = getCompactOntology();
+		c.walk(termIDsToIndices(c, termIDSet), true, CompactOntology.ALL_RELATIONS, vistingVertex);
 	}
 
 	/**
@@ -582,20 +588,8 @@ public class Ontology implements Iterable<Term>
 	 */
 	public void walkToSource(Collection<TermID>  termIDSet, IVisitingGOVertex vistingVertex, final Set<TermRelation> relationsToFollow)
 	{
-		graph.bfs(termIDsToTerms(termIDSet), new INeighbourGrabber<Term>() {
-			public Iterator<Term> grabNeighbours(Term t)
-			{
-				Iterator<Edge<Term>> inIter = graph.getInEdges(t);
-				ArrayList<Term> termsToConsider = new ArrayList<Term>();
-				while (inIter.hasNext())
-				{
-					OntologyEdge edge = (OntologyEdge)inIter.next(); /* Ugly cast */
-					if (relationsToFollow.contains(edge.getRelation()))
-						termsToConsider.add(edge.getSource());
-				}
-				return termsToConsider.iterator();
-			}
-		}, vistingVertex);
+		CompactOntology c = getCompactOntology();
+		c.walk(termIDsToIndices(c, termIDSet), true, CompactOntology.getRelationMask(relationsToFollow), vistingVertex);
 	}
 
 	/**
@@ -630,7 +624,8 @@ public class Ontology implements Iterable<Term>
 	 */
 	public void walkToSinks(Collection<TermID> goTermIDSet, IVisitingGOVertex vistingVertex)
 	{
-		graph.bfs(termIDsToTerms(goTermIDSet), false, vistingVertex);
+		CompactOntology c = getCompactOntology();
+		c.walk(termIDsToIndices(c, goTermIDSet), false, CompactOntology.ALL_RELATIONS, vistingVertex);
 	}
 
 	/**
@@ -743,14 +738,16 @@ public class Ontology implements Iterable<Term>
 	}
 
 	private void setUpMappingAlternativeId2PrimaryId() {
-		alternativeId2primaryId = new HashMap<String, String>();
+		/* The map is published only once it is complete, as terms may be
+		 * looked up concurrently */
+		HashMap<String, String> map = new HashMap<String, String>();
 		for (Term t : this.termContainer){
 			String primaryId = t.getIDAsString();
 			for (TermID alternativeTermId : t.getAlternatives()){
-				alternativeId2primaryId.put(alternativeTermId.toString(), primaryId);
+				map.put(alternativeTermId.toString(), primaryId);
 			}
 		}
-
+		alternativeId2primaryId = map;
 	}
 
 	/**
@@ -863,48 +860,20 @@ public class Ontology implements Iterable<Term>
 	 * @param term the inducing term.
 	 * @return
 	 */
-	public Set<TermID> getTermsOfInducedGraph(final TermID rootTermID, TermID termID)
+	public Set<TermID> getTermsOfInducedGraph(TermID rootTermID, TermID termID)
 	{
-		HashSet<TermID> nodeSet = new HashSet<TermID>();
+		CompactOntology c = getCompactOntology();
+		int t = termIndex(c, isRootTerm(termID) ? rootTerm.getID() : termID);
 
-		/**
-		 * Visitor which simply add all nodes to the nodeSet.
-		 *
-		 * @author Sebastian Bauer
-		 */
-		class Visitor implements IVisitingGOVertex
+		if (rootTermID != null && !isRootTerm(rootTermID))
 		{
-			public Ontology graph;
-			public HashSet<TermID> nodeSet;
-
-			public boolean visited(Term term)
-			{
-				if (rootTermID != null && !graph.isRootTerm(rootTermID))
-				{
-					/*
-					 * Only add the term if there exists a path
-					 * from the requested root term to the visited
-					 * term.
-					 *
-					 * TODO: Instead of existsPath() implement
-					 * walkToGoTerm() to speed up the whole stuff
-					 */
-					if (term.getID().equals(rootTermID) || graph.existsPath(rootTermID, term.getID()))
-						nodeSet.add(term.getID());
-				} else
-					nodeSet.add(term.getID());
-
-				return true;
-			}
-		};
-
-		Visitor visitor = new Visitor();
-		visitor.nodeSet = nodeSet;
-		visitor.graph = this;
-
-		walkToSource(termID, visitor);
-
-		return nodeSet;
+			/* Only terms to which a path from the requested root term exists are included */
+			int root = c.getTermIndex(rootTermID);
+			if (root == -1)
+				return new HashSet<TermID>();
+			return c.getInducedTermIDs(root, t);
+		}
+		return c.getInducedTermIDs(-1, t);
 	}
 
 	/**
@@ -926,20 +895,24 @@ public class Ontology implements Iterable<Term>
 	 */
 	public Collection<TermID> getSharedParents(TermID t1, TermID t2)
 	{
-		final Set<TermID> p1 = getTermsOfInducedGraph(null,t1);
-
-		final ArrayList<TermID> sharedParents = new ArrayList<TermID>();
-
-		walkToSource(t2, new IVisitingGOVertex()
+		CompactOntology c = getCompactOntology();
+		int [] p1 = c.getAncestors(termIndex(c, t1));
+		int [] p2 = c.getAncestors(termIndex(c, t2));
+
+		/* Intersect the sorted ancestors */
+		ArrayList<TermID> sharedParents = new ArrayList<TermID>();
+		int i = 0, j = 0;
+		while (i < p1.length && j < p2.length)
 		{
-			public boolean visited(Term t2)
+			if (p1[i] < p2[j]) i++;
+			else if (p1[i] > p2[j]) j++;
+			else
 			{
-				if (p1.contains(t2.getID()))
-					sharedParents.add(t2.getID());
-				return true;
+				sharedParents.add(c.getTerm(p1[i]).getID());
+				i++;
+				j++;
 			}
-		});
-
+		}
 		return sharedParents;
 	}
 
@@ -0,0 +1,31 @@
+package ontologizer.go;
+
+import sonumina.math.graph.Edge;
+
+/**
+ * An edge in the go graph
+ *
+ * @author sba
+ */
+class OntologyEdge extends Edge<Term>
+{
+	/** Relation always to the parent (source) */
+	private TermRelation relation;
+
+	public void setRelation(TermRelation relation)
+	{
+		this.relation = relation;
+	}
+
+	public TermRelation getRelation()
+	{
+		return relation;
+	}
+
+	public OntologyEdge(Term source, Term dest, TermRelation relation)
+	{
+		super(source, dest);
+
+		this.relation = relation;
+	}
+}
@@ -327,7 +327,7 @@ public class Term implements Serializable, ITerm
 	 *
 	 * @param currentObsolete
 	 */
-	protected void setObsolete(boolean currentObsolete) {
+	public void setObsolete(boolean currentObsolete) {
 		obsolete = currentObsolete;
 	}
 
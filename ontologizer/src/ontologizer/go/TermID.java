@@ -200,6 +200,18 @@ public class TermID implements Serializable
 		return nextId;
 	}
 
+	/**
+	 * Returns whether integer ids have been generated for non-numeric ids
+	 * in this process. Such ids depend on the order in which the
+	 * strings were encountered, so they must not be persisted.
+	 *
+	 * @return whether any integer id has been generated.
+	 */
+	public static boolean hasGeneratedIds()
+	{
+		return nextId != Integer.MAX_VALUE;
+	}
+
 	/**
 	 * Returns the term's prefix.
 	 *
@@ -2,11 +2,19 @@ package ontologizer.linescanner;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * This is a simple class that can be used to read an input stream
  * in byte representation in a line-based manner.
  *
+ * If the input stream is a {@link ByteBufferInputStream}, its buffers
+ * are scanned in place. Lines of buffers that are backed by an array
+ * are then passed to {@link #newLine(byte[], int, int)} without copying
+ * them. Other buffers, e.g., memory mapped ones, are copied line by
+ * line, which are the only copies that are made.
+ *
  * @author Sebastian Bauer
  */
 abstract public class AbstractByteLineScanner
@@ -18,6 +26,12 @@ abstract public class AbstractByteLineScanner
 
 	byte [] byteBuf = new byte[2*BUF_SIZE];
 
+	/** The array that holds the bytes reported by availableBuffer() */
+	private byte [] availableBytes = byteBuf;
+
+	/** Number of bytes of an incomplete line in byteBuf when scanning buffers */
+	private int partial;
+
 	private byte [] pushedBytes;
 	private int pushedCurrent = -1;
 
@@ -28,6 +42,12 @@ abstract public class AbstractByteLineScanner
 
 	public void scan() throws IOException
 	{
+		if (is instanceof ByteBufferInputStream)
+		{
+			scanBuffers((ByteBufferInputStream)is);
+			return;
+		}
+
 		int read;
 		int read_offset = 0;
 
@@ -60,6 +80,137 @@ abstract public class AbstractByteLineScanner
 			newLine(byteBuf, 0, read_offset);
 	}
 
+	/**
+	 * Scan the buffers of the given stream in place. The positions of the
+	 * buffers are advanced line by line, so the position of the stream
+	 * reflects the progress and is right behind the last line if the
+	 * scanning has been aborted.
+	 *
+	 * @param bbis
+	 */
+	private void scanBuffers(ByteBufferInputStream bbis)
+	{
+		if (pushedBytes != null && pushedCurrent < pushedBytes.length)
+		{
+			ByteBuffer pushed = ByteBuffer.wrap(pushedBytes, pushedCurrent, pushedBytes.length - pushedCurrent);
+			pushedCurrent = pushedBytes.length;
+			if (!scanBuffer(pushed))
+			{
+				availableBytes = pushedBytes;
+				availableStart = pushed.position();
+				available = pushed.remaining();
+				return;
+			}
+		}
+
+		ByteBuffer buf;
+		while ((buf = bbis.segment()) != null)
+		{
+			if (!scanBuffer(buf))
+				return;
+		}
+
+		if (partial != 0)
+			newLine(byteBuf, 0, partial);
+	}
+
+	/**
+	 * Scan the remaining bytes of the given buffer. An incomplete line at
+	 * the end of the buffer is kept in byteBuf.
+	 *
+	 * @param buf
+	 * @return false if the scanning has been aborted.
+	 */
+	private boolean scanBuffer(ByteBuffer buf)
+	{
+		int lineStart = buf.position();
+		int limit = buf.limit();
+		int pos;
+
+		while ((pos = indexOfNewLine(buf, lineStart, limit)) != -1)
+		{
+			boolean cont;
+			if (partial == 0 && buf.hasArray())
+			{
+				cont = newLine(buf.array(), buf.arrayOffset() + lineStart, pos - lineStart);
+			} else
+			{
+				append(buf, lineStart, pos - lineStart);
+				cont = newLine(byteBuf, 0, partial);
+				partial = 0;
+			}
+			lineStart = pos + 1;
+			buf.position(lineStart);
+			if (!cont)
+				return false;
+		}
+
+		append(buf, lineStart, limit - lineStart);
+		buf.position(limit);
+		return true;
+	}
+
+	/**
+	 * Find the next new line character in the given buffer. Eight bytes
+	 * are tested at once, which is considerably faster than testing single
+	 * bytes, in particular for direct buffers.
+	 *
+	 * @param buf
+	 * @param start
+	 * @param limit
+	 * @return the absolute index of the new line character or -1 if there is none.
+	 */
+	private static int indexOfNewLine(ByteBuffer buf, int start, int limit)
+	{
+		int pos = start;
+
+		/* Little endian order makes the first byte the least significant one,
+		 * the first match is therefore never a false positive */
+		ByteOrder order = buf.order();
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+		try
+		{
+			for (; pos + 8 <= limit; pos += 8)
+			{
+				long x = buf.getLong(pos) ^ 0x0a0a0a0a0a0a0a0aL;
+				long t = (x - 0x0101010101010101L) & ~x & 0x8080808080808080L;
+				if (t != 0)
+					return pos + (Long.numberOfTrailingZeros(t) >>> 3);
+			}
+		} finally
+		{
+			buf.order(order);
+		}
+
+		for (; pos < limit; pos++)
+		{
+			if (buf.get(pos) == '\n')
+				return pos;
+		}
+		return -1;
+	}
+
+	/**
+	 * Append len bytes of the given buffer starting at start to the
+	 * incomplete line in byteBuf.
+	 *
+	 * @param buf
+	 * @param start
+	 * @param len
+	 */
+	private void append(ByteBuffer buf, int start, int len)
+	{
+		if (partial + len > byteBuf.length)
+		{
+			byte [] newByteBuf = new byte[Math.max(byteBuf.length * 2, partial + len)];
+			System.arraycopy(byteBuf, 0, newByteBuf, 0, partial);
+			byteBuf = newByteBuf;
+		}
+		buf.position(start);
+		buf.get(byteBuf, partial, len);
+		partial += len;
+	}
+
 	/**
 	 * Read next len bytes and copy them starting at off.
 	 *
@@ -99,7 +250,7 @@ abstract public class AbstractByteLineScanner
 	 */
 	public byte [] availableBuffer() {
 		byte [] b = new byte[available];
-		System.arraycopy(byteBuf, availableStart, b, 0, available);
+		System.arraycopy(availableBytes, availableStart, b, 0, available);
 		return b;
 	}
 
@@ -0,0 +1,145 @@
+package ontologizer.linescanner;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream that reads from a sequence of byte buffers, e.g.,
+ * the segments of a memory mapped file. Reading uses the bulk get
+ * operations of the buffers, so no system calls are involved and
+ * the bytes are copied only once directly into the destination.
+ * {@link AbstractByteLineScanner} recognizes this stream and scans
+ * the buffers in place.
+ *
+ * The buffers are not modified, i.e., reading operates on
+ * duplicates of them.
+ *
+ * @author Sebastian Bauer
+ */
+public class ByteBufferInputStream extends InputStream
+{
+	/** The segments */
+	private ByteBuffer [] buffers;
+
+	/** The initial positions of the segments */
+	private int [] starts;
+
+	/** Index of the current segment */
+	private int current;
+
+	/** Number of bytes of the segments before the current one */
+	private long consumed;
+
+	/**
+	 * Constructs the input stream.
+	 *
+	 * @param buffers the buffers that are read in the given order.
+	 */
+	public ByteBufferInputStream(ByteBuffer [] buffers)
+	{
+		this.buffers = new ByteBuffer[buffers.length];
+		this.starts = new int[buffers.length];
+		for (int i = 0; i < buffers.length; i++)
+		{
+			this.buffers[i] = buffers[i].duplicate();
+			this.starts[i] = buffers[i].position();
+		}
+	}
+
+	/**
+	 * Advance to the next segment that has some bytes left. Bytes
+	 * that are consumed by advancing the position of the returned
+	 * buffer count as read. This allows {@link AbstractByteLineScanner}
+	 * to scan the segments in place.
+	 *
+	 * @return the current segment or null if all bytes have been read.
+	 */
+	ByteBuffer segment()
+	{
+		while (current < buffers.length)
+		{
+			if (buffers[current].hasRemaining())
+				return buffers[current];
+			consumed += buffers[current].position() - starts[current];
+			current++;
+		}
+		return null;
+	}
+
+	@Override
+	public int read()
+	{
+		ByteBuffer buf = segment();
+		if (buf == null)
+			return -1;
+		return buf.get() & 0xff;
+	}
+
+	@Override
+	public int read(byte [] b, int off, int len)
+	{
+		if (len == 0)
+			return 0;
+
+		int read = 0;
+		ByteBuffer buf;
+
+		while (read < len && (buf = segment()) != null)
+		{
+			int l = Math.min(len - read, buf.remaining());
+			buf.get(b, off + read, l);
+			read += l;
+		}
+
+		if (read == 0)
+			return -1;
+		return read;
+	}
+
+	@Override
+	public long skip(long n)
+	{
+		long skipped = 0;
+		ByteBuffer buf;
+
+		while (skipped < n && (buf = segment()) != null)
+		{
+			int l = (int)Math.min(n - skipped, buf.remaining());
+			buf.position(buf.position() + l);
+			skipped += l;
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available()
+	{
+		ByteBuffer buf = segment();
+		if (buf == null)
+			return 0;
+		return buf.remaining();
+	}
+
+	/**
+	 * Drops the buffers, so that the stream behaves as if all bytes had been
+	 * read. This allows the owner of the buffers to release them.
+	 */
+	@Override
+	public void close()
+	{
+		consumed = getPosition();
+		buffers = new ByteBuffer[0];
+		starts = new int[0];
+		current = 0;
+	}
+
+	/**
+	 * @return the number of bytes that have been consumed so far.
+	 */
+	public long getPosition()
+	{
+		if (current < buffers.length)
+			return consumed + buffers[current].position() - starts[current];
+		return consumed;
+	}
+}
@@ -55,7 +55,6 @@ public class KSubsetSampler<T>
 		}
 		// this.objects.addAll(objects);
 		this.nObj = this.objects.size();
-		this.hyperg = new Hypergeometric();
 		this.rnd = new Random();
 	}
 
@@ -69,7 +68,6 @@ public class KSubsetSampler<T>
 	{
 		this.objects = new ArrayList<T>(coll);
 		this.nObj = coll.size();
-		this.hyperg = new Hypergeometric();
 		this.rnd = rnd;
 	}
 
@@ -129,6 +127,10 @@ public class KSubsetSampler<T>
 			return samples;
 		}
 
+		/* Only needed here, so we create it lazily */
+		if (hyperg == null)
+			hyperg = new Hypergeometric();
+
 		double logRejectProb = Math.log(n) - hyperg.logfact(this.nObj)
 				+ hyperg.logfact(this.nObj - k);
 
@@ -6,6 +6,11 @@
  */
 package ontologizer.set;
 
+import ontologizer.association.AssociationContainer;
+import ontologizer.enumeration.GOTermBitsetCounter;
+import ontologizer.enumeration.TermAnnotationIndex;
+import ontologizer.go.Ontology;
+
 /**
  * This class represents the whole population. It inherits from
  * StudySet
@@ -14,6 +19,9 @@ package ontologizer.set;
  */
 public class PopulationSet extends StudySet
 {
+	/** Cached GOTermBitsetCounter */
+	private GOTermBitsetCounter bitsetCounter;
+
 	/**
 	 * Constructs the population set.
 	 */
@@ -34,4 +42,29 @@ public class PopulationSet extends StudySet
 
 		setName(name);
 	}
+
+	/**
+	 * Returns the counter that counts the annotations of study sets with
+	 * respect to this population. Multiple calls to this method are fast,
+	 * if the gene set has not been changed in-between, i.e., the counter
+	 * is shared by all calculations of the population.
+	 *
+	 * @param graph
+	 * @param associationContainer
+	 * @return the counter
+	 */
+	public synchronized GOTermBitsetCounter getBitsetCounter(Ontology graph, AssociationContainer associationContainer)
+	{
+		TermAnnotationIndex index = TermAnnotationIndex.get(graph, associationContainer, null);
+		if (bitsetCounter == null || bitsetCounter.getIndex() != index || bitsetCounter.getAssociationContainer() != associationContainer)
+			bitsetCounter = new GOTermBitsetCounter(index, associationContainer, this);
+		return bitsetCounter;
+	}
+
+	@Override
+	public synchronized void resetCounterAndEnumerator()
+	{
+		super.resetCounterAndEnumerator();
+		bitsetCounter = null;
+	}
 }
@@ -11,6 +11,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -18,9 +19,11 @@ import java.util.logging.Logger;
 import ontologizer.association.Association;
 import ontologizer.association.AssociationContainer;
 import ontologizer.association.Gene2Associations;
+import ontologizer.association.GeneNameIndex;
 import ontologizer.enumeration.GOTermCounter;
 import ontologizer.enumeration.GOTermEnumerator;
 import ontologizer.enumeration.GOTermEnumerator.GOTermAnnotatedGenes;
+import ontologizer.enumeration.TermAnnotationIndex;
 import ontologizer.filter.GeneFilter;
 import ontologizer.go.Ontology;
 import ontologizer.go.Term;
@@ -65,6 +68,9 @@ public class StudySet implements Iterable<ByteString>
 	/** Cached GOTermEnumerator */
 	private GOTermEnumerator goTermEnumerator;
 
+	/** The frozen enumerator of the population from which enumerators are derived (may be null) */
+	private GOTermEnumerator populationEnumerator;
+
 	/** The current random ID. Used for unique study set names */
 	private int randomID = 0;
 
@@ -184,12 +190,62 @@ public class StudySet implements Iterable<ByteString>
 	 * collector to free the enumerator and counter associated
 	 * memory.
 	 */
-	public void resetCounterAndEnumerator()
+	public synchronized void resetCounterAndEnumerator()
 	{
 		goTermCounter = null;
 		goTermEnumerator = null;
 	}
 
+	/**
+	 * Returns the cached enumerator or, if terms weren't already annotated,
+	 * a new enumerator that is not kept in the cache.
+	 *
+	 * @param graph
+	 * @param associations
+	 * @return
+	 */
+	private synchronized GOTermEnumerator enumerateGOTermsTransiently(Ontology graph, AssociationContainer associations)
+	{
+		if (goTermEnumerator != null) return goTermEnumerator;
+
+		GOTermEnumerator enumerator = enumerateGOTerms(graph, associations);
+		goTermEnumerator = null;
+		return enumerator;
+	}
+
+	/**
+	 * Sets the enumerator of a population that contains the genes of this
+	 * set. If the enumerator is frozen, subsequent enumerations of this set
+	 * are derived from it rather than built from scratch, which pays off
+	 * when many sets of the same population are enumerated.
+	 *
+	 * @param populationEnumerator the enumerator or null.
+	 * @see GOTermEnumerator#freeze()
+	 */
+	public synchronized void setPopulationEnumerator(GOTermEnumerator populationEnumerator)
+	{
+		this.populationEnumerator = populationEnumerator;
+	}
+
+	/**
+	 * Passes the cached enumerator of this set to the given set, which
+	 * is supposed to be a subset, if it is frozen.
+	 *
+	 * @param subset
+	 * @return the subset
+	 */
+	private StudySet inheritEnumerator(StudySet subset)
+	{
+		GOTermEnumerator enumerator;
+		synchronized (this)
+		{
+			enumerator = goTermEnumerator;
+		}
+		if (subset != null && enumerator != null && enumerator.isFrozen())
+			subset.setPopulationEnumerator(enumerator);
+		return subset;
+	}
+
 	/**
 	 * Add an additional gene to the study set.
 	 *
@@ -259,10 +315,11 @@ public class StudySet implements Iterable<ByteString>
 	{
 		/* This will be filled with unique genes */
 		HashMap<ByteString,ItemAttribute> uniqueGenes = new HashMap<ByteString,ItemAttribute>();
+		GeneNameIndex nameIndex = associationContainer.getNameIndex();
 
 		for (ByteString geneName : gene2Attribute.keySet())
 		{
-			Gene2Associations gene2Association = associationContainer.get(geneName);
+			Gene2Associations gene2Association = nameIndex.get(geneName);
 			if (gene2Association != null)
 			{
 				boolean add;
@@ -306,19 +363,18 @@ public class StudySet implements Iterable<ByteString>
 		int numObjectSymbol = 0;
 		int numObjectID = 0;
 		int numSynonyms = 0;
+		GeneNameIndex nameIndex = associationContainer.getNameIndex();
 
 		/* Iterate over all gene names and put those who doesn't have an association
 		 * into the unannotatedGeneNames list */
 		for (ByteString geneName : gene2Attribute.keySet())
 		{
-			Gene2Associations gene2Association = associationContainer.get(geneName);
-			if (gene2Association == null)
-				unannotatedGeneNames.add(geneName);
-			else
+			switch (nameIndex.getKind(geneName))
 			{
-				if (associationContainer.isObjectSymbol(geneName)) numObjectSymbol++;
-				else if (associationContainer.isObjectID(geneName)) numObjectID++;
-				else if (associationContainer.isSynonym(geneName)) numSynonyms++;
+				case	-1: unannotatedGeneNames.add(geneName); break;
+				case	GeneNameIndex.OBJECT_SYMBOL: numObjectSymbol++; break;
+				case	GeneNameIndex.OBJECT_ID: numObjectID++; break;
+				case	GeneNameIndex.SYNONYM: numSynonyms++; break;
 			}
 		}
 
@@ -348,11 +404,12 @@ public class StudySet implements Iterable<ByteString>
 		if (goTermCounter != null) return goTermCounter;
 
 		goTermCounter =  new GOTermCounter(graph);
+		GeneNameIndex nameIndex = associationContainer.getNameIndex();
 
 		/* Iterate over all gene names and add their annotations to the goTermCounter */
 		for (ByteString geneName : gene2Attribute.keySet())
 		{
-			Gene2Associations gene2Association = associationContainer.get(geneName);
+			Gene2Associations gene2Association = nameIndex.get(geneName);
 			if (gene2Association != null)
 				goTermCounter.add(gene2Association.getAssociations());
 		}
@@ -387,15 +444,12 @@ public class StudySet implements Iterable<ByteString>
 		/* Return cached enumerator if available */
 		if (goTermEnumerator != null) return goTermEnumerator;
 
-		goTermEnumerator =  new GOTermEnumerator(graph);
-
-		/* Iterate over all gene names and add their annotations to the goTermCounter */
-		for (ByteString geneName : gene2Attribute.keySet())
-		{
-			Gene2Associations geneAssociations = associationContainer.get(geneName);
-			if (geneAssociations != null)
-				goTermEnumerator.push(geneAssociations,evidences);
-		}
+		/* The index is shared among all sets that use the same associations */
+		TermAnnotationIndex index = TermAnnotationIndex.get(graph, associationContainer, evidences);
+		if (populationEnumerator != null)
+			goTermEnumerator = index.enumerate(populationEnumerator, gene2Attribute.keySet(), associationContainer);
+		else
+			goTermEnumerator = index.enumerate(gene2Attribute.keySet(), associationContainer);
 
 		if (remover != null)
 			goTermEnumerator.removeTerms(remover);
@@ -426,7 +480,24 @@ public class StudySet implements Iterable<ByteString>
 	{
 		StudySetSampler sampler = new StudySetSampler(this);
 
-		return sampler.sampleRandomStudySet(desiredSize);
+		return inheritEnumerator(sampler.sampleRandomStudySet(desiredSize));
+	}
+
+	/**
+	 * Generate a studyset which contains desiredSize random
+	 * selected genes of the population.
+	 *
+	 * @param desiredSize specifies the desired size of
+	 *        the studyset.
+	 * @param rnd the source of randomness.
+	 *
+	 * @return the generated random studyset.
+	 */
+	public StudySet generateRandomStudySet(int desiredSize, Random rnd)
+	{
+		StudySetSampler sampler = new StudySetSampler(this, rnd);
+
+		return inheritEnumerator(sampler.sampleRandomStudySet(desiredSize));
 	}
 
 	public void setName(String newStudySetName)
@@ -443,16 +514,7 @@ public class StudySet implements Iterable<ByteString>
 	 */
 	public void writeMinimumSubsumerMatrix(final Ontology graph,  AssociationContainer associations, File file)
 	{
-		GOTermEnumerator enumerator = goTermEnumerator;
-
-		/* If terms weren't already annotated do it now, but
-		 * remove the local reference then
-		 */
-		if (enumerator == null)
-		{
-			enumerator = enumerateGOTerms(graph,associations);
-			goTermEnumerator = null;
-		}
+		GOTermEnumerator enumerator = enumerateGOTermsTransiently(graph, associations);
 
 		class ParentFetcher implements IVisitingGOVertex
 		{
@@ -564,16 +626,7 @@ public class StudySet implements Iterable<ByteString>
 	 */
 	public void writeTermAnnotatedGenes(Ontology graph, AssociationContainer associations, File file)
 	{
-		GOTermEnumerator enumerator = goTermEnumerator;
-
-		/* If terms weren't already annotated do it now, but
-		 * remove the local reference then
-		 */
-		if (enumerator == null)
-		{
-			enumerator = enumerateGOTerms(graph,associations);
-			goTermEnumerator = null;
-		}
+		GOTermEnumerator enumerator = enumerateGOTermsTransiently(graph, associations);
 
 		try
 		{
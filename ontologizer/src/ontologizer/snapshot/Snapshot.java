@@ -0,0 +1,619 @@
+package ontologizer.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import ontologizer.association.Association;
+import ontologizer.association.AssociationContainer;
+import ontologizer.go.Namespace;
+import ontologizer.go.ParentTermID;
+import ontologizer.go.Subset;
+import ontologizer.go.Synonym;
+import ontologizer.go.Term;
+import ontologizer.go.TermContainer;
+import ontologizer.go.TermID;
+import ontologizer.go.TermRelation;
+import ontologizer.go.TermXref;
+import ontologizer.types.ByteString;
+
+/**
+ * Reads and writes binary snapshots of parsed terms and associations.
+ * A snapshot is much faster to load than the original text files as
+ * no tokenizing is necessary and all data is stored in primitive
+ * columns that are read in bulk from a memory mapped file.
+ *
+ * Each snapshot carries a key that is supplied by the caller and that
+ * should identify the input from which the snapshot was created (e.g.,
+ * a checksum of the input files). A snapshot is only read if the key
+ * and the format version match.
+ *
+ * The ontology edges are stored as parent columns of the terms (including
+ * the relation type) and the alternative ids as alternative columns, the
+ * Ontology and the alternative id mapping are derived from these as
+ * usual.
+ */
+public class Snapshot
+{
+	/** The magic bytes at the start of every snapshot */
+	static final byte [] MAGIC = new byte[]{'O','N','T','O','S','N','A','P'};
+
+	/** The version of the format. Snapshots of other versions are ignored. */
+	static final int VERSION = 1;
+
+	/** Snapshot kind for terms */
+	static final int KIND_TERMS = 1;
+
+	/** Snapshot kind for associations */
+	static final int KIND_ASSOCIATIONS = 2;
+
+	/* Term flags */
+	private static final int FLAG_OBSOLETE = 1 << 0;
+	private static final int FLAG_LAY_LABEL = 1 << 1;
+	private static final int FLAG_ALTERNATIVES = 1 << 2;
+	private static final int FLAG_EQUIVALENTS = 1 << 3;
+
+	/* Synonym flags */
+	private static final int SYNONYM_EXACT = 1 << 0;
+	private static final int SYNONYM_BROAD = 1 << 1;
+	private static final int SYNONYM_RELATED = 1 << 2;
+	private static final int SYNONYM_NARROW = 1 << 3;
+	private static final int SYNONYM_LAYPERSON = 1 << 4;
+
+	private static final TermRelation [] RELATIONS = TermRelation.values();
+
+	/**
+	 * A simple growable list of ints.
+	 */
+	private static class IntList
+	{
+		private int [] data = new int[16];
+		private int size;
+
+		public void add(int value)
+		{
+			if (size == data.length)
+			{
+				int [] newData = new int[data.length * 2];
+				System.arraycopy(data, 0, newData, 0, size);
+				data = newData;
+			}
+			data[size++] = value;
+		}
+
+		public int size()
+		{
+			return size;
+		}
+
+		public byte [] toBytes()
+		{
+			byte [] bytes = new byte[size];
+			for (int i = 0; i < size; i++)
+				bytes[i] = (byte)data[i];
+			return bytes;
+		}
+	}
+
+	/**
+	 * Columns of a variable number of term ids per term.
+	 */
+	private static class TermIDColumns
+	{
+		private int [] starts;
+		private IntList prefixes = new IntList();
+		private IntList ids = new IntList();
+
+		public TermIDColumns(int numberOfTerms)
+		{
+			starts = new int[numberOfTerms + 1];
+		}
+
+		public void add(SnapshotWriter writer, int term, TermID [] termIDs)
+		{
+			starts[term] = ids.size();
+			starts[term + 1] = ids.size();
+			if (termIDs == null)
+				return;
+			for (TermID tid : termIDs)
+			{
+				prefixes.add(writer.string(tid.getPrefix().toString()));
+				ids.add(tid.id);
+			}
+			starts[term + 1] = ids.size();
+		}
+
+		public void write(SnapshotWriter writer) throws IOException
+		{
+			writer.writeInts(starts);
+			writer.writeInts(prefixes.data, prefixes.size);
+			writer.writeInts(ids.data, ids.size);
+		}
+	}
+
+	/**
+	 * Read term id columns that have been written via TermIDColumns.
+	 *
+	 * @param reader
+	 * @param numberOfTerms
+	 * @return for each term the list of term ids.
+	 */
+	private static ArrayList<ArrayList<TermID>> readTermIDColumns(SnapshotReader reader, int numberOfTerms)
+	{
+		int [] starts = reader.readInts(numberOfTerms + 1);
+		int [] prefixes = reader.readInts(starts[numberOfTerms]);
+		int [] ids = reader.readInts(starts[numberOfTerms]);
+
+		ArrayList<ArrayList<TermID>> columns = new ArrayList<ArrayList<TermID>>(numberOfTerms);
+		for (int i = 0; i < numberOfTerms; i++)
+		{
+			ArrayList<TermID> list = new ArrayList<TermID>(starts[i + 1] - starts[i]);
+			for (int j = starts[i]; j < starts[i + 1]; j++)
+				list.add(new TermID(reader.prefix(prefixes[j]), ids[j]));
+			columns.add(list);
+		}
+		return columns;
+	}
+
+	/**
+	 * Writes a snapshot of the given terms.
+	 *
+	 * @param file the file to which the snapshot is written
+	 * @param key the key that identifies the input of the terms
+	 * @param terms the terms
+	 * @throws IOException
+	 * @throws IllegalArgumentException if integer ids have been generated for
+	 *  non-numeric ids, which are specific to the current process.
+	 */
+	public static void writeTerms(File file, long key, TermContainer terms) throws IOException
+	{
+		if (TermID.hasGeneratedIds())
+			throw new IllegalArgumentException("Term ids that are generated for non-numeric ids cannot be stored in a snapshot");
+
+		SnapshotWriter writer = new SnapshotWriter();
+
+		int n = terms.termCount();
+		int [] idPrefixes = new int[n];
+		int [] ids = new int[n];
+		int [] names = new int[n];
+		int [] namespaces = new int[n];
+		int [] definitions = new int[n];
+		int [] replacedBys = new int[n];
+		byte [] flags = new byte[n];
+
+		int [] parentStarts = new int[n + 1];
+		IntList parentPrefixes = new IntList();
+		IntList parentIDs = new IntList();
+		IntList parentRelations = new IntList();
+
+		TermIDColumns alternatives = new TermIDColumns(n);
+		TermIDColumns equivalents = new TermIDColumns(n);
+
+		int [] synonymStarts = new int[n + 1];
+		IntList synonymLabels = new IntList();
+		IntList synonymFlags = new IntList();
+
+		int [] intersectionStarts = new int[n + 1];
+		IntList intersections = new IntList();
+
+		int [] subsetStarts = new int[n + 1];
+		IntList subsets = new IntList();
+
+		int [] xrefStarts = new int[n + 1];
+		IntList xrefDatabases = new IntList();
+		IntList xrefIDs = new IntList();
+		IntList xrefNames = new IntList();
+
+		int i = 0;
+		for (Term t : terms)
+		{
+			idPrefixes[i] = writer.string(t.getID().getPrefix().toString());
+			ids[i] = t.getID().id;
+			names[i] = writer.string(t.getName());
+			namespaces[i] = writer.string(t.getNamespace().getName());
+			definitions[i] = writer.string(t.getDefinition());
+			replacedBys[i] = writer.string(t.getReplacedBy());
+
+			int f = 0;
+			if (t.isObsolete()) f |= FLAG_OBSOLETE;
+			if (t.isLayLabel()) f |= FLAG_LAY_LABEL;
+			if (t.getAlternatives() != null) f |= FLAG_ALTERNATIVES;
+			if (t.getEquivalents() != null) f |= FLAG_EQUIVALENTS;
+			flags[i] = (byte)f;
+
+			/* Parents and related classes are split again by the term constructor */
+			parentStarts[i] = parentIDs.size();
+			ParentTermID [][] parentArrays = new ParentTermID[][]{t.getParents(), t.getRelatedClasses()};
+			for (ParentTermID [] parents : parentArrays)
+			{
+				if (parents == null)
+					continue;
+				for (ParentTermID p : parents)
+				{
+					parentPrefixes.add(writer.string(p.termid.getPrefix().toString()));
+					parentIDs.add(p.termid.id);
+					parentRelations.add(p.relation.ordinal());
+				}
+			}
+			parentStarts[i + 1] = parentIDs.size();
+
+			alternatives.add(writer, i, t.getAlternatives());
+			equivalents.add(writer, i, t.getEquivalents());
+
+			synonymStarts[i] = synonymLabels.size();
+			if (t.getSynonymsAsObj() != null)
+			{
+				for (Synonym s : t.getSynonymsAsObj())
+				{
+					int sf = 0;
+					if (s.is_exact()) sf |= SYNONYM_EXACT;
+					if (s.is_broad()) sf |= SYNONYM_BROAD;
+					if (s.is_related()) sf |= SYNONYM_RELATED;
+					if (s.is_narrow()) sf |= SYNONYM_NARROW;
+					if (s.is_layperson()) sf |= SYNONYM_LAYPERSON;
+					synonymLabels.add(writer.string(s.getSynonymLabel()));
+					synonymFlags.add(sf);
+				}
+			}
+			synonymStarts[i + 1] = synonymLabels.size();
+
+			intersectionStarts[i] = intersections.size();
+			if (t.getIntersections() != null)
+			{
+				for (String s : t.getIntersections())
+					intersections.add(writer.string(s));
+			}
+			intersectionStarts[i + 1] = intersections.size();
+
+			subsetStarts[i] = subsets.size();
+			if (t.getSubsets() != null)
+			{
+				for (Subset s : t.getSubsets())
+					subsets.add(writer.string(s.getName()));
+			}
+			subsetStarts[i + 1] = subsets.size();
+
+			xrefStarts[i] = xrefIDs.size();
+			if (t.getXrefs() != null)
+			{
+				for (TermXref x : t.getXrefs())
+				{
+					xrefDatabases.add(writer.string(x.getDatabase()));
+					xrefIDs.add(writer.string(x.getXrefId()));
+					xrefNames.add(writer.string(x.getXrefName()));
+				}
+			}
+			xrefStarts[i + 1] = xrefIDs.size();
+
+			i++;
+		}
+
+		writer.writeInt(writer.string(terms.getFormatVersion()));
+		writer.writeInt(writer.string(terms.getDate()));
+		writer.writeInt(n);
+		writer.writeInts(idPrefixes);
+		writer.writeInts(ids);
+		writer.writeInts(names);
+		writer.writeInts(namespaces);
+		writer.writeInts(definitions);
+		writer.writeInts(replacedBys);
+		writer.writeBytes(flags);
+
+		writer.writeInts(parentStarts);
+		writer.writeInts(parentPrefixes.data, parentPrefixes.size);
+		writer.writeInts(parentIDs.data, parentIDs.size);
+		writer.writeBytes(parentRelations.toBytes());
+
+		alternatives.write(writer);
+		equivalents.write(writer);
+
+		writer.writeInts(synonymStarts);
+		writer.writeInts(synonymLabels.data, synonymLabels.size);
+		writer.writeBytes(synonymFlags.toBytes());
+
+		writer.writeInts(intersectionStarts);
+		writer.writeInts(intersections.data, intersections.size);
+
+		writer.writeInts(subsetStarts);
+		writer.writeInts(subsets.data, subsets.size);
+
+		writer.writeInts(xrefStarts);
+		writer.writeInts(xrefDatabases.data, xrefDatabases.size);
+		writer.writeInts(xrefIDs.data, xrefIDs.size);
+		writer.writeInts(xrefNames.data, xrefNames.size);
+
+		writer.write(file, KIND_TERMS, key);
+	}
+
+	/**
+	 * Reads a snapshot of terms.
+	 *
+	 * @param file the file from which the snapshot is read
+	 * @param key the expected key
+	 * @return the terms or null if there is no snapshot matching the key.
+	 * @throws IOException if the snapshot is corrupt
+	 */
+	public static TermContainer readTerms(File file, long key) throws IOException
+	{
+		SnapshotReader reader = SnapshotReader.open(file, KIND_TERMS, key);
+		if (reader == null)
+			return null;
+
+		try
+		{
+			String formatVersion = reader.string(reader.readInt());
+			String date = reader.string(reader.readInt());
+			int n = reader.readInt();
+			int [] idPrefixes = reader.readInts(n);
+			int [] ids = reader.readInts(n);
+			int [] names = reader.readInts(n);
+			int [] namespaces = reader.readInts(n);
+			int [] definitions = reader.readInts(n);
+			int [] replacedBys = reader.readInts(n);
+			byte [] flags = reader.readBytes(n);
+
+			int [] parentStarts = reader.readInts(n + 1);
+			int [] parentPrefixes = reader.readInts(parentStarts[n]);
+			int [] parentIDs = reader.readInts(parentStarts[n]);
+			byte [] parentRelations = reader.readBytes(parentStarts[n]);
+
+			ArrayList<ArrayList<TermID>> alternatives = readTermIDColumns(reader, n);
+			ArrayList<ArrayList<TermID>> equivalents = readTermIDColumns(reader, n);
+
+			int [] synonymStarts = reader.readInts(n + 1);
+			int [] synonymLabels = reader.readInts(synonymStarts[n]);
+			byte [] synonymFlags = reader.readBytes(synonymStarts[n]);
+
+			int [] intersectionStarts = reader.readInts(n + 1);
+			int [] intersections = reader.readInts(intersectionStarts[n]);
+
+			int [] subsetStarts = reader.readInts(n + 1);
+			int [] subsets = reader.readInts(subsetStarts[n]);
+
+			int [] xrefStarts = reader.readInts(n + 1);
+			int [] xrefDatabases = reader.readInts(xrefStarts[n]);
+			int [] xrefIDs = reader.readInts(xrefStarts[n]);
+			int [] xrefNames = reader.readInts(xrefStarts[n]);
+
+			HashMap<Integer, Namespace> namespaceMap = new HashMap<Integer, Namespace>();
+			HashMap<Integer, Subset> subsetMap = new HashMap<Integer, Subset>();
+
+			ArrayList<ParentTermID> parents = new ArrayList<ParentTermID>();
+			ArrayList<Synonym> synonymList = new ArrayList<Synonym>();
+			ArrayList<String> intersectionList = new ArrayList<String>();
+			ArrayList<Subset> subsetList = new ArrayList<Subset>();
+			ArrayList<TermXref> xrefList = new ArrayList<TermXref>();
+
+			LinkedHashSet<Term> terms = new LinkedHashSet<Term>();
+
+			for (int i = 0; i < n; i++)
+			{
+				Namespace namespace = namespaceMap.get(namespaces[i]);
+				if (namespace == null)
+				{
+					namespace = new Namespace(reader.string(namespaces[i]));
+					namespaceMap.put(namespaces[i], namespace);
+				}
+
+				parents.clear();
+				for (int j = parentStarts[i]; j < parentStarts[i + 1]; j++)
+				{
+					TermID parent = new TermID(reader.prefix(parentPrefixes[j]), parentIDs[j]);
+					parents.add(new ParentTermID(parent, RELATIONS[parentRelations[j]]));
+				}
+
+				Term t = new Term(new TermID(reader.prefix(idPrefixes[i]), ids[i]), reader.string(names[i]), namespace, parents);
+				t.setObsolete((flags[i] & FLAG_OBSOLETE) != 0);
+				t.setLabelIsLay((flags[i] & FLAG_LAY_LABEL) != 0);
+				t.setDefinition(reader.string(definitions[i]));
+				t.setReplacedBy(reader.string(replacedBys[i]));
+				if ((flags[i] & FLAG_ALTERNATIVES) != 0)
+					t.setAlternatives(alternatives.get(i));
+				if ((flags[i] & FLAG_EQUIVALENTS) != 0)
+					t.setEquivalents(equivalents.get(i));
+
+				synonymList.clear();
+				for (int j = synonymStarts[i]; j < synonymStarts[i + 1]; j++)
+					synonymList.add(new Synonym(reader.string(synonymLabels[j]), synonymExtraInfo(synonymFlags[j])));
+				t.setSynonyms(synonymList);
+
+				intersectionList.clear();
+				for (int j = intersectionStarts[i]; j < intersectionStarts[i + 1]; j++)
+					intersectionList.add(reader.string(intersections[j]));
+				t.setIntersections(intersectionList);
+
+				subsetList.clear();
+				for (int j = subsetStarts[i]; j < subsetStarts[i + 1]; j++)
+				{
+					Subset subset = subsetMap.get(subsets[j]);
+					if (subset == null)
+					{
+						subset = new Subset(reader.string(subsets[j]), null);
+						subsetMap.put(subsets[j], subset);
+					}
+					subsetList.add(subset);
+				}
+				t.setSubsets(subsetList);
+
+				xrefList.clear();
+				for (int j = xrefStarts[i]; j < xrefStarts[i + 1]; j++)
+					xrefList.add(new TermXref(reader.string(xrefDatabases[j]), reader.string(xrefIDs[j]), reader.string(xrefNames[j])));
+				t.setXrefs(xrefList);
+
+				terms.add(t);
+			}
+
+			return new TermContainer(terms, formatVersion, date);
+		} catch (RuntimeException e)
+		{
+			throw new IOException("Snapshot \"" + file.getPath() + "\" is corrupt", e);
+		}
+	}
+
+	/**
+	 * Returns the extra info of a synonym that corresponds to the given
+	 * flags.
+	 *
+	 * @param flags
+	 * @return the extra info.
+	 */
+	private static String synonymExtraInfo(int flags)
+	{
+		StringBuilder extraInfo = new StringBuilder();
+		if ((flags & SYNONYM_EXACT) != 0) extraInfo.append("EXACT");
+		if ((flags & SYNONYM_BROAD) != 0) extraInfo.append("BROAD");
+		if ((flags & SYNONYM_RELATED) != 0) extraInfo.append("RELATED");
+		if ((flags & SYNONYM_NARROW) != 0) extraInfo.append("NARROW");
+		if ((flags & SYNONYM_LAYPERSON) != 0) extraInfo.append(" layperson");
+		return extraInfo.toString();
+	}
+
+	/**
+	 * Writes a map of byte strings.
+	 *
+	 * @param writer
+	 * @param map
+	 * @throws IOException
+	 */
+	private static void writeMap(SnapshotWriter writer, Map<ByteString, ByteString> map) throws IOException
+	{
+		int [] keys = new int[map.size()];
+		int [] values = new int[map.size()];
+		int i = 0;
+		for (Map.Entry<ByteString, ByteString> entry : map.entrySet())
+		{
+			keys[i] = writer.byteString(entry.getKey());
+			values[i] = writer.byteString(entry.getValue());
+			i++;
+		}
+		writer.writeInt(i);
+		writer.writeInts(keys);
+		writer.writeInts(values);
+	}
+
+	/**
+	 * Reads a map of byte strings.
+	 *
+	 * @param reader
+	 * @return the map
+	 */
+	private static HashMap<ByteString, ByteString> readMap(SnapshotReader reader)
+	{
+		int n = reader.readInt();
+		int [] keys = reader.readInts(n);
+		int [] values = reader.readInts(n);
+		HashMap<ByteString, ByteString> map = new HashMap<ByteString, ByteString>(n * 2);
+		for (int i = 0; i < n; i++)
+			map.put(reader.byteString(keys[i]), reader.byteString(values[i]));
+		return map;
+	}
+
+	/**
+	 * Writes a snapshot of the given associations as returned by the
+	 * association parser.
+	 *
+	 * @param file the file to which the snapshot is written
+	 * @param key the key that identifies the input of the associations
+	 * @param associations the associations
+	 * @param synonym2gene the synonym to gene mapping
+	 * @param dbObject2gene the database object to gene mapping
+	 * @throws IOException
+	 * @throws IllegalArgumentException if integer ids have been generated for
+	 *  non-numeric ids, which are specific to the current process.
+	 */
+	public static void writeAssociations(File file, long key, List<Association> associations, Map<ByteString, ByteString> synonym2gene, Map<ByteString, ByteString> dbObject2gene) throws IOException
+	{
+		if (TermID.hasGeneratedIds())
+			throw new IllegalArgumentException("Term ids that are generated for non-numeric ids cannot be stored in a snapshot");
+
+		SnapshotWriter writer = new SnapshotWriter();
+
+		int n = associations.size();
+		int [] dbObjects = new int[n];
+		int [] symbols = new int[n];
+		int [] synonyms = new int[n];
+		int [] evidences = new int[n];
+		int [] aspects = new int[n];
+		int [] termPrefixes = new int[n];
+		int [] termIDs = new int[n];
+		byte [] notQualifiers = new byte[n];
+
+		int i = 0;
+		for (Association a : associations)
+		{
+			dbObjects[i] = writer.byteString(a.getDB_Object());
+			symbols[i] = writer.byteString(a.getObjectSymbol());
+			synonyms[i] = writer.byteString(a.getSynonym());
+			evidences[i] = writer.byteString(a.getEvidence());
+			aspects[i] = writer.byteString(a.getAspect());
+			termPrefixes[i] = writer.string(a.getTermID().getPrefix().toString());
+			termIDs[i] = a.getTermID().id;
+			notQualifiers[i] = (byte)(a.hasNotQualifier() ? 1 : 0);
+			i++;
+		}
+
+		writer.writeInt(n);
+		writer.writeInts(dbObjects);
+		writer.writeInts(symbols);
+		writer.writeInts(synonyms);
+		writer.writeInts(evidences);
+		writer.writeInts(aspects);
+		writer.writeInts(termPrefixes);
+		writer.writeInts(termIDs);
+		writer.writeBytes(notQualifiers);
+
+		writeMap(writer, synonym2gene);
+		writeMap(writer, dbObject2gene);
+
+		writer.write(file, KIND_ASSOCIATIONS, key);
+	}
+
+	/**
+	 * Reads a snapshot of associations.
+	 *
+	 * @param file the file from which the snapshot is read
+	 * @param key the expected key
+	 * @return the associations or null if there is no snapshot matching the key.
+	 * @throws IOException if the snapshot is corrupt
+	 */
+	public static AssociationContainer readAssociations(File file, long key) throws IOException
+	{
+		SnapshotReader reader = SnapshotReader.open(file, KIND_ASSOCIATIONS, key);
+		if (reader == null)
+			return null;
+
+		try
+		{
+			int n = reader.readInt();
+			int [] dbObjects = reader.readInts(n);
+			int [] symbols = reader.readInts(n);
+			int [] synonyms = reader.readInts(n);
+			int [] evidences = reader.readInts(n);
+			int [] aspects = reader.readInts(n);
+			int [] termPrefixes = reader.readInts(n);
+			int [] termIDs = reader.readInts(n);
+			byte [] notQualifiers = reader.readBytes(n);
+
+			ArrayList<Association> associations = new ArrayList<Association>(n);
+			for (int i = 0; i < n; i++)
+			{
+				TermID tid = new TermID(reader.prefix(termPrefixes[i]), termIDs[i]);
+				associations.add(new Association(reader.byteString(dbObjects[i]), reader.byteString(symbols[i]),
+						reader.byteString(synonyms[i]), tid, reader.byteString(evidences[i]),
+						reader.byteString(aspects[i]), notQualifiers[i] != 0));
+			}
+
+			HashMap<ByteString, ByteString> synonym2gene = readMap(reader);
+			HashMap<ByteString, ByteString> dbObject2gene = readMap(reader);
+
+			return new AssociationContainer(associations, synonym2gene, dbObject2gene);
+		} catch (RuntimeException e)
+		{
+			throw new IOException("Snapshot \"" + file.getPath() + "\" is corrupt", e);
+		}
+	}
+}
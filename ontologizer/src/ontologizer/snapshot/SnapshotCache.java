@@ -0,0 +1,298 @@
+package ontologizer.snapshot;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import ontologizer.association.AssociationContainer;
+import ontologizer.association.AssociationParser;
+import ontologizer.association.IAssociationParserProgress;
+import ontologizer.go.IOBOParserProgress;
+import ontologizer.go.MappedFileInput;
+import ontologizer.go.OBOParser;
+import ontologizer.go.OBOParserException;
+import ontologizer.go.TermContainer;
+import ontologizer.go.TermMap;
+import ontologizer.types.ByteString;
+
+/**
+ * Manages snapshots of parsed ontologies and associations within a
+ * directory. If a snapshot for the requested input exists, it is read
+ * instead of parsing the input. Otherwise, the input is parsed and a
+ * new snapshot is written.
+ *
+ * There is one snapshot per input path. The snapshot is keyed by the
+ * checksums of the input files as well as by the options that influence
+ * the parsing. If any of these change, the snapshot is considered to be
+ * stale and is rebuilt.
+ */
+public class SnapshotCache
+{
+	private static Logger logger = Logger.getLogger(SnapshotCache.class.getName());
+
+	/**
+	 * The checksum of a file. Valid as long as the file's size and
+	 * modification time are unchanged.
+	 */
+	private static class Checksum
+	{
+		public long length;
+		public long lastModified;
+		public long crc;
+	}
+
+	/** The directory in which the snapshots are stored */
+	private File directory;
+
+	/** Already calculated checksums */
+	private HashMap<String, Checksum> checksums = new HashMap<String, Checksum>();
+
+	/**
+	 * Constructs the snapshot cache.
+	 *
+	 * @param directory the directory in which the snapshots are stored.
+	 *  It is created if it doesn't exist.
+	 */
+	public SnapshotCache(File directory)
+	{
+		this.directory = directory;
+		directory.mkdirs();
+	}
+
+	/**
+	 * Returns the checksum of the contents of the given file.
+	 *
+	 * @param filename
+	 * @return the checksum
+	 * @throws IOException
+	 */
+	private synchronized long checksum(String filename) throws IOException
+	{
+		File file = new File(filename).getCanonicalFile();
+
+		Checksum checksum = checksums.get(file.getPath());
+		if (checksum != null && checksum.length == file.length() && checksum.lastModified == file.lastModified())
+			return checksum.crc;
+
+		checksum = new Checksum();
+		checksum.length = file.length();
+		checksum.lastModified = file.lastModified();
+
+		CRC32 crc = new CRC32();
+		InputStream is = new FileInputStream(file);
+		try
+		{
+			byte [] buf = new byte[65536];
+			int read;
+			while ((read = is.read(buf)) > 0)
+				crc.update(buf, 0, read);
+		} finally
+		{
+			is.close();
+		}
+		checksum.crc = (crc.getValue() << 32) ^ checksum.length;
+		checksums.put(file.getPath(), checksum);
+		return checksum.crc;
+	}
+
+	/**
+	 * Returns the checksum of the given strings in their sorted order.
+	 *
+	 * @param strings
+	 * @return the checksum
+	 */
+	private static long checksum(Collection<String> strings)
+	{
+		ArrayList<String> sorted = new ArrayList<String>(strings);
+		Collections.sort(sorted);
+
+		CRC32 crc = new CRC32();
+		for (String str : sorted)
+		{
+			byte [] bytes = str.getBytes();
+			crc.update(bytes, 0, bytes.length);
+			crc.update(0);
+		}
+		return (crc.getValue() << 32) ^ sorted.size();
+	}
+
+	/**
+	 * Combine the given hash values to a single key.
+	 *
+	 * @param values
+	 * @return the key
+	 */
+	private static long key(long... values)
+	{
+		long key = Snapshot.VERSION;
+		for (long value : values)
+			key = key * 0x9e3779b97f4a7c15L + value;
+		return key;
+	}
+
+	/**
+	 * Returns the snapshot file for the given input files.
+	 *
+	 * @param kind
+	 * @param filenames
+	 * @return the snapshot file
+	 * @throws IOException
+	 */
+	private File snapshotFile(String kind, String... filenames) throws IOException
+	{
+		CRC32 crc = new CRC32();
+		for (String filename : filenames)
+		{
+			byte [] bytes = new File(filename).getCanonicalPath().getBytes();
+			crc.update(bytes, 0, bytes.length);
+			crc.update(0);
+		}
+		return new File(directory, kind + "-" + Long.toHexString(crc.getValue()) + ".snapshot");
+	}
+
+	/**
+	 * Returns the terms of the given obo file. The terms are read from
+	 * the snapshot, if possible.
+	 *
+	 * @param oboName the name of the obo file.
+	 * @param options the options passed to the OBOParser.
+	 * @param progress the progress that is used when the file is parsed (may be null).
+	 * @return the terms
+	 * @throws IOException
+	 * @throws OBOParserException
+	 */
+	public TermContainer getTerms(String oboName, int options, IOBOParserProgress progress) throws IOException, OBOParserException
+	{
+		File file = snapshotFile("terms", oboName);
+		long key = key(checksum(oboName), options);
+
+		try
+		{
+			TermContainer terms = Snapshot.readTerms(file, key);
+			if (terms != null)
+			{
+				logger.info("Read terms of \"" + oboName + "\" from snapshot \"" + file.getPath() + "\"");
+				return terms;
+			}
+		} catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Failed to read snapshot", e);
+		}
+
+		MappedFileInput input = new MappedFileInput(oboName);
+		TermContainer terms;
+		try
+		{
+			OBOParser oboParser = new OBOParser(input, options);
+			oboParser.doParse(progress);
+			terms = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), oboParser.getDataVersion());
+		} finally
+		{
+			input.close();
+		}
+
+		try
+		{
+			Snapshot.writeTerms(file, key, terms);
+		} catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Failed to write snapshot", e);
+		} catch (IllegalArgumentException e)
+		{
+			logger.info(e.getMessage());
+		}
+		return terms;
+	}
+
+	/**
+	 * Returns the associations of the given association file. The associations
+	 * are read from the snapshot, if possible.
+	 *
+	 * @param oboName the name of the obo file from which the terms were obtained.
+	 * @param assocName the name of the association file.
+	 * @param terms the terms that were obtained from the obo file.
+	 * @param names the names of items that are of interest or null if all items are of interest.
+	 * @param evidences the evidences that should be considered or null if all evidences are of interest.
+	 * @param progress the progress that is used when the file is parsed (may be null).
+	 * @return the associations
+	 * @throws IOException
+	 */
+	public AssociationContainer getAssociations(String oboName, String assocName, TermMap terms, HashSet<ByteString> names, Collection<String> evidences, IAssociationParserProgress progress) throws IOException
+	{
+		return getAssociations(oboName, assocName, terms, names, evidences, progress, 1);
+	}
+
+	/**
+	 * Returns the associations of the given association file. The associations
+	 * are read from the snapshot, if possible.
+	 *
+	 * @param oboName the name of the obo file from which the terms were obtained.
+	 * @param assocName the name of the association file.
+	 * @param terms the terms that were obtained from the obo file.
+	 * @param names the names of items that are of interest or null if all items are of interest.
+	 * @param evidences the evidences that should be considered or null if all evidences are of interest.
+	 * @param progress the progress that is used when the file is parsed (may be null).
+	 * @param numberOfThreads the number of threads that are used when the file is parsed.
+	 * @return the associations
+	 * @throws IOException
+	 */
+	public AssociationContainer getAssociations(String oboName, String assocName, TermMap terms, HashSet<ByteString> names, Collection<String> evidences, IAssociationParserProgress progress, int numberOfThreads) throws IOException
+	{
+		File file = snapshotFile("associations", oboName, assocName);
+
+		long namesChecksum = -1;
+		if (names != null)
+		{
+			ArrayList<String> nameStrings = new ArrayList<String>(names.size());
+			for (ByteString name : names)
+				nameStrings.add(name.toString());
+			namesChecksum = checksum(nameStrings);
+		}
+		long evidencesChecksum = evidences != null ? checksum(evidences) : -1;
+		long key = key(checksum(oboName), checksum(assocName), namesChecksum, evidencesChecksum, AssociationParser.getUserdefinedType().ordinal());
+
+		try
+		{
+			AssociationContainer assocs = Snapshot.readAssociations(file, key);
+			if (assocs != null)
+			{
+				logger.info("Read associations of \"" + assocName + "\" from snapshot \"" + file.getPath() + "\"");
+				return assocs;
+			}
+		} catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Failed to read snapshot", e);
+		}
+
+		MappedFileInput input = new MappedFileInput(assocName);
+		AssociationParser ap;
+		try
+		{
+			ap = new AssociationParser(input, terms, names, evidences, progress, numberOfThreads);
+		} finally
+		{
+			input.close();
+		}
+
+		try
+		{
+			Snapshot.writeAssociations(file, key, ap.getAssociations(), ap.getSynonym2gene(), ap.getDbObject2gene());
+		} catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Failed to write snapshot", e);
+		} catch (IllegalArgumentException e)
+		{
+			logger.info(e.getMessage());
+		}
+		return new AssociationContainer(ap.getAssociations(), ap.getSynonym2gene(), ap.getDbObject2gene());
+	}
+}
@@ -0,0 +1,191 @@
+package ontologizer.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ontologizer.go.Prefix;
+import ontologizer.types.ByteString;
+
+/**
+ * Reads a single snapshot file that has been written by the
+ * SnapshotWriter. The file is memory mapped and the columns
+ * are obtained via bulk reads.
+ *
+ * @author Sebastian Bauer
+ */
+class SnapshotReader
+{
+	private MappedByteBuffer buf;
+
+	/** The string table */
+	private int [] offsets;
+	private byte [] blob;
+
+	/** Already created objects of the string table */
+	private String [] strings;
+	private ByteString [] byteStrings;
+	private Prefix [] prefixes;
+
+	private SnapshotReader(MappedByteBuffer buf)
+	{
+		this.buf = buf;
+	}
+
+	/**
+	 * Opens the given snapshot file.
+	 *
+	 * @param file
+	 * @param kind the expected kind of the snapshot
+	 * @param key the expected key of the snapshot
+	 * @return the reader or null if the file doesn't exist or if it
+	 *  doesn't match the given kind, key or the current version.
+	 * @throws IOException
+	 */
+	public static SnapshotReader open(File file, int kind, long key) throws IOException
+	{
+		if (!file.exists())
+			return null;
+
+		MappedByteBuffer buf;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel fc = raf.getChannel();
+			if (fc.size() > Integer.MAX_VALUE)
+				return null;
+			buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+		} finally
+		{
+			/* The mapping stays valid after closing */
+			raf.close();
+		}
+
+		try
+		{
+			byte [] magic = new byte[Snapshot.MAGIC.length];
+			buf.get(magic);
+			for (int i = 0; i < magic.length; i++)
+			{
+				if (magic[i] != Snapshot.MAGIC[i])
+					return null;
+			}
+
+			if (buf.getInt() != Snapshot.VERSION)
+				return null;
+			if (buf.getInt() != kind)
+				return null;
+			if (buf.getLong() != key)
+				return null;
+
+			SnapshotReader reader = new SnapshotReader(buf);
+			int numberOfStrings = reader.readInt();
+			reader.offsets = new int[numberOfStrings + 1];
+			buf.asIntBuffer().get(reader.offsets, 0, numberOfStrings);
+			buf.position(buf.position() + numberOfStrings * 4);
+			int blobLength = reader.readInt();
+			reader.offsets[numberOfStrings] = blobLength;
+			reader.blob = reader.readBytes(blobLength);
+
+			reader.strings = new String[numberOfStrings];
+			reader.byteStrings = new ByteString[numberOfStrings];
+			reader.prefixes = new Prefix[numberOfStrings];
+			return reader;
+		} catch (BufferUnderflowException e)
+		{
+			throw new IOException("Snapshot \"" + file.getPath() + "\" is truncated");
+		} catch (RuntimeException e)
+		{
+			throw new IOException("Snapshot \"" + file.getPath() + "\" is corrupt", e);
+		}
+	}
+
+	public int readInt()
+	{
+		return buf.getInt();
+	}
+
+	public int [] readInts(int length)
+	{
+		int [] values = new int[length];
+		buf.asIntBuffer().get(values);
+		buf.position(buf.position() + length * 4);
+		return values;
+	}
+
+	public byte [] readBytes(int length)
+	{
+		byte [] values = new byte[length];
+		buf.get(values);
+		return values;
+	}
+
+	/**
+	 * Returns the string with the given index.
+	 *
+	 * @param idx
+	 * @return the string or null if idx is -1.
+	 */
+	public String string(int idx)
+	{
+		if (idx == -1)
+			return null;
+
+		String str = strings[idx];
+		if (str == null)
+		{
+			try
+			{
+				str = new String(blob, offsets[idx], offsets[idx + 1] - offsets[idx], "UTF-8");
+			} catch (UnsupportedEncodingException e)
+			{
+				throw new RuntimeException(e);
+			}
+			strings[idx] = str;
+		}
+		return str;
+	}
+
+	/**
+	 * Returns the byte string with the given index. Equal indices
+	 * result in the same instance.
+	 *
+	 * @param idx
+	 * @return the byte string or null if idx is -1.
+	 */
+	public ByteString byteString(int idx)
+	{
+		if (idx == -1)
+			return null;
+
+		ByteString str = byteStrings[idx];
+		if (str == null)
+		{
+			str = new ByteString(blob, offsets[idx], offsets[idx + 1]);
+			byteStrings[idx] = str;
+		}
+		return str;
+	}
+
+	/**
+	 * Returns the prefix with the given index. Equal indices
+	 * result in the same instance.
+	 *
+	 * @param idx
+	 * @return the prefix.
+	 */
+	public Prefix prefix(int idx)
+	{
+		Prefix prefix = prefixes[idx];
+		if (prefix == null)
+		{
+			prefix = new Prefix(byteString(idx));
+			prefixes[idx] = prefix;
+		}
+		return prefix;
+	}
+}
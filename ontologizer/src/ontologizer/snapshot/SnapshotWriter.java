@@ -0,0 +1,177 @@
+package ontologizer.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+
+import ontologizer.types.ByteString;
+
+/**
+ * Writes a single snapshot file. All strings are collected in a
+ * deduplicated string table that is written in front of the payload,
+ * the payload itself consists of plain primitive columns.
+ *
+ * @author Sebastian Bauer
+ */
+class SnapshotWriter
+{
+	/** Indices of the strings that have been already added */
+	private HashMap<String, Integer> stringIndices = new HashMap<String, Integer>();
+
+	/** Indices of the byte strings that have been already added */
+	private HashMap<ByteString, Integer> byteStringIndices = new HashMap<ByteString, Integer>();
+
+	/** The contents of all strings */
+	private ByteArrayOutputStream blob = new ByteArrayOutputStream();
+
+	/** The start offsets of the strings within the blob */
+	private int [] offsets = new int[1024];
+
+	/** Number of strings in the table */
+	private int numberOfStrings;
+
+	/** The payload */
+	private ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+	private DataOutputStream payload = new DataOutputStream(payloadBytes);
+
+	/**
+	 * Append the given bytes as a new string to the table.
+	 *
+	 * @param bytes
+	 * @return the index of the new string.
+	 */
+	private int add(byte [] bytes)
+	{
+		if (numberOfStrings == offsets.length)
+		{
+			int [] newOffsets = new int[offsets.length * 2];
+			System.arraycopy(offsets, 0, newOffsets, 0, offsets.length);
+			offsets = newOffsets;
+		}
+		offsets[numberOfStrings] = blob.size();
+		blob.write(bytes, 0, bytes.length);
+		return numberOfStrings++;
+	}
+
+	/**
+	 * Returns the index of the given string within the string table.
+	 *
+	 * @param str
+	 * @return the index or -1 if str is null.
+	 */
+	public int string(String str)
+	{
+		if (str == null)
+			return -1;
+
+		Integer idx = stringIndices.get(str);
+		if (idx == null)
+		{
+			try
+			{
+				idx = add(str.getBytes("UTF-8"));
+			} catch (UnsupportedEncodingException e)
+			{
+				throw new RuntimeException(e);
+			}
+			stringIndices.put(str, idx);
+		}
+		return idx;
+	}
+
+	/**
+	 * Returns the index of the given byte string within the string table.
+	 *
+	 * @param str
+	 * @return the index or -1 if str is null.
+	 */
+	public int byteString(ByteString str)
+	{
+		if (str == null)
+			return -1;
+
+		Integer idx = byteStringIndices.get(str);
+		if (idx == null)
+		{
+			idx = add(str.getBytes());
+			byteStringIndices.put(str, idx);
+		}
+		return idx;
+	}
+
+	public void writeInt(int value) throws IOException
+	{
+		payload.writeInt(value);
+	}
+
+	public void writeInts(int [] values, int length) throws IOException
+	{
+		for (int i = 0; i < length; i++)
+			payload.writeInt(values[i]);
+	}
+
+	public void writeInts(int [] values) throws IOException
+	{
+		writeInts(values, values.length);
+	}
+
+	public void writeBytes(byte [] values, int length) throws IOException
+	{
+		payload.write(values, 0, length);
+	}
+
+	public void writeBytes(byte [] values) throws IOException
+	{
+		writeBytes(values, values.length);
+	}
+
+	/**
+	 * Writes the snapshot to the given file. The data is written to a
+	 * temporary file first which is then renamed, so readers never see
+	 * a partially written snapshot.
+	 *
+	 * @param file
+	 * @param kind
+	 * @param key
+	 * @throws IOException
+	 */
+	public void write(File file, int kind, long key) throws IOException
+	{
+		File tmp = File.createTempFile("snapshot", ".tmp", file.getAbsoluteFile().getParentFile());
+		try
+		{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536));
+			try
+			{
+				out.write(Snapshot.MAGIC);
+				out.writeInt(Snapshot.VERSION);
+				out.writeInt(kind);
+				out.writeLong(key);
+
+				out.writeInt(numberOfStrings);
+				for (int i = 0; i < numberOfStrings; i++)
+					out.writeInt(offsets[i]);
+				out.writeInt(blob.size());
+				blob.writeTo(out);
+
+				payload.flush();
+				payloadBytes.writeTo(out);
+			} finally
+			{
+				out.close();
+			}
+
+			file.delete();
+			if (!tmp.renameTo(file))
+				throw new IOException("Couldn't rename \"" + tmp.getPath() + "\" to \"" + file.getPath() + "\"");
+		} finally
+		{
+			tmp.delete();
+		}
+	}
+}
@@ -1,5 +1,13 @@
 package ontologizer.statistics;
 
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public abstract class AbstractResamplingTestCorrection extends AbstractTestCorrection
 	implements IResampling
 {
@@ -9,6 +17,28 @@ public abstract class AbstractResamplingTestCorrection extends AbstractTestCorre
 	/** Used for progress update */
 	private IResamplingProgress progress;
 
+	/** Serializes progress updates, which may come from the resampling
+	 *  workers as well as from several concurrent corrections */
+	private final Object progressLock = new Object();
+
+	/** The number of threads that are used for resampling */
+	private int numberOfThreads = 1;
+
+	/** The executor that runs the resampling workers, if null a temporary one is used */
+	private ExecutorService executor;
+
+	/** The seed of the random streams, null if a random seed should be used */
+	private Long seed;
+
+	/** The disk cache for sampled p values, might be null */
+	private PvalueSetDiskCache diskCache;
+
+	/** The checksum of the data, which is part of the disk cache key */
+	private long diskCacheChecksum;
+
+	/** The name of the calculation, which is part of the disk cache key */
+	private String diskCacheCalculationName;
+
 	/**
 	 * Set the number of resampling steps.
 	 */
@@ -36,6 +66,109 @@ public abstract class AbstractResamplingTestCorrection extends AbstractTestCorre
 		progress = newProgress;
 	}
 
+	/**
+	 * Sets the number of threads that calculate the random p values
+	 * in parallel.
+	 *
+	 * @param numberOfThreads
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+	}
+
+	/**
+	 * Returns the number of threads used for resampling.
+	 *
+	 * @return
+	 */
+	public int getNumberOfThreads()
+	{
+		return numberOfThreads;
+	}
+
+	/**
+	 * Sets the executor that runs the resampling workers. The number
+	 * of workers is still determined by the number of threads. If no
+	 * executor is set, a temporary one is created for each resampling.
+	 *
+	 * @param executor
+	 */
+	public void setExecutor(ExecutorService executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the seed from which the random streams of the workers are
+	 * derived. The results of the resampling are reproducible for a
+	 * given seed and number of threads.
+	 *
+	 * @param seed
+	 */
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the disk cache in which sampled p values are kept across
+	 * several runs. The given checksum and calculation name must identify
+	 * the data (ontology, associations and population) and the calculation
+	 * whose p values are corrected.
+	 *
+	 * @param diskCache the cache or null if no disk cache should be used.
+	 * @param checksum the checksum of the data.
+	 * @param calculationName the name of the calculation.
+	 */
+	public void setDiskCache(PvalueSetDiskCache diskCache, long checksum, String calculationName)
+	{
+		this.diskCache = diskCache;
+		this.diskCacheChecksum = checksum;
+		this.diskCacheCalculationName = calculationName;
+	}
+
+	/**
+	 * Returns the disk cache key for the given study set size.
+	 *
+	 * @param studySetSize
+	 * @return the key
+	 */
+	private String diskCacheKey(int studySetSize)
+	{
+		return PvalueSetDiskCache.key(diskCacheChecksum, diskCacheCalculationName, getName(), studySetSize, getSizeTolerance(), numberOfResamplingSteps);
+	}
+
+	/**
+	 * Loads sampled p values from the disk cache, if any.
+	 *
+	 * @param studySetSize
+	 * @param setSize the size of the sampled p value sets.
+	 * @return the p values or null if none are available.
+	 */
+	protected PvalueSetStore loadSampledPValues(int studySetSize, int setSize)
+	{
+		if (diskCache == null)
+			return null;
+
+		PvalueSetStore store = diskCache.load(diskCacheKey(studySetSize));
+		if (store == null || store.getSetSize() != setSize || store.getNumberOfSets() != numberOfResamplingSteps)
+			return null;
+		return store;
+	}
+
+	/**
+	 * Saves sampled p values to the disk cache, if any.
+	 *
+	 * @param studySetSize
+	 * @param store
+	 */
+	protected void saveSampledPValues(int studySetSize, PvalueSetStore store)
+	{
+		if (diskCache != null)
+			diskCache.store(diskCacheKey(studySetSize), store);
+	}
+
 	/**
 	 * Used for sub classes.
 	 *
@@ -43,11 +176,111 @@ public abstract class AbstractResamplingTestCorrection extends AbstractTestCorre
 	 */
 	protected void initProgress(int max)
 	{
-		if (progress != null) progress.init(max);
+		synchronized (progressLock)
+		{
+			if (progress != null) progress.init(max);
+		}
 	}
 
 	protected void updateProgress(int c)
 	{
-		if (progress != null) progress.update(c);
+		synchronized (progressLock)
+		{
+			if (progress != null) progress.update(c);
+		}
+	}
+
+	/**
+	 * Receives the random p values calculated by
+	 * calculateRandomPValues().
+	 */
+	protected static interface IRandomPValuesReceiver
+	{
+		/**
+		 * Called for each sample. May be called concurrently.
+		 *
+		 * @param sample the index of the sample.
+		 * @param p the random p values of the sample.
+		 */
+		public void receive(int sample, PValueSet p);
+	}
+
+	/**
+	 * Calculates the given number of random p value sets using the
+	 * configured number of threads. Worker w gets its own random stream
+	 * that is derived from the seed and processes all samples whose index
+	 * is congruent to w modulo the number of threads. Progress is
+	 * reported via the progress update instance.
+	 *
+	 * @param pvalueCalc
+	 * @param numberOfSamples
+	 * @param receiver
+	 */
+	protected void calculateRandomPValues(final IPValueCalculation pvalueCalc, final int numberOfSamples, final IRandomPValuesReceiver receiver)
+	{
+		final long baseSeed = seed != null ? seed : new Random().nextLong();
+		final int threads = Math.max(1, Math.min(numberOfThreads, numberOfSamples));
+		final AtomicInteger done = new AtomicInteger();
+
+		initProgress(numberOfSamples);
+
+		class Worker implements Runnable
+		{
+			private int worker;
+
+			public Worker(int worker)
+			{
+				this.worker = worker;
+			}
+
+			public void run()
+			{
+				Random rnd = new Random(baseSeed + worker * 0x9e3779b97f4a7c15L);
+				for (int b = worker; b < numberOfSamples; b += threads)
+				{
+					receiver.receive(b, pvalueCalc.calculateRandomPValueSet(rnd));
+
+					updateProgress(done.incrementAndGet());
+				}
+			}
+		}
+
+		if (threads == 1)
+		{
+			new Worker(0).run();
+			return;
+		}
+
+		ExecutorService exec = executor;
+		if (exec == null)
+			exec = Executors.newFixedThreadPool(threads);
+
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>(threads);
+		try
+		{
+			for (int w = 0; w < threads; w++)
+				futures.add(exec.submit(new Worker(w)));
+
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if (cause instanceof Error)
+				throw (Error)cause;
+			throw new RuntimeException(cause);
+		} finally
+		{
+			for (Future<?> future : futures)
+				future.cancel(true);
+			if (exec != executor)
+				exec.shutdown();
+		}
 	}
 }
@@ -1,6 +1,7 @@
 package ontologizer.statistics;
 
 import java.util.Arrays;
+import java.util.Random;
 
 public class FDR extends AbstractTestCorrection
 						   implements IResampling
@@ -71,15 +72,15 @@ public class FDR extends AbstractTestCorrection
 		double [][] pValues = new double[numberOfResamplingSteps][rawP.length];
 
 		/* Now "permute" */
+		Random rnd = new Random();
 		for (int b=0; b < numberOfResamplingSteps; b++)
 		{
 			/* Compute raw p values of "permuted" data */
-			PValue [] randomRawP = pvalues.calculateRandomPValues();
+			PValueSet randomRawP = pvalues.calculateRandomPValueSet(rnd);
 
-			assert(randomRawP.length == rawP.length);
+			assert(randomRawP.size() == rawP.length);
 
-			for (i=0;i<m;i++)
-				pValues[b][i] = randomRawP[i].p;
+			randomRawP.fill(pValues[b]);
 
 			System.out.print("created " + (b+1) + " samples out of " + numberOfResamplingSteps + "\r");
 		}
@@ -1,6 +1,7 @@
 package ontologizer.statistics;
 
 import java.util.Arrays;
+import java.util.Random;
 
 /**
  *
@@ -38,16 +39,16 @@ public class FDRBySteffen extends AbstractTestCorrection
 		double [][] pValues = new double[numberOfResamplingSteps][m];
 
 		/* create them */
+		Random rnd = new Random();
 		for (int b=0; b < numberOfResamplingSteps; b++)
 		{
 			/* Compute raw p values of "permuted" data */
-			PValue [] randomRawP = pvalues.calculateRandomPValues();
-			Arrays.sort(randomRawP);
+			PValueSet randomRawP = pvalues.calculateRandomPValueSet(rnd);
 
-			assert(randomRawP.length == m);
+			assert(randomRawP.size() == m);
 
-			for (i=0;i<m;i++)
-				pValues[b][i] = randomRawP[i].p;
+			/* The ignored p values are 1.0, hence they come last */
+			randomRawP.sorted().fill(pValues[b]);
 
 			System.out.print("created " + (b+1) + " samples out of " + numberOfResamplingSteps + "\r");
 		}
@@ -1,19 +1,21 @@
 package ontologizer.statistics;
 
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.concurrent.Callable;
 
 /**
  *
  * @author grossman
  *
  */
-public class FDRBySteffenCached extends AbstractTestCorrection
-						   implements IResampling
+public class FDRBySteffenCached extends AbstractResamplingTestCorrection
 {
-	/** Specifies the number of resampling steps */
-	private int numberOfResamplingSteps = 1000;
-	private HashMap<Integer,PvalueSetStore> sampledPValuesPerSize = new HashMap<Integer,PvalueSetStore>();
+	private SampleCache<PvalueSetStore> sampledPValuesPerSize = new SampleCache<PvalueSetStore>();
+
+	public FDRBySteffenCached()
+	{
+		numberOfResamplingSteps = 1000;
+	}
 
 	public String getDescription()
 	{
@@ -26,7 +28,7 @@ public class FDRBySteffenCached extends AbstractTestCorrection
 		return "FDR-By-Steffen";
 	}
 
-	public PValue[] adjustPValues(IPValueCalculation pvalues)
+	public PValue[] adjustPValues(final IPValueCalculation pvalues)
 	{
 		int i;
 
@@ -34,32 +36,40 @@ public class FDRBySteffenCached extends AbstractTestCorrection
 		PValue [] rawP = pvalues.calculateRawPValues();
 		Arrays.sort(rawP);
 
-		int m = rawP.length;
+		final int m = rawP.length;
 
-		int studySetSize = pvalues.currentStudySetSize();
+		final int studySetSize = pvalues.currentStudySetSize();
+
+		if (sampledPValuesPerSize.contains(studySetSize))
+			System.out.println("Using available samples for study set size " + studySetSize);
 
 		/* holds the sampled random p values for the current study set size */
-		PvalueSetStore randomSampledPValues;
+		PvalueSetStore randomSampledPValues = sampledPValuesPerSize.get(studySetSize, new Callable<PvalueSetStore>()
+		{
+			public PvalueSetStore call()
+			{
+				PvalueSetStore store = loadSampledPValues(studySetSize,m);
+				if (store != null)
+				{
+					System.out.println("Using stored samples for study set size " + studySetSize);
+					return store;
+				}
 
-		if (sampledPValuesPerSize.containsKey(studySetSize)) {
-			System.out.println("Using available samples for study set size " + studySetSize);
-			randomSampledPValues = sampledPValuesPerSize.get(studySetSize);
-		} else {
-			System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
-			randomSampledPValues = new PvalueSetStore(numberOfResamplingSteps,m);
-			for (int b=0; b < numberOfResamplingSteps; b++) {
-				/* Compute raw p values of "permuted" data */
-				PValue [] randomRawP = pvalues.calculateRandomPValues();
-				Arrays.sort(randomRawP);
-
-				assert(randomRawP.length == m);
-				randomSampledPValues.add(randomRawP);
-
-				System.out.print("created " + b + " samples out of " + numberOfResamplingSteps + "\r");
+				System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
+				final PvalueSetStore newStore = new PvalueSetStore(numberOfResamplingSteps,m);
+				calculateRandomPValues(pvalues, numberOfResamplingSteps, new IRandomPValuesReceiver()
+				{
+					public void receive(int b, PValueSet randomRawP)
+					{
+						/* Raw p values of "permuted" data */
+						assert(randomRawP.size() == m);
+						newStore.set(b, randomRawP.sorted());
+					}
+				});
+				saveSampledPValues(studySetSize,newStore);
+				return newStore;
 			}
-			System.out.println();
-			sampledPValuesPerSize.put(studySetSize,randomSampledPValues);
-		}
+		});
 
 		/* For every P-value determine the adjusted P-value */
 
@@ -72,14 +82,14 @@ public class FDRBySteffenCached extends AbstractTestCorrection
 		int [] lastSampleRejects = new int[numberOfResamplingSteps];
 		int lastTotalSampleRejects = 0;
 		// initializing
-		int b=0;
-		for (PValue [] randomRawP : randomSampledPValues) {
+		int b;
+		for (b=0; b < numberOfResamplingSteps; b++) {
+			PValueSet randomRawP = randomSampledPValues.get(b);
 			lastSampleRejects[b] = 0;
-			while (randomRawP[lastSampleRejects[b]].p < lastPValue) {
+			while (lastSampleRejects[b] < randomRawP.getNumberOfEntries() && randomRawP.getValue(lastSampleRejects[b]) < lastPValue) {
 				lastSampleRejects[b]++;
 			}
 			lastTotalSampleRejects += lastSampleRejects[b];
-			b++;
 		}
 
 		double lastFDR = 0.0;
@@ -114,13 +124,12 @@ public class FDRBySteffenCached extends AbstractTestCorrection
 			// update counts
 			lastObservedRejections += lc;
 			lastTotalSampleRejects = 0;
-			b=0;
-			for (PValue [] randomRawP : randomSampledPValues) {
-				while (randomRawP[lastSampleRejects[b]].p < lastPValue) {
+			for (b=0; b < numberOfResamplingSteps; b++) {
+				PValueSet randomRawP = randomSampledPValues.get(b);
+				while (lastSampleRejects[b] < randomRawP.getNumberOfEntries() && randomRawP.getValue(lastSampleRejects[b]) < lastPValue) {
 					lastSampleRejects[b]++;
 				}
 				lastTotalSampleRejects += lastSampleRejects[b];
-				b++;
 			}
 
 			// update FDR
@@ -141,19 +150,9 @@ public class FDRBySteffenCached extends AbstractTestCorrection
 		return rawP;
 	}
 
-	public void setNumberOfResamplingSteps(int n)
-	{
-		numberOfResamplingSteps = n;
-	}
-
-	public int getNumberOfResamplingSteps()
-	{
-		return numberOfResamplingSteps;
-	}
-
 	public void resetCache()
 	{
-		sampledPValuesPerSize = new HashMap<Integer,PvalueSetStore>();
+		sampledPValuesPerSize.clear();
 	}
 
 	public int getSizeTolerance()
@@ -1,6 +1,5 @@
 package ontologizer.statistics;
 
-import java.util.Vector;
 import java.lang.Math;
 
 /**
@@ -13,11 +12,34 @@ import java.lang.Math;
 public class Hypergeometric
 {
 
+	/** Number of steps after which the recurrence of sum() is restarted */
+	private static final int RESTART_INTERVAL = 64;
+
+	private static final double LN_2PI = 1.837877066409345483560659472811;
+
+	/** Coefficients of the asymptotic series of stirlerr() */
+	private static final double S0 = 1.0 / 12;
+	private static final double S1 = 1.0 / 360;
+	private static final double S2 = 1.0 / 1260;
+	private static final double S3 = 1.0 / 1680;
+	private static final double S4 = 1.0 / 1188;
+
 	/**
-	 * This Vector contains log factorials for each index value and acts as a
-	 * cache.
+	 * The values of stirlerr() for small arguments, for which the series
+	 * doesn't converge fast enough. They are derived from the exactly
+	 * representable factorials.
 	 */
-	private Vector<Double> lfactorial;
+	private static final double [] STIRLERR = new double[16];
+
+	static
+	{
+		double factorial = 1;
+		for (int i = 1; i < STIRLERR.length; i++)
+		{
+			factorial *= i;
+			STIRLERR[i] = Math.log(factorial) - (i + 0.5) * Math.log(i) + i - 0.5 * LN_2PI;
+		}
+	}
 
 	/**
 	 * <P>
@@ -72,6 +94,66 @@ public class Hypergeometric
 		int np = (int) java.lang.Math.round(n * p); // Round to nearest int
 		int nq = (int) java.lang.Math.round(n * q);
 
+		/* The rounded group sizes may not sum up to n, in which case the
+		 * terms don't belong to a proper hypergeometric distribution and
+		 * we can't use sum() */
+		if (np + nq != n)
+			return phypergeometricRounded(n, np, nq, k, r);
+
+		return sum(n, np, k, r, k);
+	}
+
+	/**
+	 * Same as phypergeometric() but with the number of population genes
+	 * in group instead of its proportion.
+	 *
+	 * @param n
+	 *            Number of population genes
+	 * @param np
+	 *            Number of population genes in group
+	 * @param k
+	 *            Number of study genes
+	 * @param r
+	 *            Number of study genes in group
+	 * @return the probability of having r or more study genes in group.
+	 */
+	public double phypergeometric(int n, int np, int k, int r)
+	{
+		if (k >= n)
+			return 1.0;
+		if (r < 1)
+			return 1.0;
+
+		return sum(n, np, k, r, k);
+	}
+
+	/**
+	 * Batch version of phypergeometric(int, int, int, int), i.e., the i'th
+	 * result corresponds to the i'th element of the given arrays.
+	 *
+	 * @param n
+	 *            Number of population genes
+	 * @param np
+	 *            Number of population genes in group
+	 * @param k
+	 *            Number of study genes
+	 * @param r
+	 *            Number of study genes in group
+	 * @param result
+	 *            the array in which the probabilities are stored.
+	 */
+	public void phypergeometric(int [] n, int [] np, int [] k, int [] r, double [] result)
+	{
+		for (int i = 0; i < n.length; i++)
+			result[i] = phypergeometric(n[i], np[i], k[i], r[i]);
+	}
+
+	/**
+	 * The summation as done by phypergeometric() in the case the rounded
+	 * group sizes don't sum up to n.
+	 */
+	private double phypergeometricRounded(int n, int np, int nq, int k, int r)
+	{
 		double log_n_choose_k = lNchooseK(n, k);
 		int top = k;
 		if (np < k)
@@ -95,7 +177,145 @@ public class Hypergeometric
 			}
 		}
 		return sum;
+	}
+
+	/**
+	 * Calculates the sum of P(X = i) for all i with from <= i <= to, where X
+	 * follows the hypergeometric distribution with indices N,M,n. The term
+	 * closest to the mode is calculated via term(), the others are derived
+	 * from it via the ratio of consecutive terms. To bound the accumulated
+	 * rounding error, the recurrence is restarted from an accurately
+	 * calculated term every RESTART_INTERVAL steps. As the terms decrease
+	 * with the distance to the mode, a possible underflow is harmless.
+	 *
+	 * @param N number of balls in the urn
+	 * @param M number of white balls in the urn
+	 * @param n number of balls drawn from the urn
+	 * @param from
+	 * @param to
+	 * @return the probability
+	 */
+	private double sum(int N, int M, int n, int from, int to)
+	{
+		int lo = Math.max(from, Math.max(0, n - (N - M)));
+		int hi = Math.min(to, Math.min(n, M));
+		if (lo > hi)
+			return 0;
 
+		int mode = (int)(((long)(n + 1) * (M + 1)) / (N + 2));
+		if (mode < lo) mode = lo;
+		else if (mode > hi) mode = hi;
+
+		double d = term(mode, N, M, n);
+		double sum = d;
+
+		/* Terms above the mode */
+		double t = d;
+		for (int i = mode; i < hi; i++)
+		{
+			if ((i + 1 - mode) % RESTART_INTERVAL == 0)
+				t = term(i + 1, N, M, n);
+			else
+				t *= ((double)(M - i) * (n - i)) / ((double)(i + 1) * (N - M - n + i + 1));
+			sum += t;
+			if (t <= sum * 1e-20)
+				break;
+		}
+
+		/* Terms below the mode */
+		t = d;
+		for (int i = mode; i > lo; i--)
+		{
+			if ((mode - i + 1) % RESTART_INTERVAL == 0)
+				t = term(i - 1, N, M, n);
+			else
+				t *= ((double)i * (N - M - n + i)) / ((double)(M - i + 1) * (n - i + 1));
+			sum += t;
+			if (t <= sum * 1e-20)
+				break;
+		}
+		return sum;
+	}
+
+	/**
+	 * Calculates P(X = x) for the hypergeometric distribution with indices
+	 * N,M,n as the ratio of three binomial probabilities, each of which is
+	 * evaluated via the saddle point expansion of Loader ("Fast and accurate
+	 * computation of binomial probabilities", 2000). Unlike the difference
+	 * of log factorials, whose absolute error grows with N, this keeps the
+	 * relative error close to the machine precision.
+	 *
+	 * @param x a value within the support of X
+	 * @param N number of balls in the urn
+	 * @param M number of white balls in the urn
+	 * @param n number of balls drawn from the urn
+	 * @return the probability
+	 */
+	private static double term(int x, int N, int M, int n)
+	{
+		double p = (double)n / N;
+		double q = (double)(N - n) / N;
+		return Math.exp(logBinomial(x, M, p, q) + logBinomial(n - x, N - M, p, q) - logBinomial(n, N, p, q));
+	}
+
+	/**
+	 * Calculates the logarithm of the probability of x successes in n
+	 * Bernoulli trials with success probability p = 1 - q.
+	 */
+	private static double logBinomial(int x, int n, double p, double q)
+	{
+		if (p == 0) return x == 0 ? 0 : Double.NEGATIVE_INFINITY;
+		if (q == 0) return x == n ? 0 : Double.NEGATIVE_INFINITY;
+		if (x == 0)
+		{
+			if (n == 0) return 0;
+			return p < 0.1 ? -bd0(n, n * q) - n * p : n * Math.log(q);
+		}
+		if (x == n)
+			return q < 0.1 ? -bd0(n, n * p) - n * q : n * Math.log(p);
+
+		double lc = stirlerr(n) - stirlerr(x) - stirlerr(n - x) - bd0(x, n * p) - bd0(n - x, n * q);
+		double lf = LN_2PI + Math.log(x) + Math.log1p(-(double)x / n);
+		return lc - 0.5 * lf;
+	}
+
+	/**
+	 * Calculates log(n!) - log(sqrt(2 pi n) (n/e)^n), the error of
+	 * Stirling's formula, for n >= 1.
+	 */
+	private static double stirlerr(int n)
+	{
+		if (n < STIRLERR.length)
+			return STIRLERR[n];
+
+		double nn = (double)n * n;
+		if (n > 500) return (S0 - S1 / nn) / n;
+		if (n > 80) return (S0 - (S1 - S2 / nn) / nn) / n;
+		if (n > 35) return (S0 - (S1 - (S2 - S3 / nn) / nn) / nn) / n;
+		return (S0 - (S1 - (S2 - (S3 - S4 / nn) / nn) / nn) / nn) / n;
+	}
+
+	/**
+	 * Calculates x log(x/np) + np - x, the deviance term of the saddle
+	 * point expansion, without cancellation for x close to np.
+	 */
+	private static double bd0(double x, double np)
+	{
+		if (Math.abs(x - np) < 0.1 * (x + np))
+		{
+			double v = (x - np) / (x + np);
+			double s = (x - np) * v;
+			double ej = 2 * x * v;
+			v = v * v;
+			for (int j = 1; j < 1000; j++)
+			{
+				ej *= v;
+				double s1 = s + ej / (2 * j + 1);
+				if (s1 == s) return s1;
+				s = s1;
+			}
+		}
+		return x * Math.log(x / np) + np - x;
 	}
 
 	/**
@@ -131,7 +351,10 @@ public class Hypergeometric
 		 */
 		if (n - x > N - M) return 0;
 
-		return Math.exp(lNchooseK(M,x)+lNchooseK(N-M,n-x)-lNchooseK(N,n));
+		/* Nothing drawn */
+		if (n == 0) return 1;
+
+		return term(x, N, M, n);
 	}
 
 	/**
@@ -150,24 +373,20 @@ public class Hypergeometric
 	 */
 	public double phyper(int x, int N, int M, int n, boolean lowerTail)
 	{
-		int i;
 		int up;
 		double p;
 
 		up = Math.min(n,M);
-		p = 0;
 
 		if (x < up / 2)
 		{
-			for (i = x; i >= 0; i--)
-				p += dhyper(i,N,M,n);
+			p = sum(N,M,n,0,x);
 
 			if (lowerTail) return p;
 			else return 1 - p;
 		} else
 		{
-			for (i = x+1;i <= up;i++)
-				p += dhyper(i,N,M,n);
+			p = sum(N,M,n,x+1,up);
 
 			if (lowerTail) return 1 - p;
 			else return p;
@@ -182,41 +401,13 @@ public class Hypergeometric
 	}
 
 	/**
-	 * return the log factorial of i. Use a cache to avoid repeatedly
-	 * calculating this. If we have a cache miss, fill up all values from the
-	 * last valid cache value to the value we currently need.
+	 * Returns the log factorial of i. It is derived from Stirling's
+	 * formula and its error as calculated by stirlerr(), so neither a
+	 * table nor a loop is needed.
 	 */
 	public double logfact(int i)
 	{
-		/*
-		 * Make sure value is already in lfactorial. If not, calculate all
-		 * values up to that for i
-		 */
-		if (i > (lfactorial.size() - 1))
-		{
-			for (int j = lfactorial.size(); j <= i; j++)
-			{
-				double lf = lfactorial.get(j - 1).doubleValue()
-						+ java.lang.Math.log(j);
-				lfactorial.add(j, new Double(lf));
-			}
-		}
-
-		return lfactorial.get(i).doubleValue();
+		if (i < 2) return 0;
+		return stirlerr(i) + (i + 0.5) * Math.log(i) - i + 0.5 * LN_2PI;
 	}
-
-	/**
-	 * Initialize the object lfactorial, which will act as a cache for log
-	 * factorial calculations.
-	 */
-	public Hypergeometric()
-	{
-
-		lfactorial = new Vector<Double>();
-		lfactorial.add(0, new Double(0.0)); /* 0! = 1, therefore let log(0)=0 */
-		lfactorial.add(1, new Double(0.0));
-
-	}
-
 }
-
@@ -1,5 +1,7 @@
 package ontologizer.statistics;
 
+import java.util.Random;
+
 /**
  *
  * This interface abstracts the p value calculation for the multiple test
@@ -28,6 +30,18 @@ public interface IPValueCalculation
 	 */
 	PValue[] calculateRandomPValues();
 
+	/**
+	 * Same as calculateRandomPValues() but all random decisions are based
+	 * on the given random number generator and the p values are returned
+	 * in their primitive representation, which implementations should fill
+	 * directly if possible. Implementations must be prepared to be called
+	 * concurrently with different generators.
+	 *
+	 * @param rnd
+	 * @return
+	 */
+	PValueSet calculateRandomPValueSet(Random rnd);
+
 	/**
 	 * Gives back the size of the study set currently processed. Needed for
 	 * storing of sampled p-values for different sample sizes.
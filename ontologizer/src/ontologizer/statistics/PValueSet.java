@@ -0,0 +1,194 @@
+package ontologizer.statistics;
+
+import java.util.Arrays;
+
+/**
+ * A primitive representation of an array of p values, which avoids
+ * allocating a PValue object per test. Only the p values that are not
+ * ignored at the MTC are kept, in parallel arrays of indices and values.
+ * All other p values are considered to be 1.0 and to be ignored. Apart
+ * from the "p" value itself, nothing is represented.
+ *
+ * Implementations of IPValueCalculation fill instances of this class
+ * directly when calculating random p values.
+ *
+ * @author Sebastian Bauer
+ */
+public class PValueSet
+{
+	/** The number of tests, i.e., the length of the corresponding PValue array */
+	private int size;
+
+	/** The number of p values that are not ignored */
+	private int numberOfEntries;
+
+	/** The indices of the p values that are not ignored in ascending order */
+	private int [] indices;
+
+	/** The p values that are not ignored */
+	private double [] values;
+
+	/**
+	 * Constructs an empty set.
+	 *
+	 * @param size the number of tests.
+	 */
+	public PValueSet(int size)
+	{
+		this(size, Math.min(size, 16));
+	}
+
+	/**
+	 * Constructs an empty set.
+	 *
+	 * @param size the number of tests.
+	 * @param capacity the expected number of p values that are not ignored.
+	 */
+	public PValueSet(int size, int capacity)
+	{
+		this.size = size;
+		indices = new int[Math.max(capacity, 1)];
+		values = new double[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Constructs the set from the given PValue array.
+	 *
+	 * @param p
+	 */
+	public PValueSet(PValue [] p)
+	{
+		this(p.length);
+		for (int i = 0; i < p.length; i++)
+		{
+			if (!p[i].ignoreAtMTC)
+				add(i, p[i].p);
+		}
+	}
+
+	/**
+	 * Adds a p value that is not ignored. Indices must be added in
+	 * ascending order.
+	 *
+	 * @param index the index of the test.
+	 * @param p the p value.
+	 */
+	public void add(int index, double p)
+	{
+		if (index >= size || (numberOfEntries > 0 && index <= indices[numberOfEntries - 1]))
+			throw new IllegalArgumentException("Index " + index + " is out of order");
+
+		if (numberOfEntries == indices.length)
+		{
+			int newLength = Math.min(Math.max(numberOfEntries * 2, 1), size);
+			indices = Arrays.copyOf(indices, newLength);
+			values = Arrays.copyOf(values, newLength);
+		}
+		indices[numberOfEntries] = index;
+		values[numberOfEntries] = p;
+		numberOfEntries++;
+	}
+
+	/**
+	 * @return the number of tests.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the number of p values that are not ignored.
+	 */
+	public int getNumberOfEntries()
+	{
+		return numberOfEntries;
+	}
+
+	/**
+	 * Returns the index of the test of the given entry.
+	 *
+	 * @param entry
+	 * @return the index.
+	 */
+	public int getIndex(int entry)
+	{
+		return indices[entry];
+	}
+
+	/**
+	 * Returns the p value of the given entry.
+	 *
+	 * @param entry
+	 * @return the p value.
+	 */
+	public double getValue(int entry)
+	{
+		return values[entry];
+	}
+
+	/**
+	 * Stores the p values of all tests in the given array, 1.0 for
+	 * ignored ones.
+	 *
+	 * @param p an array of at least size() elements.
+	 */
+	public void fill(double [] p)
+	{
+		Arrays.fill(p, 0, size, 1.0);
+		for (int i = 0; i < numberOfEntries; i++)
+			p[indices[i]] = values[i];
+	}
+
+	/**
+	 * Returns a set whose p values are those of this set in ascending
+	 * order. The i'th smallest p value is placed at index i, i.e., the
+	 * ignored p values come last.
+	 *
+	 * @return the sorted set.
+	 */
+	public PValueSet sorted()
+	{
+		PValueSet sorted = new PValueSet(size, numberOfEntries);
+		System.arraycopy(values, 0, sorted.values, 0, numberOfEntries);
+		Arrays.sort(sorted.values, 0, numberOfEntries);
+		for (int i = 0; i < numberOfEntries; i++)
+			sorted.indices[i] = i;
+		sorted.numberOfEntries = numberOfEntries;
+		return sorted;
+	}
+
+	/**
+	 * Shrinks the internal arrays to the number of entries.
+	 */
+	public void trim()
+	{
+		if (indices.length != numberOfEntries && numberOfEntries > 0)
+		{
+			indices = Arrays.copyOf(indices, numberOfEntries);
+			values = Arrays.copyOf(values, numberOfEntries);
+		}
+	}
+
+	/**
+	 * Converts the set into PValue objects.
+	 *
+	 * @return the array of the size of this set.
+	 */
+	public PValue [] toPValues()
+	{
+		PValue [] p = new PValue[size];
+		for (int i = 0; i < size; i++)
+		{
+			p[i] = new PValue();
+			p[i].ignoreAtMTC = true;
+			p[i].p = 1.0;
+		}
+		for (int i = 0; i < numberOfEntries; i++)
+		{
+			p[indices[i]].ignoreAtMTC = false;
+			p[indices[i]].p = values[i];
+		}
+		return p;
+	}
+}
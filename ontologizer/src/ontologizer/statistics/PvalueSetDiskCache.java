@@ -0,0 +1,238 @@
+package ontologizer.statistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A durable sibling of PvalueSetStore. Stores of sampled p values are kept
+ * in a directory, one file per key, such that subsequent runs can reuse
+ * them. The key should identify everything that influences the sampled
+ * p values, see key(). If the files of the directory exceed the given
+ * byte budget, the least recently used files are removed.
+ *
+ * @author Sebastian Bauer
+ */
+public class PvalueSetDiskCache
+{
+	private static Logger logger = Logger.getLogger(PvalueSetDiskCache.class.getName());
+
+	/** The magic at the start of each file */
+	static final byte [] MAGIC = new byte[]{'O','N','T','O','P','V','A','L'};
+
+	/** The version of the format */
+	static final int VERSION = 1;
+
+	/** The suffix of the files */
+	private static final String SUFFIX = ".pvalues";
+
+	/** The default budget */
+	public static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+
+	/** The directory in which the stores are kept */
+	private File directory;
+
+	/** The maximal number of bytes the stores may occupy */
+	private long maxBytes;
+
+	/**
+	 * Constructs the cache.
+	 *
+	 * @param directory the directory in which the stores are kept.
+	 *  It is created if it doesn't exist.
+	 * @param maxBytes the maximal number of bytes the stores may occupy.
+	 */
+	public PvalueSetDiskCache(File directory, long maxBytes)
+	{
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		directory.mkdirs();
+	}
+
+	/**
+	 * @return the maximal number of bytes the stores may occupy.
+	 */
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Builds the key for a store of sampled p values.
+	 *
+	 * @param checksum the checksum of the data (ontology, associations and population).
+	 * @param calculationName the name of the calculation that calculates the p values.
+	 * @param correctionName the name of the correction that stores the p values.
+	 * @param studySetSize the size of the study sets.
+	 * @param sizeTolerance the size tolerance used for sampling.
+	 * @param numberOfSamples the number of samples.
+	 * @return the key
+	 */
+	public static String key(long checksum, String calculationName, String correctionName, int studySetSize, int sizeTolerance, int numberOfSamples)
+	{
+		return Long.toHexString(checksum) + "/" + calculationName + "/" + correctionName + "/" +
+				studySetSize + "/" + sizeTolerance + "/" + numberOfSamples;
+	}
+
+	/**
+	 * Returns the file for the given key.
+	 *
+	 * @param key
+	 * @return the file
+	 */
+	private File file(String key)
+	{
+		long hash = 1125899906842597L;
+		for (int i = 0; i < key.length(); i++)
+			hash = 31 * hash + key.charAt(i);
+		return new File(directory, Long.toHexString(hash) + SUFFIX);
+	}
+
+	/**
+	 * Returns the store for the given key.
+	 *
+	 * @param key
+	 * @return the store or null if it is not in the cache.
+	 */
+	public synchronized PvalueSetStore load(String key)
+	{
+		File file = file(key);
+		if (!file.exists())
+			return null;
+
+		PvalueSetStore store = null;
+		try
+		{
+			CheckedInputStream cis = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32());
+			DataInputStream in = new DataInputStream(cis);
+			try
+			{
+				byte [] magic = new byte[MAGIC.length];
+				in.readFully(magic);
+				if (Arrays.equals(magic, MAGIC) && in.readInt() == VERSION && key.equals(in.readUTF()))
+				{
+					store = PvalueSetStore.read(in);
+					long crc = cis.getChecksum().getValue();
+					if (in.readLong() != crc)
+						throw new IOException("Checksum mismatch");
+				}
+			} finally
+			{
+				in.close();
+			}
+		} catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Failed to read p values from \"" + file.getPath() + "\"", e);
+			file.delete();
+			return null;
+		}
+
+		/* Mark as recently used */
+		if (store != null)
+			file.setLastModified(System.currentTimeMillis());
+		return store;
+	}
+
+	/**
+	 * Stores the given store under the given key. Errors are logged but
+	 * not propagated, as the cache is optional.
+	 *
+	 * @param key
+	 * @param store
+	 */
+	public synchronized void store(String key, PvalueSetStore store)
+	{
+		File file = file(key);
+		File tmp = null;
+		try
+		{
+			tmp = File.createTempFile("pvalues", ".tmp", directory);
+			CheckedOutputStream cos = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)), new CRC32());
+			DataOutputStream out = new DataOutputStream(cos);
+			try
+			{
+				out.write(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(key);
+				store.write(out);
+				out.writeLong(cos.getChecksum().getValue());
+			} finally
+			{
+				out.close();
+			}
+
+			file.delete();
+			if (!tmp.renameTo(file))
+				throw new IOException("Couldn't rename \"" + tmp.getPath() + "\" to \"" + file.getPath() + "\"");
+			tmp = null;
+		} catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Failed to write p values to \"" + file.getPath() + "\"", e);
+		} finally
+		{
+			if (tmp != null)
+				tmp.delete();
+		}
+
+		evict();
+	}
+
+	/**
+	 * Removes the least recently used stores until the budget is met.
+	 */
+	private void evict()
+	{
+		File [] files = directory.listFiles(new FileFilter()
+		{
+			public boolean accept(File pathname)
+			{
+				return pathname.getName().endsWith(SUFFIX);
+			}
+		});
+		if (files == null)
+			return;
+
+		final long [] lastModified = new long[files.length];
+		Integer [] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++)
+		{
+			lastModified[i] = files[i].lastModified();
+			order[i] = i;
+		}
+
+		/* Most recently used first */
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer o1, Integer o2)
+			{
+				if (lastModified[o1] > lastModified[o2]) return -1;
+				if (lastModified[o1] < lastModified[o2]) return 1;
+				return 0;
+			}
+		});
+
+		long bytes = 0;
+		for (int i : order)
+		{
+			bytes += files[i].length();
+			if (bytes > maxBytes)
+			{
+				logger.info("Removing \"" + files[i].getPath() + "\" from the p value cache");
+				files[i].delete();
+			}
+		}
+	}
+}
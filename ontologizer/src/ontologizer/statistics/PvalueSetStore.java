@@ -1,7 +1,9 @@
 package ontologizer.statistics;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 
 /**
@@ -13,6 +15,9 @@ import java.util.Iterator;
  * "ignoreAtMTC" attributes and the "p" value itself, nothing else gets stored.
  * Especially, the "p_min" and "p_adjusted" entries get lost.
  *
+ * The deflated arrays are kept as PValueSets, which can be accessed directly
+ * via get() in order to avoid the inflation.
+ *
  * @author grossman
  *
  */
@@ -28,7 +33,7 @@ public class PvalueSetStore implements Iterable<PValue[]>
 	 */
 	public class PValueSetStoreIterator implements Iterator<PValue[]>
 	{
-		private Iterator<HashMap<Integer, Double>> reducedIterator = reducedStoredSets.iterator();
+		private Iterator<PValueSet> reducedIterator = reducedStoredSets.iterator();
 
 		public boolean hasNext()
 		{
@@ -37,7 +42,7 @@ public class PvalueSetStore implements Iterable<PValue[]>
 
 		public PValue[] next()
 		{
-			return inflate_pvals(reducedIterator.next());
+			return reducedIterator.next().toPValues();
 		}
 
 		public void remove()
@@ -47,7 +52,7 @@ public class PvalueSetStore implements Iterable<PValue[]>
 
 	}
 
-	private ArrayList<HashMap<Integer, Double>> reducedStoredSets;
+	private ArrayList<PValueSet> reducedStoredSets;
 
 	private int setSize;
 
@@ -58,53 +63,173 @@ public class PvalueSetStore implements Iterable<PValue[]>
 	 */
 	public PvalueSetStore(int numberOfResamplingSteps, int setSize)
 	{
-		reducedStoredSets = new ArrayList<HashMap<Integer, Double>>(numberOfResamplingSteps);
+		reducedStoredSets = new ArrayList<PValueSet>(numberOfResamplingSteps);
 		this.setSize = setSize;
 	}
 
 	public void add(PValue[] values)
 	{
-		reducedStoredSets.add(deflate_pvals(values));
+		add(new PValueSet(values));
 	}
 
-	private HashMap<Integer, Double> deflate_pvals(PValue[] values)
+	/**
+	 * Adds the given set.
+	 *
+	 * @param values
+	 */
+	public synchronized void add(PValueSet values)
 	{
-		HashMap<Integer, Double> reducedSet = new HashMap<Integer, Double>();
-		for (int i = 0; i < values.length; i++)
+		values.trim();
+		reducedStoredSets.add(values);
+	}
+
+	/**
+	 * Stores the given values at the given index. Unlike add(), this
+	 * can be used to fill the store in an arbitrary order, e.g., by
+	 * several threads. The store must not be iterated before all
+	 * indices have been set.
+	 *
+	 * @param index
+	 * @param values
+	 */
+	public void set(int index, PValue[] values)
+	{
+		set(index, new PValueSet(values));
+	}
+
+	/**
+	 * Stores the given set at the given index.
+	 *
+	 * @param index
+	 * @param values
+	 * @see #set(int, PValue[])
+	 */
+	public synchronized void set(int index, PValueSet values)
+	{
+		values.trim();
+		while (reducedStoredSets.size() <= index)
+			reducedStoredSets.add(null);
+		reducedStoredSets.set(index, values);
+	}
+
+	/**
+	 * Returns the set stored at the given index without inflating it.
+	 *
+	 * @param index
+	 * @return the set
+	 */
+	public synchronized PValueSet get(int index)
+	{
+		return reducedStoredSets.get(index);
+	}
+
+	public Iterator<PValue[]> iterator()
+	{
+		return new PValueSetStoreIterator();
+	}
+
+	/**
+	 * @return the size of the stored sets.
+	 */
+	public int getSetSize()
+	{
+		return setSize;
+	}
+
+	/**
+	 * @return the number of stored sets.
+	 */
+	public synchronized int getNumberOfSets()
+	{
+		return reducedStoredSets.size();
+	}
+
+	/**
+	 * Writes the store in a compact binary form. Per set, only the
+	 * p values that are not ignored are written together with their
+	 * delta encoded indices.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public synchronized void write(DataOutput out) throws IOException
+	{
+		out.writeInt(setSize);
+		out.writeInt(reducedStoredSets.size());
+		for (PValueSet reducedSet : reducedStoredSets)
 		{
-			if (!values[i].ignoreAtMTC)
+			int n = reducedSet.getNumberOfEntries();
+			writeVarInt(out, n);
+			int last = 0;
+			for (int i = 0; i < n; i++)
 			{
-				reducedSet.put(i, values[i].p);
+				int k = reducedSet.getIndex(i);
+				writeVarInt(out, k - last);
+				out.writeDouble(reducedSet.getValue(i));
+				last = k;
 			}
 		}
-		return reducedSet;
 	}
 
-	private PValue[] inflate_pvals(HashMap<Integer, Double> reducedSet)
+	/**
+	 * Reads a store that was written via write().
+	 *
+	 * @param in
+	 * @return the store
+	 * @throws IOException
+	 */
+	public static PvalueSetStore read(DataInput in) throws IOException
 	{
-		PValue[] pvals = new PValue[setSize];
+		int setSize = in.readInt();
+		int numberOfSets = in.readInt();
+		if (setSize < 0 || numberOfSets < 0)
+			throw new IOException("Invalid p value store");
 
-		// initialize array
-		for (int i = 0; i < setSize; i++)
+		PvalueSetStore store = new PvalueSetStore(numberOfSets, setSize);
+		for (int i = 0; i < numberOfSets; i++)
 		{
-			pvals[i] = new PValue();
-			pvals[i].ignoreAtMTC = true;
-			pvals[i].p = 1.0;
+			int n = readVarInt(in);
+			if (n > setSize)
+				throw new IOException("Invalid number of p values " + n);
+
+			PValueSet reducedSet = new PValueSet(setSize, n);
+			int k = 0;
+			for (int j = 0; j < n; j++)
+			{
+				k += readVarInt(in);
+				try
+				{
+					reducedSet.add(k, in.readDouble());
+				} catch (IllegalArgumentException e)
+				{
+					throw new IOException("Invalid p value index " + k);
+				}
+			}
+			store.reducedStoredSets.add(reducedSet);
 		}
+		return store;
+	}
 
-		// set old values
-		for (int k : reducedSet.keySet())
+	private static void writeVarInt(DataOutput out, int value) throws IOException
+	{
+		while ((value & ~0x7f) != 0)
 		{
-			pvals[k].ignoreAtMTC = false;
-			pvals[k].p = reducedSet.get(k);
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
 		}
-
-		return pvals;
+		out.writeByte(value);
 	}
 
-	public Iterator<PValue[]> iterator()
+	private static int readVarInt(DataInput in) throws IOException
 	{
-		return new PValueSetStoreIterator();
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed integer");
 	}
-
 }
@@ -0,0 +1,90 @@
+package ontologizer.statistics;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Caches the samples of a resampling based test correction per study
+ * set size. The samples of a size are calculated only once, even if
+ * they are requested by several threads at the same time. Other
+ * threads wait for the result only if they need the same size, the
+ * calculation itself is not performed under any lock.
+ *
+ * @param <T> the type of the samples
+ */
+class SampleCache<T>
+{
+	private final ConcurrentHashMap<Integer,Future<T>> samples = new ConcurrentHashMap<Integer,Future<T>>();
+
+	/**
+	 * Returns the samples of the given study set size. If there are none,
+	 * they are calculated using the given calculation.
+	 *
+	 * @param studySetSize
+	 * @param calculation
+	 * @return the samples
+	 */
+	public T get(int studySetSize, Callable<T> calculation)
+	{
+		Future<T> future = samples.get(studySetSize);
+		if (future == null)
+		{
+			FutureTask<T> task = new FutureTask<T>(calculation);
+			future = samples.putIfAbsent(studySetSize, task);
+			if (future == null)
+			{
+				future = task;
+				task.run();
+			}
+		}
+
+		try
+		{
+			return future.get();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			/* Don't keep the failure, another request may try again */
+			samples.remove(studySetSize, future);
+
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if (cause instanceof Error)
+				throw (Error)cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * @param studySetSize
+	 * @return whether samples of the given size are available or in calculation.
+	 */
+	public boolean contains(int studySetSize)
+	{
+		return samples.containsKey(studySetSize);
+	}
+
+	/**
+	 * @return the study set sizes for which samples are available or in calculation.
+	 */
+	public Set<Integer> sizes()
+	{
+		return samples.keySet();
+	}
+
+	/**
+	 * Removes all samples.
+	 */
+	public void clear()
+	{
+		samples.clear();
+	}
+}
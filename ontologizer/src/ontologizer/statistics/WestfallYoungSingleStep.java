@@ -1,11 +1,11 @@
 package ontologizer.statistics;
 
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.concurrent.Callable;
 
 public class WestfallYoungSingleStep extends AbstractResamplingTestCorrection
 {
-	private HashMap<Integer,double[]> sampledMinPPerSize = new HashMap<Integer,double[]>();
+	private SampleCache<double[]> sampledMinPPerSize = new SampleCache<double[]>();
 
 	public String getDescription()
 	{
@@ -38,7 +38,7 @@ public class WestfallYoungSingleStep extends AbstractResamplingTestCorrection
 		}
 	};
 
-	public PValue[] adjustPValues(IPValueCalculation pvalues)
+	public PValue[] adjustPValues(final IPValueCalculation pvalues)
 	{
 		int i;
 
@@ -58,40 +58,40 @@ public class WestfallYoungSingleStep extends AbstractResamplingTestCorrection
 		Arrays.sort(sortedRawPValues);
 
 		/* this will hold the minima of the sampled p-values */
-		double [] sampledMinP = new double[numberOfResamplingSteps];
+		double [] sampledMinP;
 
-		int studySetSize = pvalues.currentStudySetSize();
+		final int studySetSize = pvalues.currentStudySetSize();
 
-		if (sampledMinPPerSize.containsKey(studySetSize)) {  // we have samples
+		if (sampledMinPPerSize.contains(studySetSize))  // we have samples
 			System.out.println("Using available samples for study set size " + studySetSize);
-			sampledMinP = sampledMinPPerSize.get(studySetSize);
-		} else {        // we have to sample
-			System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
 
-			initProgress(numberOfResamplingSteps);
-
-			for (int b=0; b < numberOfResamplingSteps; b++) {
-				/* create random sample */
-				PValue [] randomRawP = pvalues.calculateRandomPValues();
+		sampledMinP = sampledMinPPerSize.get(studySetSize, new Callable<double[]>()
+		{
+			public double[] call()
+			{
+				System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
 
-				if (randomRawP.length > 0)
+				final double [] samples = new double[numberOfResamplingSteps];
+				calculateRandomPValues(pvalues, numberOfResamplingSteps, new IRandomPValuesReceiver()
 				{
-					/* determine minimal p-value in sample */
-					double minP = randomRawP[0].p;
-					for (i=1; i < randomRawP.length; i++) {
-						minP = Math.min(minP,randomRawP[i].p);
+					public void receive(int b, PValueSet randomRawP)
+					{
+						if (randomRawP.size() > 0)
+						{
+							/* determine minimal p-value in sample, ignored ones are 1.0 */
+							double minP = 1.0;
+							for (int i=0; i < randomRawP.getNumberOfEntries(); i++) {
+								minP = Math.min(minP,randomRawP.getValue(i));
+							}
+							samples[b] = minP;
+						}
 					}
-					sampledMinP[b] = minP;
-				}
-
-				updateProgress(b);
-				System.out.print("created " + b + " samples out of " + numberOfResamplingSteps + "\r");
+				});
+				/* sort sampled minimal p-values according to size */
+				Arrays.sort(samples);
+				return samples;
 			}
-			/* sort sampled minimal p-values according to size */
-			Arrays.sort(sampledMinP);
-
-			sampledMinPPerSize.put(studySetSize,sampledMinP);
-		}
+		});
 
 		/*
 		 * this will hold the counts used for adjusting p-values
@@ -122,7 +122,7 @@ public class WestfallYoungSingleStep extends AbstractResamplingTestCorrection
 
 	public void resetCache()
 	{
-		sampledMinPPerSize = new HashMap<Integer,double[]>();
+		sampledMinPPerSize.clear();
 	}
 
 	public int getSizeTolerance()
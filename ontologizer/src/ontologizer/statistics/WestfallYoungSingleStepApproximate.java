@@ -1,11 +1,11 @@
 package ontologizer.statistics;
 
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.concurrent.Callable;
 
 public class WestfallYoungSingleStepApproximate extends AbstractResamplingTestCorrection
 {
-	private HashMap<Integer,double[]> sampledMinPPerSize = new HashMap<Integer,double[]>();
+	private SampleCache<double[]> sampledMinPPerSize = new SampleCache<double[]>();
 	private int sizeTolerance = 10;
 
 	public String getDescription()
@@ -39,7 +39,7 @@ public class WestfallYoungSingleStepApproximate extends AbstractResamplingTestCo
 		}
 	};
 
-	public PValue[] adjustPValues(IPValueCalculation pvalues)
+	public PValue[] adjustPValues(final IPValueCalculation pvalues)
 	{
 		int i;
 
@@ -59,16 +59,16 @@ public class WestfallYoungSingleStepApproximate extends AbstractResamplingTestCo
 		Arrays.sort(sortedRawPValues);
 
 		/* this will hold the minima of the sampled p-values */
-		double [] sampledMinP = new double[numberOfResamplingSteps];
+		double [] sampledMinP;
 
-		int studySetSize = pvalues.currentStudySetSize();
+		final int studySetSize = pvalues.currentStudySetSize();
 
 		// determine optimal optimal studyset size for which samples are available
 		int bestStudysetSize = 0;
 		double bestStudysetRatio = 0.0;
 
 
-		for (int s : sampledMinPPerSize.keySet()) {
+		for (int s : sampledMinPPerSize.sizes()) {
 			double curRatio;
 			if (s >= studySetSize) {
 				curRatio = ((double) s)/studySetSize;
@@ -83,37 +83,41 @@ public class WestfallYoungSingleStepApproximate extends AbstractResamplingTestCo
 		double ratioCutoff = 1 + 0.01 * sizeTolerance;
 
 
+		int sampleSize = studySetSize;
 		if (bestStudysetSize != 0 && bestStudysetRatio <= ratioCutoff) {  // use approximate samples
 			System.out.println("Needing samples for study set size " + studySetSize);
 			System.out.println("Using available samples made for study set size " + bestStudysetSize);
-			sampledMinP = sampledMinPPerSize.get(bestStudysetSize);
-		} else {        // we have to sample
-			System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
-
-			initProgress(numberOfResamplingSteps);
+			sampleSize = bestStudysetSize;
+		}
 
-			for (int b=0; b < numberOfResamplingSteps; b++) {
-				/* create random sample */
-				PValue [] randomRawP = pvalues.calculateRandomPValues();
+		/* The samples are calculated if not available, i.e., if we have to sample */
+		sampledMinP = sampledMinPPerSize.get(sampleSize, new Callable<double[]>()
+		{
+			public double[] call()
+			{
+				System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
 
-				if (randomRawP.length > 0)
+				final double [] samples = new double[numberOfResamplingSteps];
+				calculateRandomPValues(pvalues, numberOfResamplingSteps, new IRandomPValuesReceiver()
 				{
-					/* determine minimal p-value in sample */
-					double minP = randomRawP[0].p;
-					for (i=1; i < randomRawP.length; i++) {
-						minP = Math.min(minP,randomRawP[i].p);
+					public void receive(int b, PValueSet randomRawP)
+					{
+						if (randomRawP.size() > 0)
+						{
+							/* determine minimal p-value in sample, ignored ones are 1.0 */
+							double minP = 1.0;
+							for (int i=0; i < randomRawP.getNumberOfEntries(); i++) {
+								minP = Math.min(minP,randomRawP.getValue(i));
+							}
+							samples[b] = minP;
+						}
 					}
-					sampledMinP[b] = minP;
-				}
-
-				updateProgress(b);
-				System.out.print("created " + b + " samples out of " + numberOfResamplingSteps + "\r");
+				});
+				/* sort sampled minimal p-values according to size */
+				Arrays.sort(samples);
+				return samples;
 			}
-			/* sort sampled minimal p-values according to size */
-			Arrays.sort(sampledMinP);
-
-			sampledMinPPerSize.put(studySetSize,sampledMinP);
-		}
+		});
 
 		/*
 		 * this will hold the counts used for adjusting p-values
@@ -144,7 +148,7 @@ public class WestfallYoungSingleStepApproximate extends AbstractResamplingTestCo
 
 	public void resetCache()
 	{
-		sampledMinPPerSize = new HashMap<Integer,double[]>();
+		sampledMinPPerSize.clear();
 	}
 
 	public int getSizeTolerance()
@@ -1,6 +1,7 @@
 package ontologizer.statistics;
 
 import java.util.Arrays;
+import java.util.Random;
 
 public class WestfallYoungStepDown extends AbstractTestCorrection
 						   implements IResampling
@@ -69,17 +70,20 @@ public class WestfallYoungStepDown extends AbstractTestCorrection
 
 		/* Now "permute" */
 		System.out.println("Sampling " + numberOfResamplingSteps + " random study sets\nThis may take a while...");
+		Random rnd = new Random();
+		double [] randomRawP = new double[m];
 		for (int b=0; b < numberOfResamplingSteps; b++)
 		{
 			/* Compute raw p values of "permuted" data */
-			PValue [] randomRawP = pvalues.calculateRandomPValues();
+			PValueSet randomSet = pvalues.calculateRandomPValueSet(rnd);
 
-			assert(randomRawP.length == rawP.length);
+			assert(randomSet.size() == rawP.length);
+			randomSet.fill(randomRawP);
 
 			/* Compute the successive minima of raw p values */
-			q[m-1] = randomRawP[r[m-1]].p;
+			q[m-1] = randomRawP[r[m-1]];
 			for (i=m-2;i>=0;i--)
-				q[i] = Math.min(q[i+1],randomRawP[r[i]].p);
+				q[i] = Math.min(q[i+1],randomRawP[r[i]]);
 
 			/* Count up */
 			for (i=0;i<m;i++)
@@ -1,15 +1,16 @@
 package ontologizer.statistics;
 
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.concurrent.Callable;
 
-public class WestfallYoungStepDownCached extends AbstractTestCorrection
-						   implements IResampling
+public class WestfallYoungStepDownCached extends AbstractResamplingTestCorrection
 {
-	/** Specifies the number of resampling steps */
-	private int numberOfResamplingSteps = 1000;
+	private SampleCache<PvalueSetStore> sampledPValuesPerSize = new SampleCache<PvalueSetStore>();
 
-	private HashMap<Integer,PvalueSetStore> sampledPValuesPerSize = new HashMap<Integer,PvalueSetStore>();
+	public WestfallYoungStepDownCached()
+	{
+		numberOfResamplingSteps = 1000;
+	}
 
 	public String getDescription()
 	{
@@ -43,7 +44,7 @@ public class WestfallYoungStepDownCached extends AbstractTestCorrection
 		}
 	};
 
-	public PValue[] adjustPValues(IPValueCalculation pvalueCalc)
+	public PValue[] adjustPValues(final IPValueCalculation pvalueCalc)
 	{
 		int i;
 
@@ -54,7 +55,7 @@ public class WestfallYoungStepDownCached extends AbstractTestCorrection
 		int [] count = new int[rawP.length];
 
 		/* Sort the raw P-values and remember their original index */
-		int m = rawP.length;
+		final int m = rawP.length;
 		int r[] = new int[m];
 		Entry [] sortedRawPValues = new Entry[m];
 
@@ -70,36 +71,49 @@ public class WestfallYoungStepDownCached extends AbstractTestCorrection
 		for (i=0;i<m;i++)
 			r[i] = sortedRawPValues[i].index;
 
-		int studySetSize = pvalueCalc.currentStudySetSize();
-
-		/* holds the sampled random p values for the current study set size */
-		PvalueSetStore randomSampledPValues;
+		final int studySetSize = pvalueCalc.currentStudySetSize();
 
-		if (sampledPValuesPerSize.containsKey(studySetSize)) {
+		if (sampledPValuesPerSize.contains(studySetSize))
 			System.out.println("Using available samples for study set size " + studySetSize);
-			randomSampledPValues = sampledPValuesPerSize.get(studySetSize);
-		} else {
-			System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
-			randomSampledPValues = new PvalueSetStore(numberOfResamplingSteps,m);
-			for (int b=0; b < numberOfResamplingSteps; b++) {
-				/* Compute raw p values of "permuted" data */
-				randomSampledPValues.add(pvalueCalc.calculateRandomPValues());
-
-				System.out.print("created " + b + " samples out of " + numberOfResamplingSteps + "\r");
+
+		/* holds the sampled random p values for the current study set size */
+		PvalueSetStore randomSampledPValues = sampledPValuesPerSize.get(studySetSize, new Callable<PvalueSetStore>()
+		{
+			public PvalueSetStore call()
+			{
+				PvalueSetStore store = loadSampledPValues(studySetSize,m);
+				if (store != null)
+				{
+					System.out.println("Using stored samples for study set size " + studySetSize);
+					return store;
+				}
+
+				System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
+				final PvalueSetStore newStore = new PvalueSetStore(numberOfResamplingSteps,m);
+				calculateRandomPValues(pvalueCalc, numberOfResamplingSteps, new IRandomPValuesReceiver()
+				{
+					public void receive(int b, PValueSet randomRawP)
+					{
+						/* Raw p values of "permuted" data */
+						newStore.set(b, randomRawP);
+					}
+				});
+				saveSampledPValues(studySetSize,newStore);
+				return newStore;
 			}
-			sampledPValuesPerSize.put(studySetSize,randomSampledPValues);
-		}
+		});
 
 		/* Now "permute" */
-		for (PValue [] randomRawP : randomSampledPValues)
+		double [] randomRawP = new double[m];
+		for (int b=0;b<randomSampledPValues.getNumberOfSets();b++)
 		{
-			/* Compute raw p values of "permuted" data */
-//			PValue [] randomRawP = randomSampledPValues[b];
+			/* Raw p values of "permuted" data */
+			randomSampledPValues.get(b).fill(randomRawP);
 
 			/* Compute the successive minima of raw p values */
-			q[m-1] = randomRawP[r[m-1]].p;
+			q[m-1] = randomRawP[r[m-1]];
 			for (i=m-2;i>=0;i--)
-				q[i] = Math.min(q[i+1],randomRawP[r[i]].p);
+				q[i] = Math.min(q[i+1],randomRawP[r[i]]);
 
 			/* Count up */
 			for (i=0;i<m;i++)
@@ -129,18 +143,13 @@ public class WestfallYoungStepDownCached extends AbstractTestCorrection
 			numberOfResamplingSteps = n;
 
 			/* Clear the cache */
-			sampledPValuesPerSize = new HashMap<Integer,PvalueSetStore>();
+			sampledPValuesPerSize.clear();
 		}
 	}
 
-	public int getNumberOfResamplingSteps()
-	{
-		return numberOfResamplingSteps;
-	}
-
 	public void resetCache()
 	{
-		sampledPValuesPerSize = new HashMap<Integer,PvalueSetStore>();
+		sampledPValuesPerSize.clear();
 	}
 
 	public int getSizeTolerance()
@@ -1,7 +1,7 @@
 package ontologizer.statistics;
 
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.concurrent.Callable;
 
 public class WestfallYoungStepDownCachedOld extends AbstractTestCorrection
 						   implements IResampling
@@ -9,7 +9,7 @@ public class WestfallYoungStepDownCachedOld extends AbstractTestCorrection
 	/** Specifies the number of resampling steps */
 	private int numberOfResamplingSteps = 1000;
 
-	private HashMap<Integer,PValue[][]> sampledPValuesPerSize = new HashMap<Integer,PValue[][]>();
+	private SampleCache<PValue[][]> sampledPValuesPerSize = new SampleCache<PValue[][]>();
 
 	public String getDescription()
 	{
@@ -43,7 +43,7 @@ public class WestfallYoungStepDownCachedOld extends AbstractTestCorrection
 		}
 	};
 
-	public PValue[] adjustPValues(IPValueCalculation pvalueCalc)
+	public PValue[] adjustPValues(final IPValueCalculation pvalueCalc)
 	{
 		int i;
 
@@ -54,7 +54,7 @@ public class WestfallYoungStepDownCachedOld extends AbstractTestCorrection
 		int [] count = new int[rawP.length];
 
 		/* Sort the raw P-values and remember their original index */
-		int m = rawP.length;
+		final int m = rawP.length;
 		int r[] = new int[m];
 		Entry [] sortedRawPValues = new Entry[m];
 
@@ -70,24 +70,27 @@ public class WestfallYoungStepDownCachedOld extends AbstractTestCorrection
 		for (i=0;i<m;i++)
 			r[i] = sortedRawPValues[i].index;
 
-		int studySetSize = pvalueCalc.currentStudySetSize();
+		final int studySetSize = pvalueCalc.currentStudySetSize();
 
-		/* holds the sampled random p values for the current study set size */
-		PValue[][] randomSampledPValues = new PValue[numberOfResamplingSteps][m];
-
-		if (sampledPValuesPerSize.containsKey(studySetSize)) {
+		if (sampledPValuesPerSize.contains(studySetSize))
 			System.out.println("Using available samples for study set size " + studySetSize);
-			randomSampledPValues = sampledPValuesPerSize.get(studySetSize);
-		} else {
-			System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
-			for (int b=0; b < numberOfResamplingSteps; b++) {
-				/* Compute raw p values of "permuted" data */
-				randomSampledPValues[b] = pvalueCalc.calculateRandomPValues();
-
-				System.out.print("created " + b + " samples out of " + numberOfResamplingSteps + "\r");
+
+		/* holds the sampled random p values for the current study set size */
+		PValue[][] randomSampledPValues = sampledPValuesPerSize.get(studySetSize, new Callable<PValue[][]>()
+		{
+			public PValue[][] call()
+			{
+				System.out.println("Sampling for study set size " + studySetSize + "\nThis may take a while...");
+				PValue[][] samples = new PValue[numberOfResamplingSteps][m];
+				for (int b=0; b < numberOfResamplingSteps; b++) {
+					/* Compute raw p values of "permuted" data */
+					samples[b] = pvalueCalc.calculateRandomPValues();
+
+					System.out.print("created " + b + " samples out of " + numberOfResamplingSteps + "\r");
+				}
+				return samples;
 			}
-			sampledPValuesPerSize.put(studySetSize,randomSampledPValues);
-		}
+		});
 
 		/* Now "permute" */
 		for (int b=0; b < numberOfResamplingSteps; b++)
@@ -128,7 +131,7 @@ public class WestfallYoungStepDownCachedOld extends AbstractTestCorrection
 			numberOfResamplingSteps = n;
 
 			/* Clear the cache */
-			sampledPValuesPerSize = new HashMap<Integer,PValue[][]>();
+			sampledPValuesPerSize.clear();
 		}
 	}
 
@@ -139,7 +142,7 @@ public class WestfallYoungStepDownCachedOld extends AbstractTestCorrection
 
 	public void resetCache()
 	{
-		sampledPValuesPerSize = new HashMap<Integer,PValue[][]>();
+		sampledPValuesPerSize.clear();
 	}
 
 	public int getSizeTolerance()
@@ -23,6 +23,9 @@ public final class ByteString implements Serializable
         
 	private byte [] bytes;
 
+	/** Cached hash value, 0 if it has not been calculated yet */
+	private transient int hash;
+
 	public ByteString(String str)
 	{
 		bytes = str.getBytes();
@@ -69,6 +72,18 @@ public final class ByteString implements Serializable
 		return bytes.length;
 	}
 
+	/**
+	 * Returns a copy of the bytes of this string.
+	 *
+	 * @return the bytes
+	 */
+	public byte [] getBytes()
+	{
+		byte [] copy = new byte[bytes.length];
+		System.arraycopy(bytes, 0, copy, 0, bytes.length);
+		return copy;
+	}
+
 	@Override
 	public String toString()
 	{
@@ -229,9 +244,13 @@ public final class ByteString implements Serializable
 	@Override
 	public int hashCode()
 	{
-		int hashVal = 0;
-		for (int i = 0; i < bytes.length; i++)
-			hashVal = 31*hashVal + bytes[i];
+		int hashVal = hash;
+		if (hashVal == 0)
+		{
+			for (int i = 0; i < bytes.length; i++)
+				hashVal = 31*hashVal + bytes[i];
+			hash = hashVal;
+		}
 		return hashVal;
 	}
 
@@ -0,0 +1,102 @@
+package ontologizer.types;
+
+/**
+ * An immutable index that maps byte strings to their position within
+ * the array from which the index has been compiled. The strings are
+ * kept in an open addressing table together with their hash values,
+ * hence a lookup computes the hash of the given string once, usually
+ * compares it with a single entry and doesn't allocate any objects.
+ *
+ * @author Sebastian Bauer
+ */
+public final class ByteStringIndex
+{
+	/** The indexed strings in their original order */
+	private ByteString [] keys;
+
+	/** The position of the string of a slot plus one, 0 if the slot is empty */
+	private int [] slots;
+
+	/** The hash values of the strings of the slots */
+	private int [] slotHashes;
+
+	/** Number of bits by which the scrambled hash is shifted to get a slot */
+	private int shift;
+
+	/**
+	 * Compiles the index.
+	 *
+	 * @param keys the strings to be indexed. The array must not be
+	 *  altered afterwards.
+	 * @throws IllegalArgumentException if a string is contained more than
+	 *  once.
+	 */
+	public ByteStringIndex(ByteString [] keys)
+	{
+		this.keys = keys;
+
+		/* Keep the load factor below 0.5 */
+		int bits = 1;
+		while ((1 << bits) < keys.length * 2)
+			bits++;
+		slots = new int[1 << bits];
+		slotHashes = new int[1 << bits];
+		shift = 32 - bits;
+
+		int mask = slots.length - 1;
+		for (int i = 0; i < keys.length; i++)
+		{
+			int hash = keys[i].hashCode();
+			int slot = (hash * 0x9e3779b9) >>> shift;
+			while (slots[slot] != 0)
+			{
+				if (slotHashes[slot] == hash && keys[slots[slot] - 1].equals(keys[i]))
+					throw new IllegalArgumentException("\"" + keys[i] + "\" is contained more than once");
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = i + 1;
+			slotHashes[slot] = hash;
+		}
+	}
+
+	/**
+	 * Returns the position of the given string.
+	 *
+	 * @param key
+	 * @return the position within the array from which the index has
+	 *  been compiled or -1 if the string is not contained.
+	 */
+	public int indexOf(ByteString key)
+	{
+		int hash = key.hashCode();
+		int mask = slots.length - 1;
+		int slot = (hash * 0x9e3779b9) >>> shift;
+		int entry;
+		while ((entry = slots[slot]) != 0)
+		{
+			if (slotHashes[slot] == hash && keys[entry - 1].equals(key))
+				return entry - 1;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of indexed strings.
+	 */
+	public int size()
+	{
+		return keys.length;
+	}
+
+	/**
+	 * Returns the string at the given position.
+	 *
+	 * @param index
+	 * @return the string
+	 */
+	public ByteString get(int index)
+	{
+		return keys[index];
+	}
+}
@@ -20,10 +20,11 @@ import ontologizer.association.AssociationParser;
 import ontologizer.association.IAssociationParserProgress;
 import ontologizer.go.Ontology;
 import ontologizer.go.IOBOParserProgress;
+import ontologizer.go.MappedFileInput;
 import ontologizer.go.OBOParser;
 import ontologizer.go.OBOParserException;
-import ontologizer.go.OBOParserFileInput;
 import ontologizer.go.TermContainer;
+import ontologizer.snapshot.SnapshotCache;
 import ontologizer.util.MemoryWarningSystem;
 
 /**
@@ -190,6 +191,9 @@ public class WorkSetLoadThread extends Thread
 	private List<Task> taskList = new LinkedList<Task>();
 	private FileCacheUpdateCallback fileCacheUpdateCallback;
 
+	/** Snapshots of already parsed files, created lazily */
+	private SnapshotCache snapshotCache;
+
 	public WorkSetLoadThread()
 	{
 		super(OntologizerThreadGroups.workerThreadGroup,"Work Set Loader Thread");
@@ -401,6 +405,19 @@ public class WorkSetLoadThread extends Thread
 		taskList.add(newTask);
 	}
 
+	/**
+	 * Returns the snapshot cache that is located within the file cache
+	 * directory.
+	 *
+	 * @return the snapshot cache or null if no cache directory has been set.
+	 */
+	private SnapshotCache getSnapshotCache()
+	{
+		if (snapshotCache == null && FileCache.getCacheDirectory() != null)
+			snapshotCache = new SnapshotCache(new File(FileCache.getCacheDirectory(), "snapshots"));
+		return snapshotCache;
+	}
+
 	/**
 	 * Load the graph.
 	 *
@@ -415,9 +432,8 @@ public class WorkSetLoadThread extends Thread
 		Ontology graph;
 		if (!graphMap.containsKey(oboName))
 		{
-			OBOParser oboParser = new OBOParser(new OBOParserFileInput(oboName), OBOParser.IGNORE_SYNONYMS);
 			workSetProgress.message("Parsing OBO file");
-			oboParser.doParse(new IOBOParserProgress()
+			IOBOParserProgress oboProgress = new IOBOParserProgress()
 			{
 
 				public void init(int max)
@@ -430,8 +446,26 @@ public class WorkSetLoadThread extends Thread
 					workSetProgress.message("Parsing OBO file ("+terms+")");
 					workSetProgress.updateGauge(current);
 				}
-			});
-			TermContainer goTerms = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), oboParser.getDataVersion());
+			};
+			TermContainer goTerms;
+			SnapshotCache cache = getSnapshotCache();
+			if (cache != null)
+			{
+				goTerms = cache.getTerms(oboName, OBOParser.IGNORE_SYNONYMS, oboProgress);
+			} else
+			{
+				MappedFileInput input = new MappedFileInput(oboName);
+				OBOParser oboParser;
+				try
+				{
+					oboParser = new OBOParser(input, OBOParser.IGNORE_SYNONYMS);
+					oboParser.doParse(oboProgress);
+				} finally
+				{
+					input.close();
+				}
+				goTerms = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), oboParser.getDataVersion());
+			}
 			workSetProgress.message("Building GO graph");
 			graph = Ontology.create(goTerms);
 			graphMap.put(oboName,graph);
@@ -465,7 +499,7 @@ public class WorkSetLoadThread extends Thread
 
 				workSetProgress.message("Parsing association file");
 				workSetProgress.updateGauge(0);
-				AssociationParser ap = new AssociationParser(new OBOParserFileInput(assocName),graph.getTermContainer(),null,new IAssociationParserProgress()
+				IAssociationParserProgress assocProgress = new IAssociationParserProgress()
 				{
 					public void init(int max)
 					{
@@ -476,9 +510,26 @@ public class WorkSetLoadThread extends Thread
 					{
 						workSetProgress.updateGauge(current);
 					}
-				});
+				};
 
-				AssociationContainer ac = new AssociationContainer(ap.getAssociations(), ap.getSynonym2gene(), ap.getDbObject2gene());
+				AssociationContainer ac;
+				SnapshotCache cache = getSnapshotCache();
+				if (cache != null)
+				{
+					ac = cache.getAssociations(oboName, assocName, graph.getTermMap(), null, null, assocProgress);
+				} else
+				{
+					MappedFileInput input = new MappedFileInput(assocName);
+					AssociationParser ap;
+					try
+					{
+						ap = new AssociationParser(input,graph.getTermContainer(),null,assocProgress);
+					} finally
+					{
+						input.close();
+					}
+					ac = new AssociationContainer(ap.getAssociations(), ap.getSynonym2gene(), ap.getDbObject2gene());
+				}
 				assocMap.put(assocName, ac);
 				workSetProgress.message("");
 				workSetProgress.initGauge(0);
@@ -0,0 +1,219 @@
+package sonumina.collections;
+
+import java.util.Arrays;
+
+/**
+ * A cache that maps long keys to double values and that occupies a
+ * bounded amount of memory. It can be used concurrently by several
+ * threads.
+ *
+ * The cache is divided into stripes, each guarded by its own lock, such
+ * that threads accessing different stripes don't contend. Each stripe is
+ * an open addressing table of primitive arrays, which is organized in sets
+ * of a fixed number of slots. A key can be stored only in the slots of the
+ * set it is hashed to. If all slots of the set are occupied, the least
+ * recently used entry of the set is evicted.
+ */
+public class LongDoubleCache
+{
+	/** The number of slots per set */
+	private static final int WAYS = 4;
+
+	/**
+	 * A single stripe.
+	 */
+	private static class Stripe
+	{
+		/** The keys of the slots */
+		private long [] keys;
+
+		/** The values of the slots */
+		private double [] values;
+
+		/** The time of the last access of the slots, 0 for empty slots */
+		private int [] stamps;
+
+		/** The current time */
+		private int clock;
+
+		public Stripe(int numberOfSlots)
+		{
+			keys = new long[numberOfSlots];
+			values = new double[numberOfSlots];
+			stamps = new int[numberOfSlots];
+		}
+
+		/**
+		 * Advances the clock.
+		 *
+		 * @return the new time.
+		 */
+		private int tick()
+		{
+			if (clock == Integer.MAX_VALUE)
+			{
+				/* Rare case, keep the used slots */
+				for (int i = 0; i < stamps.length; i++)
+				{
+					if (stamps[i] != 0)
+						stamps[i] = 1;
+				}
+				clock = 1;
+			}
+			return ++clock;
+		}
+
+		public synchronized double get(long key, int set)
+		{
+			int base = set * WAYS;
+			for (int i = base; i < base + WAYS; i++)
+			{
+				if (stamps[i] != 0 && keys[i] == key)
+				{
+					stamps[i] = tick();
+					return values[i];
+				}
+			}
+			return Double.NaN;
+		}
+
+		public synchronized void put(long key, int set, double value)
+		{
+			int base = set * WAYS;
+			int victim = base;
+			for (int i = base; i < base + WAYS; i++)
+			{
+				if (stamps[i] != 0 && keys[i] == key)
+				{
+					victim = i;
+					break;
+				}
+				if (stamps[i] < stamps[victim])
+					victim = i;
+			}
+			keys[victim] = key;
+			values[victim] = value;
+			stamps[victim] = tick();
+		}
+
+		public synchronized int size()
+		{
+			int size = 0;
+			for (int stamp : stamps)
+			{
+				if (stamp != 0)
+					size++;
+			}
+			return size;
+		}
+
+		public synchronized void clear()
+		{
+			Arrays.fill(stamps, 0);
+			clock = 0;
+		}
+	}
+
+	/** The stripes */
+	private Stripe [] stripes;
+
+	/** The number of stripes minus one */
+	private int stripeMask;
+
+	/** The number of sets per stripe minus one */
+	private int setMask;
+
+	/**
+	 * Constructs the cache.
+	 *
+	 * @param capacity the maximal number of entries. The actual capacity
+	 *  may be slightly larger due to rounding.
+	 * @param concurrencyLevel the expected number of threads that access the
+	 *  cache concurrently.
+	 */
+	public LongDoubleCache(int capacity, int concurrencyLevel)
+	{
+		int numberOfStripes = 1;
+		while (numberOfStripes < concurrencyLevel * 16 && numberOfStripes < 1 << 12)
+			numberOfStripes <<= 1;
+
+		int setsPerStripe = 1;
+		while ((long)setsPerStripe * WAYS * numberOfStripes < capacity && setsPerStripe < 1 << 24)
+			setsPerStripe <<= 1;
+
+		stripes = new Stripe[numberOfStripes];
+		for (int i = 0; i < numberOfStripes; i++)
+			stripes[i] = new Stripe(setsPerStripe * WAYS);
+		stripeMask = numberOfStripes - 1;
+		setMask = setsPerStripe - 1;
+	}
+
+	/**
+	 * Spreads the bits of the key.
+	 *
+	 * @param key
+	 * @return the hash value
+	 */
+	private static long hash(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	/**
+	 * Returns the value of the given key.
+	 *
+	 * @param key
+	 * @return the value or Double.NaN if the key is not in the cache.
+	 */
+	public double get(long key)
+	{
+		long h = hash(key);
+		return stripes[(int)(h >>> 40) & stripeMask].get(key, (int)h & setMask);
+	}
+
+	/**
+	 * Puts the given key/value pair into the cache, possibly evicting
+	 * another entry.
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public void put(long key, double value)
+	{
+		long h = hash(key);
+		stripes[(int)(h >>> 40) & stripeMask].put(key, (int)h & setMask, value);
+	}
+
+	/**
+	 * @return the maximal number of entries.
+	 */
+	public int getCapacity()
+	{
+		return stripes.length * (setMask + 1) * WAYS;
+	}
+
+	/**
+	 * @return the number of entries.
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (Stripe stripe : stripes)
+			size += stripe.size();
+		return size;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear()
+	{
+		for (Stripe stripe : stripes)
+			stripe.clear();
+	}
+}
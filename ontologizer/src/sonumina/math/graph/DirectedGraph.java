@@ -33,6 +33,9 @@ public class DirectedGraph<VertexType> extends AbstractGraph<VertexType> impleme
 	/** Contains the vertices associated to meta information (edges) */
 	private LinkedHashMap<VertexType,VertexAttributes<VertexType>> vertices;
 
+	/** Incremented whenever vertices or edges are added or removed */
+	private int modificationCount;
+
 	public interface IDistanceVisitor<VertexType>
 	{
 		/**
@@ -64,6 +67,7 @@ public class DirectedGraph<VertexType> extends AbstractGraph<VertexType> impleme
 		{
 			VertexAttributes<VertexType> va = new VertexAttributes<VertexType>();
 			vertices.put(vertex,va);
+			modificationCount++;
 		}
 	}
 
@@ -94,6 +98,7 @@ public class DirectedGraph<VertexType> extends AbstractGraph<VertexType> impleme
 			}
 
 			vertices.remove(vertex);
+			modificationCount++;
 		}
 	}
 
@@ -190,6 +195,7 @@ public class DirectedGraph<VertexType> extends AbstractGraph<VertexType> impleme
 
 		vaSource.outEdges.add(edge);
 		vaDest.inEdges.add(edge);
+		modificationCount++;
 	}
 
 	/**
@@ -218,6 +224,8 @@ public class DirectedGraph<VertexType> extends AbstractGraph<VertexType> impleme
 		if (vaSource == null || vaDest == null)
 			throw new IllegalArgumentException();
 
+		modificationCount++;
+
 //		System.out.println("start removing -->  ");
 		HashSet<Edge<VertexType>> deleteMe = new HashSet<Edge<VertexType>>();
 		for (Edge<VertexType> edge : vaSource.outEdges){
@@ -1074,6 +1082,8 @@ public class DirectedGraph<VertexType> extends AbstractGraph<VertexType> impleme
 	 */
 	public void mergeVertices(VertexType vertex1, Iterable<VertexType> eqVertices)
 	{
+		modificationCount++;
+
 		for (VertexType vertex2 : eqVertices)
 		{
 			if (!vertices.containsKey(vertex2))
@@ -1093,4 +1103,16 @@ public class DirectedGraph<VertexType> extends AbstractGraph<VertexType> impleme
 	public boolean containsVertex(VertexType vertex){
 		return vertices.containsKey(vertex);
 	}
+
+	/**
+	 * Returns the number of structural modifications that have been applied
+	 * to this graph so far. Can be used to detect whether data derived from
+	 * the graph is still valid.
+	 *
+	 * @return the modification count.
+	 */
+	public int getModificationCount()
+	{
+		return modificationCount;
+	}
 }
@@ -61,7 +61,8 @@ public class DirectedGraphLayout<T>
 		this.graph = graph;
 		this.dimensionCallback = dimensionCallback;
 		this.positionCallback = positionCallback;
-		this.slimGraph = SlimDirectedGraphView.create(graph);
+		/* Only the neighbours are needed, hence the compact view suffices */
+		this.slimGraph = SlimDirectedGraphView.createCompact(graph);
 
 		attrs = new Attr[graph.getNumberOfVertices()];
 		for (int i=0;i<graph.getNumberOfVertices();i++)
@@ -0,0 +1,526 @@
+package sonumina.math.graph;
+
+import java.util.Arrays;
+
+/**
+ * A compact index that answers reachability queries on a directed acyclic
+ * graph whose vertices are given by indices.
+ *
+ * The index is based on interval labelling (Agrawal, Borgida and Jagadish,
+ * 1989). A depth-first search assigns post order numbers to the vertices,
+ * such that the post order numbers of the vertices of each subtree of the
+ * spanning tree form an interval. The set of vertices reachable from a
+ * vertex is then represented by the union of the interval of its subtree
+ * and the intervals of its successors, which are merged to a small sorted
+ * list of disjoint intervals. A query is a binary search within such a
+ * list. For ontologies, which are almost trees, the number of intervals
+ * per vertex is small, such that the index requires much less memory than
+ * the explicit closures.
+ *
+ * The spanning tree is the optimal tree cover of Agrawal et al., i.e., each
+ * vertex is attached to the predecessor that has the most ancestors.
+ * Both, ancestor and descendant queries are answered by the labelling of
+ * the descendants. The ancestors of a vertex, which are usually few, are
+ * enumerated by a traversal of the parents. Note that a vertex is
+ * considered to be an ancestor and a descendant of itself.
+ *
+ * @author Sebastian Bauer
+ */
+public class ReachabilityIndex
+{
+	/**
+	 * The interval labelling for one direction of the edges.
+	 */
+	private static class Labelling
+	{
+		/** The post order number of each vertex */
+		private int [] post;
+
+		/** The vertex of each post order number */
+		private int [] vertexOfPost;
+
+		/** Start of the intervals of a vertex given by its post order number, has one more element than there are vertices */
+		private int [] intervalOffsets;
+
+		/** The first post order numbers of the intervals */
+		private int [] starts;
+
+		/** The last post order numbers of the intervals */
+		private int [] ends;
+
+		/**
+		 * Constructs the labelling.
+		 *
+		 * @param offsets start of the successors of a vertex within successors.
+		 * @param successors the successors of all vertices.
+		 * @param predecessorOffsets start of the predecessors of a vertex within predecessors.
+		 * @param predecessors the predecessors of all vertices.
+		 * @throws IllegalArgumentException if the graph contains a cycle.
+		 */
+		public Labelling(int [] offsets, int [] successors, int [] predecessorOffsets, int [] predecessors)
+		{
+			int n = offsets.length - 1;
+
+			/* Determine a topological order */
+			int [] topologicalOrder = new int[n];
+			int [] inDegree = new int[n];
+			int head = 0;
+			int tail = 0;
+			for (int v = 0; v < n; v++)
+			{
+				inDegree[v] = predecessorOffsets[v + 1] - predecessorOffsets[v];
+				if (inDegree[v] == 0)
+					topologicalOrder[tail++] = v;
+			}
+			while (head < tail)
+			{
+				int v = topologicalOrder[head++];
+				for (int i = offsets[v]; i < offsets[v + 1]; i++)
+				{
+					if (--inDegree[successors[i]] == 0)
+						topologicalOrder[tail++] = successors[i];
+				}
+			}
+			if (tail != n)
+				throw new IllegalArgumentException("The graph contains a cycle");
+
+			/* The optimal tree cover: Each vertex is assigned to the predecessor with
+			 * the most ancestors as it is covered by the most intervals already */
+			int [] numberOfAncestors = new int[n];
+			int [] stamps = new int[n];
+			int [] queue = inDegree;
+			for (int v = 0; v < n; v++)
+			{
+				head = 0;
+				tail = 0;
+				stamps[v] = v + 1;
+				queue[tail++] = v;
+				while (head < tail)
+				{
+					int w = queue[head++];
+					for (int i = predecessorOffsets[w]; i < predecessorOffsets[w + 1]; i++)
+					{
+						int p = predecessors[i];
+						if (stamps[p] != v + 1)
+						{
+							stamps[p] = v + 1;
+							queue[tail++] = p;
+						}
+					}
+				}
+				numberOfAncestors[v] = tail;
+			}
+
+			int [] treeChildOffsets = new int[n + 1];
+			int [] treeParent = stamps;
+			for (int v = 0; v < n; v++)
+			{
+				treeParent[v] = -1;
+				for (int i = predecessorOffsets[v]; i < predecessorOffsets[v + 1]; i++)
+				{
+					int p = predecessors[i];
+					if (treeParent[v] == -1 || numberOfAncestors[p] > numberOfAncestors[treeParent[v]])
+						treeParent[v] = p;
+				}
+				if (treeParent[v] != -1)
+					treeChildOffsets[treeParent[v] + 1]++;
+			}
+			for (int v = 0; v < n; v++)
+				treeChildOffsets[v + 1] += treeChildOffsets[v];
+			int [] treeChildren = new int[treeChildOffsets[n]];
+			int [] fill = numberOfAncestors;
+			System.arraycopy(treeChildOffsets, 0, fill, 0, n);
+			for (int v = 0; v < n; v++)
+			{
+				if (treeParent[v] != -1)
+					treeChildren[fill[treeParent[v]]++] = v;
+			}
+
+			/* Assign the post order numbers by a depth-first search on the tree */
+			post = new int[n];
+			vertexOfPost = new int[n];
+			int [] low = new int[n];
+			int [] stack = new int[n];
+			int [] next = fill;
+			int counter = 0;
+			for (int root = 0; root < n; root++)
+			{
+				if (treeParent[root] != -1)
+					continue;
+
+				int top = 0;
+				stack[0] = root;
+				next[root] = treeChildOffsets[root];
+				low[root] = counter;
+				while (top >= 0)
+				{
+					int v = stack[top];
+					if (next[v] < treeChildOffsets[v + 1])
+					{
+						int c = treeChildren[next[v]++];
+						next[c] = treeChildOffsets[c];
+						low[c] = counter;
+						stack[++top] = c;
+					} else
+					{
+						post[v] = counter;
+						vertexOfPost[counter] = v;
+						counter++;
+						top--;
+					}
+				}
+			}
+
+			/* Determine the intervals in reverse topological order, such that the
+			 * intervals of all successors are known when we need them */
+			int [] from = new int[n];
+			int [] to = new int[n];
+			int [] allStarts = new int[n];
+			int [] allEnds = new int[n];
+			long [] candidates = new long[16];
+			int numberOfIntervals = 0;
+
+			for (int k = n - 1; k >= 0; k--)
+			{
+				int v = topologicalOrder[k];
+
+				/* Collect the own tree interval and the intervals of the successors */
+				int numberOfCandidates = 0;
+				candidates[numberOfCandidates++] = ((long)low[v] << 32) | post[v];
+				for (int i = offsets[v]; i < offsets[v + 1]; i++)
+				{
+					int s = successors[i];
+					int needed = numberOfCandidates + to[s] - from[s];
+					if (needed > candidates.length)
+						candidates = Arrays.copyOf(candidates, Math.max(needed, candidates.length * 2));
+					for (int j = from[s]; j < to[s]; j++)
+						candidates[numberOfCandidates++] = ((long)allStarts[j] << 32) | allEnds[j];
+				}
+				Arrays.sort(candidates, 0, numberOfCandidates);
+
+				if (numberOfIntervals + numberOfCandidates > allStarts.length)
+				{
+					int newLength = Math.max(numberOfIntervals + numberOfCandidates, allStarts.length * 2);
+					allStarts = Arrays.copyOf(allStarts, newLength);
+					allEnds = Arrays.copyOf(allEnds, newLength);
+				}
+
+				/* Merge overlapping and adjacent intervals */
+				from[v] = numberOfIntervals;
+				for (int i = 0; i < numberOfCandidates; i++)
+				{
+					int start = (int)(candidates[i] >>> 32);
+					int end = (int)candidates[i];
+					if (numberOfIntervals > from[v] && start <= allEnds[numberOfIntervals - 1] + 1)
+					{
+						if (end > allEnds[numberOfIntervals - 1])
+							allEnds[numberOfIntervals - 1] = end;
+					} else
+					{
+						allStarts[numberOfIntervals] = start;
+						allEnds[numberOfIntervals] = end;
+						numberOfIntervals++;
+					}
+				}
+				to[v] = numberOfIntervals;
+			}
+
+			/* Store the intervals in post order of the vertices. Vertices that
+			 * reach only themselves are represented by an empty list */
+			int numberOfStoredIntervals = 0;
+			for (int v = 0; v < n; v++)
+			{
+				if (offsets[v + 1] != offsets[v])
+					numberOfStoredIntervals += to[v] - from[v];
+			}
+			intervalOffsets = new int[n + 1];
+			starts = new int[numberOfStoredIntervals];
+			ends = new int[numberOfStoredIntervals];
+			int pos = 0;
+			for (int p = 0; p < n; p++)
+			{
+				int v = vertexOfPost[p];
+				if (offsets[v + 1] != offsets[v])
+				{
+					int length = to[v] - from[v];
+					System.arraycopy(allStarts, from[v], starts, pos, length);
+					System.arraycopy(allEnds, from[v], ends, pos, length);
+					pos += length;
+				}
+				intervalOffsets[p + 1] = pos;
+			}
+		}
+
+		/**
+		 * Determines whether w is reachable from v.
+		 *
+		 * @param v
+		 * @param w
+		 * @return
+		 */
+		public boolean reaches(int v, int w)
+		{
+			int p = post[w];
+			int q = post[v];
+			int lo = intervalOffsets[q];
+			int hi = intervalOffsets[q + 1] - 1;
+			if (hi < lo)
+				return p == q;
+
+			/* Find the last interval that starts not after p */
+			while (lo <= hi)
+			{
+				int mid = (lo + hi) >>> 1;
+				if (starts[mid] <= p) lo = mid + 1;
+				else hi = mid - 1;
+			}
+			return hi >= intervalOffsets[q] && p <= ends[hi];
+		}
+
+		/**
+		 * Returns the number of vertices that are reachable from v.
+		 *
+		 * @param v
+		 * @return
+		 */
+		public int getNumberOfReachable(int v)
+		{
+			int q = post[v];
+			if (intervalOffsets[q] == intervalOffsets[q + 1])
+				return 1;
+			int count = 0;
+			for (int i = intervalOffsets[q]; i < intervalOffsets[q + 1]; i++)
+				count += ends[i] - starts[i] + 1;
+			return count;
+		}
+
+		/**
+		 * Returns the vertices that are reachable from v.
+		 *
+		 * @param v
+		 * @return the vertices in ascending order.
+		 */
+		public int [] getReachable(int v)
+		{
+			int q = post[v];
+			if (intervalOffsets[q] == intervalOffsets[q + 1])
+				return new int[]{v};
+			int [] reachable = new int[getNumberOfReachable(v)];
+			int k = 0;
+			for (int i = intervalOffsets[q]; i < intervalOffsets[q + 1]; i++)
+			{
+				for (int p = starts[i]; p <= ends[i]; p++)
+					reachable[k++] = vertexOfPost[p];
+			}
+			Arrays.sort(reachable);
+			return reachable;
+		}
+
+		/**
+		 * @return the number of intervals.
+		 */
+		public int getNumberOfIntervals()
+		{
+			return starts.length;
+		}
+
+		/**
+		 * @return the approximate number of bytes occupied by the labelling.
+		 */
+		public long getSizeInBytes()
+		{
+			return 4L * (post.length + vertexOfPost.length + intervalOffsets.length + starts.length + ends.length) + 5 * 16;
+		}
+	}
+
+	/**
+	 * Scratch space for the enumeration of ancestors.
+	 */
+	private static class Scratch
+	{
+		public int [] stamps;
+		public int stamp;
+		public int [] queue;
+
+		public Scratch(int n)
+		{
+			stamps = new int[n];
+			queue = new int[n];
+		}
+	}
+
+	/** The labelling of the descendants */
+	private Labelling descendants;
+
+	/** Start of the parents of a vertex */
+	private int [] parentOffsets;
+
+	/** The parents of all vertices */
+	private int [] parents;
+
+	/** The scratch space of the threads */
+	private final ThreadLocal<Scratch> scratches = new ThreadLocal<Scratch>()
+	{
+		@Override
+		protected Scratch initialValue()
+		{
+			return new Scratch(parentOffsets.length - 1);
+		}
+	};
+
+	/**
+	 * Constructs the index from the adjacency of the graph given in
+	 * compressed sparse row form, i.e., the children of vertex v are
+	 * children[childOffsets[v]] to children[childOffsets[v+1]-1].
+	 * The parent arrays are referenced by the index and must not be
+	 * modified afterwards.
+	 *
+	 * @param parentOffsets
+	 * @param parents
+	 * @param childOffsets
+	 * @param children
+	 * @throws IllegalArgumentException if the graph contains a cycle.
+	 */
+	public ReachabilityIndex(int [] parentOffsets, int [] parents, int [] childOffsets, int [] children)
+	{
+		this.parentOffsets = parentOffsets;
+		this.parents = parents;
+		descendants = new Labelling(childOffsets, children, parentOffsets, parents);
+	}
+
+	/**
+	 * Constructs the index from the given adjacency lists.
+	 *
+	 * @param parents the parents of each vertex.
+	 * @param children the children of each vertex.
+	 * @throws IllegalArgumentException if the graph contains a cycle.
+	 */
+	public ReachabilityIndex(int [][] parents, int [][] children)
+	{
+		parentOffsets = offsets(parents);
+		this.parents = flatten(parents, parentOffsets);
+		int [] childOffsets = offsets(children);
+		descendants = new Labelling(childOffsets, flatten(children, childOffsets), parentOffsets, this.parents);
+	}
+
+	private static int [] offsets(int [][] lists)
+	{
+		int [] offsets = new int[lists.length + 1];
+		for (int i = 0; i < lists.length; i++)
+			offsets[i + 1] = offsets[i] + lists[i].length;
+		return offsets;
+	}
+
+	private static int [] flatten(int [][] lists, int [] offsets)
+	{
+		int [] flat = new int[offsets[lists.length]];
+		for (int i = 0; i < lists.length; i++)
+			System.arraycopy(lists[i], 0, flat, offsets[i], lists[i].length);
+		return flat;
+	}
+
+	/**
+	 * Determines whether the vertex i is an ancestor of the vertex j.
+	 *
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	public boolean isAncestor(int i, int j)
+	{
+		return descendants.reaches(i, j);
+	}
+
+	/**
+	 * Determines whether the vertex i is a descendant of the vertex j.
+	 *
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	public boolean isDescendant(int i, int j)
+	{
+		return descendants.reaches(j, i);
+	}
+
+	/**
+	 * Returns the ancestors of the given vertex. As ancestors are usually
+	 * few, they are determined by a traversal of the parents.
+	 *
+	 * @param v
+	 * @return the ancestors in ascending order.
+	 */
+	public int [] getAncestors(int v)
+	{
+		Scratch scratch = scratches.get();
+		int [] stamps = scratch.stamps;
+		int [] queue = scratch.queue;
+		if (scratch.stamp == Integer.MAX_VALUE)
+		{
+			Arrays.fill(stamps, 0);
+			scratch.stamp = 0;
+		}
+		int stamp = ++scratch.stamp;
+
+		int head = 0;
+		int tail = 0;
+		stamps[v] = stamp;
+		queue[tail++] = v;
+		while (head < tail)
+		{
+			int w = queue[head++];
+			for (int i = parentOffsets[w]; i < parentOffsets[w + 1]; i++)
+			{
+				int p = parents[i];
+				if (stamps[p] != stamp)
+				{
+					stamps[p] = stamp;
+					queue[tail++] = p;
+				}
+			}
+		}
+
+		int [] ancestors = Arrays.copyOf(queue, tail);
+		Arrays.sort(ancestors);
+		return ancestors;
+	}
+
+	/**
+	 * Returns the descendants of the given vertex.
+	 *
+	 * @param v
+	 * @return the descendants in ascending order.
+	 */
+	public int [] getDescendants(int v)
+	{
+		return descendants.getReachable(v);
+	}
+
+	/**
+	 * Returns the number of descendants of the given vertex.
+	 *
+	 * @param v
+	 * @return
+	 */
+	public int getNumberOfDescendants(int v)
+	{
+		return descendants.getNumberOfReachable(v);
+	}
+
+	/**
+	 * @return the total number of intervals stored by the index.
+	 */
+	public int getNumberOfIntervals()
+	{
+		return descendants.getNumberOfIntervals();
+	}
+
+	/**
+	 * @return the approximate number of bytes occupied by the index
+	 *  including the parent adjacency.
+	 */
+	public long getSizeInBytes()
+	{
+		return descendants.getSizeInBytes() + 4L * (parentOffsets.length + parents.length) + 2 * 16;
+	}
+}
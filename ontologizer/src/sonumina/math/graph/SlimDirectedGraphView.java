@@ -24,7 +24,8 @@ public class SlimDirectedGraphView<VertexType>
 	public HashMap<VertexType,Integer> vertex2Index;
 
 	/** Contains all the ancestors of the terms (and the terms itself).
-	 * Note that the array of ancestors is sorted. */
+	 * Note that the array of ancestors is sorted. Null, if the view is
+	 * backed by a reachability index. */
 	public int [][] vertexAncestors;
 
 	/** Contains the parents of the terms */
@@ -34,9 +35,13 @@ public class SlimDirectedGraphView<VertexType>
 	public int [][] vertexChildren;
 
 	/** Contains the descendants of the (i.e., children, grand-children, etc. and the term itself).
-	 * Note that the array of descendants is sorted.*/
+	 * Note that the array of descendants is sorted. Null, if the view is
+	 * backed by a reachability index. */
 	public int [][] vertexDescendants;
 
+	/** The reachability index that replaces vertexAncestors and vertexDescendants, may be null */
+	private ReachabilityIndex reachabilityIndex;
+
 	/**
 	 * Default constructor.
 	 */
@@ -118,6 +123,9 @@ public class SlimDirectedGraphView<VertexType>
 	 */
 	public boolean isAncestor(int i, int j)
 	{
+		if (reachabilityIndex != null)
+			return reachabilityIndex.isAncestor(i, j);
+
 		int [] ancs = vertexAncestors[j];
 		int r 		=  Arrays.binarySearch(ancs,i);
 		return r >= 0;
@@ -134,6 +142,9 @@ public class SlimDirectedGraphView<VertexType>
 	 */
 	public boolean isDescendant(int i, int j)
 	{
+		if (reachabilityIndex != null)
+			return reachabilityIndex.isDescendant(i, j);
+
 		int [] descs 	= vertexDescendants[j];
 		int r 			= Arrays.binarySearch(descs,i);
 		return r >= 0;
@@ -195,7 +206,7 @@ public class SlimDirectedGraphView<VertexType>
 		/* get the index of the vertex */
 		int indexOfTerm 						= getVertexIndex(t);
 		/* get all descendent indices of the vertex */
-		int[] descendantIndices					= vertexDescendants[indexOfTerm];
+		int[] descendantIndices					= getDescendantIndices(indexOfTerm);
 
 		/* init the return list of vertex-objects */
 		ArrayList<VertexType> descendantObjects = new ArrayList<VertexType>(descendantIndices.length);
@@ -220,7 +231,7 @@ public class SlimDirectedGraphView<VertexType>
 		/* get the index of the vertex */
 		int indexOfTerm 							= getVertexIndex(t);
 		/* get all descendent indices of the vertex */
-		int[] ancestorIndices					= vertexAncestors[indexOfTerm];
+		int[] ancestorIndices					= getAncestorIndices(indexOfTerm);
 
 		/* init the return list of vertex-objects */
 		ArrayList<VertexType> ancestorObjects 	= new ArrayList<VertexType>(ancestorIndices.length);
@@ -233,6 +244,45 @@ public class SlimDirectedGraphView<VertexType>
 		return ancestorObjects;
 	}
 
+	/**
+	 * Returns the indices of the ancestors of the vertex with the given index
+	 * including the vertex itself.
+	 *
+	 * @param i
+	 * @return the indices in ascending order. The array must not be modified.
+	 */
+	public int [] getAncestorIndices(int i)
+	{
+		if (reachabilityIndex != null)
+			return reachabilityIndex.getAncestors(i);
+		return vertexAncestors[i];
+	}
+
+	/**
+	 * Returns the indices of the descendants of the vertex with the given index
+	 * including the vertex itself.
+	 *
+	 * @param i
+	 * @return the indices in ascending order. The array must not be modified.
+	 */
+	public int [] getDescendantIndices(int i)
+	{
+		if (reachabilityIndex != null)
+			return reachabilityIndex.getDescendants(i);
+		return vertexDescendants[i];
+	}
+
+	/**
+	 * Returns the reachability index of this view.
+	 *
+	 * @return the index or null, if the view stores the full ancestor and
+	 *  descendant arrays.
+	 */
+	public ReachabilityIndex getReachabilityIndex()
+	{
+		return reachabilityIndex;
+	}
+
 	/**
 	 * Checks if a given vertex can be found in the graph.
 	 * @param The vertex to be searched.
@@ -285,8 +335,20 @@ public class SlimDirectedGraphView<VertexType>
 	 * @param slim
 	 * @param graph
 	 */
-	@SuppressWarnings("unchecked")
 	public static <V> void init(SlimDirectedGraphView<V> slim, DirectedGraph<V> graph)
+	{
+		initNeighbours(slim, graph);
+		initClosures(slim, graph);
+	}
+
+	/**
+	 * Initialize the vertices, parents and children of the slim graph view.
+	 *
+	 * @param slim
+	 * @param graph
+	 */
+	@SuppressWarnings("unchecked")
+	private static <V> void initNeighbours(SlimDirectedGraphView<V> slim, DirectedGraph<V> graph)
 	{
 		int i;
 
@@ -311,6 +373,28 @@ public class SlimDirectedGraphView<VertexType>
 			slim.vertexParents[i] 				= createIndicesFromIter(slim.vertex2Index,parentIter);
 		}
 
+		/* Term children stuff */
+		slim.vertexChildren = new int[slim.vertices.length][];
+		for (i=0;i<slim.vertices.length;i++)
+		{
+			V v = (V)slim.vertices[i];
+
+			Iterator<V> childrenIter 	= graph.getChildNodes(v);
+			slim.vertexChildren[i] 		= createIndicesFromIter(slim.vertex2Index,childrenIter);
+		}
+	}
+
+	/**
+	 * Initialize the ancestors and descendants of the slim graph view.
+	 *
+	 * @param slim
+	 * @param graph
+	 */
+	@SuppressWarnings("unchecked")
+	private static <V> void initClosures(SlimDirectedGraphView<V> slim, DirectedGraph<V> graph)
+	{
+		int i;
+
 		/* Term ancestor stuff */
 		slim.vertexAncestors = new int[slim.vertices.length][];
 		for (i=0;i<slim.vertices.length;i++)
@@ -330,16 +414,6 @@ public class SlimDirectedGraphView<VertexType>
 			Arrays.sort(slim.vertexAncestors[i]);
 		}
 
-		/* Term children stuff */
-		slim.vertexChildren = new int[slim.vertices.length][];
-		for (i=0;i<slim.vertices.length;i++)
-		{
-			V v = (V)slim.vertices[i];
-
-			Iterator<V> childrenIter 	= graph.getChildNodes(v);
-			slim.vertexChildren[i] 		= createIndicesFromIter(slim.vertex2Index,childrenIter);
-		}
-
 		/* Term descendants stuff */
 		slim.vertexDescendants = new int[slim.vertices.length][];
 		for (i=0;i<slim.vertices.length;i++)
@@ -397,4 +471,30 @@ public class SlimDirectedGraphView<VertexType>
 		init(g, graph);
 		return g;
 	}
+
+	/**
+	 * Create the slim view from the given directed graph. Instead of
+	 * storing the ancestors and descendants of all vertices, the view
+	 * is backed by a reachability index, which requires much less
+	 * memory. Hence, vertexAncestors and vertexDescendants are null, use
+	 * getAncestorIndices() and getDescendantIndices() instead.
+	 *
+	 * If the graph contains a cycle, the full arrays are stored.
+	 *
+	 * @param graph
+	 * @return
+	 */
+	public static <V> SlimDirectedGraphView<V> createCompact(DirectedGraph<V> graph)
+	{
+		SlimDirectedGraphView<V> g = new SlimDirectedGraphView<V>();
+		initNeighbours(g, graph);
+		try
+		{
+			g.reachabilityIndex = new ReachabilityIndex(g.vertexParents, g.vertexChildren);
+		} catch (IllegalArgumentException e)
+		{
+			initClosures(g, graph);
+		}
+		return g;
+	}
 }